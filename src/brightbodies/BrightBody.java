@@ -1,30 +1,92 @@
 package brightbodies;
 
-import java.io.Serializable;
+import stats.MomentStats;
+import stats.Moments;
 
-import static stats.MomentStats.centroid;
-import static stats.MomentStats.area;
+import java.io.Serializable;
 
 /**
  * Represents a bright body with a given set of coordinate values. Can determine and store centroid and area. Comparable
- * by area and serializable.
+ * by area and serializable. The coordinates are packed into a PixelSet, so contains is a constant time lookup. Only the
+ * values of the source image under the body are kept, so a BrightBody does not hold its frame in memory or carry it
+ * along when serialized. The full Moments of the body are measured in one pass the first time they are asked for and
+ * then kept.
  */
 public class BrightBody implements Comparable<BrightBody>, Serializable{
     public final Coordinate centroid;
     public final float area;
-    public final CartesianPoint[] body;
-    public final float[][] source;
+    public final PixelSet body;
+    /**
+     * Values of the source image at each pixel of the body, in the iteration order of body
+     */
+    public final float[] fluxes;
+    private transient volatile Moments moments_;
 
     /**
-     * Constructs a bright body given the source image and coordinates
+     * Constructs a bright body given the source image and coordinates. The area and centroid are measured over the
+     * pixels in the iteration order of the PixelSet, so they are the same as those of a copy of this body that is
+     * decoded or deserialized and measured again.
      * @param image source image
      * @param body coordinates in the bright body
      */
     public BrightBody(float[][] image, CartesianPoint[] body) {
+        this.body = new PixelSet(body);
+        fluxes = fluxes(image, this.body);
+        Moments moments = MomentStats.moments(this.body, fluxes);
+        centroid = moments.centroid();
+        area = moments.m00;
+        moments_ = moments;
+    }
+
+    /**
+     * Constructs a bright body whose area and centroid have already been computed from the source image, such as by a
+     * single pass over a labeled frame
+     * @param image source image
+     * @param body coordinates in the bright body
+     * @param centroid centroid of the body within the image
+     * @param area area of the body within the image
+     */
+    public BrightBody(float[][] image, CartesianPoint[] body, Coordinate centroid, float area) {
+        this(image, new PixelSet(body), centroid, area);
+    }
+
+    /**
+     * Constructs a bright body from packed coordinates whose area and centroid have already been computed from the
+     * source image
+     * @param image source image
+     * @param body coordinates in the bright body
+     * @param centroid centroid of the body within the image
+     * @param area area of the body within the image
+     */
+    public BrightBody(float[][] image, PixelSet body, Coordinate centroid, float area) {
+        this(body, fluxes(image, body), centroid, area);
+    }
+
+    /**
+     * Constructs a bright body from packed coordinates and the values of the source image under them, such as one
+     * read back by BrightBodyCodec
+     * @param body coordinates in the bright body
+     * @param fluxes values of the source image at each pixel of body, in the iteration order of body
+     * @param centroid centroid of the body within the image
+     * @param area area of the body within the image
+     */
+    public BrightBody(PixelSet body, float[] fluxes, Coordinate centroid, float area) {
+        if(fluxes.length != body.size()) {
+            throw new IllegalArgumentException("Body has " + body.size() + " pixels but " + fluxes.length + " fluxes");
+        }
         this.body = body;
-        centroid = centroid(image, body.clone());
-        area = area(image, body.clone());
-        source = image;
+        this.fluxes = fluxes;
+        this.centroid = centroid;
+        this.area = area;
+    }
+
+    private static float[] fluxes(float[][] image, PixelSet body) {
+        float[] fluxes = new float[body.size()];
+        int index = 0;
+        for(int pixel = body.nextPixel(0); pixel >= 0; pixel = body.nextPixel(pixel + 1)) {
+            fluxes[index++] = image[image.length - body.y(pixel) - 1][body.x(pixel)];
+        }
+        return fluxes;
     }
 
     /**
@@ -33,18 +95,37 @@ public class BrightBody implements Comparable<BrightBody>, Serializable{
      * @return true if the point is in the body
      */
     public boolean contains(CartesianPoint point) {
-        for(CartesianPoint p : body) {
-            if(point.equals(p)) {
-                return true;
-            }
+        return body.contains(point);
+    }
+
+    /**
+     * Determines if this bright body contains a particular pixel
+     * @param x the x-value
+     * @param y the y-value
+     * @return true if the pixel is in the body
+     */
+    public boolean contains(int x, int y) {
+        return body.contains(x, y);
+    }
+
+    /**
+     * Returns the moments, peak, and bounding box of this bright body, measuring them in a single pass the first time
+     * @return the moments of the body
+     */
+    public Moments moments() {
+        Moments moments = moments_;
+        if(moments == null) {
+            moments = MomentStats.moments(body, fluxes);
+            moments_ = moments;
         }
-        return false;
+        return moments;
     }
+
     public int compareTo(@SuppressWarnings("NullableProblems") BrightBody b) {
-        return (int) (area - b.area);
+        return Float.compare(area, b.area);
     }
 
     public String toString() {
-        return "Size: " + body.length + " | Area: " + area + " | Centroid: " + "(" + centroid.x + " , " + centroid.y + ")";
+        return "Size: " + body.size() + " | Area: " + area + " | Centroid: " + "(" + centroid.x + " , " + centroid.y + ")";
     }
 }
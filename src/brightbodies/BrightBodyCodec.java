@@ -0,0 +1,142 @@
+package brightbodies;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Writes and reads the BrightBodyLists of every frame of a cube in a compact binary form, so that locate results can be
+ * checkpointed to disk and reloaded without locating again. Each BrightBody is stored as its area, centroid, packed
+ * PixelSet, and fluxes, and the whole file is read into a single buffer and decoded with bulk copies.
+ *
+ * The file starts with MAGIC and VERSION. Readers reject files of any other version, so VERSION must be increased
+ * whenever the layout changes.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class BrightBodyCodec {
+    /**
+     * First four bytes of every file, "BBOD"
+     */
+    public static final int MAGIC = 0x42424F44;
+
+    /**
+     * Version of the layout that is written
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    /**
+     * Fewest bytes a BrightBody takes, which is that of a body with an empty PixelSet
+     */
+    private static final int MIN_BODY_BYTES = 3 * Float.BYTES + 5 * Integer.BYTES;
+
+    /**
+     * Encodes the BrightBodyLists of each frame
+     * @param frames bodies of each frame, indexed by frame
+     * @return buffer positioned at zero that holds the encoded bodies
+     */
+    public static ByteBuffer encode(BrightBodyList[] frames) {
+        long bytes = HEADER_BYTES + (long) frames.length * Integer.BYTES;
+        for(BrightBodyList bodies : frames) {
+            for(BrightBody body : bodies) {
+                bytes += 3 * Float.BYTES + body.body.encodedBytes() + (long) body.fluxes.length * Float.BYTES;
+            }
+        }
+        if(bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bodies need " + bytes + " bytes, which is more than one buffer holds");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) bytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(frames.length);
+        for(BrightBodyList bodies : frames) {
+            buffer.putInt(bodies.size());
+            for(BrightBody body : bodies) {
+                buffer.putFloat(body.area).putFloat(body.centroid.x).putFloat(body.centroid.y);
+                body.body.put(buffer);
+                buffer.asFloatBuffer().put(body.fluxes);
+                buffer.position(buffer.position() + body.fluxes.length * Float.BYTES);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes the BrightBodyLists of each frame from a buffer written by encode
+     * @param buffer buffer positioned at the start of the encoded bodies
+     * @return bodies of each frame, indexed by frame
+     */
+    public static BrightBodyList[] decode(ByteBuffer buffer) {
+        try {
+            return decodeFrames(buffer);
+        }
+        catch(BufferUnderflowException e) {
+            throw new IllegalArgumentException("Encoded BrightBodies are truncated", e);
+        }
+    }
+
+    private static BrightBodyList[] decodeFrames(ByteBuffer buffer) {
+        if(buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Buffer does not hold encoded BrightBodies");
+        }
+        int version = buffer.getInt();
+        if(version != VERSION) {
+            throw new IllegalArgumentException("Unsupported BrightBody encoding version " + version);
+        }
+
+        // Counts are checked against the bytes left before anything is allocated for them, so a corrupt count cannot
+        // allocate more than the buffer could hold
+        int frame_count = buffer.getInt();
+        if(frame_count < 0 || frame_count > buffer.remaining() / Integer.BYTES) {
+            throw new IllegalArgumentException("Corrupt frame count " + frame_count);
+        }
+        BrightBodyList[] frames = new BrightBodyList[frame_count];
+        for(int frame = 0; frame < frames.length; frame++) {
+            int count = buffer.getInt();
+            if(count < 0 || count > buffer.remaining() / MIN_BODY_BYTES) {
+                throw new IllegalArgumentException("Corrupt BrightBody count " + count + " in frame " + frame);
+            }
+            BrightBodyList bodies = new BrightBodyList();
+            bodies.ensureCapacity(count);
+            for(int index = 0; index < count; index++) {
+                float area = buffer.getFloat();
+                Coordinate centroid = new Coordinate(buffer.getFloat(), buffer.getFloat());
+                PixelSet pixels = PixelSet.get(buffer);
+                if(pixels.size() > buffer.remaining() / Float.BYTES) {
+                    throw new IllegalArgumentException("Encoded BrightBodies are truncated");
+                }
+                float[] fluxes = new float[pixels.size()];
+                buffer.asFloatBuffer().get(fluxes);
+                buffer.position(buffer.position() + fluxes.length * Float.BYTES);
+                bodies.add(new BrightBody(pixels, fluxes, centroid, area));
+            }
+            frames[frame] = bodies;
+        }
+        return frames;
+    }
+
+    /**
+     * Writes the BrightBodyLists of each frame to a file, replacing it if it exists
+     * @param frames bodies of each frame, indexed by frame
+     * @param path file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(BrightBodyList[] frames, String path) throws IOException {
+        Files.write(Paths.get(path), encode(frames).array());
+    }
+
+    /**
+     * Reads the BrightBodyLists of each frame from a file written by write
+     * @param path file to read
+     * @return bodies of each frame, indexed by frame
+     * @throws IOException if the file cannot be read
+     */
+    public static BrightBodyList[] read(String path) throws IOException {
+        return decode(ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))));
+    }
+}
@@ -0,0 +1,126 @@
+package brightbodies;
+
+/**
+ * The BrightBodies of one frame stored as parallel primitive columns, so that loops over the centroids, areas, sizes,
+ * and bounding boxes of many bodies read contiguous arrays instead of following references from the list to each body
+ * and on to its centroid and pixels. Row i of every column describes the same body, which body(i) returns.
+ * DetectionColumns are built from and converted back to BrightBodyLists for code that has not moved to columns.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class DetectionColumns {
+    /**
+     * Number of bodies, which is the length of every column
+     */
+    public final int count;
+    public final float[] x;
+    public final float[] y;
+    public final float[] area;
+    /**
+     * Number of pixels in each body
+     */
+    public final int[] size;
+    public final int[] min_x;
+    public final int[] max_x;
+    public final int[] min_y;
+    public final int[] max_y;
+
+    private final BrightBody[] bodies_;
+
+    /**
+     * Constructs DetectionColumns that hold the bodies of a list in the order of the list
+     * @param bodies the bodies of a frame
+     */
+    public DetectionColumns(BrightBodyList bodies) {
+        count = bodies.size();
+        x = new float[count];
+        y = new float[count];
+        area = new float[count];
+        size = new int[count];
+        min_x = new int[count];
+        max_x = new int[count];
+        min_y = new int[count];
+        max_y = new int[count];
+        bodies_ = bodies.toArray(new BrightBody[count]);
+        for(int index = 0; index < count; index++) {
+            BrightBody body = bodies_[index];
+            x[index] = body.centroid.x;
+            y[index] = body.centroid.y;
+            area[index] = body.area;
+            size[index] = body.body.size();
+            min_x[index] = body.body.minX();
+            max_x[index] = body.body.maxX();
+            min_y[index] = body.body.minY();
+            max_y[index] = body.body.maxY();
+        }
+    }
+
+    /**
+     * Builds the DetectionColumns of every frame
+     * @param frames the bodies of each frame
+     * @return the columns of each frame
+     */
+    public static DetectionColumns[] of(BrightBodyList[] frames) {
+        DetectionColumns[] columns = new DetectionColumns[frames.length];
+        for(int frame = 0; frame < frames.length; frame++) {
+            columns[frame] = new DetectionColumns(frames[frame]);
+        }
+        return columns;
+    }
+
+    /**
+     * Converts the DetectionColumns of every frame back to BrightBodyLists
+     * @param frames the columns of each frame
+     * @return the bodies of each frame
+     */
+    public static BrightBodyList[] toBrightBodyLists(DetectionColumns[] frames) {
+        BrightBodyList[] lists = new BrightBodyList[frames.length];
+        for(int frame = 0; frame < frames.length; frame++) {
+            lists[frame] = frames[frame].toBrightBodyList();
+        }
+        return lists;
+    }
+
+    /**
+     * @param index row of the body
+     * @return the BrightBody described by a row of the columns
+     */
+    public BrightBody body(int index) {
+        return bodies_[index];
+    }
+
+    /**
+     * @return true if the frame has no bodies
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Determines if the bounding box of a body overlaps a box, which it must if the body shares any pixel with a body
+     * inside that box
+     * @param index row of the body
+     * @param box_min_x lowest x of the box
+     * @param box_max_x highest x of the box
+     * @param box_min_y lowest y of the box
+     * @param box_max_y highest y of the box
+     * @return true if the bounding box of the body shares a pixel with the box
+     */
+    public boolean boundsIntersect(int index, int box_min_x, int box_max_x, int box_min_y, int box_max_y) {
+        return size[index] > 0 && min_x[index] <= box_max_x && box_min_x <= max_x[index]
+                && min_y[index] <= box_max_y && box_min_y <= max_y[index];
+    }
+
+    /**
+     * @return the bodies as a new BrightBodyList in row order
+     */
+    public BrightBodyList toBrightBodyList() {
+        BrightBodyList bodies = new BrightBodyList();
+        bodies.ensureCapacity(count);
+        for(BrightBody body : bodies_) {
+            bodies.add(body);
+        }
+        return bodies;
+    }
+}
@@ -0,0 +1,377 @@
+package brightbodies;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the centroids of the bodies of one frame that answers which bodies are near a point without
+ * scanning every body. The grid is built once per frame by a counting sort of the rows of a DetectionColumns into
+ * square cells, so a query only visits the cells that it overlaps. Bounding box queries also find bodies whose centroid
+ * is outside the box, because every cell is searched out to the farthest that any bounding box reaches from its
+ * centroid.
+ *
+ * Queries return rows of the DetectionColumns in ascending order, except nearest, which returns the closest first.
+ * Bodies whose centroid is not finite, such as those with no area, are never near a point but are still found by
+ * bounding box queries. A DetectionIndex is not modified by queries and may be shared between threads.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class DetectionIndex {
+    /**
+     * Average number of bodies in each cell when no cell size is given
+     */
+    private static final int BODIES_PER_CELL = 2;
+
+    private final DetectionColumns columns_;
+    private final float origin_x_;
+    private final float origin_y_;
+    private final float cell_size_;
+    private final int cells_across_;
+    private final int cells_down_;
+    private final int[] cell_starts_;
+    private final int[] cell_rows_;
+    private final int[] unplaced_;
+    private final float reach_x_;
+    private final float reach_y_;
+
+    /**
+     * Constructs a DetectionIndex with cells sized so that each holds a few bodies on average
+     * @param columns the bodies of a frame
+     */
+    public DetectionIndex(DetectionColumns columns) {
+        this(columns, 0);
+    }
+
+    /**
+     * Constructs a DetectionIndex
+     * @param columns the bodies of a frame
+     * @param cell_size width and height of each cell, or 0 to size the cells from the number and spread of the bodies.
+     *                  Cells are made larger if there would be far more cells than bodies.
+     */
+    public DetectionIndex(DetectionColumns columns, float cell_size) {
+        if(!(cell_size >= 0) || Float.isInfinite(cell_size)) {
+            throw new IllegalArgumentException("Invalid cell size " + cell_size);
+        }
+        columns_ = columns;
+
+        float min_x = Float.POSITIVE_INFINITY;
+        float max_x = Float.NEGATIVE_INFINITY;
+        float min_y = Float.POSITIVE_INFINITY;
+        float max_y = Float.NEGATIVE_INFINITY;
+        int placed = 0;
+        float reach_x = 0;
+        float reach_y = 0;
+        for(int row = 0; row < columns.count; row++) {
+            if(!placeable(row)) {
+                continue;
+            }
+            placed++;
+            float x = columns.x[row];
+            float y = columns.y[row];
+            min_x = Math.min(min_x, x);
+            max_x = Math.max(max_x, x);
+            min_y = Math.min(min_y, y);
+            max_y = Math.max(max_y, y);
+            if(columns.size[row] > 0) {
+                reach_x = Math.max(reach_x, Math.max(x - columns.min_x[row], columns.max_x[row] - x));
+                reach_y = Math.max(reach_y, Math.max(y - columns.min_y[row], columns.max_y[row] - y));
+            }
+        }
+        reach_x_ = reach_x;
+        reach_y_ = reach_y;
+        unplaced_ = new int[columns.count - placed];
+
+        if(placed == 0) {
+            origin_x_ = 0;
+            origin_y_ = 0;
+            cell_size_ = 1;
+            cells_across_ = 1;
+            cells_down_ = 1;
+        }
+        else {
+            origin_x_ = min_x;
+            origin_y_ = min_y;
+            double width = (double) max_x - min_x;
+            double height = (double) max_y - min_y;
+            double size = cell_size > 0 ? cell_size : Math.sqrt(width * height * BODIES_PER_CELL / placed);
+            size = Math.max(size, Math.max(width, height) / (1 << 15));
+            if(!(size > 0)) {
+                size = 1;
+            }
+            long limit = 4L * placed + 16;
+            while((Math.floor(width / size) + 1) * (Math.floor(height / size) + 1) > limit) {
+                size *= 2;
+            }
+            cell_size_ = (float) size;
+            cells_across_ = (int) (width / cell_size_) + 1;
+            cells_down_ = (int) (height / cell_size_) + 1;
+        }
+
+        // Counting sort of the rows by cell, which keeps the rows of each cell in ascending order
+        cell_starts_ = new int[cells_across_ * cells_down_ + 1];
+        cell_rows_ = new int[placed];
+        for(int row = 0; row < columns.count; row++) {
+            if(placeable(row)) {
+                cell_starts_[cell(row) + 1]++;
+            }
+        }
+        for(int cell = 0; cell < cells_across_ * cells_down_; cell++) {
+            cell_starts_[cell + 1] += cell_starts_[cell];
+        }
+        int[] filled = Arrays.copyOf(cell_starts_, cell_starts_.length - 1);
+        int unplaced = 0;
+        for(int row = 0; row < columns.count; row++) {
+            if(placeable(row)) {
+                cell_rows_[filled[cell(row)]++] = row;
+            }
+            else {
+                unplaced_[unplaced++] = row;
+            }
+        }
+    }
+
+    private boolean placeable(int row) {
+        return isFinite(columns_.x[row]) && isFinite(columns_.y[row]);
+    }
+
+    private static boolean isFinite(float value) {
+        return value - value == 0;
+    }
+
+    private int cell(int row) {
+        return cellY(columns_.y[row]) * cells_across_ + cellX(columns_.x[row]);
+    }
+
+    private int cellX(double x) {
+        return (int) Math.max(0, Math.min(cells_across_ - 1, Math.floor((x - origin_x_) / cell_size_)));
+    }
+
+    private int cellY(double y) {
+        return (int) Math.max(0, Math.min(cells_down_ - 1, Math.floor((y - origin_y_) / cell_size_)));
+    }
+
+    /**
+     * @return the bodies that are indexed
+     */
+    public DetectionColumns columns() {
+        return columns_;
+    }
+
+    /**
+     * @return width and height of each cell
+     */
+    public float cellSize() {
+        return cell_size_;
+    }
+
+    /**
+     * Finds the bodies whose centroid is within a distance of a point
+     * @param x x-value of the point
+     * @param y y-value of the point
+     * @param radius largest distance, inclusive
+     * @return rows of the bodies in ascending order
+     */
+    public int[] withinRadius(float x, float y, float radius) {
+        double radius_squared = (double) radius * radius;
+        Rows rows = new Rows();
+        for(int cell_y = cellY((double) y - radius); cell_y <= cellY((double) y + radius); cell_y++) {
+            for(int cell_x = cellX((double) x - radius); cell_x <= cellX((double) x + radius); cell_x++) {
+                int cell = cell_y * cells_across_ + cell_x;
+                for(int index = cell_starts_[cell]; index < cell_starts_[cell + 1]; index++) {
+                    int row = cell_rows_[index];
+                    double dx = (double) columns_.x[row] - x;
+                    double dy = (double) columns_.y[row] - y;
+                    if(dx * dx + dy * dy <= radius_squared) {
+                        rows.add(row);
+                    }
+                }
+            }
+        }
+        return rows.sorted();
+    }
+
+    /**
+     * Finds the bodies whose centroid is inside a box
+     * @param min_x lowest x of the box, inclusive
+     * @param max_x highest x of the box, inclusive
+     * @param min_y lowest y of the box, inclusive
+     * @param max_y highest y of the box, inclusive
+     * @return rows of the bodies in ascending order
+     */
+    public int[] centroidsInBox(float min_x, float max_x, float min_y, float max_y) {
+        int[] rows = new int[8];
+        int count;
+        while((count = centroidsInBox(min_x, max_x, min_y, max_y, rows)) > rows.length) {
+            rows = new int[count];
+        }
+        rows = Arrays.copyOf(rows, count);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Finds the bodies whose centroid is inside a box without allocating, for loops that make many small queries
+     * @param min_x lowest x of the box, inclusive
+     * @param max_x highest x of the box, inclusive
+     * @param min_y lowest y of the box, inclusive
+     * @param max_y highest y of the box, inclusive
+     * @param rows array that the rows of the bodies are written to in no particular order
+     * @return number of bodies found, which may be more than the length of rows, in which case only the first
+     *         rows.length are written
+     */
+    public int centroidsInBox(float min_x, float max_x, float min_y, float max_y, int[] rows) {
+        if(!(min_x <= max_x && min_y <= max_y)) {
+            return 0;
+        }
+        int count = 0;
+        for(int cell_y = cellY(min_y); cell_y <= cellY(max_y); cell_y++) {
+            for(int cell_x = cellX(min_x); cell_x <= cellX(max_x); cell_x++) {
+                int cell = cell_y * cells_across_ + cell_x;
+                for(int index = cell_starts_[cell]; index < cell_starts_[cell + 1]; index++) {
+                    int row = cell_rows_[index];
+                    float x = columns_.x[row];
+                    float y = columns_.y[row];
+                    if(x >= min_x && x <= max_x && y >= min_y && y <= max_y) {
+                        if(count < rows.length) {
+                            rows[count] = row;
+                        }
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the bodies whose bounding box shares a pixel with a box, which includes every body that shares a pixel
+     * with a body inside the box
+     * @param min_x lowest x of the box, inclusive
+     * @param max_x highest x of the box, inclusive
+     * @param min_y lowest y of the box, inclusive
+     * @param max_y highest y of the box, inclusive
+     * @return rows of the bodies in ascending order
+     */
+    public int[] boundsIntersecting(int min_x, int max_x, int min_y, int max_y) {
+        Rows rows = new Rows();
+        if(min_x > max_x || min_y > max_y) {
+            return rows.sorted();
+        }
+        for(int cell_y = cellY(min_y - (double) reach_y_); cell_y <= cellY(max_y + (double) reach_y_); cell_y++) {
+            for(int cell_x = cellX(min_x - (double) reach_x_); cell_x <= cellX(max_x + (double) reach_x_); cell_x++) {
+                int cell = cell_y * cells_across_ + cell_x;
+                for(int index = cell_starts_[cell]; index < cell_starts_[cell + 1]; index++) {
+                    int row = cell_rows_[index];
+                    if(columns_.boundsIntersect(row, min_x, max_x, min_y, max_y)) {
+                        rows.add(row);
+                    }
+                }
+            }
+        }
+        for(int row : unplaced_) {
+            if(columns_.boundsIntersect(row, min_x, max_x, min_y, max_y)) {
+                rows.add(row);
+            }
+        }
+        return rows.sorted();
+    }
+
+    /**
+     * Finds the bodies whose bounding box holds a pixel, which includes every body that holds the pixel
+     * @param x x-value of the pixel
+     * @param y y-value of the pixel
+     * @return rows of the bodies in ascending order
+     */
+    public int[] boundsContaining(int x, int y) {
+        return boundsIntersecting(x, x, y, y);
+    }
+
+    /**
+     * Finds the bodies whose centroids are closest to a point by searching rings of cells outwards from the cell of the
+     * point until no farther cell can hold a closer centroid
+     * @param x x-value of the point
+     * @param y y-value of the point
+     * @param k largest number of bodies to find
+     * @return rows of up to k bodies, closest first and in ascending order when tied
+     */
+    public int[] nearest(float x, float y, int k) {
+        if(k < 0) {
+            throw new IllegalArgumentException("Cannot find " + k + " nearest bodies");
+        }
+        k = Math.min(k, cell_rows_.length);
+        int[] best_rows = new int[k];
+        double[] best_distances = new double[k];
+        int found = 0;
+        int center_x = cellX(x);
+        int center_y = cellY(y);
+        int rings = Math.max(cells_across_, cells_down_);
+        for(int ring = 0; ring < rings && k > 0; ring++) {
+            for(int cell_y = center_y - ring; cell_y <= center_y + ring; cell_y++) {
+                if(cell_y < 0 || cell_y >= cells_down_) {
+                    continue;
+                }
+                boolean edge = cell_y == center_y - ring || cell_y == center_y + ring;
+                int step = edge ? 1 : 2 * ring;
+                for(int cell_x = center_x - ring; cell_x <= center_x + ring; cell_x += Math.max(step, 1)) {
+                    if(cell_x < 0 || cell_x >= cells_across_) {
+                        continue;
+                    }
+                    int cell = cell_y * cells_across_ + cell_x;
+                    for(int index = cell_starts_[cell]; index < cell_starts_[cell + 1]; index++) {
+                        int row = cell_rows_[index];
+                        double dx = (double) columns_.x[row] - x;
+                        double dy = (double) columns_.y[row] - y;
+                        found = insert(best_rows, best_distances, found, row, dx * dx + dy * dy);
+                    }
+                }
+            }
+            // Every cell of a later ring is at least this far from the point along one axis
+            double bound = (double) ring * cell_size_;
+            if(found == k && best_distances[k - 1] <= bound * bound) {
+                break;
+            }
+        }
+        return Arrays.copyOf(best_rows, found);
+    }
+
+    /**
+     * Inserts a row into the k closest rows found so far, which are sorted by distance and then by row
+     * @return number of rows kept
+     */
+    private static int insert(int[] rows, double[] distances, int found, int row, double distance) {
+        int position = found;
+        while(position > 0 && (distances[position - 1] > distance || (distances[position - 1] == distance && rows[position - 1] > row))) {
+            position--;
+        }
+        if(position == rows.length) {
+            return found;
+        }
+        int kept = Math.min(found + 1, rows.length);
+        System.arraycopy(rows, position, rows, position + 1, kept - 1 - position);
+        System.arraycopy(distances, position, distances, position + 1, kept - 1 - position);
+        rows[position] = row;
+        distances[position] = distance;
+        return kept;
+    }
+
+    /**
+     * Growable list of the rows found by a query
+     */
+    private static final class Rows {
+        private int[] rows_ = new int[8];
+        private int count_;
+
+        void add(int row) {
+            if(count_ == rows_.length) {
+                rows_ = Arrays.copyOf(rows_, count_ * 2);
+            }
+            rows_[count_++] = row;
+        }
+
+        int[] sorted() {
+            int[] rows = Arrays.copyOf(rows_, count_);
+            Arrays.sort(rows);
+            return rows;
+        }
+    }
+}
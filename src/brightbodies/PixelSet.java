@@ -0,0 +1,309 @@
+package brightbodies;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The pixels of a bright body, packed as a bitmap over its bounding box. Membership is a single bit test and a body
+ * uses one bit per pixel of its bounding box rather than an object per pixel. Pixels are visited from the highest y
+ * down and from the lowest x up within each y, which is row-major order in the source frame. Iterable for
+ * compatibility with code that walks CartesianPoints, though nextPixel, x, and y visit the pixels without allocating.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class PixelSet implements Iterable<CartesianPoint>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int min_x_;
+    private final int max_y_;
+    private final int width_;
+    private final int height_;
+    private final int size_;
+    private final long[] bits_;
+
+    private static final PixelSet EMPTY = new PixelSet(0, 0, 0, 0, 0, new long[0]);
+
+    private PixelSet(int min_x, int max_y, int width, int height, int size, long[] bits) {
+        min_x_ = min_x;
+        max_y_ = max_y;
+        width_ = width;
+        height_ = height;
+        size_ = size;
+        bits_ = bits;
+    }
+
+    private PixelSet(PixelSet other) {
+        this(other.min_x_, other.max_y_, other.width_, other.height_, other.size_, other.bits_);
+    }
+
+    /**
+     * Constructs a PixelSet from an array of points, ignoring repeated points
+     * @param points the points in the set
+     */
+    public PixelSet(CartesianPoint[] points) {
+        this(fromPoints(points));
+    }
+
+    private static PixelSet fromPoints(CartesianPoint[] points) {
+        if(points.length == 0) {
+            return EMPTY;
+        }
+        int min_x = Integer.MAX_VALUE;
+        int max_x = Integer.MIN_VALUE;
+        int min_y = Integer.MAX_VALUE;
+        int max_y = Integer.MIN_VALUE;
+        for(CartesianPoint point : points) {
+            min_x = Math.min(min_x, point.x);
+            max_x = Math.max(max_x, point.x);
+            min_y = Math.min(min_y, point.y);
+            max_y = Math.max(max_y, point.y);
+        }
+        int width = max_x - min_x + 1;
+        long[] bits = bitmap(width, max_y - min_y + 1);
+        int size = 0;
+        for(CartesianPoint point : points) {
+            size += set(bits, (max_y - point.y) * width + point.x - min_x);
+        }
+        return new PixelSet(min_x, max_y, width, max_y - min_y + 1, size, bits);
+    }
+
+    /**
+     * Constructs a PixelSet from the row-major indices of pixels in a frame, row * columns + column, where the
+     * pixels are stored with y increasing upwards as rows - 1 - row
+     * @param indices array holding the indices, which need not be sorted
+     * @param from first index of the set in the array
+     * @param to index after the last index of the set in the array
+     * @param rows number of rows in the frame
+     * @param columns number of columns in the frame
+     * @return the pixels as a PixelSet
+     */
+    public static PixelSet fromIndices(int[] indices, int from, int to, int rows, int columns) {
+        if(from == to) {
+            return EMPTY;
+        }
+        int min_x = Integer.MAX_VALUE;
+        int max_x = Integer.MIN_VALUE;
+        int min_row = Integer.MAX_VALUE;
+        int max_row = Integer.MIN_VALUE;
+        for(int index = from; index < to; index++) {
+            int row = indices[index] / columns;
+            int x = indices[index] - row * columns;
+            min_x = Math.min(min_x, x);
+            max_x = Math.max(max_x, x);
+            min_row = Math.min(min_row, row);
+            max_row = Math.max(max_row, row);
+        }
+        int width = max_x - min_x + 1;
+        long[] bits = bitmap(width, max_row - min_row + 1);
+        int size = 0;
+        for(int index = from; index < to; index++) {
+            int row = indices[index] / columns;
+            // The bitmap starts at the highest y, which is the lowest row of the frame
+            size += set(bits, (row - min_row) * width + indices[index] - row * columns - min_x);
+        }
+        return new PixelSet(min_x, rows - 1 - min_row, width, max_row - min_row + 1, size, bits);
+    }
+
+    private static long[] bitmap(int width, int height) {
+        return new long[(int) (((long) width * height + 63) >>> 6)];
+    }
+
+    /**
+     * Sets a bit of a bitmap
+     * @return 1 if the bit was not already set, otherwise 0
+     */
+    private static int set(long[] bits, int position) {
+        long mask = 1L << position;
+        long word = bits[position >>> 6];
+        bits[position >>> 6] = word | mask;
+        return (word & mask) == 0 ? 1 : 0;
+    }
+
+    /**
+     * @return number of bytes that put writes
+     */
+    int encodedBytes() {
+        return 5 * Integer.BYTES + bits_.length * Long.BYTES;
+    }
+
+    /**
+     * Writes the set to a buffer in the layout that get reads
+     * @param buffer buffer to write to
+     */
+    void put(ByteBuffer buffer) {
+        buffer.putInt(min_x_).putInt(max_y_).putInt(width_).putInt(height_).putInt(bits_.length);
+        buffer.asLongBuffer().put(bits_);
+        buffer.position(buffer.position() + bits_.length * Long.BYTES);
+    }
+
+    /**
+     * Reads a set that put wrote to a buffer
+     * @param buffer buffer to read from
+     * @return the set
+     */
+    static PixelSet get(ByteBuffer buffer) {
+        int min_x = buffer.getInt();
+        int max_y = buffer.getInt();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int words = buffer.getInt();
+        // The number of words is checked without allocating the bitmap, so a corrupt size cannot exhaust the heap
+        if(width < 0 || height < 0 || words != ((long) width * height + 63) >>> 6
+                || words > buffer.remaining() / Long.BYTES) {
+            throw new IllegalArgumentException("Corrupt PixelSet of " + width + "x" + height + " with " + words + " words");
+        }
+        long[] bits = new long[words];
+        buffer.asLongBuffer().get(bits);
+        buffer.position(buffer.position() + words * Long.BYTES);
+        int size = 0;
+        for(long word : bits) {
+            size += Long.bitCount(word);
+        }
+        return new PixelSet(min_x, max_y, width, height, size, bits);
+    }
+
+    /**
+     * @return the number of pixels in the set
+     */
+    public int size() {
+        return size_;
+    }
+
+    /**
+     * @return the lowest x of a pixel in the set
+     */
+    public int minX() {
+        return min_x_;
+    }
+
+    /**
+     * @return the highest x of a pixel in the set
+     */
+    public int maxX() {
+        return min_x_ + width_ - 1;
+    }
+
+    /**
+     * @return the lowest y of a pixel in the set
+     */
+    public int minY() {
+        return max_y_ - height_ + 1;
+    }
+
+    /**
+     * @return the highest y of a pixel in the set
+     */
+    public int maxY() {
+        return max_y_;
+    }
+
+    /**
+     * Determines if the set contains a particular pixel
+     * @param x the x-value
+     * @param y the y-value
+     * @return true if the pixel is in the set
+     */
+    public boolean contains(int x, int y) {
+        int column = x - min_x_;
+        int row = max_y_ - y;
+        if(column < 0 || column >= width_ || row < 0 || row >= height_) {
+            return false;
+        }
+        int position = row * width_ + column;
+        return (bits_[position >>> 6] & 1L << position) != 0;
+    }
+
+    /**
+     * Determines if the set contains a particular point
+     * @param point the point to check
+     * @return true if the point is in the set
+     */
+    public boolean contains(CartesianPoint point) {
+        return contains(point.x, point.y);
+    }
+
+    /**
+     * Determines if the bounding boxes of two sets overlap, which they must if the sets share any pixel
+     * @param other the other set
+     * @return true if the bounding boxes share a pixel
+     */
+    public boolean boundsIntersect(PixelSet other) {
+        return size_ > 0 && other.size_ > 0
+                && min_x_ <= other.maxX() && other.min_x_ <= maxX()
+                && minY() <= other.max_y_ && other.minY() <= max_y_;
+    }
+
+    /**
+     * Finds the next pixel of the set in iteration order, for use as
+     * {@code for(int p = set.nextPixel(0); p >= 0; p = set.nextPixel(p + 1))}
+     * @param from position to start searching from, inclusive
+     * @return position of the next pixel, or -1 if there is none
+     */
+    public int nextPixel(int from) {
+        int word_index = from >>> 6;
+        if(word_index >= bits_.length) {
+            return -1;
+        }
+        long word = bits_[word_index] & -1L << from;
+        while(word == 0) {
+            if(++word_index == bits_.length) {
+                return -1;
+            }
+            word = bits_[word_index];
+        }
+        return (word_index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @param position position of a pixel returned by nextPixel
+     * @return the x-value of the pixel
+     */
+    public int x(int position) {
+        return min_x_ + position % width_;
+    }
+
+    /**
+     * @param position position of a pixel returned by nextPixel
+     * @return the y-value of the pixel
+     */
+    public int y(int position) {
+        return max_y_ - position / width_;
+    }
+
+    /**
+     * @return the pixels of the set as a new array of CartesianPoints in iteration order
+     */
+    public CartesianPoint[] points() {
+        CartesianPoint[] points = new CartesianPoint[size_];
+        int index = 0;
+        for(int position = nextPixel(0); position >= 0; position = nextPixel(position + 1)) {
+            points[index++] = new CartesianPoint(x(position), y(position));
+        }
+        return points;
+    }
+
+    public Iterator<CartesianPoint> iterator() {
+        return new Iterator<CartesianPoint>() {
+            private int next_ = nextPixel(0);
+
+            public boolean hasNext() {
+                return next_ >= 0;
+            }
+
+            public CartesianPoint next() {
+                if(next_ < 0) {
+                    throw new NoSuchElementException();
+                }
+                CartesianPoint point = new CartesianPoint(x(next_), y(next_));
+                next_ = nextPixel(next_ + 1);
+                return point;
+            }
+        };
+    }
+
+    public String toString() {
+        return "Size: " + size_ + " | Bounds: x " + min_x_ + " to " + maxX() + ", y " + minY() + " to " + max_y_;
+    }
+}
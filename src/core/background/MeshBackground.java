@@ -0,0 +1,329 @@
+package core.background;
+
+import core.preprocess.FrameIterator;
+import stats.QuantileStats;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Estimates the sky background of each frame on a coarse mesh and subtracts it in place, so that a Locator sees frames
+ * whose background is close to zero. The frame is divided into square cells and the background of each cell is the
+ * sigma clipped mean of its pixels, which the stars in the cell barely move. The cells are estimated in parallel on a
+ * ForkJoinPool. The background of each pixel is then bilinearly interpolated between the centers of the four nearest
+ * cells and subtracted, one band of rows per task.
+ *
+ * Every buffer is allocated by the constructor, so subtracting a frame allocates nothing but a few fork join tasks.
+ * Interpolation first spreads each row of the mesh across every column, which leaves an inner loop over columns with
+ * no branches or indirection. Cells whose pixels are all NaN take the median background of the other cells and NaN
+ * pixels stay NaN. A MeshBackground reuses its buffers between frames and must not be shared between threads.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class MeshBackground {
+    /**
+     * Height and width of the cells when no cell size is given
+     */
+    public static final int DEFAULT_CELL_SIZE = 32;
+
+    private final int rows_;
+    private final int columns_;
+    private final int cell_size_;
+    private final int mesh_rows_;
+    private final int mesh_columns_;
+    private final ForkJoinPool pool_;
+    private final float[] mesh_;
+    private final float[] estimates_;
+    private final float[][] cell_values_;
+    private final int[] left_;
+    private final int[] right_;
+    private final float[] right_weight_;
+    private final int[] top_;
+    private final int[] bottom_;
+    private final float[] bottom_weight_;
+    private final float[][] spread_;
+
+    /**
+     * Constructs a MeshBackground with cells of DEFAULT_CELL_SIZE on the common ForkJoinPool
+     *
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     */
+    public MeshBackground(int rows, int columns) {
+        this(rows, columns, DEFAULT_CELL_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a MeshBackground
+     *
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param cell_size height and width of each cell, where the cells on the bottom and right edges may be smaller
+     * @param pool pool that cells are estimated and subtracted on
+     */
+    public MeshBackground(int rows, int columns, int cell_size, ForkJoinPool pool) {
+        if(rows < 1 || columns < 1) {
+            throw new IllegalArgumentException("Frames must hold at least one pixel");
+        }
+        if(cell_size < 1) {
+            throw new IllegalArgumentException("Cells must hold at least one pixel");
+        }
+        rows_ = rows;
+        columns_ = columns;
+        cell_size_ = cell_size;
+        pool_ = pool;
+        mesh_rows_ = (rows + cell_size - 1) / cell_size;
+        mesh_columns_ = (columns + cell_size - 1) / cell_size;
+        mesh_ = new float[mesh_rows_ * mesh_columns_];
+        estimates_ = new float[mesh_.length];
+        cell_values_ = new float[mesh_.length][];
+        for(int mesh_row = 0; mesh_row < mesh_rows_; mesh_row++) {
+            for(int mesh_column = 0; mesh_column < mesh_columns_; mesh_column++) {
+                cell_values_[mesh_row * mesh_columns_ + mesh_column] = new float[cellLength(mesh_row, rows) * cellLength(mesh_column, columns)];
+            }
+        }
+
+        left_ = new int[columns];
+        right_ = new int[columns];
+        right_weight_ = new float[columns];
+        interpolation(columns, mesh_columns_, left_, right_, right_weight_);
+        top_ = new int[rows];
+        bottom_ = new int[rows];
+        bottom_weight_ = new float[rows];
+        interpolation(rows, mesh_rows_, top_, bottom_, bottom_weight_);
+        spread_ = new float[mesh_rows_][columns];
+    }
+
+    /**
+     * @return number of rows in each frame
+     */
+    public int rows() {
+        return rows_;
+    }
+
+    /**
+     * @return number of columns in each frame
+     */
+    public int columns() {
+        return columns_;
+    }
+
+    /**
+     * Returns the background of each cell of the most recently subtracted frame
+     *
+     * @return copy of the mesh indexed [mesh row][mesh column]
+     */
+    public float[][] mesh() {
+        float[][] mesh = new float[mesh_rows_][mesh_columns_];
+        for(int mesh_row = 0; mesh_row < mesh_rows_; mesh_row++) {
+            System.arraycopy(mesh_, mesh_row * mesh_columns_, mesh[mesh_row], 0, mesh_columns_);
+        }
+        return mesh;
+    }
+
+    /**
+     * Estimates the background of a frame and subtracts it from the frame in place
+     *
+     * @param frame frame indexed [row][column]
+     */
+    public void subtract(float[][] frame) {
+        if(frame.length != rows_ || frame[0].length != columns_) {
+            throw new IllegalArgumentException("Frame is not " + rows_ + "x" + columns_);
+        }
+        pool_.invoke(new MeshTask(0, mesh_.length, cell -> estimate(frame, cell)));
+        fillEmptyCells();
+        pool_.invoke(new MeshTask(0, mesh_rows_, this::spread));
+        pool_.invoke(new MeshTask(0, mesh_rows_, mesh_row -> subtract(frame, mesh_row)));
+    }
+
+    /**
+     * Subtracts the background of every frame of a data cube in place
+     *
+     * @param cube data cube indexed [frame][row][column]
+     */
+    public void subtract(float[][][] cube) {
+        for(float[][] frame : cube) {
+            subtract(frame);
+        }
+    }
+
+    /**
+     * Returns a FrameIterator over the frames of another with the background of each frame subtracted, so that the
+     * background stage can sit between a Preprocessor and a Locator that reads frames one at a time. Frames are
+     * subtracted in place as they are returned and this MeshBackground must not be used for anything else until the
+     * iterator is exhausted.
+     *
+     * @param source iterator to read frames from
+     * @return iterator over the background subtracted frames
+     */
+    public FrameIterator subtract(FrameIterator source) {
+        if(source.rows() != rows_ || source.columns() != columns_) {
+            throw new IllegalArgumentException("Frames are not " + rows_ + "x" + columns_);
+        }
+        return new FrameIterator() {
+            public int rows() {
+                return rows_;
+            }
+
+            public int columns() {
+                return columns_;
+            }
+
+            public int index() {
+                return source.index();
+            }
+
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            public float[][] next() {
+                float[][] frame = source.next();
+                subtract(frame);
+                return frame;
+            }
+        };
+    }
+
+    /**
+     * Estimates the background of one cell as the sigma clipped mean of the pixels in the cell that are not NaN
+     */
+    private void estimate(float[][] frame, int cell) {
+        int first_row = (cell / mesh_columns_) * cell_size_;
+        int first_column = (cell % mesh_columns_) * cell_size_;
+        int last_row = Math.min(first_row + cell_size_, rows_);
+        int last_column = Math.min(first_column + cell_size_, columns_);
+        float[] values = cell_values_[cell];
+        int length = 0;
+        for(int row = first_row; row < last_row; row++) {
+            float[] line = frame[row];
+            for(int column = first_column; column < last_column; column++) {
+                if(line[column] == line[column]) {
+                    values[length++] = line[column];
+                }
+            }
+        }
+        mesh_[cell] = length == 0 ? Float.NaN : QuantileStats.sigmaClippedMean(values, length);
+    }
+
+    /**
+     * Gives every cell without a background the median background of the other cells, or 0 if no cell has one
+     */
+    private void fillEmptyCells() {
+        int length = 0;
+        for(float value : mesh_) {
+            if(value == value) {
+                estimates_[length++] = value;
+            }
+        }
+        if(length == mesh_.length) {
+            return;
+        }
+        float fill = length == 0 ? 0.0f : QuantileStats.median(estimates_, length);
+        for(int cell = 0; cell < mesh_.length; cell++) {
+            if(mesh_[cell] != mesh_[cell]) {
+                mesh_[cell] = fill;
+            }
+        }
+    }
+
+    /**
+     * Interpolates one row of the mesh across every column of the frame
+     */
+    private void spread(int mesh_row) {
+        float[] spread = spread_[mesh_row];
+        int offset = mesh_row * mesh_columns_;
+        for(int column = 0; column < columns_; column++) {
+            float left = mesh_[offset + left_[column]];
+            float right = mesh_[offset + right_[column]];
+            spread[column] = left + (right - left) * right_weight_[column];
+        }
+    }
+
+    /**
+     * Subtracts the interpolated background from the rows of the frame that lie within one row of cells
+     */
+    private void subtract(float[][] frame, int mesh_row) {
+        int last_row = Math.min((mesh_row + 1) * cell_size_, rows_);
+        for(int row = mesh_row * cell_size_; row < last_row; row++) {
+            float[] line = frame[row];
+            float[] top = spread_[top_[row]];
+            float[] bottom = spread_[bottom_[row]];
+            float weight = bottom_weight_[row];
+            for(int column = 0; column < columns_; column++) {
+                line[column] -= top[column] + (bottom[column] - top[column]) * weight;
+            }
+        }
+    }
+
+    /**
+     * Finds the length of the cell at an index along an axis
+     */
+    private int cellLength(int index, int length) {
+        return Math.min(cell_size_, length - index * cell_size_);
+    }
+
+    /**
+     * Finds the two cells whose centers surround each pixel along an axis and the weight of the second one. Pixels
+     * before the first center or after the last take the background of the nearest cell.
+     */
+    private void interpolation(int length, int cells, int[] lower, int[] upper, float[] upper_weight) {
+        for(int pixel = 0; pixel < length; pixel++) {
+            int cell = 0;
+            while(cell < cells - 1 && center(cell + 1, length) <= pixel) {
+                cell++;
+            }
+            lower[pixel] = cell;
+            float center = center(cell, length);
+            if(cell == cells - 1 || pixel <= center) {
+                upper[pixel] = cell;
+                upper_weight[pixel] = 0.0f;
+            }
+            else {
+                upper[pixel] = cell + 1;
+                upper_weight[pixel] = (pixel - center) / (center(cell + 1, length) - center);
+            }
+        }
+    }
+
+    /**
+     * Finds the center of the cell at an index along an axis
+     */
+    private float center(int index, int length) {
+        return index * cell_size_ + (cellLength(index, length) - 1) / 2.0f;
+    }
+
+    /**
+     * Work done on each cell or row of cells by a MeshTask
+     */
+    private interface MeshWork {
+        void run(int index);
+    }
+
+    /**
+     * Runs work on a range of cells or rows of cells, splitting the range in half until a single one remains
+     */
+    private static final class MeshTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int first_;
+        private final int last_;
+        private final MeshWork work_;
+
+        MeshTask(int first, int last, MeshWork work) {
+            first_ = first;
+            last_ = last;
+            work_ = work;
+        }
+
+        protected void compute() {
+            if(last_ - first_ > 1) {
+                int middle = (first_ + last_) >>> 1;
+                invokeAll(new MeshTask(first_, middle, work_), new MeshTask(middle, last_, work_));
+            }
+            else if(last_ - first_ == 1) {
+                work_.run(first_);
+            }
+        }
+    }
+}
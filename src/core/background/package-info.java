@@ -0,0 +1,9 @@
+/**
+ * This core.background package contains the background stage that sits between a Preprocessor and a Locator. A
+ * MeshBackground estimates the sky background of each frame on a coarse mesh of cells and subtracts it in place, so
+ * that the thresholds of a Locator no longer have to absorb the background level or its gradients across the frame.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+package core.background;
@@ -2,10 +2,14 @@ package core.filter;
 
 import brightbodies.BrightBody;
 import brightbodies.BrightBodyList;
-import brightbodies.CartesianPoint;
+import brightbodies.DetectionColumns;
+import brightbodies.DetectionIndex;
+import brightbodies.PixelSet;
 import helper.MeanImage;
 import core.locate.binary.BinaryLocator;
 import core.locate.binary.BinaryLocatorThresholdType;
+import cube.ArrayFrameCube;
+import cube.FrameCube;
 
 /**
  * @author Jonathan Zwiebel
@@ -16,7 +20,7 @@ import core.locate.binary.BinaryLocatorThresholdType;
  * through area overlap
  */
 public class BaselineMobilityFilter extends MobilityFilter {
-    private final float[][][] processed_data_;
+    private final FrameCube processed_data_;
     private final float similarity_threshold_; // the percent similarity that two bright bodies must share to be considered the same
     private final BaselineFrameGenerationMethod base_gen_method_;
     private final float[] args_;
@@ -29,7 +33,7 @@ public class BaselineMobilityFilter extends MobilityFilter {
      * @param base_gen_method how the baseline frame will be generated
      * @param args varargs for baseline generation method arguments
      */
-    public BaselineMobilityFilter(BrightBodyList[] bright_body_lists, float[][][] processed_data, float similarity_threshold, BaselineFrameGenerationMethod base_gen_method, float... args) {
+    public BaselineMobilityFilter(BrightBodyList[] bright_body_lists, FrameCube processed_data, float similarity_threshold, BaselineFrameGenerationMethod base_gen_method, float... args) {
         super(bright_body_lists);
         processed_data_ = processed_data;
         similarity_threshold_ = similarity_threshold;
@@ -37,6 +41,34 @@ public class BaselineMobilityFilter extends MobilityFilter {
         args_ = args;
     }
 
+    /**
+     * Constructs a BaselineMobilityFilter object with the bright bodies from a locator and an on-heap data cube
+     * @param bright_body_lists the set of bright bodies in each frame
+     * @param processed_data the floating point data of brightness in each frame
+     * @param similarity_threshold percent similarity that searched body must share with existing body to be immobile
+     * @param base_gen_method how the baseline frame will be generated
+     * @param args varargs for baseline generation method arguments
+     */
+    public BaselineMobilityFilter(BrightBodyList[] bright_body_lists, float[][][] processed_data, float similarity_threshold, BaselineFrameGenerationMethod base_gen_method, float... args) {
+        this(bright_body_lists, new ArrayFrameCube(processed_data), similarity_threshold, base_gen_method, args);
+    }
+
+    /**
+     * Constructs a BaselineMobilityFilter object with bright bodies that are already stored as columns
+     * @param bright_body_columns the set of bright bodies in each frame
+     * @param processed_data the floating point data of brightness in each frame
+     * @param similarity_threshold percent similarity that searched body must share with existing body to be immobile
+     * @param base_gen_method how the baseline frame will be generated
+     * @param args varargs for baseline generation method arguments
+     */
+    public BaselineMobilityFilter(DetectionColumns[] bright_body_columns, FrameCube processed_data, float similarity_threshold, BaselineFrameGenerationMethod base_gen_method, float... args) {
+        super(bright_body_columns);
+        processed_data_ = processed_data;
+        similarity_threshold_ = similarity_threshold;
+        base_gen_method_ = base_gen_method;
+        args_ = args;
+    }
+
 
 
     /**
@@ -46,11 +78,13 @@ public class BaselineMobilityFilter extends MobilityFilter {
     public BrightBodyList[][] filter() {
         float[][] baseline_frame = generateBaselineFrame();
         BrightBodyList baseline_bodies = generateBaselineFrameBodies(baseline_frame);
+        baseline_bodies.sortByArea();
+        DetectionIndex baseline_index = new DetectionIndex(new DetectionColumns(baseline_bodies));
 
         BrightBodyList[][] filtered_bodies = new BrightBodyList[3][bright_body_lists_.length];
         // TODO: Consider if this for loop is better replaced by a single method
         for(int index = 0; index < bright_body_lists_.length; index++) {
-            BrightBodyList[] filtered_bodies_instance = mobilitySeparation(bright_body_lists_[index], baseline_bodies, similarity_threshold_);
+            BrightBodyList[] filtered_bodies_instance = mobilitySeparation(bright_body_columns_[index], baseline_index, similarity_threshold_);
             assert filtered_bodies_instance.length == 3;
             filtered_bodies[IBB_INDEX][index] = filtered_bodies_instance[IBB_INDEX];
             filtered_bodies[MBB_INDEX][index] = filtered_bodies_instance[MBB_INDEX];
@@ -111,39 +145,52 @@ public class BaselineMobilityFilter extends MobilityFilter {
      * baseline_bodies. If they match by the threshold value
      * TODO: Allow for simple circle checks on centroid and body size as well as full check
      *
+     * A body with no overlap cannot match unless the threshold is below 0 / area, so for every other body only the
+     * baseline bodies whose bounding boxes touch it are found through the index and checked, in the same order.
+     *
      * @param input_bodies bright bodies in the slice being searched
-     * @param baseline_bodies bright bodies in the baseline slice
+     * @param baseline_index index over the bright bodies in the baseline slice, sorted by area
      * @return data cube with first slice as immobile and second slice as mobile bright bodies
      *
      * TODO: Consider if it is better to returns a special data type for sorted BrightBodyList
      * TODO: Consider if a deep copy is better than an indexed boolean array
      * Likely to be very memory intensive
      */
-    private BrightBodyList[] mobilitySeparation(BrightBodyList input_bodies, BrightBodyList baseline_bodies, float similarity_threshold_) {
+    private BrightBodyList[] mobilitySeparation(DetectionColumns input_bodies, DetectionIndex baseline_index, float similarity_threshold_) {
+        DetectionColumns baseline_bodies = baseline_index.columns();
         BrightBodyList[] sorted_bodies = new BrightBodyList[3];
         sorted_bodies[IBB_INDEX] = new BrightBodyList();
         sorted_bodies[MBB_INDEX] = new BrightBodyList();
         sorted_bodies[NOISE_INDEX] = new BrightBodyList();
 
         // TODO: Check that input_bodies are actually sorted
-        baseline_bodies.sortByArea();
-        boolean[] baseline_bodies_used = new boolean[baseline_bodies.size()];
+        boolean[] baseline_bodies_used = new boolean[baseline_bodies.count];
 
-        for(BrightBody body : input_bodies) {
+        for(int index = 0; index < input_bodies.count; index++) {
+            BrightBody body = input_bodies.body(index);
             boolean matched = false;
-            for(int base_index = 0; base_index < baseline_bodies.size(); base_index++) {
+            int[] candidates = null;
+            if(!(0 / input_bodies.area[index] > similarity_threshold_)) {
+                candidates = baseline_index.boundsIntersecting(input_bodies.min_x[index], input_bodies.max_x[index], input_bodies.min_y[index], input_bodies.max_y[index]);
+            }
+            int candidate_count = candidates == null ? baseline_bodies.count : candidates.length;
+            for(int candidate = 0; candidate < candidate_count; candidate++) {
+                int base_index = candidates == null ? candidate : candidates[candidate];
                 if(baseline_bodies_used[base_index]) {
                     continue;
                 }
-                float overlap = overlap(body, baseline_bodies.get(base_index));
-                float percent_overlap = overlap / body.area;
+                float overlap = 0;
+                if(baseline_bodies.boundsIntersect(base_index, input_bodies.min_x[index], input_bodies.max_x[index], input_bodies.min_y[index], input_bodies.max_y[index])) {
+                    overlap = overlap(body, baseline_bodies.body(base_index));
+                }
+                float percent_overlap = overlap / input_bodies.area[index];
                 if(percent_overlap > similarity_threshold_) {
                     baseline_bodies_used[base_index] = true;
                     matched = true;
                     break;
                 }
             }
-            if(body.body.length <= 1) {
+            if(input_bodies.size[index] <= 1) {
                 sorted_bodies[NOISE_INDEX].add(body);
             }
             else if(matched) {
@@ -164,11 +211,12 @@ public class BaselineMobilityFilter extends MobilityFilter {
      * TODO?: Different kinds of overlap
      */
     private float overlap(BrightBody original, BrightBody baseline) {
+        PixelSet pixels = original.body;
         float sum = 0;
-        for(CartesianPoint c : original.body) {
-            if(baseline.contains(c)) {
-                // TODO[IMPORTANT]: MAKE SURE THIS IS THE CORRECT COORDINATE POINT
-                sum += original.source[original.source.length - c.y - 1][c.x];
+        int index = 0;
+        for(int pixel = pixels.nextPixel(0); pixel >= 0; pixel = pixels.nextPixel(pixel + 1), index++) {
+            if(baseline.contains(pixels.x(pixel), pixels.y(pixel))) {
+                sum += original.fluxes[index];
             }
         }
         return sum;
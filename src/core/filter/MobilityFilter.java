@@ -1,6 +1,7 @@
 package core.filter;
 
 import brightbodies.BrightBodyList;
+import brightbodies.DetectionColumns;
 
 /**
  * This class represents the third macro step and splits up the bright bodies into immobile bright bodies, mobile
@@ -16,12 +17,28 @@ public abstract class MobilityFilter {
 
     final BrightBodyList[] bright_body_lists_;
 
+    /**
+     * The same bright bodies as bright_body_lists_ stored as columns for loops that only read centroids, areas, sizes,
+     * and bounds
+     */
+    final DetectionColumns[] bright_body_columns_;
+
     /**
      * Constructs a MobilityFilter object that will mask the immobile and mobile bright bodies
      * @param bright_body_lists bright body list extracted from locator
      */
     public MobilityFilter(BrightBodyList[] bright_body_lists) {
         bright_body_lists_ = bright_body_lists;
+        bright_body_columns_ = DetectionColumns.of(bright_body_lists);
+    }
+
+    /**
+     * Constructs a MobilityFilter object from bright bodies that are already stored as columns
+     * @param bright_body_columns bright bodies extracted from locator
+     */
+    public MobilityFilter(DetectionColumns[] bright_body_columns) {
+        bright_body_lists_ = DetectionColumns.toBrightBodyLists(bright_body_columns);
+        bright_body_columns_ = bright_body_columns;
     }
 
     /**
@@ -0,0 +1,260 @@
+package core.locate;
+
+import brightbodies.BrightBody;
+import brightbodies.BrightBodyList;
+import brightbodies.Coordinate;
+import brightbodies.PixelSet;
+
+/**
+ * Finds the BrightBodies of a frame by thresholding, labeling, and measuring its blobs in two passes over the frame
+ * without building a binary image or any per-pixel collections. The first pass compares each pixel against the
+ * threshold and labels it with a ComponentLabeler, which also counts the pixels in each blob. The second pass resolves
+ * each label, places the pixel into the run of a shared index buffer that belongs to its blob, and accumulates the area,
+ * first moments, and bounding box of the blob. The only objects allocated for a frame are the BrightBodies and the
+ * PixelSets packed from their runs.
+ *
+ * Moments are accumulated in the same order and precision as MomentStats so that the BrightBodies are identical to
+ * those built from the same points by the BrightBody(float[][], CartesianPoint[]) constructor. A BlobExtractor reuses
+ * its buffers between frames of the same size and must not be shared between threads.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class BlobExtractor {
+    private final ComponentLabeler labeler_;
+    private float[] area_;
+    private float[] moment_x_;
+    private float[] moment_y_;
+    private int[] min_x_;
+    private int[] min_y_;
+    private int[] max_x_;
+    private int[] max_y_;
+    private int[] order_;
+    private int[] starts_;
+    private int[] filled_;
+    private int[] scratch_;
+    private int[] pixels_;
+    private int count_;
+
+    /**
+     * Constructs a BlobExtractor for frames of a fixed size
+     *
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param connectivity which neighbors of a pixel are in the same blob
+     */
+    public BlobExtractor(int rows, int columns, Connectivity connectivity) {
+        labeler_ = new ComponentLabeler(rows, columns, connectivity);
+        allocate(16);
+        scratch_ = new int[16];
+        pixels_ = new int[16];
+    }
+
+    /**
+     * @return number of rows in each frame
+     */
+    public int rows() {
+        return labeler_.rows();
+    }
+
+    /**
+     * @return number of columns in each frame
+     */
+    public int columns() {
+        return labeler_.columns();
+    }
+
+    /**
+     * Finds the blobs of pixels that are strictly brighter than a threshold and builds a BrightBody for each one. The
+     * BrightBodies are listed in the order that their first pixel is reached in a row-major scan.
+     *
+     * @param frame frame indexed [row][column]
+     * @param threshold pixels with a value strictly greater than this are part of a blob
+     * @return BrightBodies of the frame
+     */
+    public BrightBodyList extract(float[][] frame, float threshold) {
+        return extract(frame, frame, threshold);
+    }
+
+    /**
+     * Finds the blobs of pixels of a detection image, such as a filtered copy of a frame, that are strictly brighter
+     * than a threshold and builds a BrightBody for each one from the values of the frame
+     *
+     * @param frame frame indexed [row][column] that the areas and centroids are measured on
+     * @param detection image of the same size as the frame that is thresholded
+     * @param threshold pixels of the detection image with a value strictly greater than this are part of a blob
+     * @return BrightBodies of the frame
+     */
+    public BrightBodyList extract(float[][] frame, float[][] detection, float threshold) {
+        int count = labeler_.scan(detection, threshold);
+        return measure(frame, labeler_.labels(), labeler_.labelTable(), count, labeler_.sizes());
+    }
+
+    /**
+     * Finds the blobs of pixels that are strictly brighter than their own thresholds, such as those of a locally
+     * adaptive threshold, and builds a BrightBody for each one in the same order as extract(float[][], float)
+     *
+     * @param frame frame indexed [row][column]
+     * @param thresholds threshold of each pixel indexed [row][column]
+     * @return BrightBodies of the frame
+     */
+    public BrightBodyList extract(float[][] frame, float[][] thresholds) {
+        return extract(frame, frame, thresholds);
+    }
+
+    /**
+     * Finds the blobs of pixels of a detection image that are strictly brighter than their own thresholds and builds a
+     * BrightBody for each one from the values of the frame
+     *
+     * @param frame frame indexed [row][column] that the areas and centroids are measured on
+     * @param detection image of the same size as the frame that is thresholded
+     * @param thresholds threshold of each pixel of the detection image indexed [row][column]
+     * @return BrightBodies of the frame
+     */
+    public BrightBodyList extract(float[][] frame, float[][] detection, float[][] thresholds) {
+        int count = labeler_.scan(detection, thresholds);
+        return measure(frame, labeler_.labels(), labeler_.labelTable(), count, labeler_.sizes());
+    }
+
+    /**
+     * Builds a BrightBody for each blob of a labeled frame in a single row-major pass. Blobs are renumbered in the
+     * order their first pixel is reached, which leaves labels that are already in that order unchanged.
+     *
+     * @param frame frame indexed [row][column]
+     * @param labels row-major ids of the blob of each pixel, or 0 for a pixel outside of every blob, which are replaced
+     * by the final labels
+     * @param table maps each id in labels to a blob from 1 to count, or null if the ids are already blobs
+     * @param count number of blobs
+     * @param sizes number of pixels in each blob, indexed by blob
+     * @return BrightBodies of the frame in the order of their final labels
+     */
+    BrightBodyList measure(float[][] frame, int[] labels, int[] table, int count, int[] sizes) {
+        count_ = count;
+        if(count + 1 > area_.length) {
+            allocate(Math.max(count + 1, area_.length * 2));
+        }
+        int total = 0;
+        for(int id = 1; id <= count; id++) {
+            total += sizes[id];
+        }
+        if(pixels_.length < total) {
+            pixels_ = new int[Math.max(total, pixels_.length * 2)];
+        }
+        // Each blob fills its run of pixels_ from filled[label] up to the start of the next run
+        int[] starts = starts_;
+        int[] filled = filled_;
+        starts[1] = 0;
+        for(int label = 1; label <= count; label++) {
+            order_[label] = 0;
+            area_[label] = 0;
+            moment_x_[label] = 0;
+            moment_y_[label] = 0;
+            min_x_[label] = Integer.MAX_VALUE;
+            min_y_[label] = Integer.MAX_VALUE;
+            max_x_[label] = Integer.MIN_VALUE;
+            max_y_[label] = Integer.MIN_VALUE;
+        }
+
+        int rows = labeler_.rows();
+        int columns = labeler_.columns();
+        int next = 1;
+        for(int row = 0; row < rows; row++) {
+            float[] line = frame[row];
+            int offset = row * columns;
+            // Points are stored with y increasing upwards, as BinaryLocatorInstance has always done
+            int y = rows - 1 - row;
+            for(int x = 0; x < columns; x++) {
+                int id = labels[offset + x];
+                if(id == 0) {
+                    continue;
+                }
+                if(table != null) {
+                    id = table[id];
+                }
+                int label = order_[id];
+                if(label == 0) {
+                    label = next++;
+                    order_[id] = label;
+                    filled[label] = starts[label];
+                    starts[label + 1] = starts[label] + sizes[id];
+                }
+                labels[offset + x] = label;
+                pixels_[filled[label]++] = offset + x;
+
+                // Matches MomentStats, which adds each double precision term to a single precision sum
+                float value = line[x];
+                area_[label] = (float) (area_[label] + (double) value);
+                moment_x_[label] = (float) (moment_x_[label] + (double) value * x);
+                moment_y_[label] = (float) (moment_y_[label] + (double) value * y);
+                min_x_[label] = Math.min(min_x_[label], x);
+                max_x_[label] = Math.max(max_x_[label], x);
+                min_y_[label] = Math.min(min_y_[label], y);
+                max_y_[label] = Math.max(max_y_[label], y);
+            }
+        }
+
+        BrightBodyList bodies = new BrightBodyList();
+        bodies.ensureCapacity(count);
+        for(int label = 1; label <= count; label++) {
+            Coordinate centroid = new Coordinate(moment_x_[label] / area_[label], moment_y_[label] / area_[label]);
+            bodies.add(new BrightBody(frame, PixelSet.fromIndices(pixels_, starts[label], starts[label + 1], rows, columns), centroid, area_[label]));
+        }
+        return bodies;
+    }
+
+    /**
+     * Returns a scratch array owned by this BlobExtractor, which is overwritten by the next call to any method
+     *
+     * @param size minimum length of the array
+     * @return array of at least size ints with undefined contents
+     */
+    int[] scratch(int size) {
+        if(scratch_.length < size) {
+            scratch_ = new int[Math.max(size, scratch_.length * 2)];
+        }
+        return scratch_;
+    }
+
+    /**
+     * Returns the labels of the most recently extracted frame. The array is reused by the next call to extract().
+     *
+     * @return labels in row-major order, 0 for pixels outside of every blob and 1 to count() for each blob in the
+     * order of the BrightBodies returned by extract()
+     */
+    public int[] labels() {
+        return labeler_.labels();
+    }
+
+    /**
+     * @return number of blobs in the most recently extracted frame
+     */
+    public int count() {
+        return count_;
+    }
+
+    /**
+     * Returns the bounding box of a blob of the most recently extracted frame in the coordinates of its points
+     *
+     * @param label label of the blob from 1 to count()
+     * @return {minimum x, minimum y, maximum x, maximum y}
+     */
+    public int[] bounds(int label) {
+        if(label < 1 || label > count_) {
+            throw new IndexOutOfBoundsException("No blob with label " + label);
+        }
+        return new int[]{min_x_[label], min_y_[label], max_x_[label], max_y_[label]};
+    }
+
+    private void allocate(int size) {
+        area_ = new float[size];
+        moment_x_ = new float[size];
+        moment_y_ = new float[size];
+        min_x_ = new int[size];
+        min_y_ = new int[size];
+        max_x_ = new int[size];
+        max_y_ = new int[size];
+        order_ = new int[size];
+        starts_ = new int[size + 1];
+        filled_ = new int[size];
+    }
+}
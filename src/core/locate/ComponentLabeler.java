@@ -0,0 +1,321 @@
+package core.locate;
+
+/**
+ * Labels the connected components of a binary image with a two pass union-find algorithm. The first pass scans the
+ * image in row-major order and gives each positive pixel the provisional label of an already scanned neighbor, or a
+ * new provisional label if it has none, recording in a union-find forest every pair of provisional labels that meet.
+ * The second pass replaces each provisional label with the final label of its set. Labeling takes time linear in the
+ * size of the image and a fixed amount of stack regardless of the size of the components.
+ *
+ * Labels are stored in a flat row-major array where 0 marks a negative pixel and components are numbered from 1 in the
+ * order that their first pixel is reached in a row-major scan. A ComponentLabeler reuses its buffers between images of
+ * the same size and must not be shared between threads.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class ComponentLabeler {
+    private final int rows_;
+    private final int columns_;
+    private final Connectivity connectivity_;
+    private final int[] labels_;
+    private int[] parents_;
+    private int[] sizes_;
+    private int count_;
+
+    /**
+     * Constructs a ComponentLabeler for images of a fixed size
+     *
+     * @param rows number of rows in each image
+     * @param columns number of columns in each image
+     * @param connectivity which neighbors of a pixel are adjacent to it
+     */
+    public ComponentLabeler(int rows, int columns, Connectivity connectivity) {
+        rows_ = rows;
+        columns_ = columns;
+        connectivity_ = connectivity;
+        labels_ = new int[rows * columns];
+        parents_ = new int[64];
+        sizes_ = new int[64];
+    }
+
+    /**
+     * @return number of rows in each image
+     */
+    public int rows() {
+        return rows_;
+    }
+
+    /**
+     * @return number of columns in each image
+     */
+    public int columns() {
+        return columns_;
+    }
+
+    /**
+     * Labels the connected components of a binary image
+     *
+     * @param image binary image indexed [row][column]
+     * @return number of components
+     */
+    public int label(boolean[][] image) {
+        checkSize(image.length, image.length == 0 ? 0 : image[0].length);
+        int next = 1;
+        for(int row = 0; row < rows_; row++) {
+            boolean[] line = image[row];
+            int offset = row * columns_;
+            for(int column = 0; column < columns_; column++) {
+                labels_[offset + column] = line[column] ? labelPixel(offset, row, column, next) : 0;
+                if(labels_[offset + column] == next) {
+                    next++;
+                }
+            }
+        }
+        resolve(next);
+        for(int i = 0; i < labels_.length; i++) {
+            labels_[i] = parents_[labels_[i]];
+        }
+        return count_;
+    }
+
+    /**
+     * Labels the connected components of the pixels of a frame that are brighter than a threshold, without building a
+     * binary image. Unlike label(boolean[][]), only the first pass is made: labels() holds provisional labels that
+     * must be passed through labelTable(), and the size of each component is counted.
+     *
+     * @param frame frame indexed [row][column]
+     * @param threshold pixels with a value strictly greater than this are positive
+     * @return number of components
+     */
+    int scan(float[][] frame, float threshold) {
+        checkSize(frame.length, frame.length == 0 ? 0 : frame[0].length);
+        return scan(frame, threshold, 0, 0);
+    }
+
+    /**
+     * Labels the bright pixels of a window of a frame the same way as scan(float[][], float). The window has the size
+     * of this ComponentLabeler and pixels outside of it are ignored, so components that leave the window are split.
+     *
+     * @param frame frame indexed [row][column]
+     * @param threshold pixels with a value strictly greater than this are positive
+     * @param first_row row of the frame at the top of the window
+     * @param first_column column of the frame at the left of the window
+     * @return number of components within the window
+     */
+    int scan(float[][] frame, float threshold, int first_row, int first_column) {
+        int next = 1;
+        for(int row = 0; row < rows_; row++) {
+            float[] line = frame[first_row + row];
+            int offset = row * columns_;
+            for(int column = 0; column < columns_; column++) {
+                if(line[first_column + column] > threshold) {
+                    int label = labelPixel(offset, row, column, next);
+                    if(label == next) {
+                        next++;
+                    }
+                    labels_[offset + column] = label;
+                    sizes_[label]++;
+                }
+                else {
+                    labels_[offset + column] = 0;
+                }
+            }
+        }
+        resolve(next);
+        return count_;
+    }
+
+    /**
+     * Labels the pixels of a frame that are brighter than their own thresholds the same way as scan(float[][], float)
+     *
+     * @param frame frame indexed [row][column]
+     * @param thresholds threshold of each pixel indexed [row][column], which a positive pixel is strictly greater than
+     * @return number of components
+     */
+    int scan(float[][] frame, float[][] thresholds) {
+        checkSize(frame.length, frame.length == 0 ? 0 : frame[0].length);
+        return scan(frame, thresholds, 0, 0);
+    }
+
+    /**
+     * Labels the pixels of a window of a frame that are brighter than their own thresholds the same way as
+     * scan(float[][], float, int, int)
+     *
+     * @param frame frame indexed [row][column]
+     * @param thresholds threshold of each pixel of the frame indexed [row][column]
+     * @param first_row row of the frame at the top of the window
+     * @param first_column column of the frame at the left of the window
+     * @return number of components within the window
+     */
+    int scan(float[][] frame, float[][] thresholds, int first_row, int first_column) {
+        int next = 1;
+        for(int row = 0; row < rows_; row++) {
+            float[] line = frame[first_row + row];
+            float[] limits = thresholds[first_row + row];
+            int offset = row * columns_;
+            for(int column = 0; column < columns_; column++) {
+                if(line[first_column + column] > limits[first_column + column]) {
+                    int label = labelPixel(offset, row, column, next);
+                    if(label == next) {
+                        next++;
+                    }
+                    labels_[offset + column] = label;
+                    sizes_[label]++;
+                }
+                else {
+                    labels_[offset + column] = 0;
+                }
+            }
+        }
+        resolve(next);
+        return count_;
+    }
+
+    /**
+     * Returns the table that converts the provisional labels left by scan() into the final labels of their components
+     *
+     * @return array indexed by provisional label holding final labels from 1 to count, with index 0 unused
+     */
+    int[] labelTable() {
+        return parents_;
+    }
+
+    /**
+     * Returns the number of pixels in each component found by the most recent call to scan()
+     *
+     * @return array indexed by final label, with index 0 unused
+     */
+    int[] sizes() {
+        return sizes_;
+    }
+
+    /**
+     * Returns the labels of the most recently labeled image. The array is reused by the next call to label().
+     *
+     * @return labels in row-major order, 0 for negative pixels and 1 to count for each component
+     */
+    public int[] labels() {
+        return labels_;
+    }
+
+    /**
+     * @return number of components in the most recently labeled image
+     */
+    public int count() {
+        return count_;
+    }
+
+    private void checkSize(int rows, int columns) {
+        if(rows != rows_ || (rows_ > 0 && columns != columns_)) {
+            throw new IllegalArgumentException("Image is not " + rows_ + "x" + columns_);
+        }
+    }
+
+    /**
+     * Gives a positive pixel the provisional label of its already scanned neighbors or the next unused label
+     *
+     * @param next the next unused provisional label
+     * @return provisional label of the pixel, which is next if the pixel starts a new set
+     */
+    private int labelPixel(int offset, int row, int column, int next) {
+        int label = neighborLabel(offset, row, column);
+        if(label != 0) {
+            return label;
+        }
+        if(next == parents_.length) {
+            int[] grown_parents = new int[parents_.length * 2];
+            System.arraycopy(parents_, 0, grown_parents, 0, parents_.length);
+            parents_ = grown_parents;
+            int[] grown_sizes = new int[sizes_.length * 2];
+            System.arraycopy(sizes_, 0, grown_sizes, 0, sizes_.length);
+            sizes_ = grown_sizes;
+        }
+        parents_[next] = next;
+        sizes_[next] = 0;
+        return next;
+    }
+
+    /**
+     * Replaces the parent of every provisional label with the final label of its set and moves the size of each set to
+     * the index of its final label
+     *
+     * @param next one more than the largest provisional label
+     */
+    private void resolve(int next) {
+        // Each set is rooted at its smallest provisional label, which was handed out before any other label in the set
+        // so the roots are numbered in the order their components are first reached
+        count_ = 0;
+        for(int label = 1; label < next; label++) {
+            int parent = parents_[label];
+            int size = sizes_[label];
+            sizes_[label] = 0;
+            if(parent == label) {
+                parents_[label] = ++count_;
+                sizes_[count_] += size;
+            }
+            else {
+                parents_[label] = parents_[parent];
+                sizes_[parents_[label]] += size;
+            }
+        }
+    }
+
+    /**
+     * Finds the provisional label of the already scanned neighbors of a positive pixel, merging their sets if more than
+     * one neighbor is positive
+     *
+     * @return the smallest root among the neighbors or 0 if no neighbor is positive
+     */
+    private int neighborLabel(int offset, int row, int column) {
+        int label = 0;
+        if(column > 0) {
+            label = merge(label, labels_[offset + column - 1]);
+        }
+        if(row > 0) {
+            int above = offset - columns_ + column;
+            label = merge(label, labels_[above]);
+            if(connectivity_ == Connectivity.EIGHT) {
+                if(column > 0) {
+                    label = merge(label, labels_[above - 1]);
+                }
+                if(column < columns_ - 1) {
+                    label = merge(label, labels_[above + 1]);
+                }
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Joins the sets of two provisional labels, either of which may be 0 for no label
+     *
+     * @return root of the joined set
+     */
+    private int merge(int a, int b) {
+        if(b == 0) {
+            return a;
+        }
+        b = find(b);
+        if(a == 0 || a == b) {
+            return b;
+        }
+        if(a < b) {
+            parents_[b] = a;
+            return a;
+        }
+        parents_[a] = b;
+        return b;
+    }
+
+    /**
+     * Finds the root of the set of a provisional label, halving the path on the way
+     */
+    private int find(int label) {
+        while(parents_[label] != label) {
+            parents_[label] = parents_[parents_[label]];
+            label = parents_[label];
+        }
+        return label;
+    }
+}
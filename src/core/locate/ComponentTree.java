@@ -0,0 +1,205 @@
+package core.locate;
+
+import brightbodies.BrightBodyList;
+
+import java.util.Arrays;
+
+/**
+ * The max-tree of a single frame, which describes the blobs of the frame at every threshold at once. Each node of the
+ * tree is a blob of pixels brighter than some level and its parent is the blob that contains it at the next lower level.
+ * The tree is built once by visiting the pixels from brightest to dimmest and joining each pixel to the blobs of its
+ * already visited neighbors with a union-find forest. The BrightBodies for any threshold can then be found by cutting
+ * the tree at the threshold, which only visits the pixels above the threshold, followed by one pass to measure them.
+ *
+ * The BrightBodies found for a threshold are identical to those found by a BlobExtractor with the same connectivity and
+ * threshold. NaN pixels are never part of a blob. The tree does not keep the frame, so the BrightBodies are measured on
+ * the frame passed to extract(), and it takes 16 bytes per pixel, four times the frame as floats. A ComponentTree is
+ * immutable once it is built and may be queried from several threads at once, each with its own BlobExtractor.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class ComponentTree {
+    private final int rows_;
+    private final int columns_;
+    private final float[] values_;
+    private final int[] order_;
+    private final int[] parents_;
+    private final int[] sizes_;
+
+    /**
+     * Builds the max-tree of a frame
+     *
+     * @param frame frame indexed [row][column]
+     * @param connectivity which neighbors of a pixel are in the same blob
+     */
+    public ComponentTree(float[][] frame, Connectivity connectivity) {
+        rows_ = frame.length;
+        columns_ = rows_ == 0 ? 0 : frame[0].length;
+
+        int pixels = rows_ * columns_;
+        values_ = new float[pixels];
+        for(int row = 0; row < rows_; row++) {
+            System.arraycopy(frame[row], 0, values_, row * columns_, columns_);
+        }
+        order_ = sortDescending(values_);
+        parents_ = new int[pixels];
+        sizes_ = new int[pixels];
+        build(connectivity);
+    }
+
+    /**
+     * Finds the BrightBodies made of pixels strictly brighter than a threshold
+     *
+     * @param frame the frame the tree was built from, which the BrightBodies are measured on
+     * @param threshold pixels with a value strictly greater than this are part of a blob
+     * @param extractor BlobExtractor of the calling thread with the size of the frame, used for its buffers
+     * @return BrightBodies in the order that their first pixel is reached in a row-major scan
+     */
+    public BrightBodyList extract(float[][] frame, float threshold, BlobExtractor extractor) {
+        if(frame.length != rows_ || (rows_ > 0 && frame[0].length != columns_)) {
+            throw new IllegalArgumentException("Frame is not " + rows_ + "x" + columns_);
+        }
+        if(extractor.rows() != rows_ || extractor.columns() != columns_) {
+            throw new IllegalArgumentException("BlobExtractor is not " + rows_ + "x" + columns_);
+        }
+        int above = countAbove(threshold);
+        int[] labels = extractor.labels();
+        int[] sizes = extractor.scratch(above + 1);
+        Arrays.fill(labels, 0);
+
+        // Parents are visited before their children, so each pixel either joins the blob of its parent or, if the
+        // parent is not above the threshold, is the top of a new blob that holds its whole subtree
+        int count = 0;
+        for(int i = above - 1; i >= 0; i--) {
+            int pixel = order_[i];
+            int parent = parents_[pixel];
+            if(parent != pixel && values_[parent] > threshold) {
+                labels[pixel] = labels[parent];
+            }
+            else {
+                labels[pixel] = ++count;
+                sizes[count] = sizes_[pixel];
+            }
+        }
+        return extractor.measure(frame, labels, null, count, sizes);
+    }
+
+    /**
+     * Finds the BrightBodies for each of several thresholds
+     *
+     * @param frame the frame the tree was built from, which the BrightBodies are measured on
+     * @param extractor BlobExtractor of the calling thread with the size of the frame, used for its buffers
+     * @param thresholds the thresholds
+     * @return BrightBodies for each threshold in the order of the thresholds
+     */
+    public BrightBodyList[] extract(float[][] frame, BlobExtractor extractor, float ... thresholds) {
+        BrightBodyList[] bodies = new BrightBodyList[thresholds.length];
+        for(int i = 0; i < thresholds.length; i++) {
+            bodies[i] = extract(frame, thresholds[i], extractor);
+        }
+        return bodies;
+    }
+
+    /**
+     * Counts the pixels strictly brighter than a threshold, which are the first pixels of order_
+     */
+    private int countAbove(float threshold) {
+        int low = 0;
+        int high = order_.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(values_[order_[middle]] > threshold) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Joins the pixels into the tree from brightest to dimmest. Each visited pixel becomes the parent of the roots of
+     * the blobs of its visited neighbors, so a parent is always visited after its children. Parents are then moved to
+     * the first ancestor with a lower level so each blob is represented by a single canonical pixel.
+     */
+    private void build(Connectivity connectivity) {
+        int[] roots = new int[values_.length];
+        Arrays.fill(roots, -1);
+        for(int pixel : order_) {
+            parents_[pixel] = pixel;
+            roots[pixel] = pixel;
+            sizes_[pixel] = 1;
+            int row = pixel / columns_;
+            int column = pixel - row * columns_;
+            for(int row_offset = -1; row_offset <= 1; row_offset++) {
+                int neighbor_row = row + row_offset;
+                if(neighbor_row < 0 || neighbor_row >= rows_) {
+                    continue;
+                }
+                for(int column_offset = -1; column_offset <= 1; column_offset++) {
+                    int neighbor_column = column + column_offset;
+                    if(neighbor_column < 0 || neighbor_column >= columns_ || (row_offset == 0 && column_offset == 0)) {
+                        continue;
+                    }
+                    if(connectivity == Connectivity.FOUR && row_offset != 0 && column_offset != 0) {
+                        continue;
+                    }
+                    int neighbor = neighbor_row * columns_ + neighbor_column;
+                    if(roots[neighbor] == -1) {
+                        continue;
+                    }
+                    int root = find(roots, neighbor);
+                    if(root != pixel) {
+                        parents_[root] = pixel;
+                        roots[root] = pixel;
+                        sizes_[pixel] += sizes_[root];
+                    }
+                }
+            }
+        }
+
+        for(int i = order_.length - 1; i >= 0; i--) {
+            int pixel = order_[i];
+            int parent = parents_[pixel];
+            if(values_[parents_[parent]] == values_[parent]) {
+                parents_[pixel] = parents_[parent];
+            }
+        }
+    }
+
+    /**
+     * Finds the root of the blob of a visited pixel, halving the path on the way
+     */
+    private static int find(int[] roots, int pixel) {
+        while(roots[pixel] != pixel) {
+            roots[pixel] = roots[roots[pixel]];
+            pixel = roots[pixel];
+        }
+        return pixel;
+    }
+
+    /**
+     * Sorts the indices of the pixels that are not NaN from the brightest to the dimmest, breaking ties by index
+     */
+    private static int[] sortDescending(float[] values) {
+        long[] keys = new long[values.length];
+        int count = 0;
+        for(int i = 0; i < values.length; i++) {
+            if(Float.isNaN(values[i])) {
+                continue;
+            }
+            // Flipping the magnitude bits of negative values makes the bits order the same way as the values
+            int bits = Float.floatToIntBits(values[i] == 0 ? 0.0f : values[i]);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            keys[count++] = (long) ~bits << 32 | i;
+        }
+        Arrays.sort(keys, 0, count);
+        int[] order = new int[count];
+        for(int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+}
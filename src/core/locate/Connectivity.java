@@ -0,0 +1,18 @@
+package core.locate;
+
+/**
+ * Which neighbors of a pixel are considered adjacent when grouping pixels into BrightBodies
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public enum Connectivity {
+    /**
+     * Pixels are adjacent if they share an edge
+     */
+    FOUR,
+    /**
+     * Pixels are adjacent if they share an edge or a corner
+     */
+    EIGHT
+}
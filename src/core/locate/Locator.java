@@ -1,6 +1,15 @@
 package core.locate;
 
 import brightbodies.BrightBodyList;
+import core.preprocess.FrameIterator;
+import cube.ArrayFrameCube;
+import cube.FrameCube;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This abstract class is for a generic object that performs the Locating step of LFT. Classes that extend this class
@@ -10,6 +19,9 @@ import brightbodies.BrightBodyList;
  * objects which each correspond to a frame in the cube. The initialize method is required to create LocateInstance
  * objects of the correct type.
  *
+ * Frames may be located in parallel, so LocatorInstances must only read from their parent Locator while locating and
+ * subclasses must not change their settings once they are constructed.
+ *
  * @author Jonathan Zwiebel
  * @version 11 July 2016
  */
@@ -17,7 +29,7 @@ public abstract class Locator {
     /**
      * Floating point data cube taken from a Preprocessor
      */
-    protected final float[][][] data_;
+    protected final FrameCube data_;
 
     /**
      * Array of objects that will each locate BrightBodies in a single frame
@@ -29,11 +41,28 @@ public abstract class Locator {
      * this method.
      * @param data Data cube from Preprocessor
      */
-    public Locator(float[][][] data) {
+    public Locator(FrameCube data) {
         instances_ = null;
         data_ = data;
     }
 
+    /**
+     * Constructs a Locator object given an on-heap data cube. The cube is wrapped without being copied.
+     * @param data Data cube from Preprocessor
+     */
+    public Locator(float[][][] data) {
+        this(new ArrayFrameCube(data));
+    }
+
+    /**
+     * Constructs a Locator object that has no data cube and will only locate over frames passed to
+     * locate(FrameIterator). No computation occurs in this method.
+     */
+    protected Locator() {
+        instances_ = null;
+        data_ = null;
+    }
+
 
     /**
      * Initializes the array of LocatorInstance objects with LocatorInstances of the correct subclass. This method must
@@ -42,17 +71,115 @@ public abstract class Locator {
      */
     public abstract void initialize();
 
+    /**
+     * Creates a LocatorInstance of the correct subclass for a single frame of a cube
+     *
+     * @param cube The data cube
+     * @param frame Index of the frame within the cube
+     * @return LocatorInstance that will locate over the frame
+     */
+    protected abstract LocatorInstance createInstance(FrameCube cube, int frame);
+
     /**
      * Iterates through the array of LocatorInstances to generate the computed BrightBodyList array.
      * @return The array of BrightBodyLists
      */
     public BrightBodyList[] locate() {
-        BrightBodyList[] bright_body_lists = new BrightBodyList[data_.length];
+        BrightBodyList[] bright_body_lists = new BrightBodyList[data_.frames()];
 
-        for(int index = 0; index < data_.length; index++) {
+        for(int index = 0; index < data_.frames(); index++) {
             bright_body_lists[index]  = instances_[index].locate(this);
         }
 
         return bright_body_lists;
     }
+
+    /**
+     * Locates the BrightBodies in each frame of a FrameIterator as the frames are read. Only the frame currently
+     * being located needs to be resident, so this may be used without a data cube. The initialize() method does not
+     * need to be called prior to this method.
+     *
+     * @param frames iterator over the frames to locate over
+     * @return The array of BrightBodyLists
+     */
+    public BrightBodyList[] locate(FrameIterator frames) {
+        ArrayList<BrightBodyList> bright_body_lists = new ArrayList<>();
+
+        while(frames.hasNext()) {
+            FrameCube frame = new ArrayFrameCube(new float[][][]{frames.next()});
+            bright_body_lists.add(createInstance(frame, 0).locate(this));
+        }
+
+        return bright_body_lists.toArray(new BrightBodyList[bright_body_lists.size()]);
+    }
+
+    /**
+     * Locates the BrightBodies in every frame of the cube in parallel on a ForkJoinPool. Each LocatorInstance is
+     * independent, so frames are located concurrently and each BrightBodyList is stored at the index of its frame.
+     * The initialize() method must be called prior to this method.
+     *
+     * @param pool pool to locate on, such as ForkJoinPool.commonPool()
+     * @return The array of BrightBodyLists in frame order
+     */
+    public BrightBodyList[] locate(ForkJoinPool pool) {
+        BrightBodyList[] bright_body_lists = new BrightBodyList[data_.frames()];
+        pool.invoke(new LocateTask(bright_body_lists, 0, bright_body_lists.length));
+        return bright_body_lists;
+    }
+
+    /**
+     * Locates the BrightBodies in each frame of a FrameIterator in parallel on a ForkJoinPool as the frames are read.
+     * Frames are read on the calling thread and located on the pool, with at most a few frames per worker waiting to
+     * be located so memory use does not grow with the number of frames. The initialize() method does not need to be
+     * called prior to this method.
+     *
+     * @param frames iterator over the frames to locate over
+     * @param pool pool to locate on, such as ForkJoinPool.commonPool()
+     * @return The array of BrightBodyLists in frame order
+     */
+    public BrightBodyList[] locate(FrameIterator frames, ForkJoinPool pool) {
+        ArrayList<BrightBodyList> bright_body_lists = new ArrayList<>();
+        ArrayDeque<ForkJoinTask<BrightBodyList>> pending = new ArrayDeque<>();
+        int max_pending = 2 * pool.getParallelism();
+
+        while(frames.hasNext()) {
+            FrameCube frame = new ArrayFrameCube(new float[][][]{frames.next()});
+            LocatorInstance instance = createInstance(frame, 0);
+            pending.add(pool.submit(() -> instance.locate(this)));
+            if(pending.size() > max_pending) {
+                bright_body_lists.add(pending.remove().join());
+            }
+        }
+        while(!pending.isEmpty()) {
+            bright_body_lists.add(pending.remove().join());
+        }
+
+        return bright_body_lists.toArray(new BrightBodyList[bright_body_lists.size()]);
+    }
+
+    /**
+     * Locates a range of frames of the cube, splitting the range in half until a single frame remains
+     */
+    private final class LocateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BrightBodyList[] bright_body_lists_;
+        private final int first_;
+        private final int last_;
+
+        LocateTask(BrightBodyList[] bright_body_lists, int first, int last) {
+            bright_body_lists_ = bright_body_lists;
+            first_ = first;
+            last_ = last;
+        }
+
+        protected void compute() {
+            if(last_ - first_ > 1) {
+                int middle = (first_ + last_) >>> 1;
+                invokeAll(new LocateTask(bright_body_lists_, first_, middle), new LocateTask(bright_body_lists_, middle, last_));
+            }
+            else if(last_ - first_ == 1) {
+                bright_body_lists_[first_] = instances_[first_].locate(Locator.this);
+            }
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package core.locate;
 
 import brightbodies.BrightBodyList;
+import cube.ArrayFrameCube;
+import cube.FrameCube;
 
 /**
  * This abstract class will computationally compute the location of BrightBodies for a single frame of a data cube. These
@@ -11,18 +13,43 @@ import brightbodies.BrightBodyList;
  */
 public abstract class LocatorInstance {
     /**
-     * The slice from the data cube that this LocatorInstance is working over
+     * The data cube that this LocatorInstance is working over
      */
-    protected final float[][] data_;
+    protected final FrameCube cube_;
+
+    /**
+     * The index of the slice of the data cube that this LocatorInstance is working over
+     */
+    protected final int frame_;
 
     /**
      * Constructs a LocatorInstance object given a single slice of a data cube. This is to be called only by the
-     * initialize() method of a Locator object.
+     * initialize() method of a Locator object. The frame is not read until the LocatorInstance locates.
+     *
+     * @param cube The data cube
+     * @param frame Index of the slice of the data cube
+     */
+    protected LocatorInstance(FrameCube cube, int frame) {
+        cube_ = cube;
+        frame_ = frame;
+    }
+
+    /**
+     * Constructs a LocatorInstance object given a single slice of a data cube.
      *
      * @param data A single slice of a data cube
      */
     protected LocatorInstance(float[][] data) {
-        data_ = data.clone();
+        this(new ArrayFrameCube(new float[][][]{data}), 0);
+    }
+
+    /**
+     * Reads the slice of the data cube that this LocatorInstance is working over
+     *
+     * @return frame indexed [row][column]
+     */
+    protected float[][] frame() {
+        return cube_.frame(frame_);
     }
 
     /**
@@ -0,0 +1,333 @@
+package core.locate;
+
+import brightbodies.BrightBody;
+import brightbodies.BrightBodyList;
+import brightbodies.Coordinate;
+import brightbodies.PixelSet;
+
+import java.util.Arrays;
+
+/**
+ * Finds the same BrightBodies as a BlobExtractor while only labeling the parts of a frame that hold bright pixels, which
+ * is most of the saving on sparse frames where nearly every pixel is empty sky. Each frame is reduced into a pyramid of
+ * levels where every cell covers a 2x2 block of cells of the level below and is marked when any cell of the block is,
+ * so a cell is marked exactly when the largest pixel it covers is brighter than the threshold. Marked cells of the
+ * coarsest level are refined one level at a time, skipping every unmarked block, and the bright pixels under the finest
+ * marked cells seed a flood fill at full resolution.
+ *
+ * Cells are marked by their largest pixel rather than by their mean because the BrightBodies must be the same as those
+ * of a full resolution labeling, and a faint blob in a block with a dim mean would otherwise be lost. Building the first
+ * level compares every pixel once without branches, and only the bright pixels are labeled and measured. BrightBodies
+ * are listed in the order of their first pixel with their points in row-major order and moments accumulated as
+ * MomentStats does, so they are identical to those of a BlobExtractor. A PyramidBlobExtractor reuses its buffers
+ * between frames of the same size and must not be shared between threads.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class PyramidBlobExtractor {
+    /**
+     * Largest number of rows or columns of the coarsest level
+     */
+    public static final int COARSEST_SIZE = 8;
+
+    private final int rows_;
+    private final int columns_;
+    private final Connectivity connectivity_;
+    private final int[] level_rows_;
+    private final int[] level_columns_;
+    private final boolean[][] levels_;
+    private final int[] labels_;
+    private int[] pixels_;
+    private int[] starts_;
+    private int[] cells_;
+    private long[] order_;
+
+    /**
+     * Constructs a PyramidBlobExtractor for frames of a fixed size
+     *
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param connectivity which neighbors of a pixel are in the same blob
+     */
+    public PyramidBlobExtractor(int rows, int columns, Connectivity connectivity) {
+        rows_ = rows;
+        columns_ = columns;
+        connectivity_ = connectivity;
+
+        int count = 1;
+        for(int size = Math.max(rows, columns); size > COARSEST_SIZE; size = (size + 1) / 2) {
+            count++;
+        }
+        // Level 0 is the detection image itself and is never copied
+        level_rows_ = new int[count];
+        level_columns_ = new int[count];
+        levels_ = new boolean[count][];
+        level_rows_[0] = rows;
+        level_columns_[0] = columns;
+        for(int level = 1; level < count; level++) {
+            level_rows_[level] = (level_rows_[level - 1] + 1) / 2;
+            level_columns_[level] = (level_columns_[level - 1] + 1) / 2;
+            levels_[level] = new boolean[level_rows_[level] * level_columns_[level]];
+        }
+        labels_ = new int[rows * columns];
+        pixels_ = new int[64];
+        starts_ = new int[16];
+        cells_ = new int[64];
+        order_ = new long[16];
+    }
+
+    /**
+     * @return number of rows in each frame
+     */
+    public int rows() {
+        return rows_;
+    }
+
+    /**
+     * @return number of columns in each frame
+     */
+    public int columns() {
+        return columns_;
+    }
+
+    /**
+     * @return number of levels of the pyramid, including the full resolution frame
+     */
+    public int levels() {
+        return levels_.length;
+    }
+
+    /**
+     * Finds the blobs of pixels that are strictly brighter than a threshold and builds a BrightBody for each one
+     *
+     * @param frame frame indexed [row][column]
+     * @param threshold pixels with a value strictly greater than this are part of a blob
+     * @return BrightBodies of the frame in the order that their first pixel is reached in a row-major scan
+     */
+    public BrightBodyList extract(float[][] frame, float threshold) {
+        return extract(frame, frame, threshold);
+    }
+
+    /**
+     * Finds the blobs of pixels of a detection image that are strictly brighter than a threshold and builds a
+     * BrightBody for each one from the values of the frame
+     *
+     * @param frame frame indexed [row][column] that the areas and centroids are measured on
+     * @param detection image of the same size as the frame that is thresholded
+     * @param threshold pixels of the detection image with a value strictly greater than this are part of a blob
+     * @return BrightBodies of the frame in the order that their first pixel is reached in a row-major scan
+     */
+    public BrightBodyList extract(float[][] frame, float[][] detection, float threshold) {
+        if(detection.length != rows_ || (rows_ > 0 && detection[0].length != columns_)) {
+            throw new IllegalArgumentException("Frame is not " + rows_ + "x" + columns_);
+        }
+        if(rows_ == 0 || columns_ == 0) {
+            return new BrightBodyList();
+        }
+        reduce(detection, threshold);
+        int blobs = refine(detection, threshold);
+        BrightBodyList bodies = measure(frame, blobs);
+
+        for(int index = 0; index < starts_[blobs]; index++) {
+            labels_[pixels_[index]] = 0;
+        }
+        return bodies;
+    }
+
+    /**
+     * Marks each cell of the first level that covers a bright pixel and each cell of every coarser level that covers a
+     * marked cell. The first level is the only pass over every pixel and is made without branches.
+     */
+    private void reduce(float[][] detection, float threshold) {
+        if(levels_.length == 1) {
+            return;
+        }
+        int columns = level_columns_[1];
+        int pairs = columns_ / 2;
+        boolean[] level = levels_[1];
+        for(int row = 0; row < level_rows_[1]; row++) {
+            float[] top = detection[2 * row];
+            float[] bottom = detection[Math.min(2 * row + 1, rows_ - 1)];
+            int offset = row * columns;
+            for(int column = 0; column < pairs; column++) {
+                int left = 2 * column;
+                level[offset + column] = top[left] > threshold | top[left + 1] > threshold | bottom[left] > threshold | bottom[left + 1] > threshold;
+            }
+            if(pairs < columns) {
+                level[offset + pairs] = top[columns_ - 1] > threshold | bottom[columns_ - 1] > threshold;
+            }
+        }
+        for(int index = 2; index < levels_.length; index++) {
+            boolean[] below = levels_[index - 1];
+            int below_rows = level_rows_[index - 1];
+            int below_columns = level_columns_[index - 1];
+            level = levels_[index];
+            columns = level_columns_[index];
+            for(int row = 0; row < level_rows_[index]; row++) {
+                int top = 2 * row * below_columns;
+                int bottom = Math.min(2 * row + 1, below_rows - 1) * below_columns;
+                for(int column = 0; column < columns; column++) {
+                    int left = 2 * column;
+                    int right = Math.min(left + 1, below_columns - 1);
+                    level[row * columns + column] = below[top + left] | below[top + right] | below[bottom + left] | below[bottom + right];
+                }
+            }
+        }
+    }
+
+    /**
+     * Refines the marked cells of the coarsest level down to full resolution and flood fills a blob from every bright
+     * pixel that has not been reached yet
+     *
+     * @return number of blobs, whose pixels are listed in pixels_ from starts_[blob] to starts_[blob + 1]
+     */
+    private int refine(float[][] detection, float threshold) {
+        int top = levels_.length - 1;
+        int stack = 0;
+        if(top == 0) {
+            // The frame is small enough to be its own coarsest level
+            for(int pixel = rows_ * columns_ - 1; pixel >= 0; pixel--) {
+                cells_ = push(cells_, stack++, pixel);
+            }
+        }
+        else {
+            boolean[] coarsest = levels_[top];
+            for(int cell = coarsest.length - 1; cell >= 0; cell--) {
+                if(coarsest[cell]) {
+                    cells_ = push(cells_, stack, cell);
+                    cells_ = push(cells_, stack + 1, top);
+                    stack += 2;
+                }
+            }
+        }
+
+        int blobs = 0;
+        starts_[0] = 0;
+        if(top == 0) {
+            while(stack > 0) {
+                blobs = seed(detection, threshold, cells_[--stack], blobs);
+            }
+            return blobs;
+        }
+        while(stack > 0) {
+            int level = cells_[--stack];
+            int cell = cells_[--stack];
+            int columns = level_columns_[level];
+            int row = cell / columns;
+            int column = cell % columns;
+            int below_rows = level_rows_[level - 1];
+            int below_columns = level_columns_[level - 1];
+            for(int child_row = 2 * row; child_row < Math.min(2 * row + 2, below_rows); child_row++) {
+                for(int child_column = 2 * column; child_column < Math.min(2 * column + 2, below_columns); child_column++) {
+                    int child = child_row * below_columns + child_column;
+                    if(level == 1) {
+                        blobs = seed(detection, threshold, child, blobs);
+                    }
+                    else if(levels_[level - 1][child]) {
+                        cells_ = push(cells_, stack, child);
+                        cells_ = push(cells_, stack + 1, level - 1);
+                        stack += 2;
+                    }
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Flood fills a new blob from a pixel if it is bright and not yet part of a blob
+     *
+     * @return number of blobs after the pixel is seeded
+     */
+    private int seed(float[][] detection, float threshold, int pixel, int blobs) {
+        if(labels_[pixel] != 0 || !(detection[pixel / columns_][pixel % columns_] > threshold)) {
+            return blobs;
+        }
+        int blob = blobs + 1;
+        int start = starts_[blobs];
+        int end = start;
+        labels_[pixel] = blob;
+        pixels_ = push(pixels_, end++, pixel);
+        // The pixels of the blob double as the queue of pixels whose neighbors have not been visited
+        for(int next = start; next < end; next++) {
+            int row = pixels_[next] / columns_;
+            int column = pixels_[next] % columns_;
+            for(int row_offset = -1; row_offset <= 1; row_offset++) {
+                int neighbor_row = row + row_offset;
+                if(neighbor_row < 0 || neighbor_row >= rows_) {
+                    continue;
+                }
+                float[] line = detection[neighbor_row];
+                for(int column_offset = -1; column_offset <= 1; column_offset++) {
+                    int neighbor_column = column + column_offset;
+                    if(neighbor_column < 0 || neighbor_column >= columns_ || (row_offset == 0 && column_offset == 0)) {
+                        continue;
+                    }
+                    if(connectivity_ == Connectivity.FOUR && row_offset != 0 && column_offset != 0) {
+                        continue;
+                    }
+                    int neighbor = neighbor_row * columns_ + neighbor_column;
+                    if(labels_[neighbor] == 0 && line[neighbor_column] > threshold) {
+                        labels_[neighbor] = blob;
+                        pixels_ = push(pixels_, end++, neighbor);
+                    }
+                }
+            }
+        }
+        if(blob + 1 >= starts_.length) {
+            starts_ = Arrays.copyOf(starts_, starts_.length * 2);
+        }
+        starts_[blob] = end;
+        return blob;
+    }
+
+    /**
+     * Builds the BrightBodies of the blobs in the order of their first pixel, with points in row-major order
+     */
+    private BrightBodyList measure(float[][] frame, int blobs) {
+        if(order_.length < blobs) {
+            order_ = new long[Math.max(blobs, order_.length * 2)];
+        }
+        for(int blob = 0; blob < blobs; blob++) {
+            Arrays.sort(pixels_, starts_[blob], starts_[blob + 1]);
+            order_[blob] = (long) pixels_[starts_[blob]] << 32 | blob;
+        }
+        Arrays.sort(order_, 0, blobs);
+
+        BrightBodyList bodies = new BrightBodyList();
+        bodies.ensureCapacity(blobs);
+        for(int index = 0; index < blobs; index++) {
+            int blob = (int) order_[index];
+            int start = starts_[blob];
+            int end = starts_[blob + 1];
+            float area = 0;
+            float moment_x = 0;
+            float moment_y = 0;
+            for(int point = start; point < end; point++) {
+                int pixel = pixels_[point];
+                int row = pixel / columns_;
+                int x = pixel % columns_;
+                // Points are stored with y increasing upwards, as BinaryLocatorInstance has always done
+                int y = rows_ - 1 - row;
+
+                // Matches MomentStats, which adds each double precision term to a single precision sum
+                float value = frame[row][x];
+                area = (float) (area + (double) value);
+                moment_x = (float) (moment_x + (double) value * x);
+                moment_y = (float) (moment_y + (double) value * y);
+            }
+            PixelSet pixels = PixelSet.fromIndices(pixels_, start, end, rows_, columns_);
+            bodies.add(new BrightBody(frame, pixels, new Coordinate(moment_x / area, moment_y / area), area));
+        }
+        return bodies;
+    }
+
+    private static int[] push(int[] array, int index, int value) {
+        if(index == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+}
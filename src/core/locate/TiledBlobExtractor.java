@@ -0,0 +1,439 @@
+package core.locate;
+
+import brightbodies.BrightBody;
+import brightbodies.BrightBodyList;
+import brightbodies.Coordinate;
+import brightbodies.PixelSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the BrightBodies of a large frame, such as a full frame image, by splitting it into tiles that are labeled in
+ * parallel on a ForkJoinPool. Each tile is small enough to stay in cache while a ComponentLabeler labels it and while
+ * the pixel count, area, first moments, and bounding box of each of its blobs are summed. Blobs that touch across a
+ * tile border are then joined by a union-find pass that only reads the pixels along the borders, and the sums of the
+ * joined blobs are added together without visiting their pixels again. A final parallel pass stores the pixels of
+ * every tile directly into the run of a shared index buffer that belongs to their BrightBody, and each run is packed
+ * into the PixelSet of its BrightBody.
+ *
+ * The BrightBodies are the same blobs that a BlobExtractor finds, but the sums are added in double precision and in a
+ * different order, so areas and centroids may differ from MomentStats in the last bits. A TiledBlobExtractor reuses its
+ * buffers between frames of the same size and must not be shared between threads, though its tiles are labeled on the
+ * pool.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class TiledBlobExtractor {
+    /**
+     * Height and width of the tiles when no tile size is given, which keeps the pixels and labels of a tile in cache
+     */
+    public static final int DEFAULT_TILE_SIZE = 128;
+
+    private final int rows_;
+    private final int columns_;
+    private final Connectivity connectivity_;
+    private final int tile_rows_;
+    private final int tile_columns_;
+    private final int tiles_across_;
+    private final Tile[] tiles_;
+    private final ForkJoinPool pool_;
+    private int[] parents_;
+    private int[] starts_;
+    private int[] pixels_ = new int[16];
+
+    /**
+     * Constructs a TiledBlobExtractor with square tiles of DEFAULT_TILE_SIZE on the common ForkJoinPool
+     *
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param connectivity which neighbors of a pixel are in the same blob
+     */
+    public TiledBlobExtractor(int rows, int columns, Connectivity connectivity) {
+        this(rows, columns, connectivity, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a TiledBlobExtractor
+     *
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param connectivity which neighbors of a pixel are in the same blob
+     * @param tile_rows number of rows in each tile
+     * @param tile_columns number of columns in each tile
+     * @param pool pool to label tiles on
+     */
+    public TiledBlobExtractor(int rows, int columns, Connectivity connectivity, int tile_rows, int tile_columns, ForkJoinPool pool) {
+        if(tile_rows < 1 || tile_columns < 1) {
+            throw new IllegalArgumentException("Tiles must hold at least one pixel");
+        }
+        rows_ = rows;
+        columns_ = columns;
+        connectivity_ = connectivity;
+        tile_rows_ = tile_rows;
+        tile_columns_ = tile_columns;
+        pool_ = pool;
+
+        tiles_across_ = (columns + tile_columns - 1) / tile_columns;
+        int tiles_down = (rows + tile_rows - 1) / tile_rows;
+        tiles_ = new Tile[tiles_across_ * tiles_down];
+        for(int tile_row = 0; tile_row < tiles_down; tile_row++) {
+            for(int tile_column = 0; tile_column < tiles_across_; tile_column++) {
+                int first_row = tile_row * tile_rows;
+                int first_column = tile_column * tile_columns;
+                tiles_[tile_row * tiles_across_ + tile_column] = new Tile(first_row, first_column,
+                        Math.min(tile_rows, rows - first_row), Math.min(tile_columns, columns - first_column), connectivity);
+            }
+        }
+        parents_ = new int[64];
+        starts_ = new int[64];
+    }
+
+    /**
+     * @return number of rows in each frame
+     */
+    public int rows() {
+        return rows_;
+    }
+
+    /**
+     * @return number of columns in each frame
+     */
+    public int columns() {
+        return columns_;
+    }
+
+    /**
+     * Finds the blobs of pixels that are strictly brighter than a threshold and builds a BrightBody for each one
+     *
+     * @param frame frame indexed [row][column]
+     * @param threshold pixels with a value strictly greater than this are part of a blob
+     * @return BrightBodies of the frame
+     */
+    public BrightBodyList extract(float[][] frame, float threshold) {
+        return extract(frame, frame, threshold);
+    }
+
+    /**
+     * Finds the blobs of pixels of a detection image, such as a filtered copy of a frame, that are strictly brighter
+     * than a threshold and builds a BrightBody for each one from the values of the frame
+     *
+     * @param frame frame indexed [row][column] that the areas and centroids are measured on
+     * @param detection image of the same size as the frame that is thresholded
+     * @param threshold pixels of the detection image with a value strictly greater than this are part of a blob
+     * @return BrightBodies of the frame
+     */
+    public BrightBodyList extract(float[][] frame, float[][] detection, float threshold) {
+        checkSize(frame);
+        checkSize(detection);
+        pool_.invoke(new TileTask(0, tiles_.length, tile -> tile.measure(frame, tile.labeler.scan(detection, threshold, tile.first_row, tile.first_column), rows_)));
+        return stitch(frame);
+    }
+
+    /**
+     * Finds the blobs of pixels that are strictly brighter than their own thresholds, such as those of a locally
+     * adaptive threshold, and builds a BrightBody for each one
+     *
+     * @param frame frame indexed [row][column]
+     * @param thresholds threshold of each pixel indexed [row][column]
+     * @return BrightBodies of the frame
+     */
+    public BrightBodyList extract(float[][] frame, float[][] thresholds) {
+        return extract(frame, frame, thresholds);
+    }
+
+    /**
+     * Finds the blobs of pixels of a detection image that are strictly brighter than their own thresholds and builds a
+     * BrightBody for each one from the values of the frame
+     *
+     * @param frame frame indexed [row][column] that the areas and centroids are measured on
+     * @param detection image of the same size as the frame that is thresholded
+     * @param thresholds threshold of each pixel of the detection image indexed [row][column]
+     * @return BrightBodies of the frame
+     */
+    public BrightBodyList extract(float[][] frame, float[][] detection, float[][] thresholds) {
+        checkSize(frame);
+        checkSize(detection);
+        pool_.invoke(new TileTask(0, tiles_.length, tile -> tile.measure(frame, tile.labeler.scan(detection, thresholds, tile.first_row, tile.first_column), rows_)));
+        return stitch(frame);
+    }
+
+    private void checkSize(float[][] frame) {
+        if(frame.length != rows_ || (rows_ > 0 && frame[0].length != columns_)) {
+            throw new IllegalArgumentException("Frame is not " + rows_ + "x" + columns_);
+        }
+    }
+
+    /**
+     * Joins the blobs of the labeled and measured tiles and builds their BrightBodies
+     */
+    private BrightBodyList stitch(float[][] frame) {
+
+        // Blobs are given global ids by offsetting the labels of each tile by the number of blobs in earlier tiles
+        int total = 0;
+        for(Tile tile : tiles_) {
+            tile.base = total;
+            total += tile.count;
+        }
+        if(parents_.length < total + 1) {
+            parents_ = new int[Math.max(total + 1, parents_.length * 2)];
+            starts_ = new int[parents_.length];
+        }
+        for(int id = 0; id <= total; id++) {
+            parents_[id] = id;
+        }
+        joinBorders();
+
+        // Every parent is smaller than its child, so the parent of each id has already been given its final label
+        int count = 0;
+        for(int id = 1; id <= total; id++) {
+            int parent = parents_[id];
+            parents_[id] = parent == id ? ++count : parents_[parent];
+        }
+
+        int[] sizes = new int[count + 1];
+        double[] area = new double[count + 1];
+        double[] moment_x = new double[count + 1];
+        double[] moment_y = new double[count + 1];
+        for(Tile tile : tiles_) {
+            for(int label = 1; label <= tile.count; label++) {
+                int id = tile.base + label;
+                int blob = parents_[id];
+                // Each blob of a tile starts its points where the earlier parts of the same blob end
+                starts_[id] = sizes[blob];
+                sizes[blob] += tile.sizes[label];
+                area[blob] += tile.area[label];
+                moment_x[blob] += tile.moment_x[label];
+                moment_y[blob] += tile.moment_y[label];
+            }
+        }
+
+        // Each blob owns the run of pixels_ from ends[blob - 1] to ends[blob]
+        int[] ends = new int[count + 1];
+        for(int blob = 1; blob <= count; blob++) {
+            ends[blob] = ends[blob - 1] + sizes[blob];
+        }
+        for(int id = 1; id <= total; id++) {
+            starts_[id] += ends[parents_[id] - 1];
+        }
+        if(pixels_.length < ends[count]) {
+            pixels_ = new int[Math.max(ends[count], pixels_.length * 2)];
+        }
+        int[] pixels = pixels_;
+        pool_.invoke(new TileTask(0, tiles_.length, tile -> tile.place(pixels, starts_, columns_)));
+
+        BrightBodyList bodies = new BrightBodyList();
+        bodies.ensureCapacity(count);
+        for(int blob = 1; blob <= count; blob++) {
+            Coordinate centroid = new Coordinate((float) (moment_x[blob] / area[blob]), (float) (moment_y[blob] / area[blob]));
+            bodies.add(new BrightBody(frame, PixelSet.fromIndices(pixels, ends[blob - 1], ends[blob], rows_, columns_), centroid, (float) area[blob]));
+        }
+        return bodies;
+    }
+
+    /**
+     * Joins the blobs that touch across tile borders. Every pair of adjacent pixels in different tiles has one pixel on
+     * the top or left edge of its tile whose neighbor is above or to the left of it, so only those edges are read.
+     */
+    private void joinBorders() {
+        boolean eight = connectivity_ == Connectivity.EIGHT;
+        for(Tile tile : tiles_) {
+            if(tile.first_column > 0) {
+                int column = tile.first_column;
+                for(int row = tile.first_row; row < tile.first_row + tile.rows; row++) {
+                    int id = id(row, column);
+                    if(id == 0) {
+                        continue;
+                    }
+                    join(id, id(row, column - 1));
+                    if(eight) {
+                        if(row > 0) {
+                            join(id, id(row - 1, column - 1));
+                        }
+                        if(row < rows_ - 1) {
+                            join(id, id(row + 1, column - 1));
+                        }
+                    }
+                }
+            }
+            if(tile.first_row > 0) {
+                int row = tile.first_row;
+                for(int column = tile.first_column; column < tile.first_column + tile.columns; column++) {
+                    int id = id(row, column);
+                    if(id == 0) {
+                        continue;
+                    }
+                    join(id, id(row - 1, column));
+                    if(eight) {
+                        if(column > 0) {
+                            join(id, id(row - 1, column - 1));
+                        }
+                        if(column < columns_ - 1) {
+                            join(id, id(row - 1, column + 1));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the global id of the blob a pixel belongs to
+     *
+     * @return global id or 0 if the pixel is not part of a blob
+     */
+    private int id(int row, int column) {
+        Tile tile = tiles_[(row / tile_rows_) * tiles_across_ + column / tile_columns_];
+        int label = tile.labeler.labels()[(row - tile.first_row) * tile.columns + column - tile.first_column];
+        return label == 0 ? 0 : tile.base + label;
+    }
+
+    /**
+     * Joins the sets of two global ids, keeping the smaller root. The second id may be 0 for no blob.
+     */
+    private void join(int a, int b) {
+        if(b == 0) {
+            return;
+        }
+        a = find(a);
+        b = find(b);
+        if(a < b) {
+            parents_[b] = a;
+        }
+        else if(b < a) {
+            parents_[a] = b;
+        }
+    }
+
+    private int find(int id) {
+        while(parents_[id] != id) {
+            parents_[id] = parents_[parents_[id]];
+            id = parents_[id];
+        }
+        return id;
+    }
+
+    /**
+     * Work done on each tile by a TileTask
+     */
+    private interface TileWork {
+        void run(Tile tile);
+    }
+
+    /**
+     * Runs work on a range of tiles, splitting the range in half until a single tile remains
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int first_;
+        private final int last_;
+        private final TileWork work_;
+
+        TileTask(int first, int last, TileWork work) {
+            first_ = first;
+            last_ = last;
+            work_ = work;
+        }
+
+        protected void compute() {
+            if(last_ - first_ > 1) {
+                int middle = (first_ + last_) >>> 1;
+                invokeAll(new TileTask(first_, middle, work_), new TileTask(middle, last_, work_));
+            }
+            else if(last_ - first_ == 1) {
+                work_.run(tiles_[first_]);
+            }
+        }
+    }
+
+    /**
+     * A rectangular region of the frame with its own labeler and the sums of each of its blobs
+     */
+    private static final class Tile {
+        final int first_row;
+        final int first_column;
+        final int rows;
+        final int columns;
+        final ComponentLabeler labeler;
+        int count;
+        int base;
+        int[] sizes;
+        double[] area;
+        double[] moment_x;
+        double[] moment_y;
+
+        Tile(int first_row, int first_column, int rows, int columns, Connectivity connectivity) {
+            this.first_row = first_row;
+            this.first_column = first_column;
+            this.rows = rows;
+            this.columns = columns;
+            labeler = new ComponentLabeler(rows, columns, connectivity);
+            sizes = new int[16];
+            area = new double[16];
+            moment_x = new double[16];
+            moment_y = new double[16];
+        }
+
+        /**
+         * Sums each blob of the tile after it is scanned, leaving final tile labels in the labeler
+         *
+         * @param count number of blobs found by the scan
+         */
+        void measure(float[][] frame, int count, int frame_rows) {
+            this.count = count;
+            if(sizes.length < count + 1) {
+                int size = Math.max(count + 1, sizes.length * 2);
+                sizes = new int[size];
+                area = new double[size];
+                moment_x = new double[size];
+                moment_y = new double[size];
+            }
+            System.arraycopy(labeler.sizes(), 0, sizes, 0, count + 1);
+            Arrays.fill(area, 0, count + 1, 0);
+            Arrays.fill(moment_x, 0, count + 1, 0);
+            Arrays.fill(moment_y, 0, count + 1, 0);
+
+            int[] labels = labeler.labels();
+            int[] table = labeler.labelTable();
+            for(int row = 0; row < rows; row++) {
+                float[] line = frame[first_row + row];
+                int offset = row * columns;
+                int y = frame_rows - 1 - (first_row + row);
+                for(int column = 0; column < columns; column++) {
+                    int provisional = labels[offset + column];
+                    if(provisional == 0) {
+                        continue;
+                    }
+                    int label = table[provisional];
+                    labels[offset + column] = label;
+                    double value = line[first_column + column];
+                    area[label] += value;
+                    moment_x[label] += value * (first_column + column);
+                    moment_y[label] += value * y;
+                }
+            }
+        }
+
+        /**
+         * Stores the frame index of each pixel of each blob of the tile in the run of its BrightBody, starting where the
+         * earlier tiles of the blob end
+         */
+        void place(int[] pixels, int[] starts, int frame_columns) {
+            int[] labels = labeler.labels();
+            for(int row = 0; row < rows; row++) {
+                int offset = row * columns;
+                int frame_offset = (first_row + row) * frame_columns + first_column;
+                for(int column = 0; column < columns; column++) {
+                    int label = labels[offset + column];
+                    if(label == 0) {
+                        continue;
+                    }
+                    pixels[starts[base + label]++] = frame_offset + column;
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,15 @@
 package core.locate.binary;
 
+import brightbodies.BrightBodyList;
+import core.locate.BlobExtractor;
+import core.locate.Connectivity;
 import core.locate.Locator;
+import core.locate.LocatorInstance;
+import cube.ArrayFrameCube;
+import cube.FrameCube;
+import stats.IntegralImage;
+import stats.MeanStats;
+import stats.QuantileStats;
 
 /**
  * This subclass of Locator locates BrightBodies by perform binary filters over individual frames to create BinaryImages.
@@ -14,58 +23,306 @@ public class BinaryLocator extends Locator {
     /**
      * An argument that is used in calculating the locating threshold
      */
-    public float threshold_arg_;
+    private final float threshold_arg_;
 
     /**
      * The type of calculation used to find the threshold
      */
     protected final BinaryLocatorThresholdType threshold_type_;
 
+    /**
+     * Which neighbors of a positive pixel are grouped into the same BrightBody
+     */
+    protected final Connectivity connectivity_;
+
+    /**
+     * BlobExtractor of each thread that locates with this BinaryLocator, so buffers are reused between frames
+     */
+    private final ThreadLocal<BlobExtractor> extractors_ = new ThreadLocal<>();
+
+    /**
+     * Buffer of each thread that ranks the values of a frame for the MEDIAN, MEDIAN_PLUS_K_MAD, and SIGMA_CLIPPED
+     * threshold types
+     */
+    private final ThreadLocal<float[]> buffers_ = new ThreadLocal<>();
+
+    /**
+     * Number of pixels between each pixel and the edges of its window for the ADAPTIVE threshold type
+     */
+    private final int window_radius_;
+
+    /**
+     * IntegralImage and threshold map of each thread that locates with the ADAPTIVE threshold type
+     */
+    private final ThreadLocal<IntegralImage> integrals_ = new ThreadLocal<>();
+    private final ThreadLocal<float[][]> threshold_maps_ = new ThreadLocal<>();
+
     /**
      * Arguments passed in by the user to assist with threshold calculation
      */
     private final float[] args_;
 
     /**
-     * Constructs a BinaryLocator object with given data, ThresholdType, and arguments
+     * Constructs a BinaryLocator object with given data, ThresholdType, and arguments that groups positives sharing an
+     * edge into BrightBodies
      *
      * @param data Data extracted from the preprocessor
      * @param threshold_type Threshold calculation method
      * @param args Additional arguments that may be used in threshold calculation
      */
-    public BinaryLocator(float[][][] data, BinaryLocatorThresholdType threshold_type, float ... args) {
+    public BinaryLocator(FrameCube data, BinaryLocatorThresholdType threshold_type, float ... args) {
+        this(data, Connectivity.FOUR, threshold_type, args);
+    }
+
+    /**
+     * Constructs a BinaryLocator object with given data, Connectivity, ThresholdType, and arguments
+     *
+     * @param data Data extracted from the preprocessor
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public BinaryLocator(FrameCube data, Connectivity connectivity, BinaryLocatorThresholdType threshold_type, float ... args) {
         super(data);
 
+        connectivity_ = connectivity;
         threshold_type_ = threshold_type;
         args_ = args;
+        threshold_arg_ = initialThreshold(threshold_type, args);
+        window_radius_ = windowRadius(threshold_type, args);
     }
 
     /**
-     * Initializes the BinaryLocator by filling the instances_ array with BinaryLocatorInstances and setting the
-     * threshold value depending on the threshold type. in the case of BinaryLocatorThresholdTypes of MEAN, MEAN_SHIFTED,
-     * and MEAN_SCALED, the value must be computed by each instance.
+     * Constructs a BinaryLocator object with a given on-heap data cube, ThresholdType, and arguments that groups
+     * positives sharing an edge into BrightBodies
+     *
+     * @param data Data extracted from the preprocessor
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public BinaryLocator(float[][][] data, BinaryLocatorThresholdType threshold_type, float ... args) {
+        this(new ArrayFrameCube(data), Connectivity.FOUR, threshold_type, args);
+    }
+
+    /**
+     * Constructs a BinaryLocator object with no data cube that will locate over the frames passed to
+     * locate(FrameIterator) and groups positives sharing an edge into BrightBodies
+     *
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public BinaryLocator(BinaryLocatorThresholdType threshold_type, float ... args) {
+        this(Connectivity.FOUR, threshold_type, args);
+    }
+
+    /**
+     * Constructs a BinaryLocator object with no data cube that will locate over the frames passed to
+     * locate(FrameIterator)
+     *
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public BinaryLocator(Connectivity connectivity, BinaryLocatorThresholdType threshold_type, float ... args) {
+        super();
+
+        connectivity_ = connectivity;
+        threshold_type_ = threshold_type;
+        args_ = args;
+        threshold_arg_ = initialThreshold(threshold_type, args);
+        window_radius_ = windowRadius(threshold_type, args);
+    }
+
+    /**
+     * Initializes the BinaryLocator by filling the instances_ array with BinaryLocatorInstances
      */
     public void initialize() {
-        instances_ = new BinaryLocatorInstance[data_.length];
+        instances_ = new BinaryLocatorInstance[data_.frames()];
+
+        for(int index = 0; index < data_.frames(); index++) {
+            instances_[index] = createInstance(data_, index);
+        }
+    }
+
+    /**
+     * Creates a BinaryLocatorInstance for a single frame of a cube
+     *
+     * @param cube The data cube
+     * @param frame Index of the frame within the cube
+     * @return BinaryLocatorInstance over the frame
+     */
+    protected LocatorInstance createInstance(FrameCube cube, int frame) {
+        return new BinaryLocatorInstance(cube, frame);
+    }
+
+    /**
+     * Returns the argument used in calculating the locating threshold. This is the threshold itself for ABSOLUTE, the
+     * shift for MEAN_SHIFTED, and the scale for MEAN_SCALED.
+     *
+     * @return the threshold argument
+     */
+    public float thresholdArgument() {
+        return threshold_arg_;
+    }
 
-        for(int index = 0; index < data_.length; index++) {
-            instances_[index] = new BinaryLocatorInstance(data_[index]);
+    /**
+     * Returns the BlobExtractor of the calling thread for frames of a given size, creating it the first time it is used
+     * or when the frame size changes
+     *
+     * @param rows number of rows in the frame
+     * @param columns number of columns in the frame
+     * @return BlobExtractor owned by the calling thread
+     */
+    protected BlobExtractor extractor(int rows, int columns) {
+        BlobExtractor extractor = extractors_.get();
+        if(extractor == null || extractor.rows() != rows || extractor.columns() != columns) {
+            extractor = new BlobExtractor(rows, columns, connectivity_);
+            extractors_.set(extractor);
         }
+        return extractor;
+    }
 
+    /**
+     * Computes the threshold of a frame from its detection image with every threshold type but ADAPTIVE, which gives
+     * each pixel a threshold of its own
+     *
+     * @param detection The detection image of the frame indexed [row][column]
+     * @return Pixels with a value strictly greater than this are part of a BrightBody
+     */
+    protected float threshold(float[][] detection) {
         switch(threshold_type_) {
             case ABSOLUTE:
-                threshold_arg_ = args_[0];
-                break;
+                return threshold_arg_;
             case MEAN:
-                break;
+                return MeanStats.mean(detection);
             case MEAN_SHIFTED:
+                return MeanStats.mean(detection) + threshold_arg_;
             case MEAN_SCALED:
-                threshold_arg_ = args_[0];
-                break;
+                return MeanStats.mean(detection) * threshold_arg_;
+            case MEDIAN:
+                return QuantileStats.median(detection, buffer(detection));
+            case MEDIAN_PLUS_K_MAD:
+                float median = QuantileStats.median(detection, buffer(detection));
+                return median + QuantileStats.medianAbsoluteDeviation(detection, median, buffer(detection)) * threshold_arg_;
+            case SIGMA_CLIPPED:
+                float[] clipped = QuantileStats.sigmaClip(detection, buffer(detection));
+                return clipped[0] + clipped[1] * threshold_arg_;
+            default:
+                System.out.println("Illegal target threshold method");
+                System.exit(1);
+                return 0.0f;
+        }
+    }
+
+    /**
+     * Returns the buffer of the calling thread that QuantileStats ranks the values of a frame in
+     *
+     * @param data The frame indexed [row][column]
+     * @return buffer holding at least as many floats as the frame
+     */
+    float[] buffer(float[][] data) {
+        float[] buffer = buffers_.get();
+        int size = data.length * data[0].length;
+        if(buffer == null || buffer.length < size) {
+            buffer = new float[size];
+            buffers_.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Computes the ADAPTIVE threshold of each pixel of a frame from the IntegralImage of the calling thread
+     *
+     * @param data The frame indexed [row][column]
+     * @return threshold map indexed [row][column] owned by the calling thread, which is overwritten by its next call
+     */
+    float[][] localThresholds(float[][] data) {
+        int rows = data.length;
+        int columns = data[0].length;
+        IntegralImage integral = integrals_.get();
+        float[][] thresholds = threshold_maps_.get();
+        if(integral == null || integral.rows() != rows || integral.columns() != columns) {
+            integral = new IntegralImage(rows, columns);
+            thresholds = new float[rows][columns];
+            integrals_.set(integral);
+            threshold_maps_.set(thresholds);
+        }
+        integral.set(data);
+        integral.localThresholds(window_radius_, threshold_arg_, thresholds);
+        return thresholds;
+    }
+
+    /**
+     * Returns the image of a frame that is thresholded to find BrightBodies, which is the frame itself. Subclasses may
+     * override this to threshold a filtered image instead, in which case the threshold is computed from the filtered
+     * image while the areas and centroids of the BrightBodies are still measured on the frame.
+     *
+     * @param data The frame indexed [row][column]
+     * @return image of the same size as the frame, which may be a buffer owned by the calling thread
+     */
+    protected float[][] detectionImage(float[][] data) {
+        return data;
+    }
+
+    /**
+     * Finds the BrightBodies of a frame made of the blobs of pixels of its detection image strictly brighter than a
+     * threshold. Subclasses may override this to change how the blobs of a frame are labeled.
+     *
+     * @param data The frame indexed [row][column]
+     * @param detection The detection image of the frame
+     * @param threshold Pixels with a value strictly greater than this are part of a BrightBody
+     * @return BrightBodies of the frame in the order their first pixels are reached
+     */
+    protected BrightBodyList extract(float[][] data, float[][] detection, float threshold) {
+        return extractor(data.length, data[0].length).extract(data, detection, threshold);
+    }
+
+    /**
+     * Finds the BrightBodies of a frame made of the blobs of pixels of its detection image strictly brighter than their
+     * own thresholds. Subclasses that override extract(float[][], float[][], float) should override this the same way.
+     *
+     * @param data The frame indexed [row][column]
+     * @param detection The detection image of the frame
+     * @param thresholds Threshold of each pixel indexed [row][column]
+     * @return BrightBodies of the frame in the order their first pixels are reached
+     */
+    protected BrightBodyList extract(float[][] data, float[][] detection, float[][] thresholds) {
+        return extractor(data.length, data[0].length).extract(data, detection, thresholds);
+    }
+
+    /**
+     * Finds the window radius of the ADAPTIVE threshold type from its second argument
+     */
+    private static int windowRadius(BinaryLocatorThresholdType threshold_type, float[] args) {
+        if(threshold_type != BinaryLocatorThresholdType.ADAPTIVE) {
+            return 0;
+        }
+        if(args.length < 2 || args[1] < 0) {
+            throw new IllegalArgumentException("ADAPTIVE threshold needs a multiple of the deviation and a window radius");
+        }
+        return (int) args[1];
+    }
+
+    /**
+     * Finds the threshold argument depending on the threshold type. In the case of every BinaryLocatorThresholdType but
+     * ABSOLUTE, the threshold itself must be computed by each instance.
+     */
+    private static float initialThreshold(BinaryLocatorThresholdType threshold_type, float[] args) {
+        switch(threshold_type) {
+            case ABSOLUTE:
+            case MEAN_SHIFTED:
+            case MEAN_SCALED:
+            case MEDIAN_PLUS_K_MAD:
+            case SIGMA_CLIPPED:
+            case ADAPTIVE:
+                return args[0];
+            case MEAN:
+            case MEDIAN:
+                return 0.0f;
             default:
                 System.out.println("Error: Unrecognized threshold type");
                 System.exit(1);
-                break;
+                return 0.0f;
         }
     }
 }
@@ -22,5 +22,25 @@ public enum BinaryLocatorThresholdType {
     /**
      * Threshold value for each frame is the mean brightness value of each frame scaled by a fixed floating point value
      */
-    MEAN_SCALED
+    MEAN_SCALED,
+    /**
+     * Threshold value for each frame is the median brightness value of each frame
+     */
+    MEDIAN,
+    /**
+     * Threshold value for each frame is the median brightness value of each frame plus a fixed floating point multiple
+     * of the median absolute deviation from the median
+     */
+    MEDIAN_PLUS_K_MAD,
+    /**
+     * Threshold value for each frame is the sigma clipped mean brightness value of each frame plus a fixed floating
+     * point multiple of the sigma clipped standard deviation
+     */
+    SIGMA_CLIPPED,
+    /**
+     * Threshold value for each pixel is the mean brightness value of a square window around the pixel plus a fixed
+     * floating point multiple of the standard deviation within the window, given a second argument for the number of
+     * pixels between the center of the window and its edges
+     */
+    ADAPTIVE
 }
@@ -0,0 +1,76 @@
+package core.locate.binary;
+
+import brightbodies.BrightBodyList;
+import core.locate.Connectivity;
+import core.locate.PyramidBlobExtractor;
+import cube.FrameCube;
+
+/**
+ * This subclass of BinaryLocator finds the same BrightBodies but labels each frame with a PyramidBlobExtractor, which
+ * refines a pyramid of 2x2 reduced levels from the coarsest level down and only labels the blocks of the frame that hold
+ * bright pixels. This saves most of the labeling on large frames that are mostly empty sky. The ADAPTIVE threshold type
+ * gives every pixel its own threshold, which the pyramid cannot reduce, so it labels the whole frame as a BinaryLocator
+ * does.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class PyramidBinaryLocator extends BinaryLocator {
+    /**
+     * PyramidBlobExtractor of each thread that locates with this PyramidBinaryLocator, so buffers are reused between
+     * frames
+     */
+    private final ThreadLocal<PyramidBlobExtractor> extractors_ = new ThreadLocal<>();
+
+    /**
+     * Constructs a PyramidBinaryLocator object with given data, ThresholdType, and arguments that groups positives
+     * sharing an edge into BrightBodies
+     *
+     * @param data Data extracted from the preprocessor
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public PyramidBinaryLocator(FrameCube data, BinaryLocatorThresholdType threshold_type, float ... args) {
+        this(data, Connectivity.FOUR, threshold_type, args);
+    }
+
+    /**
+     * Constructs a PyramidBinaryLocator object with given data, Connectivity, ThresholdType, and arguments
+     *
+     * @param data Data extracted from the preprocessor
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public PyramidBinaryLocator(FrameCube data, Connectivity connectivity, BinaryLocatorThresholdType threshold_type, float ... args) {
+        super(data, connectivity, threshold_type, args);
+    }
+
+    /**
+     * Constructs a PyramidBinaryLocator object with no data cube that will locate over the frames passed to
+     * locate(FrameIterator)
+     *
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public PyramidBinaryLocator(Connectivity connectivity, BinaryLocatorThresholdType threshold_type, float ... args) {
+        super(connectivity, threshold_type, args);
+    }
+
+    /**
+     * Finds the BrightBodies of a frame with the PyramidBlobExtractor of the calling thread, creating it the first time
+     * it is used or when the frame size changes
+     */
+    @Override
+    protected BrightBodyList extract(float[][] data, float[][] detection, float threshold) {
+        int rows = data.length;
+        int columns = data[0].length;
+        PyramidBlobExtractor extractor = extractors_.get();
+        if(extractor == null || extractor.rows() != rows || extractor.columns() != columns) {
+            extractor = new PyramidBlobExtractor(rows, columns, connectivity_);
+            extractors_.set(extractor);
+        }
+        return extractor.extract(data, detection, threshold);
+    }
+}
@@ -0,0 +1,115 @@
+package core.locate.binary;
+
+import brightbodies.BrightBodyList;
+import core.locate.Connectivity;
+import core.locate.TiledBlobExtractor;
+import cube.FrameCube;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This subclass of BinaryLocator locates BrightBodies the same way but labels each frame in square tiles with a
+ * TiledBlobExtractor. The tiles of a frame are labeled in parallel and BrightBodies that cross tile borders are joined,
+ * so a single large frame such as a full frame image or superstamp is located with every core of the pool. Areas and
+ * centroids are summed in double precision and may differ from those of a BinaryLocator in the last bits.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class TiledBinaryLocator extends BinaryLocator {
+    /**
+     * Height and width of each tile
+     */
+    private final int tile_size_;
+
+    /**
+     * Pool that the tiles of each frame are labeled on
+     */
+    private final ForkJoinPool pool_;
+
+    /**
+     * TiledBlobExtractor of each thread that locates with this TiledBinaryLocator, so buffers are reused between frames
+     */
+    private final ThreadLocal<TiledBlobExtractor> extractors_ = new ThreadLocal<>();
+
+    /**
+     * Constructs a TiledBinaryLocator object with given data, ThresholdType, and arguments that groups positives sharing
+     * an edge into BrightBodies, labeling tiles of the default size on the common ForkJoinPool
+     *
+     * @param data Data extracted from the preprocessor
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public TiledBinaryLocator(FrameCube data, BinaryLocatorThresholdType threshold_type, float ... args) {
+        this(data, TiledBlobExtractor.DEFAULT_TILE_SIZE, ForkJoinPool.commonPool(), Connectivity.FOUR, threshold_type, args);
+    }
+
+    /**
+     * Constructs a TiledBinaryLocator object with given data, tile size, pool, Connectivity, ThresholdType, and arguments
+     *
+     * @param data Data extracted from the preprocessor
+     * @param tile_size Height and width of each tile
+     * @param pool Pool that the tiles of each frame are labeled on
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public TiledBinaryLocator(FrameCube data, int tile_size, ForkJoinPool pool, Connectivity connectivity,
+                              BinaryLocatorThresholdType threshold_type, float ... args) {
+        super(data, connectivity, threshold_type, args);
+
+        tile_size_ = checkTileSize(tile_size);
+        pool_ = pool;
+    }
+
+    /**
+     * Constructs a TiledBinaryLocator object with no data cube that will locate over the frames passed to
+     * locate(FrameIterator)
+     *
+     * @param tile_size Height and width of each tile
+     * @param pool Pool that the tiles of each frame are labeled on
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public TiledBinaryLocator(int tile_size, ForkJoinPool pool, Connectivity connectivity,
+                              BinaryLocatorThresholdType threshold_type, float ... args) {
+        super(connectivity, threshold_type, args);
+
+        tile_size_ = checkTileSize(tile_size);
+        pool_ = pool;
+    }
+
+    /**
+     * Finds the BrightBodies of a frame with the TiledBlobExtractor of the calling thread, creating it the first time it
+     * is used or when the frame size changes
+     */
+    @Override
+    protected BrightBodyList extract(float[][] data, float[][] detection, float threshold) {
+        return tiledExtractor(data.length, data[0].length).extract(data, detection, threshold);
+    }
+
+    /**
+     * Finds the BrightBodies of a frame with per-pixel thresholds using the TiledBlobExtractor of the calling thread
+     */
+    @Override
+    protected BrightBodyList extract(float[][] data, float[][] detection, float[][] thresholds) {
+        return tiledExtractor(data.length, data[0].length).extract(data, detection, thresholds);
+    }
+
+    private TiledBlobExtractor tiledExtractor(int rows, int columns) {
+        TiledBlobExtractor extractor = extractors_.get();
+        if(extractor == null || extractor.rows() != rows || extractor.columns() != columns) {
+            extractor = new TiledBlobExtractor(rows, columns, connectivity_, tile_size_, tile_size_, pool_);
+            extractors_.set(extractor);
+        }
+        return extractor;
+    }
+
+    private static int checkTileSize(int tile_size) {
+        if(tile_size < 1) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        return tile_size;
+    }
+}
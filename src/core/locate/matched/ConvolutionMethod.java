@@ -0,0 +1,22 @@
+package core.locate.matched;
+
+/**
+ * Ways that a Convolver may apply a PsfKernel to a frame
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public enum ConvolutionMethod {
+    /**
+     * One pass of the profile of a separable kernel along the rows and one along the columns
+     */
+    SEPARABLE,
+    /**
+     * Every weight of the kernel applied directly to every pixel, which is fastest for small kernels
+     */
+    DIRECT,
+    /**
+     * Multiplication of the Fourier transforms of the frame and kernel, which is fastest for large kernels
+     */
+    FFT
+}
@@ -0,0 +1,312 @@
+package core.locate.matched;
+
+import java.util.Arrays;
+
+/**
+ * Correlates frames of a fixed size with a PsfKernel into a buffer that is reused for every frame. Frames are extended
+ * past their edges by repeating the edge pixels, so that the filtered frame is not darkened near its edges, and NaN
+ * pixels are treated as zero. Separable kernels are applied as two one dimensional passes, small kernels are applied
+ * directly, and large kernels are applied by multiplying Fourier transforms, so the cost per pixel grows with the width
+ * of a separable kernel and with the logarithm of the frame size for a large kernel instead of with the kernel area.
+ *
+ * Every inner loop runs along a row of contiguous values with a fixed weight. A Convolver must not be shared between
+ * threads, so locators keep one Convolver for each thread.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class Convolver {
+    /**
+     * Largest number of weights of a kernel that is not separable that is applied directly rather than with an FFT
+     */
+    public static final int DIRECT_MAX_AREA = 81;
+
+    private final int rows_;
+    private final int columns_;
+    private final PsfKernel kernel_;
+    private final ConvolutionMethod method_;
+    private final int row_radius_;
+    private final int column_radius_;
+    private final float[][] output_;
+    private final float[][] padded_;
+    private float[][] rows_pass_;
+    private Fft row_fft_;
+    private Fft column_fft_;
+    private double[] real_;
+    private double[] imaginary_;
+    private double[] kernel_real_;
+    private double[] kernel_imaginary_;
+    private double[] line_real_;
+    private double[] line_imaginary_;
+
+    /**
+     * Constructs a Convolver that picks the fastest method for a kernel
+     *
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param kernel kernel to correlate frames with
+     */
+    public Convolver(int rows, int columns, PsfKernel kernel) {
+        this(rows, columns, kernel, fastestMethod(kernel));
+    }
+
+    /**
+     * Constructs a Convolver that applies a kernel with a given method
+     *
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param kernel kernel to correlate frames with
+     * @param method method to apply the kernel with, where SEPARABLE requires a separable kernel
+     */
+    public Convolver(int rows, int columns, PsfKernel kernel, ConvolutionMethod method) {
+        if(method == ConvolutionMethod.SEPARABLE && !kernel.separable()) {
+            throw new IllegalArgumentException("Kernel is not separable");
+        }
+        rows_ = rows;
+        columns_ = columns;
+        kernel_ = kernel;
+        method_ = method;
+        row_radius_ = kernel.rowRadius();
+        column_radius_ = kernel.columnRadius();
+        output_ = new float[rows][columns];
+        padded_ = new float[rows][columns + 2 * column_radius_];
+        switch(method) {
+            case SEPARABLE:
+                rows_pass_ = new float[rows][columns];
+                break;
+            case DIRECT:
+                break;
+            case FFT:
+                prepareFft();
+                break;
+        }
+    }
+
+    /**
+     * Picks SEPARABLE for a separable kernel, DIRECT for a kernel of at most DIRECT_MAX_AREA weights, and FFT otherwise
+     *
+     * @param kernel the kernel
+     * @return fastest method for the kernel
+     */
+    public static ConvolutionMethod fastestMethod(PsfKernel kernel) {
+        if(kernel.separable()) {
+            return ConvolutionMethod.SEPARABLE;
+        }
+        int area = (2 * kernel.rowRadius() + 1) * (2 * kernel.columnRadius() + 1);
+        return area <= DIRECT_MAX_AREA ? ConvolutionMethod.DIRECT : ConvolutionMethod.FFT;
+    }
+
+    /**
+     * @return number of rows in each frame
+     */
+    public int rows() {
+        return rows_;
+    }
+
+    /**
+     * @return number of columns in each frame
+     */
+    public int columns() {
+        return columns_;
+    }
+
+    /**
+     * @return method the kernel is applied with
+     */
+    public ConvolutionMethod method() {
+        return method_;
+    }
+
+    /**
+     * Correlates a frame with the kernel
+     *
+     * @param frame frame indexed [row][column]
+     * @return filtered frame indexed [row][column], which is overwritten by the next call
+     */
+    public float[][] convolve(float[][] frame) {
+        if(frame.length != rows_ || frame[0].length != columns_) {
+            throw new IllegalArgumentException("Frame is not " + rows_ + "x" + columns_);
+        }
+        pad(frame);
+        switch(method_) {
+            case SEPARABLE:
+                separable();
+                break;
+            case DIRECT:
+                direct();
+                break;
+            case FFT:
+                fft();
+                break;
+        }
+        return output_;
+    }
+
+    /**
+     * Copies each row of the frame into a row that is extended by the column radius on each side
+     */
+    private void pad(float[][] frame) {
+        for(int row = 0; row < rows_; row++) {
+            float[] line = frame[row];
+            float[] padded = padded_[row];
+            for(int column = 0; column < columns_; column++) {
+                float value = line[column];
+                padded[column + column_radius_] = value == value ? value : 0.0f;
+            }
+            Arrays.fill(padded, 0, column_radius_, padded[column_radius_]);
+            Arrays.fill(padded, column_radius_ + columns_, padded.length, padded[column_radius_ + columns_ - 1]);
+        }
+    }
+
+    private void separable() {
+        float[] profile = kernel_.profile();
+        for(int row = 0; row < rows_; row++) {
+            float[] padded = padded_[row];
+            float[] out = rows_pass_[row];
+            Arrays.fill(out, 0.0f);
+            for(int offset = 0; offset < profile.length; offset++) {
+                float weight = profile[offset];
+                for(int column = 0; column < columns_; column++) {
+                    out[column] += weight * padded[column + offset];
+                }
+            }
+        }
+        for(int row = 0; row < rows_; row++) {
+            float[] out = output_[row];
+            Arrays.fill(out, 0.0f);
+            for(int offset = 0; offset < profile.length; offset++) {
+                float weight = profile[offset];
+                float[] in = rows_pass_[clampRow(row + offset - row_radius_)];
+                for(int column = 0; column < columns_; column++) {
+                    out[column] += weight * in[column];
+                }
+            }
+        }
+    }
+
+    private void direct() {
+        float[][] weights = kernel_.weightArray();
+        for(int row = 0; row < rows_; row++) {
+            float[] out = output_[row];
+            Arrays.fill(out, 0.0f);
+            for(int row_offset = 0; row_offset < weights.length; row_offset++) {
+                float[] in = padded_[clampRow(row + row_offset - row_radius_)];
+                float[] kernel_row = weights[row_offset];
+                for(int column_offset = 0; column_offset < kernel_row.length; column_offset++) {
+                    float weight = kernel_row[column_offset];
+                    for(int column = 0; column < columns_; column++) {
+                        out[column] += weight * in[column + column_offset];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the transform of the kernel once, placing each weight so that the product of transforms is a correlation
+     */
+    private void prepareFft() {
+        int padded_rows = rows_ + 2 * row_radius_;
+        int padded_columns = columns_ + 2 * column_radius_;
+        row_fft_ = new Fft(Fft.powerOfTwo(padded_columns));
+        column_fft_ = new Fft(Fft.powerOfTwo(padded_rows));
+        int width = row_fft_.length();
+        int height = column_fft_.length();
+        real_ = new double[height * width];
+        imaginary_ = new double[height * width];
+        kernel_real_ = new double[height * width];
+        kernel_imaginary_ = new double[height * width];
+        line_real_ = new double[Math.max(width, height)];
+        line_imaginary_ = new double[Math.max(width, height)];
+
+        float[][] weights = kernel_.weightArray();
+        for(int row = 0; row < weights.length; row++) {
+            for(int column = 0; column < weights[0].length; column++) {
+                int kernel_row = Math.floorMod(row_radius_ - row, height);
+                int kernel_column = Math.floorMod(column_radius_ - column, width);
+                kernel_real_[kernel_row * width + kernel_column] = weights[row][column];
+            }
+        }
+        forward(kernel_real_, kernel_imaginary_, height);
+    }
+
+    private void fft() {
+        int width = row_fft_.length();
+        int height = column_fft_.length();
+        int padded_rows = rows_ + 2 * row_radius_;
+        Arrays.fill(real_, 0.0);
+        Arrays.fill(imaginary_, 0.0);
+        for(int row = 0; row < padded_rows; row++) {
+            float[] in = padded_[clampRow(row - row_radius_)];
+            int offset = row * width;
+            for(int column = 0; column < in.length; column++) {
+                real_[offset + column] = in[column];
+            }
+        }
+        forward(real_, imaginary_, padded_rows);
+        for(int index = 0; index < real_.length; index++) {
+            double real = real_[index] * kernel_real_[index] - imaginary_[index] * kernel_imaginary_[index];
+            imaginary_[index] = real_[index] * kernel_imaginary_[index] + imaginary_[index] * kernel_real_[index];
+            real_[index] = real;
+        }
+        inverse(real_, imaginary_, row_radius_, row_radius_ + rows_);
+        for(int row = 0; row < rows_; row++) {
+            float[] out = output_[row];
+            int offset = (row + row_radius_) * width + column_radius_;
+            for(int column = 0; column < columns_; column++) {
+                out[column] = (float) real_[offset + column];
+            }
+        }
+    }
+
+    /**
+     * Transforms a two dimensional array along its rows and then its columns, skipping the rows past a given count,
+     * which are all zero
+     */
+    private void forward(double[] real, double[] imaginary, int rows) {
+        for(int row = 0; row < rows; row++) {
+            transformRow(real, imaginary, row, false);
+        }
+        transformColumns(real, imaginary, false);
+    }
+
+    /**
+     * Transforms a two dimensional array back along its columns and then along a range of its rows, which are the only
+     * rows that are read afterwards
+     */
+    private void inverse(double[] real, double[] imaginary, int first_row, int last_row) {
+        transformColumns(real, imaginary, true);
+        for(int row = first_row; row < last_row; row++) {
+            transformRow(real, imaginary, row, true);
+        }
+    }
+
+    private void transformColumns(double[] real, double[] imaginary, boolean inverse) {
+        int width = row_fft_.length();
+        int height = column_fft_.length();
+        for(int column = 0; column < width; column++) {
+            for(int row = 0; row < height; row++) {
+                line_real_[row] = real[row * width + column];
+                line_imaginary_[row] = imaginary[row * width + column];
+            }
+            column_fft_.transform(line_real_, line_imaginary_, inverse);
+            for(int row = 0; row < height; row++) {
+                real[row * width + column] = line_real_[row];
+                imaginary[row * width + column] = line_imaginary_[row];
+            }
+        }
+    }
+
+    private void transformRow(double[] real, double[] imaginary, int row, boolean inverse) {
+        int width = row_fft_.length();
+        System.arraycopy(real, row * width, line_real_, 0, width);
+        System.arraycopy(imaginary, row * width, line_imaginary_, 0, width);
+        row_fft_.transform(line_real_, line_imaginary_, inverse);
+        System.arraycopy(line_real_, 0, real, row * width, width);
+        System.arraycopy(line_imaginary_, 0, imaginary, row * width, width);
+    }
+
+    private int clampRow(int row) {
+        return row < 0 ? 0 : row >= rows_ ? rows_ - 1 : row;
+    }
+}
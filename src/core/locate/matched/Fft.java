@@ -0,0 +1,99 @@
+package core.locate.matched;
+
+/**
+ * An iterative radix-2 fast Fourier transform of a fixed power of two length with precomputed twiddle factors and
+ * bit reversal permutation. An Fft holds no state that changes, so it may be shared between threads.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+final class Fft {
+    private final int length_;
+    private final int[] reversed_;
+    private final double[] cos_;
+    private final double[] sin_;
+
+    /**
+     * Constructs an Fft
+     *
+     * @param length length of each transform, which must be a power of two
+     */
+    Fft(int length) {
+        if(length < 1 || Integer.bitCount(length) != 1) {
+            throw new IllegalArgumentException("FFT length must be a power of two");
+        }
+        length_ = length;
+        reversed_ = new int[length];
+        int bits = Integer.numberOfTrailingZeros(length);
+        for(int index = 0; index < length; index++) {
+            reversed_[index] = bits == 0 ? 0 : Integer.reverse(index) >>> (32 - bits);
+        }
+        cos_ = new double[length / 2];
+        sin_ = new double[length / 2];
+        for(int index = 0; index < length / 2; index++) {
+            cos_[index] = Math.cos(2 * Math.PI * index / length);
+            sin_[index] = Math.sin(2 * Math.PI * index / length);
+        }
+    }
+
+    /**
+     * @return length of each transform
+     */
+    int length() {
+        return length_;
+    }
+
+    /**
+     * Finds the smallest power of two that is at least a length
+     */
+    static int powerOfTwo(int length) {
+        return length <= 1 ? 1 : Integer.highestOneBit(length - 1) << 1;
+    }
+
+    /**
+     * Transforms a complex sequence in place. The inverse transform is scaled by the inverse of the length so that it
+     * undoes the forward transform.
+     *
+     * @param real real parts of the sequence
+     * @param imaginary imaginary parts of the sequence
+     * @param inverse true for the inverse transform
+     */
+    void transform(double[] real, double[] imaginary, boolean inverse) {
+        for(int index = 0; index < length_; index++) {
+            int other = reversed_[index];
+            if(other > index) {
+                double swap = real[index];
+                real[index] = real[other];
+                real[other] = swap;
+                swap = imaginary[index];
+                imaginary[index] = imaginary[other];
+                imaginary[other] = swap;
+            }
+        }
+        double sign = inverse ? 1.0 : -1.0;
+        for(int size = 2; size <= length_; size <<= 1) {
+            int half = size / 2;
+            int step = length_ / size;
+            for(int start = 0; start < length_; start += size) {
+                for(int offset = 0; offset < half; offset++) {
+                    double cos = cos_[offset * step];
+                    double sin = sign * sin_[offset * step];
+                    int even = start + offset;
+                    int odd = even + half;
+                    double odd_real = real[odd] * cos - imaginary[odd] * sin;
+                    double odd_imaginary = real[odd] * sin + imaginary[odd] * cos;
+                    real[odd] = real[even] - odd_real;
+                    imaginary[odd] = imaginary[even] - odd_imaginary;
+                    real[even] += odd_real;
+                    imaginary[even] += odd_imaginary;
+                }
+            }
+        }
+        if(inverse) {
+            for(int index = 0; index < length_; index++) {
+                real[index] /= length_;
+                imaginary[index] /= length_;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package core.locate.matched;
+
+import core.locate.Connectivity;
+import core.locate.binary.BinaryLocator;
+import core.locate.binary.BinaryLocatorThresholdType;
+import cube.FrameCube;
+
+/**
+ * This subclass of BinaryLocator correlates each frame with a PsfKernel before thresholding it, which is the matched
+ * filter for point sources. Faint objects whose light is spread over several pixels, such as asteroids, stand out of
+ * the filtered frame far more than any of their pixels stand out of the raw frame. The threshold is computed from the
+ * filtered frame with any BinaryLocatorThresholdType and blobs are labeled on the filtered frame, while the areas and
+ * centroids of the BrightBodies are measured on the raw frame.
+ *
+ * Each thread that locates keeps its own Convolver, so frames are filtered in parallel by locate(ForkJoinPool) without
+ * allocating a buffer per frame.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class MatchedFilterLocator extends BinaryLocator {
+    /**
+     * Kernel each frame is correlated with
+     */
+    private final PsfKernel kernel_;
+
+    /**
+     * Convolver of each thread that locates with this MatchedFilterLocator, so buffers are reused between frames
+     */
+    private final ThreadLocal<Convolver> convolvers_ = new ThreadLocal<>();
+
+    /**
+     * Constructs a MatchedFilterLocator object with given data, kernel, ThresholdType, and arguments that groups
+     * positives sharing an edge into BrightBodies
+     *
+     * @param data Data extracted from the preprocessor
+     * @param kernel Kernel each frame is correlated with
+     * @param threshold_type Threshold calculation method, applied to the filtered frame
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public MatchedFilterLocator(FrameCube data, PsfKernel kernel, BinaryLocatorThresholdType threshold_type, float ... args) {
+        this(data, kernel, Connectivity.FOUR, threshold_type, args);
+    }
+
+    /**
+     * Constructs a MatchedFilterLocator object with given data, kernel, Connectivity, ThresholdType, and arguments
+     *
+     * @param data Data extracted from the preprocessor
+     * @param kernel Kernel each frame is correlated with
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param threshold_type Threshold calculation method, applied to the filtered frame
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public MatchedFilterLocator(FrameCube data, PsfKernel kernel, Connectivity connectivity,
+                                BinaryLocatorThresholdType threshold_type, float ... args) {
+        super(data, connectivity, threshold_type, args);
+
+        kernel_ = kernel;
+    }
+
+    /**
+     * Constructs a MatchedFilterLocator object with no data cube that will locate over the frames passed to
+     * locate(FrameIterator)
+     *
+     * @param kernel Kernel each frame is correlated with
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param threshold_type Threshold calculation method, applied to the filtered frame
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public MatchedFilterLocator(PsfKernel kernel, Connectivity connectivity, BinaryLocatorThresholdType threshold_type, float ... args) {
+        super(connectivity, threshold_type, args);
+
+        kernel_ = kernel;
+    }
+
+    /**
+     * @return kernel each frame is correlated with
+     */
+    public PsfKernel kernel() {
+        return kernel_;
+    }
+
+    /**
+     * Correlates a frame with the kernel using the Convolver of the calling thread, creating it the first time it is
+     * used or when the frame size changes
+     *
+     * @param data The frame indexed [row][column]
+     * @return filtered frame owned by the calling thread
+     */
+    @Override
+    protected float[][] detectionImage(float[][] data) {
+        int rows = data.length;
+        int columns = data[0].length;
+        Convolver convolver = convolvers_.get();
+        if(convolver == null || convolver.rows() != rows || convolver.columns() != columns) {
+            convolver = new Convolver(rows, columns, kernel_);
+            convolvers_.set(convolver);
+        }
+        return convolver.convolve(data);
+    }
+}
@@ -0,0 +1,130 @@
+package core.locate.matched;
+
+/**
+ * A point spread function that frames are correlated with before BrightBodies are detected. Correlating a frame with
+ * the shape of a point source adds up the light of a faint source spread over several pixels while averaging away the
+ * noise of each pixel, which is the matched filter for point sources in white noise. A kernel has an odd number of
+ * rows and columns and is centered on its middle element.
+ *
+ * A Gaussian kernel is separable, so it is stored as a single profile that is applied along the rows and then along the
+ * columns of a frame. Any other kernel is applied as a whole.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class PsfKernel {
+    private final float[][] weights_;
+    private final float[] profile_;
+
+    /**
+     * Constructs a kernel from arbitrary weights, such as a measured PSF
+     *
+     * @param weights weights indexed [row][column] with an odd number of rows and columns, which are copied
+     */
+    public PsfKernel(float[][] weights) {
+        if(weights.length % 2 == 0 || weights[0].length % 2 == 0) {
+            throw new IllegalArgumentException("Kernel must have an odd number of rows and columns");
+        }
+        weights_ = new float[weights.length][];
+        for(int row = 0; row < weights.length; row++) {
+            if(weights[row].length != weights[0].length) {
+                throw new IllegalArgumentException("Kernel must be rectangular");
+            }
+            weights_[row] = weights[row].clone();
+        }
+        profile_ = null;
+    }
+
+    /**
+     * Constructs a separable kernel that is the outer product of a profile with itself
+     */
+    private PsfKernel(float[] profile) {
+        profile_ = profile;
+        weights_ = new float[profile.length][profile.length];
+        for(int row = 0; row < profile.length; row++) {
+            for(int column = 0; column < profile.length; column++) {
+                weights_[row][column] = profile[row] * profile[column];
+            }
+        }
+    }
+
+    /**
+     * Creates a normalized circular Gaussian kernel that reaches three standard deviations from its center
+     *
+     * @param sigma standard deviation of the Gaussian in pixels
+     * @return separable Gaussian kernel
+     */
+    public static PsfKernel gaussian(float sigma) {
+        return gaussian(sigma, (int) Math.ceil(3 * sigma));
+    }
+
+    /**
+     * Creates a normalized circular Gaussian kernel
+     *
+     * @param sigma standard deviation of the Gaussian in pixels
+     * @param radius number of pixels between the center of the kernel and its edges
+     * @return separable Gaussian kernel
+     */
+    public static PsfKernel gaussian(float sigma, int radius) {
+        if(sigma <= 0 || radius < 0) {
+            throw new IllegalArgumentException("Gaussian kernel needs a positive sigma and a radius of at least 0");
+        }
+        float[] profile = new float[2 * radius + 1];
+        double sum = 0.0;
+        for(int offset = -radius; offset <= radius; offset++) {
+            double weight = Math.exp(-0.5 * offset * offset / ((double) sigma * sigma));
+            profile[offset + radius] = (float) weight;
+            sum += weight;
+        }
+        for(int index = 0; index < profile.length; index++) {
+            profile[index] = (float) (profile[index] / sum);
+        }
+        return new PsfKernel(profile);
+    }
+
+    /**
+     * @return number of rows between the center of the kernel and its top and bottom edges
+     */
+    public int rowRadius() {
+        return weights_.length / 2;
+    }
+
+    /**
+     * @return number of columns between the center of the kernel and its left and right edges
+     */
+    public int columnRadius() {
+        return weights_[0].length / 2;
+    }
+
+    /**
+     * @return true if the kernel is stored as a profile applied separately to rows and columns
+     */
+    public boolean separable() {
+        return profile_ != null;
+    }
+
+    /**
+     * @return copy of the weights indexed [row][column]
+     */
+    public float[][] weights() {
+        float[][] weights = new float[weights_.length][];
+        for(int row = 0; row < weights_.length; row++) {
+            weights[row] = weights_[row].clone();
+        }
+        return weights;
+    }
+
+    /**
+     * @return profile of a separable kernel, which must not be modified, or null
+     */
+    float[] profile() {
+        return profile_;
+    }
+
+    /**
+     * @return weights of the kernel, which must not be modified
+     */
+    float[][] weightArray() {
+        return weights_;
+    }
+}
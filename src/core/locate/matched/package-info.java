@@ -0,0 +1,9 @@
+/**
+ * This core.locate.matched package contains MatchedFilterLocator, which locates with the same threshold methods as
+ * core.locate.binary after correlating each frame with a PsfKernel, and the Convolver that applies the kernel with
+ * separable passes, directly, or through an FFT.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+package core.locate.matched;
@@ -1,7 +1,9 @@
 /**
  * The locate package contains the elements for the L of LFT. Classes in this package will locate the BrightBodies in
- * each frame. The top-level abstract class is Locator.java. Currently there is one concrete Locating class: BinaryLocator.
- * Locator classes utilize a helper subclass of BinaryLocatorInstance.
+ * each frame. The top-level abstract class is Locator.java. The concrete Locating classes are BinaryLocator, which labels
+ * each frame for a single threshold, MatchedFilterLocator, which filters each frame with a PsfKernel first, and
+ * ComponentTreeLocator, which keeps a ComponentTree of some frames so that many thresholds can be located without
+ * labeling them again. Locator classes utilize a helper subclass of LocatorInstance.
  *
  * @author Jonathan Zwiebel
  * @version 11 July 2016
@@ -0,0 +1,148 @@
+package core.locate.tree;
+
+import brightbodies.BrightBodyList;
+import core.locate.ComponentTree;
+import core.locate.Connectivity;
+import core.locate.LocatorInstance;
+import core.locate.binary.BinaryLocator;
+import core.locate.binary.BinaryLocatorThresholdType;
+import cube.FrameCube;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This subclass of BinaryLocator finds the same BrightBodies as a BinaryLocator with the same threshold method and
+ * arguments, but keeps a ComponentTree for some frames of its cube once they are first located. A threshold sweep
+ * creates one ComponentTreeLocator and calls withThreshold() for each step, so the frames that have a tree are labeled
+ * once for the whole sweep instead of once per step. Each tree takes 16 bytes per pixel, four times the frame as floats,
+ * so only the trees of the first few frames of the cube are kept, as many as the caller allows. The other frames, the
+ * frames passed to locate(FrameIterator), and the ADAPTIVE threshold type are labeled by a BlobExtractor each time
+ * exactly as a BinaryLocator labels them.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class ComponentTreeLocator extends BinaryLocator {
+    /**
+     * Number of bytes a ComponentTree takes for each pixel of its frame
+     */
+    public static final int TREE_BYTES_PER_PIXEL = 16;
+
+    /**
+     * Tree of each frame that keeps one, shared by every ComponentTreeLocator created by withThreshold()
+     */
+    private final AtomicReferenceArray<ComponentTree> trees_;
+
+    /**
+     * Constructs a ComponentTreeLocator object with given data, ThresholdType, and arguments that groups positives
+     * sharing an edge into BrightBodies
+     *
+     * @param data Data extracted from the preprocessor
+     * @param tree_frames Number of frames at the start of the cube whose trees are kept, which may be 0
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public ComponentTreeLocator(FrameCube data, int tree_frames, BinaryLocatorThresholdType threshold_type, float ... args) {
+        this(data, Connectivity.FOUR, tree_frames, threshold_type, args);
+    }
+
+    /**
+     * Constructs a ComponentTreeLocator object with given data, Connectivity, ThresholdType, and arguments
+     *
+     * @param data Data extracted from the preprocessor
+     * @param connectivity Which neighbors of a positive are grouped into the same BrightBody
+     * @param tree_frames Number of frames at the start of the cube whose trees are kept, which may be 0
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     */
+    public ComponentTreeLocator(FrameCube data, Connectivity connectivity, int tree_frames, BinaryLocatorThresholdType threshold_type, float ... args) {
+        super(data, connectivity, threshold_type, args);
+        if(tree_frames < 0) {
+            throw new IllegalArgumentException("Number of frames to keep trees of is negative: " + tree_frames);
+        }
+        trees_ = new AtomicReferenceArray<>(Math.min(tree_frames, data.frames()));
+    }
+
+    /**
+     * Constructs a ComponentTreeLocator that shares the trees of another
+     */
+    private ComponentTreeLocator(ComponentTreeLocator trees, BinaryLocatorThresholdType threshold_type, float ... args) {
+        super(trees.data_, trees.connectivity_, threshold_type, args);
+        trees_ = trees.trees_;
+    }
+
+    /**
+     * Finds how many trees of the frames of a cube fit in a number of bytes
+     *
+     * @param data The data cube
+     * @param bytes Memory the trees may take
+     * @return Number of frames whose trees fit, at most the number of frames in the cube
+     */
+    public static int treeFrames(FrameCube data, long bytes) {
+        long tree_bytes = (long) TREE_BYTES_PER_PIXEL * data.rows() * data.columns();
+        return tree_bytes == 0 ? data.frames() : (int) Math.min(data.frames(), bytes / tree_bytes);
+    }
+
+    /**
+     * Creates a ComponentTreeLocator over the same cube with a different threshold that reuses every tree this
+     * ComponentTreeLocator has built or will build
+     *
+     * @param threshold_type Threshold calculation method
+     * @param args Additional arguments that may be used in threshold calculation
+     * @return ComponentTreeLocator with the new threshold, which must be initialized before it locates
+     */
+    public ComponentTreeLocator withThreshold(BinaryLocatorThresholdType threshold_type, float ... args) {
+        return new ComponentTreeLocator(this, threshold_type, args);
+    }
+
+    /**
+     * Initializes the ComponentTreeLocator by filling the instances_ array with ComponentTreeLocatorInstances
+     */
+    public void initialize() {
+        instances_ = new ComponentTreeLocatorInstance[data_.frames()];
+
+        for(int index = 0; index < data_.frames(); index++) {
+            instances_[index] = createInstance(data_, index);
+        }
+    }
+
+    /**
+     * Creates a ComponentTreeLocatorInstance for a single frame of a cube
+     *
+     * @param cube The data cube
+     * @param frame Index of the frame within the cube
+     * @return ComponentTreeLocatorInstance over the frame
+     */
+    protected LocatorInstance createInstance(FrameCube cube, int frame) {
+        return new ComponentTreeLocatorInstance(cube, frame);
+    }
+
+    /**
+     * Returns whether a frame is located from a tree rather than labeled by a BlobExtractor
+     *
+     * @param cube The data cube
+     * @param frame Index of the frame within the cube
+     * @return true for the first frames of the cube of this ComponentTreeLocator with a single threshold
+     */
+    boolean keepsTree(FrameCube cube, int frame) {
+        return cube == data_ && frame < trees_.length() && threshold_type_ != BinaryLocatorThresholdType.ADAPTIVE;
+    }
+
+    /**
+     * Finds the BrightBodies of a frame that keeps a tree by cutting the tree at the threshold of the frame, building
+     * the tree if this is the first time the frame is located
+     *
+     * @param frame Index of the frame within the cube
+     * @param data The frame indexed [row][column]
+     * @return BrightBodies of the frame in the order their first pixels are reached
+     */
+    BrightBodyList extract(int frame, float[][] data) {
+        ComponentTree tree = trees_.get(frame);
+        if(tree == null) {
+            // Two threads may build the same tree at once, in which case both trees are identical and one is kept
+            trees_.compareAndSet(frame, null, new ComponentTree(data, connectivity_));
+            tree = trees_.get(frame);
+        }
+        return tree.extract(data, threshold(data), extractor(data.length, data[0].length));
+    }
+}
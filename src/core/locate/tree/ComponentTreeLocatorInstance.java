@@ -0,0 +1,43 @@
+package core.locate.tree;
+
+import brightbodies.BrightBodyList;
+import core.locate.Locator;
+import core.locate.binary.BinaryLocatorInstance;
+import cube.FrameCube;
+
+/**
+ * This subclass of BinaryLocatorInstance is to be used exclusively with a ComponentTreeLocator object. This class
+ * locates the BrightBodies in a frame that keeps a tree by cutting the tree at the threshold of the frame, and in any
+ * other frame the same way a BinaryLocatorInstance does.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class ComponentTreeLocatorInstance extends BinaryLocatorInstance {
+    /**
+     * Constructs a ComponentTreeLocatorInstance over a single frame of a cube that belongs to a ComponentTreeLocator
+     * object.
+     *
+     * @param cube The data cube
+     * @param frame Index of the frame on which to locate BrightBodies
+     */
+    public ComponentTreeLocatorInstance(FrameCube cube, int frame) {
+        super(cube, frame);
+    }
+
+    /**
+     * To be called only by a ComponentTreeLocator's locate() method. This method finds the BrightBodies in the frame
+     * from its tree, building the tree if this is the first time the frame is located.
+     *
+     * @return All BrightBodies in this frame, sorted by area
+     */
+    public BrightBodyList locate(Locator parent) {
+        ComponentTreeLocator locator = (ComponentTreeLocator) parent;
+        if(!locator.keepsTree(cube_, frame_)) {
+            return super.locate(parent);
+        }
+        BrightBodyList bodies = locator.extract(frame_, frame());
+        bodies.sortByArea();
+        return bodies;
+    }
+}
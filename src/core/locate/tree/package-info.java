@@ -0,0 +1,9 @@
+/**
+ * This core.locate.tree package contains classes for a concrete Locator and paired LocatorInstance class that locate
+ * with the same threshold methods as core.locate.binary. Frames within a memory budget are turned into a ComponentTree
+ * once so that the BrightBodies for many thresholds can be found without labeling those frames again for each threshold.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+package core.locate.tree;
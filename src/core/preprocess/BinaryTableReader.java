@@ -0,0 +1,140 @@
+package core.preprocess;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads cells of a FITS binary table extension directly from a memory-mapped file. The header of the extension is
+ * parsed to find the fixed row layout of the table and the data unit is then mapped, so a cell is decoded from its
+ * big-endian bytes straight into the caller's buffer without building nom-tam column arrays. The heap that follows
+ * the rows is mapped as well so that variable length array descriptors can be followed, which is how the tiles of
+ * compressed HDUs are stored.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class BinaryTableReader extends TableReader {
+    /**
+     * Largest region of the heap that is mapped as a single buffer
+     */
+    private static final long HEAP_CHUNK = 1L << 30;
+
+    private final int row_count_;
+    private final int row_bytes_;
+    private final int rows_per_segment_;
+    private final ByteBuffer[] segments_;
+    private final int[] offsets_;
+    private final ByteBuffer[] heap_;
+
+    /**
+     * Constructs a BinaryTableReader over a binary table extension of a FITS file. The file is closed once the data
+     * unit is mapped.
+     *
+     * @param file the FITS file
+     * @param hdu_index index of the binary table HDU, where the primary HDU is index 0
+     * @throws IOException if the file cannot be read or the HDU is not a binary table
+     */
+    public BinaryTableReader(File file, int hdu_index) throws IOException {
+        this(file, FitsHeader.find(file, hdu_index));
+    }
+
+    /**
+     * Constructs a BinaryTableReader over a binary table extension whose header has already been read
+     *
+     * @param file the FITS file
+     * @param header header of the binary table HDU
+     * @throws IOException if the file cannot be read or the HDU is not a binary table
+     */
+    BinaryTableReader(File file, FitsHeader header) throws IOException {
+        super(header, "TFORM");
+        row_bytes_ = header.intValue("NAXIS1");
+        row_count_ = header.intValue("NAXIS2");
+
+        offsets_ = new int[names_.length];
+        int offset = 0;
+        for(int field = 0; field < names_.length; field++) {
+            offsets_[field] = offset;
+            offset += cellBytes(types_[field], repeats_[field]);
+        }
+
+        try(RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            long position = header.dataStart();
+
+            rows_per_segment_ = Math.max(1, Integer.MAX_VALUE / Math.max(1, row_bytes_));
+            int segment_count = (row_count_ + rows_per_segment_ - 1) / rows_per_segment_;
+            segments_ = new ByteBuffer[segment_count];
+            for(int segment = 0; segment < segment_count; segment++) {
+                int segment_rows = Math.min(rows_per_segment_, row_count_ - segment * rows_per_segment_);
+                long start = position + (long) segment * rows_per_segment_ * row_bytes_;
+                segments_[segment] = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) segment_rows * row_bytes_);
+            }
+
+            long table_bytes = (long) row_bytes_ * row_count_;
+            long heap_offset = header.has("THEAP") ? header.longValue("THEAP") : table_bytes;
+            long heap_bytes = header.has("PCOUNT") ? header.longValue("PCOUNT") - (heap_offset - table_bytes) : 0;
+            int chunk_count = (int) ((Math.max(0, heap_bytes) + HEAP_CHUNK - 1) / HEAP_CHUNK);
+            heap_ = new ByteBuffer[chunk_count];
+            for(int chunk = 0; chunk < chunk_count; chunk++) {
+                long start = position + heap_offset + chunk * HEAP_CHUNK;
+                heap_[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(HEAP_CHUNK, heap_bytes - chunk * HEAP_CHUNK));
+            }
+        }
+    }
+
+    public int rows() {
+        return row_count_;
+    }
+
+    /**
+     * Copies the array that a variable length array descriptor cell points to out of the heap
+     *
+     * @param row index of the row
+     * @param column index of a P or Q column
+     * @return big-endian bytes of the array, which are empty if the descriptor has no elements
+     */
+    public byte[] readHeapArray(int row, int column) {
+        ByteBuffer segment = segments_[row / rows_per_segment_];
+        int position = (row % rows_per_segment_) * row_bytes_ + offsets_[column];
+        long count;
+        long offset;
+        if(types_[column] == 'P') {
+            count = segment.getInt(position) & 0xFFFFFFFFL;
+            offset = segment.getInt(position + 4) & 0xFFFFFFFFL;
+        }
+        else if(types_[column] == 'Q') {
+            count = segment.getLong(position);
+            offset = segment.getLong(position + 8);
+        }
+        else {
+            throw new IllegalArgumentException("Column " + names_[column] + " is not a variable length array column");
+        }
+
+        count *= array_types_[column] == 0 ? 1 : elementBytes(array_types_[column]);
+        if(count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Array in row " + row + " of column " + names_[column] + " is too large");
+        }
+        byte[] array = new byte[(int) count];
+        int copied = 0;
+        while(copied < array.length) {
+            long heap_position = offset + copied;
+            ByteBuffer chunk = heap_[(int) (heap_position / HEAP_CHUNK)].duplicate();
+            chunk.position((int) (heap_position % HEAP_CHUNK));
+            int length = Math.min(array.length - copied, chunk.remaining());
+            chunk.get(array, copied, length);
+            copied += length;
+        }
+        return array;
+    }
+
+    ByteBuffer cells(int row, int column) {
+        return segments_[row / rows_per_segment_];
+    }
+
+    int cellPosition(int row, int column) {
+        return (row % rows_per_segment_) * row_bytes_ + offsets_[column];
+    }
+}
@@ -0,0 +1,344 @@
+package core.preprocess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads an image or data cube that was compressed with the FITS tiled image convention. The image is divided into
+ * rectangular tiles that are each compressed on their own and stored as one row of a binary table, so the tiles are
+ * decoded in parallel on a ForkJoinPool and copied into their place in the image. RICE_1, GZIP_1, GZIP_2, and
+ * NOCOMPRESS tiles are supported, including floating point images quantized with or without subtractive dithering.
+ * Images with up to three axes are read as a data cube indexed [frame][row][column].
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class CompressedImageReader {
+    private final BinaryTableReader table_;
+    private final int bitpix_;
+    private final int[] axes_;
+    private final int[] tile_;
+    private final int[] tile_counts_;
+    private final String compression_;
+    private final int block_size_;
+    private final int byte_pix_;
+    private final int quantize_method_;
+    private final int dither_seed_;
+    private final double scale_;
+    private final double zero_;
+    private final boolean quantized_;
+    private final int blank_;
+    private final boolean has_blank_;
+    private final int data_column_;
+    private final int gzip_column_;
+    private final int uncompressed_column_;
+    private final int scale_column_;
+    private final int zero_column_;
+    private final int blank_column_;
+
+    /**
+     * Constructs a CompressedImageReader over a tile-compressed image HDU of a FITS file
+     *
+     * @param file the FITS file
+     * @param hdu_index index of the compressed HDU, where the primary HDU is index 0
+     * @throws IOException if the file cannot be read or the HDU is not a supported compressed image
+     */
+    public CompressedImageReader(File file, int hdu_index) throws IOException {
+        FitsHeader header = FitsHeader.find(file, hdu_index);
+        if(!"T".equals(header.get("ZIMAGE"))) {
+            throw new IOException("HDU " + hdu_index + " of " + file + " is not a compressed image");
+        }
+        table_ = new BinaryTableReader(file, header);
+
+        bitpix_ = header.intValue("ZBITPIX");
+        int axis_count = header.intValue("ZNAXIS");
+        if(axis_count < 1 || axis_count > 3) {
+            throw new IOException("Compressed images with " + axis_count + " axes are not supported");
+        }
+        // Axes are kept in FITS order, where the first axis varies fastest
+        axes_ = new int[3];
+        tile_ = new int[3];
+        tile_counts_ = new int[3];
+        for(int axis = 0; axis < 3; axis++) {
+            axes_[axis] = axis < axis_count ? header.intValue("ZNAXIS" + (axis + 1)) : 1;
+            tile_[axis] = header.intValue("ZTILE" + (axis + 1), axis == 0 ? axes_[0] : 1);
+            tile_counts_[axis] = (axes_[axis] + tile_[axis] - 1) / tile_[axis];
+        }
+
+        compression_ = header.get("ZCMPTYPE");
+        if(compression_ == null) {
+            throw new IOException("Missing required FITS keyword ZCMPTYPE");
+        }
+        int block_size = 32;
+        int byte_pix = bitpix_ < 0 ? 4 : bitpix_ / 8;
+        for(int parameter = 1; header.has("ZNAME" + parameter); parameter++) {
+            String name = header.get("ZNAME" + parameter);
+            if(name.equals("BLOCKSIZE")) {
+                block_size = header.intValue("ZVAL" + parameter);
+            }
+            else if(name.equals("BYTEPIX")) {
+                byte_pix = header.intValue("ZVAL" + parameter);
+            }
+        }
+        block_size_ = block_size;
+        byte_pix_ = byte_pix;
+
+        data_column_ = table_.findColumn("COMPRESSED_DATA");
+        gzip_column_ = table_.findColumn("GZIP_COMPRESSED_DATA");
+        uncompressed_column_ = table_.findColumn("UNCOMPRESSED_DATA");
+        scale_column_ = table_.findColumn("ZSCALE");
+        zero_column_ = table_.findColumn("ZZERO");
+        blank_column_ = table_.findColumn("ZBLANK");
+        if(data_column_ == -1) {
+            throw new IOException("Compressed image has no COMPRESSED_DATA column");
+        }
+
+        // Floating point images are quantized when they carry a scale, integer images are only scaled by it
+        quantized_ = bitpix_ < 0 && (scale_column_ != -1 || header.has("ZSCALE"));
+        scale_ = header.doubleValue("ZSCALE", header.doubleValue("BSCALE", 1.0));
+        zero_ = header.doubleValue("ZZERO", header.doubleValue("BZERO", 0.0));
+        quantize_method_ = bitpix_ < 0 ? TileDecoder.quantizeMethod(header.get("ZQUANTIZ")) : TileDecoder.NO_DITHER;
+        dither_seed_ = header.intValue("ZDITHER0", 1);
+        has_blank_ = header.has("ZBLANK") || header.has("BLANK") || bitpix_ < 0;
+        blank_ = header.intValue("ZBLANK", header.intValue("BLANK", TileDecoder.NULL_VALUE));
+    }
+
+    /**
+     * Determines if an HDU of a FITS file is a tile-compressed image
+     *
+     * @param file the FITS file
+     * @param hdu_index index of the HDU, where the primary HDU is index 0
+     * @return true if the HDU is a compressed image
+     * @throws IOException
+     */
+    public static boolean isCompressedImage(File file, int hdu_index) throws IOException {
+        return "T".equals(FitsHeader.find(file, hdu_index).get("ZIMAGE"));
+    }
+
+    /**
+     * @return number of frames, rows, and columns of the image
+     */
+    public int[] dimensions() {
+        return new int[]{axes_[2], axes_[1], axes_[0]};
+    }
+
+    /**
+     * Decompresses the whole image on the common ForkJoinPool
+     *
+     * @return the image indexed [frame][row][column]
+     * @throws IOException if a tile cannot be decompressed
+     */
+    public float[][][] read() throws IOException {
+        return read(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decompresses the whole image with each tile decoded as a separate task on a ForkJoinPool
+     *
+     * @param pool pool to decode tiles on
+     * @return the image indexed [frame][row][column]
+     * @throws IOException if a tile cannot be decompressed
+     */
+    public float[][][] read(ForkJoinPool pool) throws IOException {
+        float[][][] image = new float[axes_[2]][axes_[1]][axes_[0]];
+        try {
+            pool.invoke(new TileTask(image, 0, table_.rows()));
+        }
+        catch(IllegalStateException e) {
+            // The exception may be rewrapped when it crosses threads, so the IOException is searched for
+            for(Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if(cause instanceof IOException) {
+                    throw new IOException(e.getMessage(), cause);
+                }
+            }
+            throw e;
+        }
+        return image;
+    }
+
+    /**
+     * Decompresses a single tile and copies it into its place in the image
+     *
+     * @param tile index of the tile, which is the row of the compressed table
+     * @param image the image indexed [frame][row][column]
+     * @throws IOException if the tile cannot be decompressed
+     */
+    private void decodeTile(int tile, float[][][] image) throws IOException {
+        int column_tile = tile % tile_counts_[0];
+        int row_tile = tile / tile_counts_[0] % tile_counts_[1];
+        int frame_tile = tile / (tile_counts_[0] * tile_counts_[1]);
+        int first_column = column_tile * tile_[0];
+        int first_row = row_tile * tile_[1];
+        int first_frame = frame_tile * tile_[2];
+        int columns = Math.min(tile_[0], axes_[0] - first_column);
+        int rows = Math.min(tile_[1], axes_[1] - first_row);
+        int frames = Math.min(tile_[2], axes_[2] - first_frame);
+
+        float[] values = decodeValues(tile, columns * rows * frames);
+
+        int index = 0;
+        for(int frame = 0; frame < frames; frame++) {
+            for(int row = 0; row < rows; row++) {
+                System.arraycopy(values, index, image[first_frame + frame][first_row + row], first_column, columns);
+                index += columns;
+            }
+        }
+    }
+
+    /**
+     * Decompresses the values of a single tile in FITS order
+     *
+     * @param tile index of the tile
+     * @param count number of pixels in the tile
+     * @return the physical values of the tile
+     * @throws IOException if the tile cannot be decompressed
+     */
+    private float[] decodeValues(int tile, int count) throws IOException {
+        float[] values = new float[count];
+        byte[] input = table_.readHeapArray(tile, data_column_);
+
+        // Tiles that could not be quantized are stored losslessly in one of the fallback columns
+        if(input.length == 0) {
+            if(gzip_column_ != -1 && (input = table_.readHeapArray(tile, gzip_column_)).length > 0) {
+                return rawValues(TileDecoder.gunzip(input, count * Math.abs(bitpix_) / 8), count);
+            }
+            if(uncompressed_column_ != -1) {
+                return rawValues(table_.readHeapArray(tile, uncompressed_column_), count);
+            }
+            throw new IOException("Tile " + tile + " of the compressed image is empty");
+        }
+
+        if(bitpix_ < 0 && !quantized_) {
+            int value_bytes = count * Math.abs(bitpix_) / 8;
+            switch(compression_) {
+                case "GZIP_1":
+                    return rawValues(TileDecoder.gunzip(input, value_bytes), count);
+                case "GZIP_2":
+                    return rawValues(TileDecoder.unshuffle(TileDecoder.gunzip(input, value_bytes), Math.abs(bitpix_) / 8), count);
+                case "NOCOMPRESS":
+                    return rawValues(input, count);
+                default:
+                    throw new IOException("Unsupported compression " + compression_ + " for an unquantized floating point image");
+            }
+        }
+
+        int[] integers;
+        switch(compression_) {
+            case "RICE_1":
+                integers = TileDecoder.rice(input, count, block_size_, byte_pix_);
+                break;
+            case "GZIP_1":
+                integers = integers(TileDecoder.gunzip(input, count * integerBytes()), count);
+                break;
+            case "GZIP_2":
+                integers = integers(TileDecoder.unshuffle(TileDecoder.gunzip(input, count * integerBytes()), integerBytes()), count);
+                break;
+            case "NOCOMPRESS":
+                integers = integers(input, count);
+                break;
+            default:
+                throw new IOException("Unsupported compression " + compression_);
+        }
+
+        double scale = scale_column_ == -1 ? scale_ : table_.readDouble(tile, scale_column_);
+        double zero = zero_column_ == -1 ? zero_ : table_.readDouble(tile, zero_column_);
+        int blank = blank_column_ == -1 ? blank_ : table_.readInt(tile, blank_column_);
+        if(quantized_) {
+            TileDecoder.unquantize(integers, scale, zero, blank, quantize_method_, tile, dither_seed_, values);
+            return values;
+        }
+        boolean has_blank = has_blank_ || blank_column_ != -1;
+        for(int i = 0; i < count; i++) {
+            values[i] = has_blank && integers[i] == blank ? Float.NaN : (float) (integers[i] * scale + zero);
+        }
+        return values;
+    }
+
+    /**
+     * @return number of bytes used by each integer of an uncompressed tile
+     */
+    private int integerBytes() {
+        return bitpix_ < 0 ? 4 : bitpix_ / 8;
+    }
+
+    /**
+     * Converts big-endian integers of the width of the image to ints
+     */
+    private int[] integers(byte[] bytes, int count) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] integers = new int[count];
+        for(int i = 0; i < count; i++) {
+            switch(integerBytes()) {
+                case 1:
+                    integers[i] = buffer.get() & 0xFF;
+                    break;
+                case 2:
+                    integers[i] = buffer.getShort();
+                    break;
+                case 4:
+                    integers[i] = buffer.getInt();
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported ZBITPIX " + bitpix_);
+            }
+        }
+        return integers;
+    }
+
+    /**
+     * Converts big-endian values of type ZBITPIX to floats without any scaling
+     */
+    private float[] rawValues(byte[] bytes, int count) {
+        if(bitpix_ > 0) {
+            int[] integers = integers(bytes, count);
+            float[] values = new float[count];
+            for(int i = 0; i < count; i++) {
+                values[i] = (float) (integers[i] * scale_ + zero_);
+            }
+            return values;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        float[] values = new float[count];
+        for(int i = 0; i < count; i++) {
+            values[i] = bitpix_ == -32 ? buffer.getFloat() : (float) buffer.getDouble();
+        }
+        return values;
+    }
+
+    /**
+     * Decompresses a range of tiles, splitting the range in half until it is small enough to decode directly
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 4;
+
+        private final float[][][] image_;
+        private final int first_;
+        private final int last_;
+
+        TileTask(float[][][] image, int first, int last) {
+            image_ = image;
+            first_ = first;
+            last_ = last;
+        }
+
+        protected void compute() {
+            if(last_ - first_ > THRESHOLD) {
+                int middle = (first_ + last_) >>> 1;
+                invokeAll(new TileTask(image_, first_, middle), new TileTask(image_, middle, last_));
+                return;
+            }
+            for(int tile = first_; tile < last_; tile++) {
+                try {
+                    decodeTile(tile, image_);
+                }
+                catch(IOException e) {
+                    throw new IllegalStateException("Unable to decompress tile " + tile, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package core.preprocess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads a binary table that was compressed with the FITS tiled table convention. Each row of the compressed table
+ * holds one tile of ZTILELEN rows of the original table and each column of that row holds the compressed values of
+ * the matching original column for those rows. A column is decompressed in full the first time one of its cells is
+ * read, with its tiles decoded in parallel on a ForkJoinPool. Columns that are never read are never decompressed.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+final class CompressedTableReader extends TableReader {
+    private final BinaryTableReader compressed_;
+    private final ForkJoinPool pool_;
+    private final int row_count_;
+    private final int tile_rows_;
+    private final String[] compression_;
+    private final ByteBuffer[] columns_;
+
+    /**
+     * Constructs a CompressedTableReader that decodes tiles on the common ForkJoinPool
+     *
+     * @param compressed reader over the compressed table itself
+     * @param header header of the compressed table
+     * @throws IOException if the header does not describe a compressed table
+     */
+    CompressedTableReader(BinaryTableReader compressed, FitsHeader header) throws IOException {
+        this(compressed, header, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a CompressedTableReader
+     *
+     * @param compressed reader over the compressed table itself
+     * @param header header of the compressed table
+     * @param pool pool to decode tiles on
+     * @throws IOException if the header does not describe a compressed table
+     */
+    CompressedTableReader(BinaryTableReader compressed, FitsHeader header, ForkJoinPool pool) throws IOException {
+        super(header, "ZFORM");
+        compressed_ = compressed;
+        pool_ = pool;
+        row_count_ = header.intValue("ZNAXIS2");
+        tile_rows_ = header.intValue("ZTILELEN", row_count_);
+        compression_ = new String[names_.length];
+        for(int column = 0; column < names_.length; column++) {
+            compression_[column] = header.get("ZCTYP" + (column + 1));
+            if(compression_[column] == null) {
+                throw new IOException("Missing required FITS keyword ZCTYP" + (column + 1));
+            }
+            if(types_[column] == 'P' || types_[column] == 'Q') {
+                compression_[column] = null;
+            }
+        }
+        columns_ = new ByteBuffer[names_.length];
+    }
+
+    public int rows() {
+        return row_count_;
+    }
+
+    ByteBuffer cells(int row, int column) {
+        return column(column);
+    }
+
+    int cellPosition(int row, int column) {
+        return row * cellBytes(types_[column], repeats_[column]);
+    }
+
+    /**
+     * Returns the decompressed values of a whole column, decompressing it if this is the first time it is read
+     *
+     * @param column index of the column
+     * @return big-endian buffer holding every cell of the column in row order
+     */
+    private ByteBuffer column(int column) {
+        synchronized(columns_) {
+            if(columns_[column] != null) {
+                return columns_[column];
+            }
+        }
+        if(compression_[column] == null) {
+            throw new IllegalArgumentException("Column " + names_[column] + " is a variable length array column");
+        }
+        long column_bytes = (long) row_count_ * cellBytes(types_[column], repeats_[column]);
+        if(column_bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Column " + names_[column] + " is too large to decompress");
+        }
+
+        byte[] data = new byte[(int) column_bytes];
+        pool_.invoke(new TileTask(column, data, 0, compressed_.rows()));
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        synchronized(columns_) {
+            columns_[column] = buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Decompresses the tiles of one column from a single row of the compressed table into their place in the column
+     *
+     * @param column index of the column
+     * @param tile index of the tile, which is the row of the compressed table
+     * @param data the decompressed column
+     * @throws IOException if the tile cannot be decompressed
+     */
+    private void decodeTile(int column, int tile, byte[] data) throws IOException {
+        int cell_bytes = cellBytes(types_[column], repeats_[column]);
+        int rows = Math.min(tile_rows_, row_count_ - tile * tile_rows_);
+        int length = rows * cell_bytes;
+        int element_bytes = types_[column] == 'X' ? 1 : elementBytes(types_[column]);
+        byte[] input = compressed_.readHeapArray(tile, column);
+
+        byte[] output;
+        switch(compression_[column]) {
+            case "GZIP_1":
+                output = TileDecoder.gunzip(input, length);
+                break;
+            case "GZIP_2":
+                output = TileDecoder.unshuffle(TileDecoder.gunzip(input, length), element_bytes);
+                break;
+            case "RICE_1":
+                output = riceBytes(input, length / element_bytes, element_bytes);
+                break;
+            case "NOCOMPRESS":
+                output = input;
+                break;
+            default:
+                throw new IOException("Unsupported compression " + compression_[column] + " for column " + names_[column]);
+        }
+        if(output.length < length) {
+            throw new IOException("Tile " + tile + " of column " + names_[column] + " holds " + output.length + " of " + length + " bytes");
+        }
+        System.arraycopy(output, 0, data, tile * tile_rows_ * cell_bytes, length);
+    }
+
+    /**
+     * Decompresses a Rice compressed tile of an integer column back into big-endian bytes
+     */
+    private static byte[] riceBytes(byte[] input, int count, int element_bytes) throws IOException {
+        int[] values = TileDecoder.rice(input, count, 32, element_bytes);
+        ByteBuffer output = ByteBuffer.allocate(count * element_bytes);
+        for(int value : values) {
+            if(element_bytes == 1) {
+                output.put((byte) value);
+            }
+            else if(element_bytes == 2) {
+                output.putShort((short) value);
+            }
+            else {
+                output.putInt(value);
+            }
+        }
+        return output.array();
+    }
+
+    /**
+     * Decompresses a range of tiles of a column, splitting the range in half until it is small enough to decode
+     * directly
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 4;
+
+        private final int column_;
+        private final byte[] data_;
+        private final int first_;
+        private final int last_;
+
+        TileTask(int column, byte[] data, int first, int last) {
+            column_ = column;
+            data_ = data;
+            first_ = first;
+            last_ = last;
+        }
+
+        protected void compute() {
+            if(last_ - first_ > THRESHOLD) {
+                int middle = (first_ + last_) >>> 1;
+                invokeAll(new TileTask(column_, data_, first_, middle), new TileTask(column_, data_, middle, last_));
+                return;
+            }
+            for(int tile = first_; tile < last_; tile++) {
+                try {
+                    decodeTile(column_, tile, data_);
+                }
+                catch(IOException e) {
+                    throw new IllegalStateException("Unable to decompress tile " + tile + " of column " + names_[column_], e);
+                }
+            }
+        }
+    }
+}
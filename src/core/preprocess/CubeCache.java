@@ -0,0 +1,315 @@
+package core.preprocess;
+
+import cube.BufferFrameCube;
+import cube.FrameCube;
+import nom.tam.fits.FitsException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a binary copy of the cube produced by a Preprocessor on disk so that later runs over the same FITS file can
+ * memory-map the cleaned cube instead of decoding the file again. A cache file is reused only if the length and
+ * modification time of the FITS file and the Preprocessor that built it all match what is stored in its header, so
+ * finding a valid cache does not read the FITS file. If only the modification time differs, as it does for a copied
+ * file, the CRC32 of the FITS file is compared instead and the cache is reused if the contents are unchanged.
+ *
+ * The cache file is little-endian and laid out as follows:
+ *  header  - magic, version, frame count, rows, columns, FITS file length, FITS file modification time,
+ *            FITS file CRC32, Preprocessor hash
+ *  data    - every frame in row-major order as 4 byte floats
+ *  indices - the index within the FITS file of each kept frame as 4 byte integers
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class CubeCache {
+    /**
+     * Extension given to cache files
+     */
+    public static final String EXTENSION = ".cube";
+
+    private static final int MAGIC = 0x4B324342;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int CHECKSUM_CHUNK = 1 << 26;
+
+    private final File directory_;
+
+    /**
+     * Constructs a CubeCache that stores each cache file beside the FITS file it was built from
+     */
+    public CubeCache() {
+        directory_ = null;
+    }
+
+    /**
+     * Constructs a CubeCache that stores every cache file in a single directory
+     *
+     * @param directory directory to hold the cache files, created if it does not exist
+     */
+    public CubeCache(File directory) {
+        directory_ = directory;
+    }
+
+    /**
+     * Returns the cleaned cube for a FITS file. If a valid cache file exists it is memory-mapped, otherwise the
+     * Preprocessor decodes the file and the result is written to the cache before being mapped. If the cache file
+     * cannot be written the cube is read into direct buffers instead.
+     *
+     * @param fits_file the FITS file that the Preprocessor reads
+     * @param preprocessor Preprocessor over fits_file, only used when the cache is missing or stale
+     * @return cleaned data cube
+     * @throws FitsException
+     * @throws IOException
+     */
+    public FrameCube read(File fits_file, Preprocessor preprocessor) throws FitsException, IOException {
+        int preprocessor_hash = hash(preprocessor);
+        File cache_file = cacheFile(fits_file, preprocessor);
+
+        FrameCube cube = map(cache_file, fits_file, preprocessor_hash);
+        if(cube != null) {
+            return cube;
+        }
+
+        // The stamp is taken before decoding so a change to the FITS file during the write makes the cache stale
+        long length = fits_file.length();
+        long modified = fits_file.lastModified();
+        try {
+            write(cache_file, preprocessor.frames(), length, modified, checksum(fits_file), preprocessor_hash);
+        }
+        catch(IOException e) {
+            System.err.println("Unable to write cube cache " + cache_file + ": " + e.getMessage());
+            return preprocessor.readCube();
+        }
+        cube = map(cache_file, fits_file, preprocessor_hash);
+        return cube != null ? cube : preprocessor.readCube();
+    }
+
+    /**
+     * Returns the index within the FITS file of each frame of a cached cube. The cache must have been filled by
+     * read(File, Preprocessor).
+     *
+     * @param fits_file the FITS file that the cache was built from
+     * @param preprocessor Preprocessor that the cache was built with
+     * @return index of each kept frame
+     * @throws IOException if the cache is missing or stale
+     */
+    public int[] readIndices(File fits_file, Preprocessor preprocessor) throws IOException {
+        File cache_file = cacheFile(fits_file, preprocessor);
+        if(!cache_file.isFile()) {
+            throw new IOException("No cube cache " + cache_file);
+        }
+        try(RandomAccessFile file = new RandomAccessFile(cache_file, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = readHeader(channel);
+            if(!isValid(header, channel.size(), cache_file, fits_file, hash(preprocessor))) {
+                throw new IOException("Cube cache " + cache_file + " does not match " + fits_file);
+            }
+            int frames = header.getInt(8);
+            long data_bytes = (long) frames * header.getInt(12) * header.getInt(16) * 4;
+
+            ByteBuffer bytes = ByteBuffer.allocate(frames * 4).order(ORDER);
+            channel.read(bytes, HEADER_BYTES + data_bytes);
+            bytes.flip();
+            int[] indices = new int[frames];
+            bytes.asIntBuffer().get(indices);
+            return indices;
+        }
+    }
+
+    /**
+     * Identifies the Preprocessor that built a cache by its class and configuration
+     */
+    private static int hash(Preprocessor preprocessor) {
+        return (preprocessor.getClass().getName() + preprocessor.configuration()).hashCode();
+    }
+
+    /**
+     * Determines the location of the cache file for a FITS file. Preprocessors with a non-default configuration are
+     * given their own cache file so that they do not replace the cache of the whole file. In a shared directory the
+     * name includes a hash of the path of the FITS file so that files with the same name do not share a cache.
+     *
+     * @param fits_file the FITS file
+     * @param preprocessor Preprocessor that builds the cache
+     * @return location of the cache file
+     */
+    private File cacheFile(File fits_file, Preprocessor preprocessor) {
+        String configuration = preprocessor.configuration().isEmpty() ? "" : "-" + preprocessor.configuration();
+        if(directory_ == null) {
+            return new File(fits_file.getPath() + configuration + EXTENSION);
+        }
+        if(!directory_.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            directory_.mkdirs();
+        }
+        String path_hash = Integer.toHexString(fits_file.getAbsolutePath().hashCode());
+        return new File(directory_, fits_file.getName() + "-" + path_hash + configuration + EXTENSION);
+    }
+
+    /**
+     * Memory-maps a cache file if it exists and matches the given FITS file and Preprocessor
+     *
+     * @return the cached cube or null if the cache file is missing or stale
+     * @throws IOException
+     */
+    private static FrameCube map(File cache_file, File fits_file, int preprocessor_hash) throws IOException {
+        if(!cache_file.isFile()) {
+            return null;
+        }
+        try(RandomAccessFile file = new RandomAccessFile(cache_file, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = readHeader(channel);
+            if(!isValid(header, channel.size(), cache_file, fits_file, preprocessor_hash)) {
+                return null;
+            }
+            return BufferFrameCube.map(channel, HEADER_BYTES, header.getInt(8), header.getInt(12), header.getInt(16), ORDER);
+        }
+    }
+
+    /**
+     * Determines if the header of a cache file describes a complete cache of a FITS file built by a Preprocessor. The
+     * FITS file is only read if its length matches but its modification time does not, in which case the cache is
+     * given the new modification time if its contents match so that the next check does not read the file again.
+     *
+     * @param header header of the cache file
+     * @param cache_length length of the cache file
+     * @param cache_file the cache file
+     * @param fits_file the FITS file
+     * @param preprocessor_hash hash of the Preprocessor
+     * @return true if the cache can be used
+     * @throws IOException
+     */
+    private static boolean isValid(ByteBuffer header, long cache_length, File cache_file, File fits_file, int preprocessor_hash) throws IOException {
+        if(cache_length < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || header.getLong(20) != fits_file.length() || header.getInt(44) != preprocessor_hash) {
+            return false;
+        }
+        int frames = header.getInt(8);
+        int rows = header.getInt(12);
+        int columns = header.getInt(16);
+        if(frames < 0 || rows < 0 || columns < 0
+                || cache_length != HEADER_BYTES + (long) frames * rows * columns * 4 + (long) frames * 4) {
+            return false;
+        }
+
+        long modified = fits_file.lastModified();
+        if(header.getLong(28) == modified) {
+            return true;
+        }
+        if(header.getLong(36) != checksum(fits_file)) {
+            return false;
+        }
+        try(RandomAccessFile file = new RandomAccessFile(cache_file, "rw")) {
+            file.getChannel().write(ByteBuffer.allocate(8).order(ORDER).putLong(0, modified), 28);
+        }
+        catch(IOException e) {
+            // A read-only cache is still valid, it is just checked against the checksum every time
+        }
+        return true;
+    }
+
+    /**
+     * Writes every frame of an iterator to a cache file. The file is written under a temporary name and moved into
+     * place once complete so a partially written cache is never mapped. Decoding the frames overlaps with writing them.
+     *
+     * @throws IOException
+     */
+    private static void write(File cache_file, FrameIterator source, long source_length, long source_modified, long checksum, int preprocessor_hash) throws IOException {
+        File temporary_file = new File(cache_file.getPath() + ".tmp");
+        int rows = source.rows();
+        int columns = source.columns();
+
+        // Frames are decoded on a separate thread while the previous ones are written
+        try(PrefetchingFrameIterator frames = new PrefetchingFrameIterator(source);
+            RandomAccessFile file = new RandomAccessFile(temporary_file, "rw")) {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            channel.position(HEADER_BYTES);
+
+            float[] frame = new float[rows * columns];
+            ByteBuffer frame_bytes = ByteBuffer.allocateDirect(rows * columns * 4).order(ORDER);
+            ByteBuffer index_bytes = ByteBuffer.allocate(1024).order(ORDER);
+            int frame_count = 0;
+            while(frames.hasNext()) {
+                frames.next(frame);
+                frame_bytes.clear();
+                frame_bytes.asFloatBuffer().put(frame);
+                while(frame_bytes.hasRemaining()) {
+                    channel.write(frame_bytes);
+                }
+
+                if(!index_bytes.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(index_bytes.capacity() * 2).order(ORDER);
+                    index_bytes.flip();
+                    larger.put(index_bytes);
+                    index_bytes = larger;
+                }
+                index_bytes.putInt(frames.index());
+                frame_count++;
+            }
+
+            index_bytes.flip();
+            while(index_bytes.hasRemaining()) {
+                channel.write(index_bytes);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, frame_count);
+            header.putInt(12, rows);
+            header.putInt(16, columns);
+            header.putLong(20, source_length);
+            header.putLong(28, source_modified);
+            header.putLong(36, checksum);
+            header.putInt(44, preprocessor_hash);
+            channel.write(header, 0);
+            channel.force(true);
+        }
+
+        Files.move(temporary_file.toPath(), cache_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the fixed size header at the start of a cache file
+     *
+     * @throws IOException
+     */
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+        while(header.hasRemaining()) {
+            if(channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Computes the CRC32 checksum of an entire file by memory-mapping it in large chunks
+     *
+     * @param file the file
+     * @return checksum of the file
+     * @throws IOException
+     */
+    static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try(RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            for(long position = 0; position < size; position += CHECKSUM_CHUNK) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHECKSUM_CHUNK, size - position)));
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,226 @@
+package core.preprocess;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * The keywords of a single FITS header unit, parsed directly from the 80 character cards of a file, together with the
+ * position of the data unit that follows it. Only the value of each keyword is kept; quoted strings are unquoted and
+ * trimmed and comments are dropped.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+final class FitsHeader {
+    static final int BLOCK_SIZE = 2880;
+    private static final int CARD_SIZE = 80;
+
+    private final HashMap<String, String> values_;
+    private final long data_start_;
+
+    private FitsHeader(HashMap<String, String> values, long data_start) {
+        values_ = values;
+        data_start_ = data_start;
+    }
+
+    /**
+     * Finds the header of an HDU of a FITS file by skipping over the HDUs before it
+     *
+     * @param file the FITS file
+     * @param hdu_index index of the HDU, where the primary HDU is index 0
+     * @return header of the HDU
+     * @throws IOException
+     */
+    static FitsHeader find(File file, int hdu_index) throws IOException {
+        try(RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            FitsHeader header = read(channel, 0);
+            for(int hdu = 1; hdu <= hdu_index; hdu++) {
+                header = read(channel, header.dataStart() + paddedSize(header.dataSize()));
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Parses 80 character header cards from a block aligned position until the END card
+     *
+     * @param channel channel of the FITS file
+     * @param position position of the first card
+     * @return the parsed header
+     * @throws IOException
+     */
+    static FitsHeader read(FileChannel channel, long position) throws IOException {
+        HashMap<String, String> values = new HashMap<>();
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        while(true) {
+            block.clear();
+            while(block.hasRemaining()) {
+                if(channel.read(block, position + block.position()) < 0) {
+                    throw new IOException("Unexpected end of file while reading a FITS header");
+                }
+            }
+            position += BLOCK_SIZE;
+
+            for(int card = 0; card < BLOCK_SIZE / CARD_SIZE; card++) {
+                String text = new String(block.array(), card * CARD_SIZE, CARD_SIZE, StandardCharsets.US_ASCII);
+                String keyword = text.substring(0, 8).trim();
+                if(keyword.equals("END")) {
+                    return new FitsHeader(values, position);
+                }
+                if(text.charAt(8) == '=') {
+                    values.put(keyword, parseValue(text.substring(10)));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param keyword the keyword
+     * @return value of the keyword or null if it is not present
+     */
+    String get(String keyword) {
+        return values_.get(keyword);
+    }
+
+    /**
+     * @param keyword the keyword
+     * @return true if the keyword is present
+     */
+    boolean has(String keyword) {
+        return values_.containsKey(keyword);
+    }
+
+    /**
+     * Returns the value of a required integer keyword
+     *
+     * @param keyword the keyword
+     * @return value of the keyword
+     * @throws IOException if the keyword is missing or not an integer
+     */
+    int intValue(String keyword) throws IOException {
+        return (int) longValue(keyword);
+    }
+
+    /**
+     * Returns the value of an optional integer keyword
+     *
+     * @param keyword the keyword
+     * @param default_value value returned if the keyword is missing
+     * @return value of the keyword
+     * @throws IOException if the keyword is not an integer
+     */
+    int intValue(String keyword, int default_value) throws IOException {
+        return has(keyword) ? intValue(keyword) : default_value;
+    }
+
+    /**
+     * Returns the value of a required integer keyword that may exceed the range of an int
+     *
+     * @param keyword the keyword
+     * @return value of the keyword
+     * @throws IOException if the keyword is missing or not an integer
+     */
+    long longValue(String keyword) throws IOException {
+        String value = values_.get(keyword);
+        if(value == null) {
+            throw new IOException("Missing required FITS keyword " + keyword);
+        }
+        try {
+            return Long.parseLong(value);
+        }
+        catch(NumberFormatException e) {
+            throw new IOException("FITS keyword " + keyword + " is not an integer: " + value);
+        }
+    }
+
+    /**
+     * Returns the value of an optional floating point keyword
+     *
+     * @param keyword the keyword
+     * @param default_value value returned if the keyword is missing
+     * @return value of the keyword
+     * @throws IOException if the keyword is not a number
+     */
+    double doubleValue(String keyword, double default_value) throws IOException {
+        String value = values_.get(keyword);
+        if(value == null) {
+            return default_value;
+        }
+        try {
+            // Fortran style exponents are allowed in FITS headers
+            return Double.parseDouble(value.replace('D', 'E'));
+        }
+        catch(NumberFormatException e) {
+            throw new IOException("FITS keyword " + keyword + " is not a number: " + value);
+        }
+    }
+
+    /**
+     * @return position of the data unit following the header
+     */
+    long dataStart() {
+        return data_start_;
+    }
+
+    /**
+     * Computes the size in bytes of the data unit described by the header, not including padding
+     *
+     * @return size of the data unit
+     * @throws IOException
+     */
+    long dataSize() throws IOException {
+        int axes = intValue("NAXIS");
+        if(axes == 0) {
+            return 0;
+        }
+        // Random groups have NAXIS1 = 0 and it is not counted in the size of the data unit
+        int first_axis = "T".equals(get("GROUPS")) && intValue("NAXIS1") == 0 ? 2 : 1;
+        long size = 1;
+        for(int axis = first_axis; axis <= axes; axis++) {
+            size *= longValue("NAXIS" + axis);
+        }
+        long pcount = has("PCOUNT") ? longValue("PCOUNT") : 0;
+        long gcount = has("GCOUNT") ? longValue("GCOUNT") : 1;
+        return Math.abs(intValue("BITPIX")) / 8 * gcount * (pcount + size);
+    }
+
+    /**
+     * Rounds a size up to a whole number of FITS blocks
+     */
+    static long paddedSize(long size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    /**
+     * Extracts the value from the value and comment section of a header card. Quoted strings are unquoted and
+     * trimmed.
+     */
+    private static String parseValue(String field) {
+        String value = field.trim();
+        if(value.startsWith("'")) {
+            int end = 1;
+            StringBuilder builder = new StringBuilder();
+            while(end < value.length()) {
+                if(value.charAt(end) == '\'') {
+                    if(end + 1 < value.length() && value.charAt(end + 1) == '\'') {
+                        builder.append('\'');
+                        end += 2;
+                        continue;
+                    }
+                    break;
+                }
+                builder.append(value.charAt(end));
+                end++;
+            }
+            return builder.toString().trim();
+        }
+        int comment = value.indexOf('/');
+        return (comment == -1 ? value : value.substring(0, comment)).trim();
+    }
+}
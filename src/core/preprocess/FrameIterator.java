@@ -0,0 +1,75 @@
+package core.preprocess;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * An iterator over the frames of a data set that is decoded one frame at a time by a Preprocessor. Only the frames that
+ * the Preprocessor considers valid are returned, so a consumer never needs the whole data cube to be resident. Each
+ * frame is indexed [row][column] in the same way as a slice of the cube returned by Preprocessor.read().
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public abstract class FrameIterator implements Iterator<float[][]> {
+    /**
+     * Returns the number of rows in each frame
+     *
+     * @return row count
+     */
+    public abstract int rows();
+
+    /**
+     * Returns the number of columns in each frame
+     *
+     * @return column count
+     */
+    public abstract int columns();
+
+    /**
+     * Returns the index within the file, such as the row of a binary table, of the frame most recently returned by
+     * next(). This allows a consumer to recover which cadences were kept by the Preprocessor.
+     *
+     * @return index of the last returned frame
+     */
+    public abstract int index();
+
+    /**
+     * Reads the next frame into a caller supplied row-major array. Subclasses that decode frames themselves override
+     * this to decode directly into the array without allocating a frame.
+     *
+     * @param destination array of at least rows() * columns() floats
+     */
+    public void next(float[] destination) {
+        float[][] frame = next();
+        for(int row = 0; row < frame.length; row++) {
+            System.arraycopy(frame[row], 0, destination, row * columns(), columns());
+        }
+    }
+
+    /**
+     * Returns up to max_count of the next frames as a small data cube. The returned cube will be shorter than
+     * max_count only when the iterator is exhausted.
+     *
+     * @param max_count maximum number of frames to return
+     * @return the next frames in order
+     */
+    public float[][][] nextBatch(int max_count) {
+        ArrayList<float[][]> batch = new ArrayList<>(max_count);
+        while(batch.size() < max_count && hasNext()) {
+            batch.add(next());
+        }
+        return batch.toArray(new float[batch.size()][][]);
+    }
+
+    /**
+     * Returns an ordered Spliterator over the remaining frames so that they can be consumed by a Stream
+     *
+     * @return Spliterator over the remaining frames
+     */
+    public Spliterator<float[][]> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+}
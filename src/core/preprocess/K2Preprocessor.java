@@ -3,9 +3,13 @@ package core.preprocess;
 import nom.tam.fits.Fits;
 import nom.tam.fits.FitsException;
 import nom.tam.fits.TableHDU;
+import cube.BufferFrameCube;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 /**
  * @author Joanthan Zwiebel
@@ -15,9 +19,25 @@ import java.util.ArrayList;
  */
 public class K2Preprocessor extends Preprocessor {
     private static final String COLUMN = "FLUX";
+    private static final String ERROR_COLUMN = "FLUX_ERR";
+    private static final String TIME_COLUMN = "TIME";
+    private static final String CADENCE_COLUMN = "CADENCENO";
     private static final String VALID_COLUMN = "QUALITY";
     private static final int HDU_INDEX = 1;
 
+    /**
+     * Frame count that selects every valid frame from the first frame of a window onwards
+     */
+    public static final int ALL_FRAMES = Integer.MAX_VALUE;
+
+    private final File source_;
+    private final int first_row_;
+    private final int row_count_;
+    private final int first_column_;
+    private final int column_count_;
+    private final int first_frame_;
+    private final int frame_count_;
+
     /**
      * Reads a FITS file from the K2 mission and converts it into a data cube of floats. All blank indices or indices
      * where the quality value is >= 16384 are not included in the data cube
@@ -26,57 +46,435 @@ public class K2Preprocessor extends Preprocessor {
      */
     public K2Preprocessor(Fits file) {
         super(file);
+        source_ = null;
+        first_row_ = 0;
+        row_count_ = -1;
+        first_column_ = 0;
+        column_count_ = -1;
+        first_frame_ = 0;
+        frame_count_ = ALL_FRAMES;
     }
 
     /**
-     * Reads a FITS file from the K2 mission and converts it into a data cube of floats. All blank indices or indices
-     * where the quality value is >= 16384 are not included in the data cube
+     * Reads a FITS file from the K2 mission directly from disk. The binary table is memory-mapped and decoded by a
+     * TableReader rather than through nom-tam, which avoids building intermediate column arrays. Tables compressed
+     * with the FITS tiled table convention are decompressed as their columns are read.
+     *
+     * @param file K2 formatted fits file
+     * @throws FitsException if the file does not exist or cannot be read
+     */
+    public K2Preprocessor(File file) throws FitsException {
+        this(file, 0, -1, 0, -1, 0, ALL_FRAMES);
+    }
+
+    /**
+     * Reads a contiguous range of the valid frames of a FITS file from the K2 mission directly from disk. Frames are
+     * counted after invalid frames are removed, so frame 0 is the first frame that read() would return. The QUALITY
+     * column is scanned up to the last requested frame but the FLUX column is only read for the requested frames.
+     *
+     * @param file K2 formatted fits file
+     * @param first_frame index of the first valid frame to read
+     * @param frame_count number of valid frames to read or ALL_FRAMES
+     * @throws FitsException if the file does not exist or cannot be read
+     */
+    public K2Preprocessor(File file, int first_frame, int frame_count) throws FitsException {
+        this(file, 0, -1, 0, -1, first_frame, frame_count);
+    }
+
+    /**
+     * Reads a rectangular region of a contiguous range of the valid frames of a FITS file from the K2 mission directly
+     * from disk. Only the bytes of the region are decoded from each row of the binary table, so reading a single pixel
+     * costs roughly one value per frame. The region is given in the [row][column] indices of the frames returned by
+     * read() and the frames returned by this Preprocessor are the size of the region.
+     *
+     * @param file K2 formatted fits file
+     * @param first_row index of the first row of the region
+     * @param row_count number of rows in the region or -1 for every row from first_row onwards
+     * @param first_column index of the first column of the region
+     * @param column_count number of columns in the region or -1 for every column from first_column onwards
+     * @param first_frame index of the first valid frame to read
+     * @param frame_count number of valid frames to read or ALL_FRAMES
+     * @throws FitsException if the file does not exist or cannot be read
+     */
+    public K2Preprocessor(File file, int first_row, int row_count, int first_column, int column_count, int first_frame, int frame_count) throws FitsException {
+        super();
+        if(!file.isFile() || !file.canRead()) {
+            throw new FitsException("Non-existent or unreadable file " + file);
+        }
+        if(first_row < 0 || first_column < 0 || first_frame < 0 || row_count < -1 || column_count < -1 || frame_count < 0) {
+            throw new IllegalArgumentException("Invalid K2 region or frame range");
+        }
+        source_ = file;
+        first_row_ = first_row;
+        row_count_ = row_count;
+        first_column_ = first_column;
+        column_count_ = column_count;
+        first_frame_ = first_frame;
+        frame_count_ = frame_count;
+    }
+
+    /**
+     * Returns an iterator over the frames of a K2 FITS file. Rows of the binary table are decoded one at a time and
+     * rows where the quality value is >= 16384 are skipped as they are decoded, so the FLUX column is never read
+     * as a whole. Only the region and frame range given to the constructor are returned.
      *
-     * @return cleaned data cube
+     * @return iterator over the valid frames
      * @throws FitsException
      * @throws IOException
      */
-    public float[][][] read() throws FitsException, IOException {
+    public FrameIterator frames() throws FitsException, IOException {
+        if(source_ != null) {
+            return mappedFrames(TableReader.open(source_, HDU_INDEX));
+        }
         TableHDU<?> table = (TableHDU<?>) file_.getHDU(HDU_INDEX);
-        ArrayList<Boolean> valid_indices = new ArrayList<>();
-        int valid_index_count = fillValidIndices(table, valid_indices);
+        return new K2FrameIterator(table, table.findColumn(COLUMN), table.findColumn(VALID_COLUMN));
+    }
 
-        float[][][] unfiltered_column = (float[][][]) table.getColumn(COLUMN);
-        float[][][] filtered_column = new float[valid_index_count][unfiltered_column[0].length][unfiltered_column[0][0].length];
+    /**
+     * Returns the dimensions of a whole frame of the file, regardless of the region this Preprocessor reads
+     *
+     * @return number of rows and number of columns in each frame
+     * @throws FitsException
+     * @throws IOException
+     */
+    public int[] dimensions() throws FitsException, IOException {
+        if(source_ != null) {
+            TableReader table = TableReader.open(source_, HDU_INDEX);
+            int[] dimensions = table.dimensions(table.findColumn(COLUMN));
+            return new int[]{dimensions.length == 1 ? 1 : dimensions[0], dimensions[dimensions.length - 1]};
+        }
+        TableHDU<?> table = (TableHDU<?>) file_.getHDU(HDU_INDEX);
+        float[][] frame = (float[][]) table.getElement(0, table.findColumn(COLUMN));
+        return new int[]{frame.length, frame[0].length};
+    }
 
-        int insertion_index = 0;
-        for(int index = 0; insertion_index < valid_index_count; index++) {
-            if(valid_indices.get(index)) {
-                filtered_column[insertion_index] = unfiltered_column[index];
-                insertion_index++;
-            }
+    public String configuration() {
+        if(first_row_ == 0 && row_count_ == -1 && first_column_ == 0 && column_count_ == -1 && first_frame_ == 0 && frame_count_ == ALL_FRAMES) {
+            return "";
         }
-        return filtered_column;
+        return range("r", first_row_, row_count_ == -1 ? -1 : first_row_ + row_count_)
+                + range("c", first_column_, column_count_ == -1 ? -1 : first_column_ + column_count_)
+                + range("f", first_frame_, frame_count_ == ALL_FRAMES ? -1 : first_frame_ + frame_count_);
     }
 
+    /**
+     * Formats a half open range for configuration(), where an end of -1 means the range runs to the end
+     */
+    private static String range(String name, int start, int end) {
+        return name + start + "-" + (end == -1 ? "end" : Integer.toString(end));
+    }
 
     /**
-     * Private method to fill an array list with the index of the indices where the data is valid. Also counts the
-     * number of valid indices so an array of the correct size can be instantiated
+     * Reads the FLUX, FLUX_ERR, TIME, and CADENCENO columns of every valid row in a single pass over the rows of the
+     * binary table. Both cubes are built off the heap as the rows are decoded. Only the region and frame range given
+     * to the constructor are read.
      *
-     * @param table table header data unit with the columns
-     * @param valid_indexes array list that will have the indices of the valid indices added to it
-     * @return count of valid indices
+     * @return the columns of the valid frames
      * @throws FitsException
+     * @throws IOException
      */
-    private static int fillValidIndices(TableHDU table, ArrayList<Boolean> valid_indexes) throws FitsException {
-        int[] quality_column = (int[]) table.getColumn(VALID_COLUMN);
+    public K2TargetPixelData readTargetPixelData() throws FitsException, IOException {
+        if(source_ != null) {
+            return readMappedTargetPixelData(TableReader.open(source_, HDU_INDEX));
+        }
+
+        TableHDU<?> table = (TableHDU<?>) file_.getHDU(HDU_INDEX);
+        int flux_column = table.findColumn(COLUMN);
+        int error_column = table.findColumn(ERROR_COLUMN);
+        int time_column = table.findColumn(TIME_COLUMN);
+        int cadence_column = table.findColumn(CADENCE_COLUMN);
+        int quality_column = table.findColumn(VALID_COLUMN);
 
-        int valid_count = 0;
-        for(int i = 0; i < quality_column.length; i++) {
-            if (quality_column[i] < 16384) {
-                valid_indexes.add(i, true);
-                valid_count++;
+        BufferFrameCube.Builder flux = null;
+        BufferFrameCube.Builder flux_error = null;
+        double[] time = new double[table.getNRows()];
+        int[] cadence = new int[table.getNRows()];
+        int kept = 0;
+        for(int index = 0; index < table.getNRows(); index++) {
+            Object[] row = table.getRow(index);
+            if(!isValid(((int[]) row[quality_column])[0])) {
+                continue;
             }
-            else {
-                valid_indexes.add(i, false);
+            float[][] flux_frame = (float[][]) row[flux_column];
+            if(flux == null) {
+                flux = new BufferFrameCube.Builder(flux_frame.length, flux_frame[0].length);
+                flux_error = new BufferFrameCube.Builder(flux_frame.length, flux_frame[0].length);
+            }
+            flux.append(flux_frame);
+            flux_error.append((float[][]) row[error_column]);
+            time[kept] = ((double[]) row[time_column])[0];
+            cadence[kept] = ((int[]) row[cadence_column])[0];
+            kept++;
+        }
+
+        if(flux == null) {
+            flux = new BufferFrameCube.Builder(0, 0);
+            flux_error = new BufferFrameCube.Builder(0, 0);
+        }
+        return new K2TargetPixelData(flux.build(), flux_error.build(), Arrays.copyOf(time, kept), Arrays.copyOf(cadence, kept));
+    }
+
+    /**
+     * Reads the columns of every valid row in the frame range from a memory-mapped binary table. Flux values are
+     * decoded straight into the off-heap cubes.
+     *
+     * @param table the K2 binary table
+     * @return the columns of the valid frames
+     * @throws IOException
+     */
+    private K2TargetPixelData readMappedTargetPixelData(TableReader table) throws IOException {
+        int error_column = table.findColumn(ERROR_COLUMN);
+        int time_column = table.findColumn(TIME_COLUMN);
+        int cadence_column = table.findColumn(CADENCE_COLUMN);
+        if(error_column == -1 || time_column == -1 || cadence_column == -1) {
+            throw new IOException("K2 table is missing one of the " + ERROR_COLUMN + ", " + TIME_COLUMN + ", or "
+                    + CADENCE_COLUMN + " columns");
+        }
+
+        MappedK2FrameIterator frames = mappedFrames(table);
+        BufferFrameCube.Builder flux = new BufferFrameCube.Builder(frames.rows(), frames.columns());
+        BufferFrameCube.Builder flux_error = new BufferFrameCube.Builder(frames.rows(), frames.columns());
+        double[] time = new double[16];
+        int[] cadence = new int[16];
+        int kept = 0;
+        while(frames.hasNext()) {
+            int row = frames.nextRow();
+            frames.readCell(row, frames.flux_column_, flux.appendBuffer());
+            frames.readCell(row, error_column, flux_error.appendBuffer());
+            if(kept == time.length) {
+                time = Arrays.copyOf(time, kept * 2);
+                cadence = Arrays.copyOf(cadence, kept * 2);
+            }
+            time[kept] = table.readDouble(row, time_column);
+            cadence[kept] = table.readInt(row, cadence_column);
+            kept++;
+        }
+        return new K2TargetPixelData(flux.build(), flux_error.build(), Arrays.copyOf(time, kept), Arrays.copyOf(cadence, kept));
+    }
+
+    /**
+     * Creates an iterator over the region and frame range of a memory-mapped binary table
+     *
+     * @throws IOException
+     */
+    private MappedK2FrameIterator mappedFrames(TableReader table) throws IOException {
+        return new MappedK2FrameIterator(table, first_row_, row_count_, first_column_, column_count_, first_frame_, frame_count_);
+    }
+
+    /**
+     * Determines if a row of the K2 binary table holds a valid frame given its quality value
+     *
+     * @param quality value of the QUALITY column
+     * @return true if the frame should be kept
+     */
+    static boolean isValid(int quality) {
+        return quality < 16384;
+    }
+
+    /**
+     * Iterates over the rows of a K2 binary table, holding one decoded valid frame ahead so that hasNext() can skip
+     * the invalid rows.
+     */
+    private static final class K2FrameIterator extends FrameIterator {
+        private final TableHDU<?> table_;
+        private final int flux_column_;
+        private final int quality_column_;
+        private final int row_count_;
+        private int row_;
+        private float[][] next_;
+        private int next_index_;
+        private int index_;
+        private final int rows_;
+        private final int columns_;
+
+        K2FrameIterator(TableHDU<?> table, int flux_column, int quality_column) throws FitsException {
+            table_ = table;
+            flux_column_ = flux_column;
+            quality_column_ = quality_column;
+            row_count_ = table.getNRows();
+            row_ = 0;
+            index_ = -1;
+            next_ = advance();
+            rows_ = next_ == null ? 0 : next_.length;
+            columns_ = next_ == null ? 0 : next_[0].length;
+        }
+
+        public int rows() {
+            return rows_;
+        }
+
+        public int columns() {
+            return columns_;
+        }
+
+        public int index() {
+            return index_;
+        }
+
+        public boolean hasNext() {
+            return next_ != null;
+        }
+
+        public float[][] next() {
+            if(next_ == null) {
+                throw new NoSuchElementException();
+            }
+            float[][] frame = next_;
+            index_ = next_index_;
+            try {
+                next_ = advance();
+            }
+            catch(FitsException e) {
+                throw new IllegalStateException("Unable to read row " + row_ + " of the K2 table", e);
+            }
+            return frame;
+        }
+
+        /**
+         * Reads rows until one with a valid quality value is found
+         *
+         * @return the next valid frame or null if there are no more rows
+         * @throws FitsException
+         */
+        private float[][] advance() throws FitsException {
+            while(row_ < row_count_) {
+                Object[] row = table_.getRow(row_);
+                next_index_ = row_;
+                row_++;
+                if(isValid(((int[]) row[quality_column_])[0])) {
+                    return (float[][]) row[flux_column_];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Iterates over the rows of a K2 binary table read by a TableReader. The QUALITY cell of each row is
+     * checked before the FLUX cell is decoded so the flux of invalid rows is never touched. Only the cells of the
+     * region are decoded from rows in the frame range, and the table is not scanned past the last frame in the range.
+     */
+    private static final class MappedK2FrameIterator extends FrameIterator {
+        private final TableReader table_;
+        private final int flux_column_;
+        private final int quality_column_;
+        private final int frame_columns_;
+        private final int first_row_;
+        private final int rows_;
+        private final int first_column_;
+        private final int columns_;
+        private final int frame_count_;
+        private int returned_;
+        private int next_row_;
+        private int index_;
+
+        MappedK2FrameIterator(TableReader table, int first_row, int row_count, int first_column, int column_count, int first_frame, int frame_count) throws IOException {
+            table_ = table;
+            flux_column_ = table.findColumn(COLUMN);
+            quality_column_ = table.findColumn(VALID_COLUMN);
+            if(flux_column_ == -1 || quality_column_ == -1) {
+                throw new IOException("K2 table is missing the " + COLUMN + " or " + VALID_COLUMN + " column");
+            }
+            int[] dimensions = table.dimensions(flux_column_);
+            int frame_rows = dimensions.length == 1 ? 1 : dimensions[0];
+            frame_columns_ = dimensions[dimensions.length - 1];
+
+            first_row_ = first_row;
+            rows_ = row_count == -1 ? frame_rows - first_row : row_count;
+            first_column_ = first_column;
+            columns_ = column_count == -1 ? frame_columns_ - first_column : column_count;
+            if(rows_ < 0 || first_row_ + rows_ > frame_rows || columns_ < 0 || first_column_ + columns_ > frame_columns_) {
+                throw new IllegalArgumentException("Region exceeds the " + frame_rows + " by " + frame_columns_ + " frames of the K2 table");
+            }
+
+            frame_count_ = frame_count;
+            returned_ = 0;
+            index_ = -1;
+            next_row_ = advance(0);
+            for(int skipped = 0; skipped < first_frame && next_row_ < table.rows(); skipped++) {
+                next_row_ = advance(next_row_ + 1);
+            }
+        }
+
+        public int rows() {
+            return rows_;
+        }
+
+        public int columns() {
+            return columns_;
+        }
+
+        public int index() {
+            return index_;
+        }
+
+        public boolean hasNext() {
+            return returned_ < frame_count_ && next_row_ < table_.rows();
+        }
+
+        public float[][] next() {
+            int row = nextRow();
+            float[][] frame = new float[rows_][columns_];
+            for(int frame_row = 0; frame_row < rows_; frame_row++) {
+                table_.readFloats(row, flux_column_, (first_row_ + frame_row) * frame_columns_ + first_column_, columns_, frame[frame_row], 0);
+            }
+            return frame;
+        }
+
+        public void next(float[] destination) {
+            int row = nextRow();
+            if(columns_ == frame_columns_) {
+                table_.readFloats(row, flux_column_, first_row_ * frame_columns_, rows_ * columns_, destination, 0);
+                return;
+            }
+            for(int frame_row = 0; frame_row < rows_; frame_row++) {
+                table_.readFloats(row, flux_column_, (first_row_ + frame_row) * frame_columns_ + first_column_, columns_, destination, frame_row * columns_);
+            }
+        }
+
+        /**
+         * Moves to the next valid row in the frame range without decoding it
+         *
+         * @return index of the row within the table
+         */
+        int nextRow() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            index_ = next_row_;
+            returned_++;
+            next_row_ = returned_ < frame_count_ ? advance(next_row_ + 1) : table_.rows();
+            return index_;
+        }
+
+        /**
+         * Decodes the region of a frame shaped cell of a row into a buffer
+         *
+         * @param row index of the row within the table
+         * @param column index of a column with the same dimensions as the FLUX column
+         * @param destination buffer to hold the region, written at its current position
+         */
+        void readCell(int row, int column, FloatBuffer destination) {
+            if(columns_ == frame_columns_) {
+                table_.readFloats(row, column, first_row_ * frame_columns_, rows_ * columns_, destination);
+                return;
+            }
+            for(int frame_row = 0; frame_row < rows_; frame_row++) {
+                table_.readFloats(row, column, (first_row_ + frame_row) * frame_columns_ + first_column_, columns_, destination);
+            }
+        }
+
+        /**
+         * Finds the first row at or after a given row with a valid quality value
+         *
+         * @param row row to start searching from
+         * @return index of the next valid row or the row count if there are none
+         */
+        private int advance(int row) {
+            while(row < table_.rows() && !isValid(table_.readInt(row, quality_column_))) {
+                row++;
             }
+            return row;
         }
-        return valid_count;
     }
 }
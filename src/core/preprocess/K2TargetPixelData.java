@@ -0,0 +1,47 @@
+package core.preprocess;
+
+import cube.FrameCube;
+
+/**
+ * The columns of a K2 target pixel file that are needed downstream of preprocessing, restricted to the frames that
+ * the K2Preprocessor keeps. Index t of every field corresponds to frame t of the flux cube.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class K2TargetPixelData {
+    /**
+     * Calibrated flux of each kept frame, from the FLUX column
+     */
+    public final FrameCube flux;
+
+    /**
+     * Per-pixel uncertainty of the flux of each kept frame, from the FLUX_ERR column
+     */
+    public final FrameCube flux_error;
+
+    /**
+     * Mid-exposure time of each kept frame in days, from the TIME column
+     */
+    public final double[] time;
+
+    /**
+     * Cadence number of each kept frame, from the CADENCENO column
+     */
+    public final int[] cadence;
+
+    /**
+     * Constructs a K2TargetPixelData object from columns that have already been filtered
+     *
+     * @param flux flux cube
+     * @param flux_error flux uncertainty cube
+     * @param time time of each frame
+     * @param cadence cadence number of each frame
+     */
+    public K2TargetPixelData(FrameCube flux, FrameCube flux_error, double[] time, int[] cadence) {
+        this.flux = flux;
+        this.flux_error = flux_error;
+        this.time = time;
+        this.cadence = cadence;
+    }
+}
@@ -0,0 +1,201 @@
+package core.preprocess;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A FrameIterator that decodes the frames of another FrameIterator ahead of the consumer on a dedicated I/O thread.
+ * Decoded frames are placed in a bounded ring of reusable row-major buffers, so at most depth frames are held ahead of
+ * the consumer and no buffers are allocated once the ring is full. Reading from the source overlaps with whatever the
+ * consumer does with each frame, which hides most of the read latency when decoding and computation take similar time.
+ *
+ * The source must not be used by any other thread once it is passed to a PrefetchingFrameIterator. Any exception thrown
+ * by the source is rethrown from the call to hasNext() or next() that would have returned the failed frame. Once closed
+ * the iterator reports that it has no more frames.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class PrefetchingFrameIterator extends FrameIterator implements AutoCloseable {
+    /**
+     * Number of frames decoded ahead of the consumer when no depth is given
+     */
+    public static final int DEFAULT_DEPTH = 8;
+
+    private static final Slot END = new Slot(new float[0]);
+
+    private final int rows_;
+    private final int columns_;
+    private final ArrayBlockingQueue<Slot> filled_;
+    private final ArrayBlockingQueue<Slot> free_;
+    private final Thread reader_;
+    private volatile Throwable failure_;
+    private volatile boolean closed_;
+    private Slot current_;
+    private int index_;
+
+    /**
+     * Constructs a PrefetchingFrameIterator that decodes DEFAULT_DEPTH frames ahead of the consumer
+     *
+     * @param source iterator to read frames from
+     */
+    public PrefetchingFrameIterator(FrameIterator source) {
+        this(source, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Constructs a PrefetchingFrameIterator and starts reading from the source immediately
+     *
+     * @param source iterator to read frames from
+     * @param depth number of frames to decode ahead of the consumer
+     */
+    public PrefetchingFrameIterator(FrameIterator source, int depth) {
+        if(depth < 1) {
+            throw new IllegalArgumentException("Prefetch depth must be at least 1");
+        }
+        rows_ = source.rows();
+        columns_ = source.columns();
+        // The filled queue also has to hold the end marker behind a full ring
+        filled_ = new ArrayBlockingQueue<>(depth + 1);
+        free_ = new ArrayBlockingQueue<>(depth);
+        for(int slot = 0; slot < depth; slot++) {
+            free_.add(new Slot(new float[rows_ * columns_]));
+        }
+        index_ = -1;
+
+        reader_ = new Thread(() -> fill(source), "frame-prefetch");
+        reader_.setDaemon(true);
+        reader_.start();
+    }
+
+    public int rows() {
+        return rows_;
+    }
+
+    public int columns() {
+        return columns_;
+    }
+
+    public int index() {
+        return index_;
+    }
+
+    public boolean hasNext() {
+        return peek() != END;
+    }
+
+    /**
+     * Returns the next frame in a newly allocated array so that it may be kept by the consumer, such as by the
+     * BrightBodies found in it
+     *
+     * @return the next frame indexed [row][column]
+     */
+    public float[][] next() {
+        Slot slot = take();
+        float[][] frame = new float[rows_][columns_];
+        for(int row = 0; row < rows_; row++) {
+            System.arraycopy(slot.data, row * columns_, frame[row], 0, columns_);
+        }
+        release(slot);
+        return frame;
+    }
+
+    public void next(float[] destination) {
+        Slot slot = take();
+        System.arraycopy(slot.data, 0, destination, 0, rows_ * columns_);
+        release(slot);
+    }
+
+    /**
+     * Stops the I/O thread. Frames that have not been returned are discarded and hasNext() returns false from then on,
+     * including for a consumer on another thread that is already waiting for a frame.
+     */
+    public void close() {
+        closed_ = true;
+        reader_.interrupt();
+        // The interrupted reader never enqueues END, so it is enqueued here to wake a waiting consumer
+        filled_.clear();
+        filled_.offer(END);
+    }
+
+    /**
+     * Body of the I/O thread. Waits for a free buffer, decodes the next frame of the source into it and hands it to
+     * the consumer, until the source is exhausted or the thread is interrupted.
+     */
+    private void fill(FrameIterator source) {
+        try {
+            try {
+                while(!closed_ && source.hasNext()) {
+                    Slot slot = free_.take();
+                    source.next(slot.data);
+                    slot.index = source.index();
+                    filled_.put(slot);
+                }
+            }
+            catch(RuntimeException | Error e) {
+                failure_ = e;
+            }
+            filled_.put(END);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the next decoded frame without consuming it
+     *
+     * @return slot holding the next frame or END if there are no more frames
+     */
+    private Slot peek() {
+        if(closed_) {
+            return END;
+        }
+        if(current_ == null) {
+            try {
+                current_ = filled_.take();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a prefetched frame", e);
+            }
+            if(closed_) {
+                return END;
+            }
+        }
+        // END is left in place so every later call also reports the end or the failure
+        if(current_ == END && failure_ != null) {
+            throw new IllegalStateException("Unable to prefetch the frame after index " + index_, failure_);
+        }
+        return current_;
+    }
+
+    /**
+     * Consumes the next decoded frame. The slot must be passed to release() once its data has been copied.
+     */
+    private Slot take() {
+        Slot slot = peek();
+        if(slot == END) {
+            throw new NoSuchElementException();
+        }
+        current_ = null;
+        index_ = slot.index;
+        return slot;
+    }
+
+    private void release(Slot slot) {
+        free_.add(slot);
+    }
+
+    /**
+     * A reusable buffer holding one decoded frame and its index within the file
+     */
+    private static final class Slot {
+        final float[] data;
+        int index;
+
+        Slot(float[] data) {
+            this.data = data;
+        }
+    }
+}
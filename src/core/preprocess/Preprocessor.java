@@ -1,9 +1,14 @@
 package core.preprocess;
 
+import cube.BufferFrameCube;
+import cube.CompressedFrameCube;
+import cube.FrameCube;
 import nom.tam.fits.Fits;
 import nom.tam.fits.FitsException;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 
 /**
  * @author Jonathan Zwiebel
@@ -21,5 +26,89 @@ public abstract class Preprocessor {
         file_ = file;
     }
 
-    public abstract float[][][] read() throws FitsException, IOException;
+    /**
+     * Constructs a Preprocessor that reads its file itself rather than through nom-tam, so no Fits is opened
+     */
+    Preprocessor() {
+        file_ = null;
+    }
+
+    /**
+     * Returns an iterator that decodes the valid frames of the file one at a time
+     *
+     * @return iterator over the valid frames
+     * @throws FitsException
+     * @throws IOException
+     */
+    public abstract FrameIterator frames() throws FitsException, IOException;
+
+    /**
+     * Describes any settings of this Preprocessor that change the frames it returns, such as a region of the frames.
+     * Two Preprocessors of the same class with the same configuration return the same frames from the same file.
+     *
+     * @return description of the settings or the empty string for the default settings
+     */
+    public String configuration() {
+        return "";
+    }
+
+    /**
+     * Reads every valid frame into a single data cube
+     *
+     * @return cleaned data cube
+     * @throws FitsException
+     * @throws IOException
+     */
+    public float[][][] read() throws FitsException, IOException {
+        ArrayList<float[][]> frames = new ArrayList<>();
+        FrameIterator iterator = frames();
+        while(iterator.hasNext()) {
+            frames.add(iterator.next());
+        }
+        return frames.toArray(new float[frames.size()][][]);
+    }
+
+    /**
+     * Reads every valid frame into a FrameCube held in direct buffers outside of the Java heap. Frames are decoded on a
+     * separate thread and copied as they arrive so only a few frames are on the heap at once.
+     *
+     * @return cleaned data cube
+     * @throws FitsException
+     * @throws IOException
+     */
+    public FrameCube readCube() throws FitsException, IOException {
+        try(PrefetchingFrameIterator iterator = new PrefetchingFrameIterator(frames())) {
+            return BufferFrameCube.collect(iterator, iterator.rows(), iterator.columns());
+        }
+    }
+
+    /**
+     * Reads every valid frame into a FrameCube held in a memory-mapped file. This should be used for cubes that are
+     * larger than the available memory.
+     *
+     * @param backing file that will be created or overwritten to hold the cube
+     * @return cleaned data cube
+     * @throws FitsException
+     * @throws IOException
+     */
+    public FrameCube readCube(File backing) throws FitsException, IOException {
+        try(PrefetchingFrameIterator iterator = new PrefetchingFrameIterator(frames())) {
+            return BufferFrameCube.collect(iterator, iterator.rows(), iterator.columns(), backing);
+        }
+    }
+
+    /**
+     * Reads every valid frame into a FrameCube that keeps each frame compressed on the heap and only decompresses the
+     * frames that are accessed. This allows several large cubes to be open at once.
+     *
+     * @param noise_fraction quantization step as a fraction of the noise of each frame, or 0 for lossless compression
+     * @return cleaned data cube
+     * @throws FitsException
+     * @throws IOException
+     */
+    public FrameCube readCompressedCube(float noise_fraction) throws FitsException, IOException {
+        try(PrefetchingFrameIterator iterator = new PrefetchingFrameIterator(frames())) {
+            return CompressedFrameCube.collect(iterator, iterator.rows(), iterator.columns(), noise_fraction);
+        }
+    }
 }
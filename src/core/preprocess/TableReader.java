@@ -0,0 +1,273 @@
+package core.preprocess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+/**
+ * Reads cells of a FITS binary table extension without building nom-tam column arrays. Subclasses decide where the
+ * big-endian bytes of each cell come from: a BinaryTableReader memory-maps an uncompressed table and a
+ * CompressedTableReader decompresses the tiles of a tile-compressed table. Only fixed width columns are supported and
+ * TSCALn and TZEROn are not applied.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public abstract class TableReader {
+    final String[] names_;
+    final char[] types_;
+    final int[] repeats_;
+    final int[][] dimensions_;
+    final char[] array_types_;
+
+    /**
+     * Constructs a TableReader from the column keywords of a binary table header
+     *
+     * @param header header of the binary table
+     * @param format_keyword keyword that holds the format of each column, TFORM or ZFORM for a compressed table
+     * @throws IOException if the header is not that of a binary table
+     */
+    TableReader(FitsHeader header, String format_keyword) throws IOException {
+        if(!"BINTABLE".equals(header.get("XTENSION"))) {
+            throw new IOException("HDU is not a binary table");
+        }
+        int field_count = header.intValue("TFIELDS");
+        names_ = new String[field_count];
+        types_ = new char[field_count];
+        repeats_ = new int[field_count];
+        dimensions_ = new int[field_count][];
+        array_types_ = new char[field_count];
+        for(int field = 0; field < field_count; field++) {
+            String format = header.get(format_keyword + (field + 1));
+            if(format == null) {
+                throw new IOException("Missing required FITS keyword " + format_keyword + (field + 1));
+            }
+            int type_index = 0;
+            while(Character.isDigit(format.charAt(type_index))) {
+                type_index++;
+            }
+            names_[field] = header.get("TTYPE" + (field + 1));
+            types_[field] = format.charAt(type_index);
+            repeats_[field] = type_index == 0 ? 1 : Integer.parseInt(format.substring(0, type_index));
+            dimensions_[field] = parseDimensions(header.get("TDIM" + (field + 1)), repeats_[field]);
+            // Variable length array columns name the type of their elements after the P or Q
+            boolean array_column = types_[field] == 'P' || types_[field] == 'Q';
+            array_types_[field] = array_column && type_index + 1 < format.length() ? format.charAt(type_index + 1) : 0;
+        }
+    }
+
+    /**
+     * Opens a binary table extension of a FITS file. Tables compressed with the FITS tiled table convention are
+     * decompressed as their columns are first read, otherwise the table is memory-mapped.
+     *
+     * @param file the FITS file
+     * @param hdu_index index of the binary table HDU, where the primary HDU is index 0
+     * @return reader over the table
+     * @throws IOException if the file cannot be read or the HDU is not a binary table
+     */
+    public static TableReader open(File file, int hdu_index) throws IOException {
+        FitsHeader header = FitsHeader.find(file, hdu_index);
+        BinaryTableReader table = new BinaryTableReader(file, header);
+        if("T".equals(header.get("ZTABLE"))) {
+            return new CompressedTableReader(table, header);
+        }
+        return table;
+    }
+
+    /**
+     * @return number of rows in the table
+     */
+    public abstract int rows();
+
+    /**
+     * Finds the index of a column given its TTYPE name
+     *
+     * @param name name of the column
+     * @return index of the column or -1 if there is no such column
+     */
+    public int findColumn(String name) {
+        for(int column = 0; column < names_.length; column++) {
+            if(name.equals(names_[column])) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the dimensions of each cell of a column from the slowest varying to the fastest varying index. A
+     * column with TDIMn = '(13,11)' has dimensions {11, 13}.
+     *
+     * @param column index of the column
+     * @return dimensions of each cell
+     */
+    public int[] dimensions(int column) {
+        return dimensions_[column].clone();
+    }
+
+    /**
+     * @param column index of the column
+     * @return number of elements in each cell of the column
+     */
+    public int repeat(int column) {
+        return repeats_[column];
+    }
+
+    /**
+     * Reads the first element of an integer cell
+     *
+     * @param row index of the row
+     * @param column index of a B, I, or J column
+     * @return value of the cell
+     */
+    public int readInt(int row, int column) {
+        ByteBuffer cells = cells(row, column);
+        int position = cellPosition(row, column);
+        switch(types_[column]) {
+            case 'B':
+                return cells.get(position) & 0xFF;
+            case 'I':
+                return cells.getShort(position);
+            case 'J':
+                return cells.getInt(position);
+            default:
+                throw new IllegalArgumentException("Column " + names_[column] + " is not an integer column");
+        }
+    }
+
+    /**
+     * Reads the first element of a floating point cell
+     *
+     * @param row index of the row
+     * @param column index of an E or D column
+     * @return value of the cell
+     */
+    public double readDouble(int row, int column) {
+        ByteBuffer cells = cells(row, column);
+        int position = cellPosition(row, column);
+        switch(types_[column]) {
+            case 'E':
+                return cells.getFloat(position);
+            case 'D':
+                return cells.getDouble(position);
+            default:
+                throw new IllegalArgumentException("Column " + names_[column] + " is not a floating point column");
+        }
+    }
+
+    /**
+     * Decodes part of a single precision cell into a caller supplied array
+     *
+     * @param row index of the row
+     * @param column index of an E column
+     * @param first index of the first element of the cell to read
+     * @param count number of elements to read
+     * @param destination array to hold the values
+     * @param destination_offset index in destination of the first value
+     */
+    public void readFloats(int row, int column, int first, int count, float[] destination, int destination_offset) {
+        floatCell(row, column, first, count).get(destination, destination_offset, count);
+    }
+
+    /**
+     * Decodes part of a single precision cell into a caller supplied buffer, such as an off-heap frame
+     *
+     * @param row index of the row
+     * @param column index of an E column
+     * @param first index of the first element of the cell to read
+     * @param count number of elements to read
+     * @param destination buffer to hold the values, written at its current position
+     */
+    public void readFloats(int row, int column, int first, int count, FloatBuffer destination) {
+        destination.put(floatCell(row, column, first, count));
+    }
+
+    /**
+     * Returns a big-endian buffer that holds a cell. The buffer is shared and must only be read with absolute gets.
+     *
+     * @param row index of the row
+     * @param column index of the column
+     * @return buffer holding the cell at cellPosition(row, column)
+     */
+    abstract ByteBuffer cells(int row, int column);
+
+    /**
+     * @param row index of the row
+     * @param column index of the column
+     * @return position of the first byte of a cell within the buffer returned by cells(row, column)
+     */
+    abstract int cellPosition(int row, int column);
+
+    /**
+     * Returns a big-endian view of part of a single precision cell
+     */
+    private FloatBuffer floatCell(int row, int column, int first, int count) {
+        if(types_[column] != 'E') {
+            throw new IllegalArgumentException("Column " + names_[column] + " is not a single precision column");
+        }
+        if(first < 0 || first + count > repeats_[column]) {
+            throw new IndexOutOfBoundsException("Elements " + first + " to " + (first + count) + " of column " + names_[column]);
+        }
+        ByteBuffer cell = cells(row, column).duplicate();
+        int position = cellPosition(row, column) + first * 4;
+        cell.limit(position + count * 4);
+        cell.position(position);
+        return cell.asFloatBuffer();
+    }
+
+    /**
+     * Converts a TDIMn value to dimensions ordered from the slowest varying index to the fastest varying index
+     */
+    private static int[] parseDimensions(String tdim, int repeat) {
+        if(tdim == null) {
+            return new int[]{repeat};
+        }
+        ArrayList<Integer> dimensions = new ArrayList<>();
+        for(String dimension : tdim.replace("(", "").replace(")", "").split(",")) {
+            dimensions.add(0, Integer.parseInt(dimension.trim()));
+        }
+        int[] result = new int[dimensions.size()];
+        for(int i = 0; i < result.length; i++) {
+            result[i] = dimensions.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the number of bytes each element of a column of the given TFORM type takes within a row. Bit columns
+     * are counted as a single byte element.
+     */
+    static int elementBytes(char type) {
+        switch(type) {
+            case 'L':
+            case 'B':
+            case 'A':
+            case 'X':
+                return 1;
+            case 'I':
+                return 2;
+            case 'J':
+            case 'E':
+                return 4;
+            case 'K':
+            case 'D':
+            case 'C':
+            case 'P':
+                return 8;
+            case 'M':
+            case 'Q':
+                return 16;
+            default:
+                throw new IllegalArgumentException("Unknown binary table format " + type);
+        }
+    }
+
+    /**
+     * Computes the number of bytes a cell of the given TFORM type and repeat count takes within a row
+     */
+    static int cellBytes(char type, int repeat) {
+        return type == 'X' ? (repeat + 7) / 8 : elementBytes(type) * repeat;
+    }
+}
@@ -0,0 +1,288 @@
+package core.preprocess;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Static methods to decompress single tiles of HDUs that follow the FITS tiled image and tiled table compression
+ * conventions. Each method works on one tile and keeps no state, so independent tiles may be decoded on several threads
+ * at once.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+final class TileDecoder {
+    /**
+     * Value of a quantized pixel that was a NaN before quantization
+     */
+    static final int NULL_VALUE = -2147483647;
+
+    /**
+     * Value of a quantized pixel that was exactly zero before quantization with SUBTRACTIVE_DITHER_2
+     */
+    static final int ZERO_VALUE = -2147483646;
+
+    /**
+     * Quantization methods named by ZQUANTIZ
+     */
+    static final int NO_DITHER = 0;
+    static final int SUBTRACTIVE_DITHER_1 = 1;
+    static final int SUBTRACTIVE_DITHER_2 = 2;
+
+    private static final int RANDOM_COUNT = 10000;
+    private static final float[] RANDOM = new float[RANDOM_COUNT];
+
+    static {
+        // The uniform random sequence the FITS standard defines for dithering, from the Park and Miller generator
+        double multiplier = 16807.0;
+        double modulus = 2147483647.0;
+        double seed = 1.0;
+        for(int i = 0; i < RANDOM_COUNT; i++) {
+            double product = multiplier * seed;
+            seed = product - modulus * (int) (product / modulus);
+            RANDOM[i] = (float) (seed / modulus);
+        }
+        if((int) seed != 1043618065) {
+            throw new IllegalStateException("FITS dithering sequence was not generated correctly");
+        }
+    }
+
+    private TileDecoder() {
+    }
+
+    /**
+     * Decompresses a gzip stream
+     *
+     * @param input the compressed bytes
+     * @param length number of bytes the stream decompresses to
+     * @return the decompressed bytes
+     * @throws IOException if the stream is corrupt or shorter than length
+     */
+    static byte[] gunzip(byte[] input, int length) throws IOException {
+        byte[] output = new byte[length];
+        try(InputStream stream = new GZIPInputStream(new ByteArrayInputStream(input), Math.max(512, Math.min(input.length, 1 << 16)))) {
+            int read = 0;
+            while(read < length) {
+                int count = stream.read(output, read, length - read);
+                if(count < 0) {
+                    throw new IOException("Compressed tile holds " + read + " of " + length + " bytes");
+                }
+                read += count;
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Reverses the byte shuffling of GZIP_2, which stores the most significant byte of every element first, then the
+     * next byte of every element and so on
+     *
+     * @param input shuffled bytes
+     * @param element_bytes size of each element
+     * @return the bytes in their original order
+     */
+    static byte[] unshuffle(byte[] input, int element_bytes) {
+        if(element_bytes == 1) {
+            return input;
+        }
+        int count = input.length / element_bytes;
+        byte[] output = new byte[input.length];
+        for(int plane = 0; plane < element_bytes; plane++) {
+            for(int i = 0; i < count; i++) {
+                output[i * element_bytes + plane] = input[plane * count + i];
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Decompresses a tile compressed with the Rice algorithm of RICE_1. The first value is stored whole and each
+     * block of values after it stores the differences between consecutive values with a split that was chosen for the
+     * block.
+     *
+     * @param input the compressed bytes
+     * @param count number of values in the tile
+     * @param block_size number of values in each block, the BLOCKSIZE parameter
+     * @param byte_pix size in bytes of each value, the BYTEPIX parameter
+     * @return the values, sign extended for 2 byte values and unsigned for 1 byte values
+     * @throws IOException if the compressed bytes end early
+     */
+    static int[] rice(byte[] input, int count, int block_size, int byte_pix) throws IOException {
+        int fs_bits;
+        int fs_max;
+        switch(byte_pix) {
+            case 1:
+                fs_bits = 3;
+                fs_max = 6;
+                break;
+            case 2:
+                fs_bits = 4;
+                fs_max = 14;
+                break;
+            case 4:
+                fs_bits = 5;
+                fs_max = 25;
+                break;
+            default:
+                throw new IOException("Unsupported Rice BYTEPIX " + byte_pix);
+        }
+        int bits_per_value = byte_pix * 8;
+        int mask = byte_pix == 4 ? -1 : (1 << bits_per_value) - 1;
+
+        if(input.length < byte_pix) {
+            throw new IOException("Rice compressed tile is truncated");
+        }
+        int[] output = new int[count];
+        int last = 0;
+        for(int i = 0; i < byte_pix; i++) {
+            last = last << 8 | (input[i] & 0xFF);
+        }
+        int position = byte_pix;
+
+        // bits holds the nbits unread low bits of the most recently read bytes
+        int bits = next(input, position++);
+        int nbits = 8;
+        for(int i = 0; i < count; ) {
+            nbits -= fs_bits;
+            while(nbits < 0) {
+                bits = bits << 8 | next(input, position++);
+                nbits += 8;
+            }
+            int fs = (bits >>> nbits) - 1;
+            bits &= (1 << nbits) - 1;
+            int end = Math.min(i + block_size, count);
+
+            if(fs < 0) {
+                // Every difference in the block is zero
+                for(; i < end; i++) {
+                    output[i] = last;
+                }
+            }
+            else if(fs == fs_max) {
+                // Differences are stored whole when they are too noisy to split
+                for(; i < end; i++) {
+                    int shift = bits_per_value - nbits;
+                    int difference = shift >= 32 ? 0 : bits << shift;
+                    for(shift -= 8; shift >= 0; shift -= 8) {
+                        difference |= next(input, position++) << shift;
+                    }
+                    if(nbits > 0) {
+                        bits = next(input, position++);
+                        difference |= bits >>> -shift;
+                        bits &= (1 << nbits) - 1;
+                    }
+                    else {
+                        bits = 0;
+                    }
+                    last = (last + unfold(difference)) & mask;
+                    output[i] = last;
+                }
+            }
+            else {
+                for(; i < end; i++) {
+                    // The high part of each difference is stored in unary as a run of zero bits ended by a one
+                    while(bits == 0) {
+                        nbits += 8;
+                        bits = next(input, position++);
+                    }
+                    int zeros = nbits - (32 - Integer.numberOfLeadingZeros(bits));
+                    nbits -= zeros + 1;
+                    bits ^= 1 << nbits;
+                    nbits -= fs;
+                    while(nbits < 0) {
+                        bits = bits << 8 | next(input, position++);
+                        nbits += 8;
+                    }
+                    int difference = zeros << fs | bits >>> nbits;
+                    bits &= (1 << nbits) - 1;
+                    last = (last + unfold(difference)) & mask;
+                    output[i] = last;
+                }
+            }
+        }
+
+        if(byte_pix == 2) {
+            for(int i = 0; i < count; i++) {
+                output[i] = (short) output[i];
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Undoes the mapping of signed differences onto unsigned values, where 2n holds n and 2n + 1 holds -n - 1
+     */
+    private static int unfold(int difference) {
+        return (difference & 1) == 0 ? difference >>> 1 : ~(difference >>> 1);
+    }
+
+    private static int next(byte[] input, int position) throws IOException {
+        if(position >= input.length) {
+            throw new IOException("Rice compressed tile is truncated");
+        }
+        return input[position] & 0xFF;
+    }
+
+    /**
+     * Parses the ZQUANTIZ keyword of a compressed image
+     *
+     * @param method value of ZQUANTIZ or null if the keyword is missing
+     * @return one of NO_DITHER, SUBTRACTIVE_DITHER_1, or SUBTRACTIVE_DITHER_2
+     * @throws IOException if the method is unknown
+     */
+    static int quantizeMethod(String method) throws IOException {
+        if(method == null || method.equals("NO_DITHER") || method.equals("NONE")) {
+            return NO_DITHER;
+        }
+        if(method.equals("SUBTRACTIVE_DITHER_1")) {
+            return SUBTRACTIVE_DITHER_1;
+        }
+        if(method.equals("SUBTRACTIVE_DITHER_2")) {
+            return SUBTRACTIVE_DITHER_2;
+        }
+        throw new IOException("Unsupported quantization method " + method);
+    }
+
+    /**
+     * Restores the floating point values of a quantized tile
+     *
+     * @param values quantized values of the tile
+     * @param scale ZSCALE of the tile
+     * @param zero ZZERO of the tile
+     * @param blank value that marks a NaN
+     * @param method quantization method of the image
+     * @param tile index of the tile, counting from 0
+     * @param dither_seed ZDITHER0 of the image
+     * @param destination array to hold the restored values, the same length as values
+     */
+    static void unquantize(int[] values, double scale, double zero, int blank, int method, int tile, int dither_seed, float[] destination) {
+        if(method == NO_DITHER) {
+            for(int i = 0; i < values.length; i++) {
+                destination[i] = values[i] == blank ? Float.NaN : (float) (values[i] * scale + zero);
+            }
+            return;
+        }
+
+        int seed = (tile + dither_seed - 1) % RANDOM_COUNT;
+        int random = (int) (RANDOM[seed] * 500);
+        for(int i = 0; i < values.length; i++) {
+            if(values[i] == blank) {
+                destination[i] = Float.NaN;
+            }
+            else if(method == SUBTRACTIVE_DITHER_2 && values[i] == ZERO_VALUE) {
+                destination[i] = 0.0f;
+            }
+            else {
+                destination[i] = (float) (((double) values[i] - RANDOM[random] + 0.5) * scale + zero);
+            }
+
+            random++;
+            if(random == RANDOM_COUNT) {
+                seed = (seed + 1) % RANDOM_COUNT;
+                random = (int) (RANDOM[seed] * 500);
+            }
+        }
+    }
+}
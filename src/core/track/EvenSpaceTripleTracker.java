@@ -3,15 +3,24 @@ package core.track;
 import brightbodies.BrightBody;
 import brightbodies.BrightBodyEvenSpaceTripleLinkedSet;
 import brightbodies.BrightBodyList;
-import brightbodies.Coordinate;
+import brightbodies.DetectionColumns;
+import brightbodies.DetectionIndex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This class extends the general tracker classes. This searches though all combinations of bright bodies in adjacent
  * sets of three timestamps. The sets of three begin on stepped, overlapping values and are spaced by 1. A fitness value
  * is calculated for all combinations of MobileBrightBodies between those three frames and used to determine asteroid
- * likelihood.
+ * likelihood. The combinations are scored over the DetectionColumns of the three frames, so the innermost loop only
+ * reads primitive arrays.
+ *
+ * Only combinations that could score above 1 are scored. The fitness is at most sd_ratio^2 * log(d), so the first and
+ * third bodies must be more than e apart and no farther apart than a distance set by their mean size. The third bodies
+ * are found with a radius query on a DetectionIndex using the largest second and third bodies, and each pair is checked
+ * again with its own sizes. A second body that does not lie between the first and third in both x and y zig-zags or
+ * gives a spacing ratio of 0, so the second bodies are found with a box query.
  *
  * @author Jonathan Zwiebel
  * @version 8 July 2016
@@ -27,6 +36,15 @@ public class EvenSpaceTripleTracker extends Tracker {
         super(mobile_bodies);
     }
 
+    /**
+     * Constructs an EvenSpaceTripleTracker given the MobileBrightBodies at each frame stored as columns
+     *
+     * @param mobile_columns the set of MobileBrightBodies to check
+     */
+    public EvenSpaceTripleTracker(DetectionColumns[] mobile_columns) {
+        super(mobile_columns);
+    }
+
     /**
      * Performs the tracking step by iterating through all combinations of MobileBrightBodies in adjacent sets of 3 frames
      * and checking their fitness vlaue.
@@ -40,26 +58,76 @@ public class EvenSpaceTripleTracker extends Tracker {
         // A list of all likely sets found
         @SuppressWarnings("unchecked") ArrayList<BrightBodyEvenSpaceTripleLinkedSet> linked_sets_list = new ArrayList();
 
+            DetectionIndex[] indices = new DetectionIndex[mobile_columns_.length];
+            for(int timestamp = 0; timestamp < indices.length; timestamp++) {
+                indices[timestamp] = new DetectionIndex(mobile_columns_[timestamp]);
+            }
+            long[] pairs = new long[16];
+            int[] between = new int[16];
+            float[] travel = new float[0];
+
             // Iterates through all timestamps to contain every set of 3 adjacent frames
-            for(int first_timestamp = 0; first_timestamp <= mobile_bodies_.length - 3; first_timestamp++) {
+            for(int first_timestamp = 0; first_timestamp <= mobile_columns_.length - 3; first_timestamp++) {
+                DetectionColumns first = mobile_columns_[first_timestamp];
+                DetectionColumns second = mobile_columns_[first_timestamp + 1];
+                DetectionColumns third = mobile_columns_[first_timestamp + 2];
 
                 // Ignores a set of three timestamps if one of the three does not contain any MobileBrightBodies
-                if(mobile_bodies_[first_timestamp].isEmpty() || mobile_bodies_[first_timestamp + 1].isEmpty() || mobile_bodies_[first_timestamp + 2].isEmpty()) {
+                if(first.isEmpty() || second.isEmpty() || third.isEmpty()) {
                     continue;
                 }
+                int largest_second = largest(second);
+                int largest_third = largest(third);
+                travel = travelTable(travel, largest(first) + largest_second + largest_third);
 
-                // Iterates through all combinations of MobileBrightBodies for the three timestamps
-                for(int first_index = 0; first_index < mobile_bodies_[first_timestamp].size(); first_index++) {
-                    for(int second_index = 0; second_index < mobile_bodies_[first_timestamp + 1].size(); second_index++) {
-                        for(int third_index = 0; third_index < mobile_bodies_[first_timestamp + 2].size(); third_index++) {
-                            float fitness = fitness(mobile_bodies_, first_timestamp, first_index, second_index, third_index);
+                // Iterates through the combinations of MobileBrightBodies for the three timestamps that could be linked
+                for(int first_index = 0; first_index < first.count; first_index++) {
+                    float a_x = first.x[first_index];
+                    float a_y = first.y[first_index];
+                    int a_size = first.size[first_index];
+                    int found = 0;
+                    float reach = travel[(a_size + largest_second + largest_third) / 3];
+                    for(int third_index : indices[first_timestamp + 2].withinRadius(a_x, a_y, reach)) {
+                        float c_x = third.x[third_index];
+                        float c_y = third.y[third_index];
+                        int ac_size = a_size + third.size[third_index];
+                        // Calculated exactly as the fitness calculates it
+                        double total_travel_distance = Math.sqrt(Math.pow(a_x - c_x, 2) + Math.pow(a_y - c_y, 2));
+                        if(!(total_travel_distance > Math.E) || total_travel_distance > travel[(ac_size + largest_second) / 3]) {
+                            continue;
+                        }
+                        float min_x = Math.min(a_x, c_x);
+                        float max_x = Math.max(a_x, c_x);
+                        float min_y = Math.min(a_y, c_y);
+                        float max_y = Math.max(a_y, c_y);
+                        int count;
+                        while((count = indices[first_timestamp + 1].centroidsInBox(min_x, max_x, min_y, max_y, between)) > between.length) {
+                            between = new int[count];
+                        }
+                        for(int candidate = 0; candidate < count; candidate++) {
+                            int second_index = between[candidate];
+                            if(total_travel_distance > travel[(ac_size + second.size[second_index]) / 3]) {
+                                continue;
+                            }
+                            float fitness = fitness(first, second, third, first_index, second_index, third_index);
                             if(fitness >  1) {
-                                BrightBody[] bodies = {mobile_bodies_[first_timestamp].get(first_index), mobile_bodies_[first_timestamp + 1].get(second_index), mobile_bodies_[first_timestamp + 2].get(third_index)};
-                                int[] timestamps = {first_timestamp, first_timestamp + 1, first_timestamp + 2};
-                                linked_sets_list.add(new BrightBodyEvenSpaceTripleLinkedSet(bodies, timestamps));
+                                if(found == pairs.length) {
+                                    pairs = Arrays.copyOf(pairs, found * 2);
+                                }
+                                pairs[found++] = (long) second_index << 32 | third_index;
                             }
                         }
                     }
+
+                    // Keeps the order of a full search over the second and then the third index
+                    Arrays.sort(pairs, 0, found);
+                    for(int pair = 0; pair < found; pair++) {
+                        int second_index = (int) (pairs[pair] >>> 32);
+                        int third_index = (int) pairs[pair];
+                        BrightBody[] bodies = {first.body(first_index), second.body(second_index), third.body(third_index)};
+                        int[] timestamps = {first_timestamp, first_timestamp + 1, first_timestamp + 2};
+                        linked_sets_list.add(new BrightBodyEvenSpaceTripleLinkedSet(bodies, timestamps));
+                    }
                 }
             }
 
@@ -68,6 +136,65 @@ public class EvenSpaceTripleTracker extends Tracker {
         return linked_sets;
     }
 
+    private static int largest(DetectionColumns columns) {
+        int largest = 0;
+        for(int index = 0; index < columns.count; index++) {
+            largest = Math.max(largest, columns.size[index]);
+        }
+        return largest;
+    }
+
+    /**
+     * Extends a table of maximumTravel for every mean size up to sum / 3
+     *
+     * @param table maximumTravel of each mean size that has already been calculated
+     * @param sum largest sum of the sizes of three MobileBrightBodies that may be linked
+     * @return the table, or a longer copy of it
+     */
+    private static float[] travelTable(float[] table, int sum) {
+        int length = sum / 3 + 1;
+        if(table.length >= length) {
+            return table;
+        }
+        float[] extended = Arrays.copyOf(table, Math.max(length, table.length * 2));
+        for(int mean_size = table.length; mean_size < extended.length; mean_size++) {
+            extended[mean_size] = maximumTravel(mean_size);
+        }
+        return extended;
+    }
+
+    /**
+     * Finds a distance between the first and third MobileBrightBodies beyond which no linkage can score above 1. The
+     * fitness is at most sd_ratio^2 * log(d), and once d / 2 is larger than the mean size this is
+     * (2 * mean_size / d)^2 * log(d), which falls as d grows. The largest d where it still exceeds 1 is found by
+     * bisection and widened so that rounding in the fitness calculation can never put a linkage past it.
+     *
+     * @param mean_size the largest mean size of three MobileBrightBodies that may be linked
+     * @return distance that the first and third MobileBrightBodies of any linkage are within
+     */
+    static float maximumTravel(int mean_size) {
+        double size = mean_size;
+        double low = Math.max(2 * size, Math.E);
+        if(4 * size * size * Math.log(low) > low * low) {
+            double high = low * 2;
+            while(4 * size * size * Math.log(high) > high * high) {
+                low = high;
+                high *= 2;
+            }
+            for(int iteration = 0; iteration < 64; iteration++) {
+                double middle = (low + high) / 2;
+                if(4 * size * size * Math.log(middle) > middle * middle) {
+                    low = middle;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            low = high;
+        }
+        return (float) (low * 1.01 + 1);
+    }
+
     /**
      * Given three MobileBrightBodies, each from a different frame, calculates the likelihood that they are from the same
      * moving celestial object. The three frames are adjacent to each other ranging from first_timestamp to first_timestamp + 2
@@ -90,8 +217,9 @@ public class EvenSpaceTripleTracker extends Tracker {
      *
      *  fitness = sd_ratio^2 * space_ratio^4 * log(d)
      *
-     * @param mobile_bodies an array of the set of BrightBodyLists with the MobileBrightBodies from each frame
-     * @param first_timestamp the first timestamp of three to get the bodies from
+     * @param first the MobileBrightBodies of timestamp first_timestamp
+     * @param second the MobileBrightBodies of timestamp first_timestamp + 1
+     * @param third the MobileBrightBodies of timestamp first_timestamp + 2
      * @param first_index the index of the BrightBody to check from timestamp first_timestamp
      * @param second_index the index of the BrightBody to check from timestamp first_timestamp + 1
      * @param third_index the index of the BrightBody to check from timestamp first_timestamp + 2
@@ -99,18 +227,23 @@ public class EvenSpaceTripleTracker extends Tracker {
      *
      * TODO: Allow for short-circuiting of calculation once one value is found to be too low
      */
-    private static float fitness(BrightBodyList[] mobile_bodies, int first_timestamp, int first_index, int second_index, int third_index) {
+    private static float fitness(DetectionColumns first, DetectionColumns second, DetectionColumns third, int first_index, int second_index, int third_index) {
         // Obtains the coordinates of the three MobileBrightBodies to
-        Coordinate[] coordinates = {mobile_bodies[first_timestamp].get(first_index).centroid, mobile_bodies[first_timestamp + 1].get(second_index).centroid,mobile_bodies[first_timestamp + 2].get(third_index).centroid};
+        float a_x = first.x[first_index];
+        float a_y = first.y[first_index];
+        float b_x = second.x[second_index];
+        float b_y = second.y[second_index];
+        float c_x = third.x[third_index];
+        float c_y = third.y[third_index];
 
         // Calculates the x_travel[] and y_travel[] values while maintaining signage
-        double ab_x_travel_distance = coordinates[1].x - coordinates[0].x;
-        double bc_x_travel_distance = coordinates[2].x - coordinates[1].x;
-        double ab_y_travel_distance = coordinates[1].y - coordinates[0].y;
-        double bc_y_travel_distance = coordinates[2].y - coordinates[1].y;
+        double ab_x_travel_distance = b_x - a_x;
+        double bc_x_travel_distance = c_x - b_x;
+        double ab_y_travel_distance = b_y - a_y;
+        double bc_y_travel_distance = c_y - b_y;
 
         // Calculates the total travel distance using the distance formula
-        double total_travel_distance = Math.sqrt(Math.pow(coordinates[0].x - coordinates[2].x, 2) + Math.pow(coordinates[0].y - coordinates[2].y, 2));
+        double total_travel_distance = Math.sqrt(Math.pow(a_x - c_x, 2) + Math.pow(a_y - c_y, 2));
 
         // Calculates the travel distance ratio for both x_travel and y_travel and then their product, the spacing ratio
         double x_distance_ratio = Math.min(Math.abs(ab_x_travel_distance), Math.abs(bc_x_travel_distance)) / Math.max(Math.abs(ab_x_travel_distance), Math.abs(bc_x_travel_distance));
@@ -118,7 +251,7 @@ public class EvenSpaceTripleTracker extends Tracker {
         float spacing_ratio = (float) (x_distance_ratio * y_distance_ratio);
 
         // Calculates the mean object size, mean travel distance over 1 timestamp, and the <1 ratio between them
-        float mean_size = (mobile_bodies[first_timestamp].get(first_index).body.length + mobile_bodies[first_timestamp + 1].get(second_index).body.length + mobile_bodies[first_timestamp + 2].get(third_index).body.length) / 3;
+        float mean_size = (first.size[first_index] + second.size[second_index] + third.size[third_index]) / 3;
         float mean_travel_distance = (float) total_travel_distance / 2;
         float size_travel_distance_ratio = Math.min(mean_size, mean_travel_distance) / Math.max(mean_size, mean_travel_distance);
 
@@ -2,6 +2,7 @@ package core.track;
 
 import brightbodies.BrightBodyLinkedSet;
 import brightbodies.BrightBodyList;
+import brightbodies.DetectionColumns;
 
 /**
  * This abstract class will take in the set of MobileBrightBodies from the MobilityFilter and determine which are
@@ -13,6 +14,11 @@ import brightbodies.BrightBodyList;
 public abstract class Tracker {
     BrightBodyList[] mobile_bodies_;
 
+    /**
+     * The same MBBs as mobile_bodies_ stored as columns for loops that only read centroids, areas, sizes, and bounds
+     */
+    final DetectionColumns[] mobile_columns_;
+
     /**
      * Creates a generic tracker object
      *
@@ -20,6 +26,17 @@ public abstract class Tracker {
      */
     Tracker(BrightBodyList[] mobile_bodies) {
         mobile_bodies_ = mobile_bodies;
+        mobile_columns_ = DetectionColumns.of(mobile_bodies);
+    }
+
+    /**
+     * Creates a generic tracker object from MBBs that are already stored as columns
+     *
+     * @param mobile_columns MBBs from mobility filtration
+     */
+    Tracker(DetectionColumns[] mobile_columns) {
+        mobile_bodies_ = DetectionColumns.toBrightBodyLists(mobile_columns);
+        mobile_columns_ = mobile_columns;
     }
 
     /**
@@ -0,0 +1,54 @@
+package cube;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A FrameCube that wraps an existing on-heap float[][][] without copying it. This lets data cubes created before the
+ * FrameCube type existed be passed to the Locate and Filter steps.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class ArrayFrameCube extends FrameCube {
+    private final float[][][] data_;
+
+    /**
+     * Constructs an ArrayFrameCube around a data cube
+     *
+     * @param data data cube indexed [frame][row][column]
+     */
+    public ArrayFrameCube(float[][][] data) {
+        super(data.length, data.length == 0 ? 0 : data[0].length, data.length == 0 ? 0 : data[0][0].length);
+        data_ = data;
+    }
+
+    public float get(int frame, int row, int column) {
+        return data_[frame][row][column];
+    }
+
+    public FloatBuffer frameBuffer(int frame) {
+        float[] flat = new float[rows_ * columns_];
+        copyFrame(frame, flat);
+        return FloatBuffer.wrap(flat).asReadOnlyBuffer();
+    }
+
+    public FloatBuffer rowBuffer(int frame, int row) {
+        return FloatBuffer.wrap(data_[frame][row]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the wrapped frame without copying it
+     *
+     * @param frame frame index
+     * @return frame indexed [row][column]
+     */
+    public float[][] frame(int frame) {
+        return data_[frame];
+    }
+
+    public void copyFrame(int frame, float[] destination) {
+        for(int row = 0; row < rows_; row++) {
+            System.arraycopy(data_[frame][row], 0, destination, row * columns_, columns_);
+        }
+    }
+}
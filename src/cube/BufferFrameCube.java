@@ -0,0 +1,278 @@
+package cube;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * A FrameCube whose values are stored outside of the Java heap, either in direct buffers or in a memory-mapped file.
+ * Frames are stored contiguously in row-major order inside a small number of large segments so that a scan over a
+ * frame or over the cube reads memory sequentially. Each segment holds a whole number of frames, which keeps every
+ * frame view inside a single buffer while still allowing cubes larger than the 2GB limit of a single buffer.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class BufferFrameCube extends FrameCube {
+    /**
+     * Target size of each segment in bytes
+     */
+    static final int SEGMENT_BYTES = 1 << 24;
+
+    private final FloatBuffer[] segments_;
+    private final int frames_per_segment_;
+    private final int frame_size_;
+
+    /**
+     * Constructs a BufferFrameCube over already filled segments
+     *
+     * @param segments buffers that each hold frames_per_segment frames
+     * @param frames_per_segment number of frames in each segment
+     * @param frames number of frames
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     */
+    BufferFrameCube(FloatBuffer[] segments, int frames_per_segment, int frames, int rows, int columns) {
+        super(frames, rows, columns);
+        segments_ = segments;
+        frames_per_segment_ = frames_per_segment;
+        frame_size_ = rows * columns;
+    }
+
+    /**
+     * Copies an on-heap data cube into direct buffers
+     *
+     * @param data data cube indexed [frame][row][column]
+     * @return off-heap copy of the data
+     */
+    public static BufferFrameCube copyOf(float[][][] data) {
+        return collect(new ArrayFrameCube(data).iterator(), data.length == 0 ? 0 : data[0].length, data.length == 0 ? 0 : data[0][0].length);
+    }
+
+    /**
+     * Copies frames into direct buffers as they are read from an iterator. Only the frame being copied needs to be on
+     * the heap.
+     *
+     * @param frames iterator over frames indexed [row][column]
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @return off-heap cube holding every frame
+     */
+    public static BufferFrameCube collect(Iterator<float[][]> frames, int rows, int columns) {
+        Builder builder = new Builder(rows, columns);
+        while(frames.hasNext()) {
+            builder.append(frames.next());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Copies frames into a memory-mapped file as they are read from an iterator. Memory-mapped cubes are not counted
+     * against the heap or direct memory limits, so this is the preferred way to hold cubes larger than memory.
+     *
+     * @param frames iterator over frames indexed [row][column]
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param backing file that will be created or overwritten to hold the cube
+     * @return memory-mapped cube holding every frame
+     * @throws IOException
+     */
+    public static BufferFrameCube collect(Iterator<float[][]> frames, int rows, int columns, File backing) throws IOException {
+        Builder builder = new Builder(rows, columns, backing);
+        try {
+            while(frames.hasNext()) {
+                builder.append(frames.next());
+            }
+        }
+        finally {
+            builder.close();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Memory-maps a cube that was written to a file as consecutive row-major frames of 4 byte floats. The mapping is
+     * read only and stays valid after the channel is closed.
+     *
+     * @param channel channel of the file holding the cube
+     * @param position byte offset of the first frame within the file
+     * @param frames number of frames
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param order byte order of the floats in the file
+     * @return memory-mapped cube
+     * @throws IOException
+     */
+    public static BufferFrameCube map(FileChannel channel, long position, int frames, int rows, int columns, ByteOrder order) throws IOException {
+        int frame_size = rows * columns;
+        int frames_per_segment = Math.max(1, SEGMENT_BYTES / Math.max(1, frame_size * 4));
+        int segment_count = (frames + frames_per_segment - 1) / frames_per_segment;
+
+        FloatBuffer[] segments = new FloatBuffer[segment_count];
+        for(int segment = 0; segment < segment_count; segment++) {
+            int segment_frames = Math.min(frames_per_segment, frames - segment * frames_per_segment);
+            long start = position + (long) segment * frames_per_segment * frame_size * 4;
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) segment_frames * frame_size * 4).order(order).asFloatBuffer();
+        }
+        return new BufferFrameCube(segments, frames_per_segment, frames, rows, columns);
+    }
+
+    public float get(int frame, int row, int column) {
+        return segments_[frame / frames_per_segment_].get((frame % frames_per_segment_) * frame_size_ + row * columns_ + column);
+    }
+
+    public FloatBuffer frameBuffer(int frame) {
+        FloatBuffer buffer = segments_[frame / frames_per_segment_].duplicate();
+        int start = (frame % frames_per_segment_) * frame_size_;
+        buffer.limit(start + frame_size_);
+        buffer.position(start);
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Builds a BufferFrameCube one frame at a time when the number of frames is not known in advance. Segments are
+     * allocated as they are needed, either as direct buffers or as regions of a memory-mapped file.
+     */
+    public static final class Builder {
+        private final int rows_;
+        private final int columns_;
+        private final int frame_size_;
+        private final int frames_per_segment_;
+        private final long segment_bytes_;
+        private final RandomAccessFile file_;
+        private final ArrayList<FloatBuffer> segments_;
+        private FloatBuffer segment_;
+        private int frame_count_;
+
+        /**
+         * Constructs a Builder that stores frames in direct buffers
+         *
+         * @param rows number of rows in each frame
+         * @param columns number of columns in each frame
+         */
+        public Builder(int rows, int columns) {
+            this(rows, columns, (RandomAccessFile) null);
+        }
+
+        /**
+         * Constructs a Builder that stores frames in a memory-mapped file. The file is closed by close() but the
+         * built cube remains valid.
+         *
+         * @param rows number of rows in each frame
+         * @param columns number of columns in each frame
+         * @param backing file that will be created or overwritten to hold the cube, or null for direct buffers
+         * @throws IOException
+         */
+        public Builder(int rows, int columns, File backing) throws IOException {
+            this(rows, columns, backing == null ? null : open(backing));
+        }
+
+        private Builder(int rows, int columns, RandomAccessFile file) {
+            rows_ = rows;
+            columns_ = columns;
+            frame_size_ = rows * columns;
+            frames_per_segment_ = Math.max(1, SEGMENT_BYTES / Math.max(1, frame_size_ * 4));
+            segment_bytes_ = (long) frames_per_segment_ * frame_size_ * 4;
+            file_ = file;
+            segments_ = new ArrayList<>();
+            frame_count_ = 0;
+        }
+
+        /**
+         * Opens and truncates the file that will back the cube
+         */
+        private static RandomAccessFile open(File backing) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(backing, "rw");
+            file.setLength(0);
+            return file;
+        }
+
+        /**
+         * Appends a frame indexed [row][column]
+         *
+         * @param frame the frame
+         */
+        public void append(float[][] frame) {
+            FloatBuffer segment = nextFrame();
+            for(float[] row : frame) {
+                segment.put(row, 0, columns_);
+            }
+        }
+
+        /**
+         * Appends a frame stored in row-major order
+         *
+         * @param frame array of at least rows * columns floats
+         */
+        public void append(float[] frame) {
+            nextFrame().put(frame, 0, frame_size_);
+        }
+
+        /**
+         * Returns a buffer positioned at the start of the next frame so that a decoder can write the frame directly
+         * into the cube. Exactly rows * columns floats must be written before the next call to the Builder.
+         *
+         * @return buffer positioned at the next frame
+         */
+        public FloatBuffer appendBuffer() {
+            return nextFrame();
+        }
+
+        /**
+         * @return number of frames appended so far
+         */
+        public int frames() {
+            return frame_count_;
+        }
+
+        /**
+         * Closes the backing file, if any. The mapped segments stay valid.
+         *
+         * @throws IOException
+         */
+        public void close() throws IOException {
+            if(file_ != null) {
+                file_.close();
+            }
+        }
+
+        /**
+         * Creates the cube from every frame appended so far
+         *
+         * @return the cube
+         */
+        public BufferFrameCube build() {
+            return new BufferFrameCube(segments_.toArray(new FloatBuffer[segments_.size()]), frames_per_segment_, frame_count_, rows_, columns_);
+        }
+
+        /**
+         * Allocates a new segment if the current one is full and counts the frame about to be written
+         */
+        private FloatBuffer nextFrame() {
+            if(frame_count_ % frames_per_segment_ == 0) {
+                ByteBuffer bytes;
+                try {
+                    if(file_ == null) {
+                        bytes = ByteBuffer.allocateDirect((int) segment_bytes_);
+                    }
+                    else {
+                        bytes = file_.getChannel().map(FileChannel.MapMode.READ_WRITE, segments_.size() * segment_bytes_, segment_bytes_);
+                    }
+                }
+                catch(IOException e) {
+                    throw new IllegalStateException("Unable to map segment " + segments_.size() + " of the cube", e);
+                }
+                segment_ = bytes.order(ByteOrder.nativeOrder()).asFloatBuffer();
+                segments_.add(segment_);
+            }
+            frame_count_++;
+            return segment_;
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package cube;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A FrameCube that keeps every frame compressed and only decompresses a frame when it is accessed. Each frame is
+ * compressed on its own so any frame can be read without touching the others, and the most recently used decoded
+ * frames are kept in a small LRU cache so that scans over a frame do not decompress it more than once.
+ *
+ * Frames are compressed losslessly by splitting the bytes of every float into four planes, which groups the slowly
+ * varying sign and exponent bytes together, and deflating the planes. If a noise fraction is given the frames are
+ * instead quantized in the way that the FITS tiled image convention does: the noise of each frame is estimated from
+ * the median absolute difference between neighbouring pixels and values are rounded to multiples of noise_fraction
+ * times that noise before being compressed as integers. Frames whose noise cannot be estimated are stored losslessly.
+ *
+ * The compressed frames may be held on the heap or in a memory-mapped file.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class CompressedFrameCube extends FrameCube {
+    /**
+     * Number of decoded frames kept when no cache size is given
+     */
+    public static final int DEFAULT_CACHE_FRAMES = 16;
+
+    /**
+     * Largest region of a backing file that is mapped as a single buffer
+     */
+    static final long CHUNK_BYTES = 1L << 30;
+
+    private static final byte LOSSLESS = 0;
+    private static final byte QUANTIZED = 1;
+    private static final int QUANTIZED_HEADER_BYTES = 9;
+    private static final int BLANK = Integer.MIN_VALUE;
+
+    private final ByteBuffer[] blocks_;
+    private final Map<Integer, float[]> decoded_;
+
+    /**
+     * Constructs a CompressedFrameCube over already compressed frames
+     *
+     * @param blocks compressed form of each frame
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param cache_frames number of decoded frames to keep
+     */
+    CompressedFrameCube(ByteBuffer[] blocks, int rows, int columns, int cache_frames) {
+        super(blocks.length, rows, columns);
+        blocks_ = blocks;
+        decoded_ = new LinkedHashMap<Integer, float[]>(cache_frames * 2, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+                return size() > cache_frames;
+            }
+        };
+    }
+
+    /**
+     * Losslessly compresses frames on the heap as they are read from an iterator
+     *
+     * @param frames iterator over frames indexed [row][column]
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @return compressed cube holding every frame
+     */
+    public static CompressedFrameCube collect(Iterator<float[][]> frames, int rows, int columns) {
+        Builder builder = new Builder(rows, columns, 0.0f);
+        while(frames.hasNext()) {
+            builder.append(frames.next());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Quantizes and compresses frames on the heap as they are read from an iterator
+     *
+     * @param frames iterator over frames indexed [row][column]
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @param noise_fraction quantization step as a fraction of the noise of each frame, or 0 for lossless compression
+     * @return compressed cube holding every frame
+     */
+    public static CompressedFrameCube collect(Iterator<float[][]> frames, int rows, int columns, float noise_fraction) {
+        Builder builder = new Builder(rows, columns, noise_fraction);
+        while(frames.hasNext()) {
+            builder.append(frames.next());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param frame frame index
+     * @return number of bytes used by the compressed frame
+     */
+    public int compressedSize(int frame) {
+        return blocks_[frame].remaining();
+    }
+
+    public float get(int frame, int row, int column) {
+        return decoded(frame)[row * columns_ + column];
+    }
+
+    public FloatBuffer frameBuffer(int frame) {
+        return FloatBuffer.wrap(decoded(frame)).asReadOnlyBuffer();
+    }
+
+    public void copyFrame(int frame, float[] destination) {
+        System.arraycopy(decoded(frame), 0, destination, 0, rows_ * columns_);
+    }
+
+    /**
+     * Returns a decoded frame from the cache, decompressing it if it is not present. The returned array is shared and
+     * must not be modified.
+     *
+     * @param frame frame index
+     * @return frame in row-major order
+     */
+    private float[] decoded(int frame) {
+        synchronized(decoded_) {
+            float[] values = decoded_.get(frame);
+            if(values != null) {
+                return values;
+            }
+        }
+        // Decompress outside of the lock so that several threads can decode different frames at once
+        float[] values = decode(blocks_[frame].duplicate(), rows_ * columns_);
+        synchronized(decoded_) {
+            decoded_.put(frame, values);
+        }
+        return values;
+    }
+
+    /**
+     * Compresses a single row-major frame
+     *
+     * @param frame values of the frame
+     * @param noise_fraction quantization step as a fraction of the frame noise, or 0 for lossless compression
+     * @param deflater Deflater to compress with, reset before use
+     * @return compressed frame
+     */
+    static byte[] encode(float[] frame, float noise_fraction, Deflater deflater) {
+        int size = frame.length;
+        byte[] planes = new byte[size * 4];
+
+        float scale = noise_fraction > 0 ? noiseSigma(frame) * noise_fraction : 0.0f;
+        float zero = 0.0f;
+        boolean quantize = scale > 0 && !Float.isInfinite(scale);
+        if(quantize) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for(float value : frame) {
+                if(Float.isInfinite(value)) {
+                    quantize = false;
+                    break;
+                }
+                if(!Float.isNaN(value)) {
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            }
+            // Every quantized value other than BLANK must fit in an int
+            quantize = quantize && ((double) max - min) / scale < Integer.MAX_VALUE - 1L;
+            zero = min;
+        }
+
+        for(int i = 0; i < size; i++) {
+            int bits;
+            if(!quantize) {
+                bits = Float.floatToRawIntBits(frame[i]);
+            }
+            else if(Float.isNaN(frame[i])) {
+                bits = BLANK;
+            }
+            else {
+                // A frame may span more than 2^24 steps, so the value is quantized in double to stay within half a step
+                bits = (int) Math.round(((double) frame[i] - zero) / scale);
+            }
+            planes[i] = (byte) (bits >>> 24);
+            planes[size + i] = (byte) (bits >>> 16);
+            planes[2 * size + i] = (byte) (bits >>> 8);
+            planes[3 * size + i] = (byte) bits;
+        }
+
+        int header = quantize ? QUANTIZED_HEADER_BYTES : 1;
+        deflater.reset();
+        deflater.setInput(planes);
+        deflater.finish();
+        byte[] output = new byte[header + planes.length / 2 + 64];
+        int length = header;
+        while(!deflater.finished()) {
+            if(length == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            length += deflater.deflate(output, length, output.length - length);
+        }
+
+        ByteBuffer prefix = ByteBuffer.wrap(output, 0, header);
+        prefix.put(quantize ? QUANTIZED : LOSSLESS);
+        if(quantize) {
+            prefix.putFloat(zero);
+            prefix.putFloat(scale);
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    /**
+     * Decompresses a single frame
+     *
+     * @param block compressed frame positioned at its start
+     * @param size number of values in the frame
+     * @return frame in row-major order
+     */
+    static float[] decode(ByteBuffer block, int size) {
+        byte mode = block.get();
+        float zero = 0.0f;
+        float scale = 0.0f;
+        if(mode == QUANTIZED) {
+            zero = block.getFloat();
+            scale = block.getFloat();
+        }
+        byte[] compressed = new byte[block.remaining()];
+        block.get(compressed);
+
+        byte[] planes = new byte[size * 4];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while(length < planes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(planes, length, planes.length - length);
+                if(inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if(length != planes.length) {
+                throw new IllegalStateException("Compressed frame holds " + length / 4 + " of " + size + " values");
+            }
+        }
+        catch(DataFormatException e) {
+            throw new IllegalStateException("Compressed frame is corrupt", e);
+        }
+        finally {
+            inflater.end();
+        }
+
+        float[] frame = new float[size];
+        for(int i = 0; i < size; i++) {
+            int bits = (planes[i] & 0xFF) << 24 | (planes[size + i] & 0xFF) << 16
+                    | (planes[2 * size + i] & 0xFF) << 8 | (planes[3 * size + i] & 0xFF);
+            if(mode == LOSSLESS) {
+                frame[i] = Float.intBitsToFloat(bits);
+            }
+            else {
+                frame[i] = bits == BLANK ? Float.NaN : (float) (zero + (double) bits * scale);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Estimates the standard deviation of the noise in a frame from the median absolute difference between
+     * consecutive values, which is insensitive to the stars in the frame
+     *
+     * @param frame frame in row-major order
+     * @return estimated noise or 0 if it cannot be estimated
+     */
+    static float noiseSigma(float[] frame) {
+        float[] differences = new float[Math.max(0, frame.length - 1)];
+        int count = 0;
+        for(int i = 0; i + 1 < frame.length; i++) {
+            float difference = Math.abs(frame[i + 1] - frame[i]);
+            if(!Float.isNaN(difference) && !Float.isInfinite(difference)) {
+                differences[count] = difference;
+                count++;
+            }
+        }
+        if(count == 0) {
+            return 0.0f;
+        }
+        Arrays.sort(differences, 0, count);
+        // For Gaussian noise the difference of two values has standard deviation sqrt(2) sigma and a median absolute
+        // value of 0.6745 times that
+        return (float) (differences[count / 2] / (0.6745 * Math.sqrt(2.0)));
+    }
+
+    /**
+     * Builds a CompressedFrameCube one frame at a time. The compressed frames are held on the heap or appended to a
+     * file that is memory-mapped when the cube is built.
+     */
+    public static final class Builder {
+        private final int rows_;
+        private final int columns_;
+        private final float noise_fraction_;
+        private final Deflater deflater_;
+        private final ArrayList<byte[]> blocks_;
+        private final RandomAccessFile file_;
+        private final ArrayList<long[]> extents_;
+        private long chunk_start_;
+        private long position_;
+        private int cache_frames_;
+
+        /**
+         * Constructs a Builder that holds the compressed frames on the heap
+         *
+         * @param rows number of rows in each frame
+         * @param columns number of columns in each frame
+         * @param noise_fraction quantization step as a fraction of the noise of each frame, or 0 for lossless
+         *                       compression
+         */
+        public Builder(int rows, int columns, float noise_fraction) {
+            this(rows, columns, noise_fraction, (RandomAccessFile) null);
+        }
+
+        /**
+         * Constructs a Builder that writes the compressed frames to a file. The file is closed by build() but the
+         * built cube remains valid.
+         *
+         * @param rows number of rows in each frame
+         * @param columns number of columns in each frame
+         * @param noise_fraction quantization step as a fraction of the noise of each frame, or 0 for lossless
+         *                       compression
+         * @param backing file that will be created or overwritten to hold the compressed frames
+         * @throws IOException
+         */
+        public Builder(int rows, int columns, float noise_fraction, File backing) throws IOException {
+            this(rows, columns, noise_fraction, open(backing));
+        }
+
+        private Builder(int rows, int columns, float noise_fraction, RandomAccessFile file) {
+            if(noise_fraction < 0 || Float.isNaN(noise_fraction)) {
+                throw new IllegalArgumentException("Noise fraction must be at least 0");
+            }
+            rows_ = rows;
+            columns_ = columns;
+            noise_fraction_ = noise_fraction;
+            deflater_ = new Deflater(Deflater.BEST_SPEED);
+            blocks_ = new ArrayList<>();
+            file_ = file;
+            extents_ = new ArrayList<>();
+            chunk_start_ = 0;
+            position_ = 0;
+            cache_frames_ = DEFAULT_CACHE_FRAMES;
+        }
+
+        private static RandomAccessFile open(File backing) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(backing, "rw");
+            file.setLength(0);
+            return file;
+        }
+
+        /**
+         * Sets the number of decoded frames the built cube keeps
+         *
+         * @param cache_frames number of decoded frames, at least 1
+         */
+        public void setCacheFrames(int cache_frames) {
+            if(cache_frames < 1) {
+                throw new IllegalArgumentException("At least one decoded frame must be cached");
+            }
+            cache_frames_ = cache_frames;
+        }
+
+        /**
+         * Compresses and appends a frame indexed [row][column]
+         *
+         * @param frame the frame
+         * @throws IllegalArgumentException if the frame is not rows by columns
+         */
+        public void append(float[][] frame) {
+            if(frame.length != rows_) {
+                throw new IllegalArgumentException("Frame has " + frame.length + " rows instead of " + rows_);
+            }
+            float[] flat = new float[rows_ * columns_];
+            for(int row = 0; row < rows_; row++) {
+                if(frame[row].length != columns_) {
+                    throw new IllegalArgumentException("Frame has " + frame[row].length + " columns instead of " + columns_);
+                }
+                System.arraycopy(frame[row], 0, flat, row * columns_, columns_);
+            }
+            append(flat);
+        }
+
+        /**
+         * Compresses and appends a frame stored in row-major order
+         *
+         * @param frame array of rows * columns floats
+         * @throws IllegalArgumentException if the frame does not hold rows * columns floats
+         */
+        public void append(float[] frame) {
+            if(frame.length != rows_ * columns_) {
+                throw new IllegalArgumentException("Frame has " + frame.length + " values instead of " + rows_ * columns_);
+            }
+            byte[] block = encode(frame, noise_fraction_, deflater_);
+            if(file_ == null) {
+                blocks_.add(block);
+                return;
+            }
+            try {
+                // A block never straddles two mapped chunks
+                if(position_ + block.length - chunk_start_ > CHUNK_BYTES) {
+                    chunk_start_ = position_;
+                }
+                file_.seek(position_);
+                file_.write(block);
+                extents_.add(new long[]{chunk_start_, position_, block.length});
+                position_ += block.length;
+            }
+            catch(IOException e) {
+                throw new IllegalStateException("Unable to write compressed frame " + extents_.size(), e);
+            }
+        }
+
+        /**
+         * @return number of frames appended so far
+         */
+        public int frames() {
+            return file_ == null ? blocks_.size() : extents_.size();
+        }
+
+        /**
+         * Creates the cube from every frame appended so far. A backing file is mapped and then closed.
+         *
+         * @return the cube
+         */
+        public CompressedFrameCube build() {
+            deflater_.end();
+            if(file_ == null) {
+                ByteBuffer[] blocks = new ByteBuffer[blocks_.size()];
+                for(int frame = 0; frame < blocks.length; frame++) {
+                    blocks[frame] = ByteBuffer.wrap(blocks_.get(frame)).asReadOnlyBuffer();
+                }
+                return new CompressedFrameCube(blocks, rows_, columns_, cache_frames_);
+            }
+
+            try {
+                FileChannel channel = file_.getChannel();
+                ByteBuffer[] blocks = new ByteBuffer[extents_.size()];
+                ByteBuffer chunk = null;
+                long mapped_start = -1;
+                for(int frame = 0; frame < blocks.length; frame++) {
+                    long[] extent = extents_.get(frame);
+                    if(extent[0] != mapped_start) {
+                        mapped_start = extent[0];
+                        chunk = channel.map(FileChannel.MapMode.READ_ONLY, mapped_start, Math.min(CHUNK_BYTES, position_ - mapped_start));
+                    }
+                    ByteBuffer block = chunk.duplicate();
+                    block.position((int) (extent[1] - mapped_start));
+                    block.limit((int) (extent[1] - mapped_start + extent[2]));
+                    blocks[frame] = block.slice();
+                }
+                file_.close();
+                return new CompressedFrameCube(blocks, rows_, columns_, cache_frames_);
+            }
+            catch(IOException e) {
+                throw new IllegalStateException("Unable to map compressed frames", e);
+            }
+        }
+    }
+}
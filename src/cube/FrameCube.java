@@ -0,0 +1,145 @@
+package cube;
+
+import java.nio.FloatBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A data cube of floating point brightness values where the first index is the frame and the other two are the row and
+ * column within the frame. This is the type passed from a Preprocessor to the Locate and Filter steps. Concrete
+ * subclasses decide where the values live; the cube itself is read only once constructed.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public abstract class FrameCube implements Iterable<float[][]> {
+    /**
+     * Number of frames in the cube
+     */
+    protected final int frames_;
+
+    /**
+     * Number of rows in each frame
+     */
+    protected final int rows_;
+
+    /**
+     * Number of columns in each frame
+     */
+    protected final int columns_;
+
+    /**
+     * Constructs a FrameCube with the given dimensions
+     *
+     * @param frames number of frames
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     */
+    protected FrameCube(int frames, int rows, int columns) {
+        frames_ = frames;
+        rows_ = rows;
+        columns_ = columns;
+    }
+
+    /**
+     * @return number of frames in the cube
+     */
+    public int frames() {
+        return frames_;
+    }
+
+    /**
+     * @return number of rows in each frame
+     */
+    public int rows() {
+        return rows_;
+    }
+
+    /**
+     * @return number of columns in each frame
+     */
+    public int columns() {
+        return columns_;
+    }
+
+    /**
+     * Returns a single value of the cube
+     *
+     * @param frame frame index
+     * @param row row index
+     * @param column column index
+     * @return brightness value
+     */
+    public abstract float get(int frame, int row, int column);
+
+    /**
+     * Returns a read only view of a single frame in row-major order. The view is independent of any other view, so
+     * views of the same cube may be read from several threads at once.
+     *
+     * @param frame frame index
+     * @return FloatBuffer of length rows() * columns() positioned at zero
+     */
+    public abstract FloatBuffer frameBuffer(int frame);
+
+    /**
+     * Returns a read only view of a single row of a frame
+     *
+     * @param frame frame index
+     * @param row row index
+     * @return FloatBuffer of length columns() positioned at zero
+     */
+    public FloatBuffer rowBuffer(int frame, int row) {
+        FloatBuffer buffer = frameBuffer(frame);
+        buffer.position(row * columns_);
+        buffer.limit((row + 1) * columns_);
+        return buffer.slice();
+    }
+
+    /**
+     * Returns a single frame as a two dimensional array. The array may be shared with the cube and must not be
+     * modified.
+     *
+     * @param frame frame index
+     * @return frame indexed [row][column]
+     */
+    public float[][] frame(int frame) {
+        float[][] image = new float[rows_][columns_];
+        FloatBuffer buffer = frameBuffer(frame);
+        for(float[] row : image) {
+            buffer.get(row);
+        }
+        return image;
+    }
+
+    /**
+     * Copies a single frame into a caller supplied row-major array
+     *
+     * @param frame frame index
+     * @param destination array of at least rows() * columns() floats
+     */
+    public void copyFrame(int frame, float[] destination) {
+        frameBuffer(frame).get(destination, 0, rows_ * columns_);
+    }
+
+    /**
+     * Returns an iterator over the frames of the cube in order. Each frame is returned by frame(int).
+     *
+     * @return iterator over the frames
+     */
+    public Iterator<float[][]> iterator() {
+        return new Iterator<float[][]>() {
+            private int index_ = 0;
+
+            public boolean hasNext() {
+                return index_ < frames_;
+            }
+
+            public float[][] next() {
+                if(index_ >= frames_) {
+                    throw new NoSuchElementException();
+                }
+                return frame(index_++);
+            }
+        };
+    }
+}
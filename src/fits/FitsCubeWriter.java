@@ -0,0 +1,300 @@
+package fits;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Writes a FITS file holding a single data cube of floating point frames one frame at a time, so a derived cube such as
+ * an animation, a difference cube, or a stack of masks can be written with constant memory while it is produced. The
+ * header is written first with the declared frame count as NAXIS3. Frames are then encoded into one of two buffers
+ * while the other is written to disk on a dedicated I/O thread, which overlaps the disk writes with the producer.
+ *
+ * When the file is closed the data unit is padded to a whole FITS block and NAXIS3 is rewritten if the number of frames
+ * that were written differs from the declared count, which allows cubes whose length is not known in advance.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class FitsCubeWriter implements AutoCloseable {
+    /**
+     * Frame count to declare when the number of frames is not known until the writer is closed
+     */
+    public static final int UNKNOWN_FRAMES = -1;
+
+    /**
+     * Size of each FITS header and data block
+     */
+    private static final int BLOCK_SIZE = 2880;
+
+    private static final int CARD_SIZE = 80;
+
+    /**
+     * Position in the header of the NAXIS3 card, which follows SIMPLE, BITPIX, NAXIS, NAXIS1, and NAXIS2
+     */
+    private static final int NAXIS3_POSITION = 5 * CARD_SIZE;
+
+    /**
+     * Smallest number of bytes handed to the I/O thread at once when frames are small
+     */
+    private static final int MIN_BUFFER_BYTES = 1 << 20;
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final RandomAccessFile file_;
+    private final FileChannel channel_;
+    private final int rows_;
+    private final int columns_;
+    private final int declared_frames_;
+    private final ArrayBlockingQueue<ByteBuffer> filled_;
+    private final ArrayBlockingQueue<ByteBuffer> free_;
+    private final Thread writer_;
+    private volatile IOException failure_;
+    private ByteBuffer current_;
+    private int frames_;
+    private boolean closed_;
+
+    /**
+     * Constructs a FitsCubeWriter, creating or overwriting the output file and writing its header
+     *
+     * @param out filename
+     * @param rows number of rows in each frame, NAXIS2
+     * @param columns number of columns in each frame, NAXIS1
+     * @param frames number of frames that will be written or UNKNOWN_FRAMES
+     * @throws IOException if the file cannot be created
+     */
+    public FitsCubeWriter(String out, int rows, int columns, int frames) throws IOException {
+        if(rows < 1 || columns < 1 || frames < UNKNOWN_FRAMES) {
+            throw new IllegalArgumentException("Invalid cube dimensions " + frames + "x" + rows + "x" + columns);
+        }
+        rows_ = rows;
+        columns_ = columns;
+        declared_frames_ = frames;
+
+        file_ = new RandomAccessFile(out, "rw");
+        file_.setLength(0);
+        channel_ = file_.getChannel();
+        ByteBuffer header = header(Math.max(0, frames));
+        while(header.hasRemaining()) {
+            channel_.write(header);
+        }
+
+        long frame_bytes = 4L * rows * columns;
+        int buffer_bytes = (int) Math.max(frame_bytes, MIN_BUFFER_BYTES / frame_bytes * frame_bytes);
+        filled_ = new ArrayBlockingQueue<>(2);
+        free_ = new ArrayBlockingQueue<>(2);
+        current_ = ByteBuffer.allocate(buffer_bytes);
+        free_.add(ByteBuffer.allocate(buffer_bytes));
+
+        writer_ = new Thread(this::drain, "fits-writer");
+        writer_.setDaemon(true);
+        writer_.start();
+    }
+
+    /**
+     * @return number of frames written so far
+     */
+    public int frames() {
+        return frames_;
+    }
+
+    /**
+     * Appends a frame to the cube
+     *
+     * @param frame the frame indexed [row][column]
+     * @throws IOException if an earlier write failed
+     */
+    public void write(float[][] frame) throws IOException {
+        if(frame.length != rows_) {
+            throw new IllegalArgumentException("Frame has " + frame.length + " rows instead of " + rows_);
+        }
+        for(float[] row : frame) {
+            if(row.length != columns_) {
+                throw new IllegalArgumentException("Frame has " + row.length + " columns instead of " + columns_);
+            }
+        }
+        ByteBuffer buffer = reserve();
+        for(float[] row : frame) {
+            for(float value : row) {
+                buffer.putFloat(value);
+            }
+        }
+        frames_++;
+    }
+
+    /**
+     * Appends a frame that is stored in row-major order to the cube
+     *
+     * @param frame the frame with rows * columns values
+     * @throws IOException if an earlier write failed
+     */
+    public void write(float[] frame) throws IOException {
+        if(frame.length != rows_ * columns_) {
+            throw new IllegalArgumentException("Frame has " + frame.length + " values instead of " + rows_ * columns_);
+        }
+        reserve().asFloatBuffer().put(frame);
+        current_.position(current_.position() + frame.length * 4);
+        frames_++;
+    }
+
+    /**
+     * Appends a boolean mask to the cube with the values 0 and 1
+     *
+     * @param mask the mask indexed [row][column]
+     * @throws IOException if an earlier write failed
+     */
+    public void write(boolean[][] mask) throws IOException {
+        if(mask.length != rows_) {
+            throw new IllegalArgumentException("Mask has " + mask.length + " rows instead of " + rows_);
+        }
+        for(boolean[] row : mask) {
+            if(row.length != columns_) {
+                throw new IllegalArgumentException("Mask has " + row.length + " columns instead of " + columns_);
+            }
+        }
+        ByteBuffer buffer = reserve();
+        for(boolean[] row : mask) {
+            for(boolean value : row) {
+                buffer.putFloat(value ? 1 : 0);
+            }
+        }
+        frames_++;
+    }
+
+    /**
+     * Writes the frames that are still buffered, pads the data unit, corrects NAXIS3 if needed, and closes the file
+     *
+     * @throws IOException if any write failed
+     */
+    public void close() throws IOException {
+        if(closed_) {
+            return;
+        }
+        closed_ = true;
+        try {
+            if(current_.position() > 0) {
+                filled_.put(current_);
+            }
+            filled_.put(END);
+            writer_.join();
+        }
+        catch(InterruptedException e) {
+            writer_.interrupt();
+            Thread.currentThread().interrupt();
+            file_.close();
+            throw new IOException("Interrupted while writing FITS cube", e);
+        }
+
+        try {
+            if(failure_ != null) {
+                throw failure_;
+            }
+            long data_bytes = 4L * rows_ * columns_ * frames_;
+            int padding = (int) ((BLOCK_SIZE - data_bytes % BLOCK_SIZE) % BLOCK_SIZE);
+            ByteBuffer zeros = ByteBuffer.allocate(padding);
+            while(zeros.hasRemaining()) {
+                channel_.write(zeros);
+            }
+            if(frames_ != declared_frames_) {
+                ByteBuffer card = card("NAXIS3", frames_);
+                channel_.write(card, NAXIS3_POSITION);
+            }
+        }
+        finally {
+            file_.close();
+        }
+    }
+
+    /**
+     * Returns the buffer to encode the next frame into, handing the current buffer to the I/O thread if it is full
+     */
+    private ByteBuffer reserve() throws IOException {
+        if(closed_) {
+            throw new IllegalStateException("FitsCubeWriter is closed");
+        }
+        if(declared_frames_ != UNKNOWN_FRAMES && frames_ == declared_frames_) {
+            throw new IllegalStateException("All " + declared_frames_ + " declared frames have been written");
+        }
+        if(failure_ != null) {
+            throw failure_;
+        }
+        if(current_.remaining() < 4 * rows_ * columns_) {
+            try {
+                filled_.put(current_);
+                current_ = free_.take();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing FITS cube", e);
+            }
+        }
+        return current_;
+    }
+
+    /**
+     * Body of the I/O thread. Writes each filled buffer to the file and returns it to the producer. After a failure
+     * the buffers are still returned so the producer never waits forever, and the failure is reported on its next
+     * call.
+     */
+    private void drain() {
+        try {
+            while(true) {
+                ByteBuffer buffer = filled_.take();
+                if(buffer == END) {
+                    return;
+                }
+                buffer.flip();
+                try {
+                    while(failure_ == null && buffer.hasRemaining()) {
+                        channel_.write(buffer);
+                    }
+                }
+                catch(IOException e) {
+                    failure_ = e;
+                }
+                buffer.clear();
+                free_.put(buffer);
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Builds the primary header of a single precision data cube, padded to a whole FITS block
+     */
+    private ByteBuffer header(int frames) {
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_SIZE);
+        header.put(card("SIMPLE", "T"));
+        header.put(card("BITPIX", -32));
+        header.put(card("NAXIS", 3));
+        header.put(card("NAXIS1", columns_));
+        header.put(card("NAXIS2", rows_));
+        header.put(card("NAXIS3", frames));
+        header.put(pad("END"));
+        while(header.hasRemaining()) {
+            header.put((byte) ' ');
+        }
+        header.flip();
+        return header;
+    }
+
+    private static ByteBuffer card(String keyword, int value) {
+        return card(keyword, Integer.toString(value));
+    }
+
+    /**
+     * Formats a fixed format header card, with the value right justified to end in column 30
+     */
+    private static ByteBuffer card(String keyword, String value) {
+        return pad(String.format("%-8s= %20s", keyword, value));
+    }
+
+    private static ByteBuffer pad(String text) {
+        return ByteBuffer.wrap(String.format("%-80s", text).getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -1,6 +1,9 @@
 package fits;
 
 
+import core.preprocess.CompressedImageReader;
+import core.preprocess.FrameIterator;
+import cube.FrameCube;
 import helper.BooleanToFloat;
 import nom.tam.fits.Fits;
 import nom.tam.fits.FitsException;
@@ -12,7 +15,8 @@ import java.io.IOException;
 
 /**
  * This class contains static methods to help with generation of FITS files and extraction of data from them. This class
- * mainly serves as a wrapper for existing methods in the nom.tam.fits library.
+ * mainly serves as a wrapper for existing methods in the nom.tam.fits library, with tile-compressed images read by a
+ * CompressedImageReader and data cubes written frame by frame with a FitsCubeWriter.
  *
  * @author Jonathan Zwiebel
  * @version July 8 2016
@@ -29,6 +33,35 @@ public final class FitsIO {
 		return new Fits(in);
 	}
 
+	/**
+	 * Reads an image HDU of a FITS file as a data cube. Images compressed with the FITS tiled image convention are
+	 * decompressed with their tiles decoded in parallel; other images are read through nom.tam.fits and must hold
+	 * single precision values.
+	 *
+	 * @param in the filename
+	 * @param hdu_index index of the image HDU, where the primary HDU is index 0
+	 * @return the image indexed [frame][row][column], with a single frame for a two dimensional image
+	 * @throws FitsException
+	 * @throws IOException
+	 */
+	public static float[][][] readImageCube(String in, int hdu_index) throws FitsException, IOException {
+		File file = new File(in);
+		if(CompressedImageReader.isCompressedImage(file, hdu_index)) {
+			return new CompressedImageReader(file, hdu_index).read();
+		}
+
+		Fits fits = new Fits(file);
+		Object kernel = fits.getHDU(hdu_index).getKernel();
+		fits.close();
+		if(kernel instanceof float[][][]) {
+			return (float[][][]) kernel;
+		}
+		if(kernel instanceof float[][]) {
+			return new float[][][]{(float[][]) kernel};
+		}
+		throw new FitsException("HDU " + hdu_index + " of " + in + " is not a single precision image");
+	}
+
     /**
      * Writes a 2D image of floating points to a new FITS file
 	 *
@@ -57,13 +90,47 @@ public final class FitsIO {
      * @throws IOException
      */
 	public static void writeDataCube(float[][][] cube, String out) throws FitsException, IOException {
-		Fits subtracted_fits = new Fits();
-		subtracted_fits.addHDU(FitsFactory.hduFactory(cube));
-		File output_file = new File(out);
-		BufferedFile buffered_file = new BufferedFile(output_file, "rw");
-		subtracted_fits.write(buffered_file);
-		buffered_file.close();
-		subtracted_fits.close();
+		try(FitsCubeWriter writer = new FitsCubeWriter(out, cube[0].length, cube[0][0].length, cube.length)) {
+			for(float[][] frame : cube) {
+				writer.write(frame);
+			}
+		}
+	}
+
+	/**
+	 * Writes a 3D cube of floating points to a new FITS file without holding the whole cube in memory. Each frame is
+	 * copied out of the cube and written in the background while the next frame is copied.
+	 *
+	 * @param cube the input cube
+	 * @param out filename
+	 * @throws IOException
+	 */
+	public static void writeDataCube(FrameCube cube, String out) throws IOException {
+		float[] frame = new float[cube.rows() * cube.columns()];
+		try(FitsCubeWriter writer = new FitsCubeWriter(out, cube.rows(), cube.columns(), cube.frames())) {
+			for(int index = 0; index < cube.frames(); index++) {
+				cube.copyFrame(index, frame);
+				writer.write(frame);
+			}
+		}
+	}
+
+	/**
+	 * Writes the frames of a FrameIterator to a new FITS file as a 3D cube as they are produced, so only one frame is
+	 * held in memory by this method. The number of frames does not need to be known in advance.
+	 *
+	 * @param frames iterator over the frames to write, which is exhausted by this method
+	 * @param out filename
+	 * @throws IOException
+	 */
+	public static void writeDataCube(FrameIterator frames, String out) throws IOException {
+		float[] frame = new float[frames.rows() * frames.columns()];
+		try(FitsCubeWriter writer = new FitsCubeWriter(out, frames.rows(), frames.columns(), FitsCubeWriter.UNKNOWN_FRAMES)) {
+			while(frames.hasNext()) {
+				frames.next(frame);
+				writer.write(frame);
+			}
+		}
 	}
 
 	/**
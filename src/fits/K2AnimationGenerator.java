@@ -1,6 +1,7 @@
 package fits;
 
 import core.preprocess.K2Preprocessor;
+import core.preprocess.PrefetchingFrameIterator;
 import core.preprocess.Preprocessor;
 import nom.tam.fits.Fits;
 import nom.tam.fits.FitsException;
@@ -26,14 +27,16 @@ public final class K2AnimationGenerator extends AnimationGenerator {
     }
 
     /**
-     * Generates the animation using a K2Preprocessor
+     * Generates the animation using a K2Preprocessor. Frames are decoded ahead on one thread and written behind on
+     * another, so the animation is never held in memory as a whole.
      *
      * @throws IOException
      * @throws FitsException
      */
     public void generateAnimation() throws IOException, FitsException {
         Preprocessor preprocessor = new K2Preprocessor(in_);
-        float[][][] data = preprocessor.read();
-        FitsIO.writeDataCube(data, out_);
+        try(PrefetchingFrameIterator frames = new PrefetchingFrameIterator(preprocessor.frames())) {
+            FitsIO.writeDataCube(frames, out_);
+        }
     }
 }
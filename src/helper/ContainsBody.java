@@ -2,7 +2,8 @@ package helper;
 
 import brightbodies.BrightBody;
 import brightbodies.BrightBodyList;
-import brightbodies.CartesianPoint;
+import brightbodies.DetectionColumns;
+import brightbodies.DetectionIndex;
 
 /**
  * @author Jonathan Zwiebel
@@ -23,7 +24,7 @@ public final class ContainsBody {
      */
     public static boolean containsBody(BrightBodyList bodies, int x_peak, int y_peak, int min_size, int max_size) {
         for(BrightBody body : bodies) {
-            if(!body.contains(new CartesianPoint(x_peak, y_peak))) {
+            if(!body.contains(x_peak, y_peak)) {
                 continue;
             }
             if(bodies.size() > max_size || bodies.size() < min_size) {
@@ -33,4 +34,28 @@ public final class ContainsBody {
         }
         return false;
     }
+
+    /**
+     * Determines if the bodies of an index contain a BrightBody with point(x, y) and a number of pixels between min_size
+     * and max_size inclusive, only checking the bodies whose bounding box holds the point
+     * @param index the index over the bodies to search
+     * @param x_peak x coordinate of known asteroid center
+     * @param y_peak y coordinate of known asteroid center
+     * @param min_size minimum size to return positive
+     * @param max_size maximum size to return positive
+     * @return does the DetectionIndex contain the asteroid?
+     */
+    public static boolean containsBody(DetectionIndex index, int x_peak, int y_peak, int min_size, int max_size) {
+        DetectionColumns columns = index.columns();
+        for(int row : index.boundsContaining(x_peak, y_peak)) {
+            if(!columns.body(row).contains(x_peak, y_peak)) {
+                continue;
+            }
+            if(columns.size[row] > max_size || columns.size[row] < min_size) {
+                continue;
+            }
+            return true;
+        }
+        return false;
+    }
 }
@@ -1,5 +1,10 @@
 package helper;
 
+import core.preprocess.FrameIterator;
+import cube.FrameCube;
+
+import java.nio.FloatBuffer;
+
 /**
  * This class contains a static method to generate a mean image based on an array of floating point images
  *
@@ -30,4 +35,57 @@ public final class MeanImage {
 
 		return mean_image;
 	}
+
+	/**
+	 * Calculates a mean image over the frames of a FrameIterator. The frames are summed as they are read so only a
+	 * single frame and the running sum are resident at once.
+	 *
+	 * @param frames iterator over the images to take the mean of
+	 * @return mean image
+	 */
+	public static float[][] meanImage(FrameIterator frames) {
+		float[][] mean_image = new float[frames.rows()][frames.columns()];
+		int count = 0;
+		while(frames.hasNext()) {
+			float[][] image = frames.next();
+			for(int i = 0; i < mean_image.length; i++) {
+				for(int j = 0; j < mean_image[0].length; j++) {
+					mean_image[i][j] += image[i][j];
+				}
+			}
+			count++;
+		}
+
+		for(int i = 0; i < mean_image.length; i++) {
+			for(int j = 0; j < mean_image[0].length; j++) {
+				mean_image[i][j] /= count;
+			}
+		}
+		return mean_image;
+	}
+
+	/**
+	 * Calculates a mean image over every frame of a FrameCube. Each frame is scanned sequentially in row-major order.
+	 *
+	 * @param cube cube of images to take the mean of
+	 * @return mean image
+	 */
+	public static float[][] meanImage(FrameCube cube) {
+		int columns = cube.columns();
+		float[] sum = new float[cube.rows() * columns];
+		for(int frame = 0; frame < cube.frames(); frame++) {
+			FloatBuffer buffer = cube.frameBuffer(frame);
+			for(int i = 0; i < sum.length; i++) {
+				sum[i] += buffer.get(i);
+			}
+		}
+
+		float[][] mean_image = new float[cube.rows()][columns];
+		for(int i = 0; i < mean_image.length; i++) {
+			for(int j = 0; j < columns; j++) {
+				mean_image[i][j] = sum[i * columns + j] / cube.frames();
+			}
+		}
+		return mean_image;
+	}
 }
\ No newline at end of file
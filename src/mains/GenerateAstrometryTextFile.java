@@ -5,7 +5,7 @@ import brightbodies.BrightBodyList;
 import core.locate.binary.BinaryLocator;
 import core.locate.binary.BinaryLocatorThresholdType;
 import core.preprocess.K2Preprocessor;
-import nom.tam.fits.Fits;
+import cube.FrameCube;
 import nom.tam.fits.FitsException;
 
 import java.io.File;
@@ -41,17 +41,18 @@ public class GenerateAstrometryTextFile {
         String file_out = args[current_arg];
         current_arg++;
 
-        Fits fits = new Fits(new File(file_in));
+        File file = new File(file_in);
 
-        K2Preprocessor preprocessor = new K2Preprocessor(fits);
-        float[][][] data = preprocessor.read();
+        // The threshold only depends on the frame itself so only that frame is read
+        K2Preprocessor preprocessor = new K2Preprocessor(file, frame, 1);
+        FrameCube data = preprocessor.readCube();
 
         float[] locator_args = {scalar};
         BinaryLocator locator = new BinaryLocator(data, BinaryLocatorThresholdType.MEAN_SCALED, locator_args);
         locator.initialize();
         BrightBodyList[] bodies = locator.locate();
 
-        BrightBodyList frame_bodies = bodies[frame];
+        BrightBodyList frame_bodies = bodies[0];
         frame_bodies.sortByArea();
 
         FileWriter writer = new FileWriter(new File(file_out));
@@ -1,8 +1,9 @@
 package mains;
 
+import core.preprocess.CubeCache;
 import core.preprocess.K2Preprocessor;
 import core.preprocess.Preprocessor;
-import nom.tam.fits.Fits;
+import cube.FrameCube;
 import stats.MedianValue;
 
 import java.io.File;
@@ -26,15 +27,15 @@ public class ImageAnalysis {
         String file_out = args[current_arg];
         current_arg++;
 
-        Fits fits = new Fits(new File(file_in));
+        File file = new File(file_in);
 
         FileWriter writer = new FileWriter(new File(file_out));
 
-        Preprocessor preprocessor = new K2Preprocessor(fits);
-        float[][][] data = preprocessor.read();
+        Preprocessor preprocessor = new K2Preprocessor(file);
+        FrameCube data = new CubeCache().read(file, preprocessor);
 
-        for(int i = 0; i < data.length; i++) {
-            writer.write(i + "," + MedianValue.medianValue(data[i]) + "\n");
+        for(int i = 0; i < data.frames(); i++) {
+            writer.write(i + "," + MedianValue.medianValue(data.frame(i)) + "\n");
         }
         writer.close();
     }
@@ -8,11 +8,12 @@ import core.filter.MobilityFilter;
 import core.locate.binary.BinaryLocator;
 import core.locate.binary.BinaryLocatorThresholdType;
 import core.locate.Locator;
-import nom.tam.fits.Fits;
+import cube.FrameCube;
 import core.preprocess.K2Preprocessor;
 import core.preprocess.Preprocessor;
 
 import java.io.File;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A top-level runnable type that will run locate-track given type and parameters on a single file and output
@@ -61,6 +62,25 @@ public final class LFBinBaseSingleFixedTime {
                 detection_args = new float[]{Float.parseFloat(args[argumentReadLoc])};
                 argumentReadLoc++;
                 break;
+            case "MEDIAN":
+                detection_threshold_type = BinaryLocatorThresholdType.MEDIAN;
+                detection_args = new float[]{};
+                break;
+            case "MEDIAN_PLUS_K_MAD":
+                detection_threshold_type = BinaryLocatorThresholdType.MEDIAN_PLUS_K_MAD;
+                detection_args = new float[]{Float.parseFloat(args[argumentReadLoc])};
+                argumentReadLoc++;
+                break;
+            case "SIGMA_CLIPPED":
+                detection_threshold_type = BinaryLocatorThresholdType.SIGMA_CLIPPED;
+                detection_args = new float[]{Float.parseFloat(args[argumentReadLoc])};
+                argumentReadLoc++;
+                break;
+            case "ADAPTIVE":
+                detection_threshold_type = BinaryLocatorThresholdType.ADAPTIVE;
+                detection_args = new float[]{Float.parseFloat(args[argumentReadLoc]), Float.parseFloat(args[argumentReadLoc + 1])};
+                argumentReadLoc += 2;
+                break;
             default:
                 System.out.println("Illegal detection threshold type");
                 System.exit(1);
@@ -104,13 +124,13 @@ public final class LFBinBaseSingleFixedTime {
 
         long start_time = System.currentTimeMillis();
         System.out.println("Preprocessing");
-        Preprocessor preprocessor = new K2Preprocessor(new Fits(new File(data_location)));
-        float[][][] data = preprocessor.read();
+        Preprocessor preprocessor = new K2Preprocessor(new File(data_location));
+        FrameCube data = preprocessor.readCube();
 
         System.out.println("Locating");
         Locator locator = new BinaryLocator(data, detection_threshold_type, detection_args);
         locator.initialize();
-        BrightBodyList[] bodies = locator.locate();
+        BrightBodyList[] bodies = locator.locate(ForkJoinPool.commonPool());
 
         System.out.println("Filtering");
         MobilityFilter filter = new BaselineMobilityFilter(bodies, data, similarity_threshold, baseline_frame_detection_threshold_type, baseline_frame_detection_args);
@@ -155,7 +175,7 @@ public final class LFBinBaseSingleFixedTime {
         System.out.print("\nMean Mobile Size: ");
         float mobile_size_sum = 0.0f;
         for(BrightBody b : mobile_bodies[timestamp]) {
-            mobile_size_sum += b.body.length;
+            mobile_size_sum += b.body.size();
         }
         System.out.println(mobile_size_sum / MBB_count + "\n");
     }
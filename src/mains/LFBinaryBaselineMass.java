@@ -8,11 +8,15 @@ import helper.ContainsBody;
 import core.locate.binary.BinaryLocator;
 import core.locate.binary.BinaryLocatorThresholdType;
 import core.locate.Locator;
-import nom.tam.fits.Fits;
+import core.locate.tree.ComponentTreeLocator;
+import cube.ArrayFrameCube;
+import cube.FrameCube;
+import core.preprocess.CubeCache;
 import core.preprocess.K2Preprocessor;
 import core.preprocess.Preprocessor;
 
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A top level runnable type that will perform locate-track within a range of parameters on a given file and output
@@ -78,6 +82,25 @@ public final class LFBinaryBaselineMass {
                         binaryLocatorMassTypeArgs = new float[]{Float.parseFloat(args[current_arg])};
                         current_arg++;
                         break;
+                    case "MEDIAN":
+                        binaryLocatorMassTypeSingleType = BinaryLocatorThresholdType.MEDIAN;
+                        binaryLocatorMassTypeArgs = new float[]{};
+                        break;
+                    case "MEDIAN_PLUS_K_MAD":
+                        binaryLocatorMassTypeSingleType = BinaryLocatorThresholdType.MEDIAN_PLUS_K_MAD;
+                        binaryLocatorMassTypeArgs = new float[]{Float.parseFloat(args[current_arg])};
+                        current_arg++;
+                        break;
+                    case "SIGMA_CLIPPED":
+                        binaryLocatorMassTypeSingleType = BinaryLocatorThresholdType.SIGMA_CLIPPED;
+                        binaryLocatorMassTypeArgs = new float[]{Float.parseFloat(args[current_arg])};
+                        current_arg++;
+                        break;
+                    case "ADAPTIVE":
+                        binaryLocatorMassTypeSingleType = BinaryLocatorThresholdType.ADAPTIVE;
+                        binaryLocatorMassTypeArgs = new float[]{Float.parseFloat(args[current_arg]), Float.parseFloat(args[current_arg + 1])};
+                        current_arg += 2;
+                        break;
                     default:
                         System.err.println("Illegal binaryLocatorMassTypeSingleType: " + binaryLocatorMassTypeSingleTypeString);
                         System.exit(1);
@@ -233,13 +256,14 @@ public final class LFBinaryBaselineMass {
                 "two-way excel graphs is included as graphs.xlsx.");
         information_buffered_writer.close();
 
-        Preprocessor preprocessor = new K2Preprocessor(new Fits(new File(filename)));
-        float data[][][] = preprocessor.read();
+        File file = new File(filename);
+        Preprocessor preprocessor = new K2Preprocessor(file);
+        FrameCube data = new CubeCache().read(file, preprocessor);
         BinaryLocatorSupplier locator_supplier = new BinaryLocatorSupplier(data, binaryLocatorMassType, binaryLocatorMassTypeArgs);
         while(!locator_supplier.empty()) {
             Locator locator = locator_supplier.popLocator();
             locator.initialize();
-            BrightBodyList[] bodies = locator.locate();
+            BrightBodyList[] bodies = locator.locate(ForkJoinPool.commonPool());
             BaselineFrameFilterSupplier filter_supplier = new BaselineFrameFilterSupplier(bodies, data, similarity_threshold, baselineMassType, baselineMassTypeArgs);
             while(!filter_supplier.empty()) {
                 MobilityFilter filter = filter_supplier.popFilter();
@@ -271,12 +295,17 @@ public final class LFBinaryBaselineMass {
 
     public static final class BinaryLocatorSupplier {
         private final BinaryLocatorMassType mass_type_;
-        private final float[][][] data_;
+        private final FrameCube data_;
         private final float[] mass_args_;
         private final int count_;
+        private final ComponentTreeLocator trees_;
         private int supplied_;
 
         public BinaryLocatorSupplier(float[][][] data, BinaryLocatorMassType mass_type, float ... mass_args) {
+            this(new ArrayFrameCube(data), mass_type, mass_args);
+        }
+
+        public BinaryLocatorSupplier(FrameCube data, BinaryLocatorMassType mass_type, float ... mass_args) {
             supplied_ = 0;
             mass_type_ = mass_type;
             mass_args_ = mass_args;
@@ -297,6 +326,10 @@ public final class LFBinaryBaselineMass {
                     System.err.println("Illegal mass type given to binary locator supplier: " + mass_type_);
                     System.exit(1);
             }
+            // The trees of a range are kept for as many frames as fit in a quarter of the heap, so the cube itself may
+            // stay off the heap while the rest of the frames are labeled again at each step
+            trees_ = mass_type == BinaryLocatorMassType.SINGLE ? null : new ComponentTreeLocator(data,
+                    ComponentTreeLocator.treeFrames(data, Runtime.getRuntime().maxMemory() / 4), BinaryLocatorThresholdType.MEAN, 0);
         }
 
         public boolean empty() {
@@ -313,14 +346,15 @@ public final class LFBinaryBaselineMass {
                 case SINGLE:
                     locator = new BinaryLocator(data_, BinaryLocatorThresholdType.ABSOLUTE, mass_args_[0]);
                     break;
+                // Every step of a range shares the trees of a single ComponentTreeLocator so the frames with trees are labeled once
                 case GIVEN_RANGE:
-                    locator = new BinaryLocator(data_, BinaryLocatorThresholdType.ABSOLUTE, mass_args_[1] + mass_args_[0] * supplied_);
+                    locator = trees_.withThreshold(BinaryLocatorThresholdType.ABSOLUTE, mass_args_[1] + mass_args_[0] * supplied_);
                     break;
                 case MEAN_SCALED_RANGE:
-                    locator = new BinaryLocator(data_, BinaryLocatorThresholdType.MEAN_SCALED, 1.0f + mass_args_[0] * (mass_args_[1] + supplied_));
+                    locator = trees_.withThreshold(BinaryLocatorThresholdType.MEAN_SCALED, 1.0f + mass_args_[0] * (mass_args_[1] + supplied_));
                     break;
                 case MEAN_SHIFTED_RANGE:
-                    locator = new BinaryLocator(data_, BinaryLocatorThresholdType.MEAN_SHIFTED, mass_args_[0] * (mass_args_[1] + supplied_));
+                    locator = trees_.withThreshold(BinaryLocatorThresholdType.MEAN_SHIFTED, mass_args_[0] * (mass_args_[1] + supplied_));
                     break;
                 default:
                     locator =  null;
@@ -333,13 +367,17 @@ public final class LFBinaryBaselineMass {
     public static final class BaselineFrameFilterSupplier {
         private final BaselineFrameMassType mass_type_;
         private final BrightBodyList[] bodies_;
-        private final float[][][] data_;
+        private final FrameCube data_;
         private final float similiarty_threshold_;
         private final float[] mass_args_;
         private final int count_;
         private int supplied_;
 
         public BaselineFrameFilterSupplier(BrightBodyList[] bodies, float[][][] data, float similarity_threshold, BaselineFrameMassType mass_type, float ... mass_args) {
+            this(bodies, new ArrayFrameCube(data), similarity_threshold, mass_type, mass_args);
+        }
+
+        public BaselineFrameFilterSupplier(BrightBodyList[] bodies, FrameCube data, float similarity_threshold, BaselineFrameMassType mass_type, float ... mass_args) {
             supplied_ = 0;
             bodies_ = bodies;
             data_ = data;
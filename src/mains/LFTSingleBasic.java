@@ -8,13 +8,15 @@ import core.filter.MobilityFilter;
 import core.locate.binary.BinaryLocator;
 import core.locate.binary.BinaryLocatorThresholdType;
 import core.locate.Locator;
-import nom.tam.fits.Fits;
+import cube.FrameCube;
+import core.preprocess.CubeCache;
 import core.preprocess.K2Preprocessor;
 import core.preprocess.Preprocessor;
 import core.track.EvenSpaceTripleTracker;
 import core.track.Tracker;
 
 import java.io.File;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A top-level runnable type that will run locate-track-filter with a single set of parameters over a single data set
@@ -36,14 +38,14 @@ public class LFTSingleBasic {
         float similarity_threshold = Float.parseFloat(args[3]);
         float baseline_threshold_scaling_value = Float.parseFloat(args[4]);
 
-        Fits fits = new Fits(new File(path));
+        File file = new File(path);
 
-        Preprocessor preprocessor = new K2Preprocessor(fits);
-        float[][][] data = preprocessor.read();
+        Preprocessor preprocessor = new K2Preprocessor(file);
+        FrameCube data = new CubeCache().read(file, preprocessor);
 
         Locator locator = new BinaryLocator(data, BinaryLocatorThresholdType.MEAN_SCALED, target_threshold_scaling_value);
         locator.initialize();
-        BrightBodyList[] bright_bodies = locator.locate();
+        BrightBodyList[] bright_bodies = locator.locate(ForkJoinPool.commonPool());
 
         MobilityFilter filter = new BaselineMobilityFilter(bright_bodies, data, similarity_threshold, BaselineFrameGenerationMethod.BINARY_LOCATOR_MEAN_SHIFTED, baseline_threshold_scaling_value);
         BrightBodyList[][] sorted_bodies = filter.filter();
@@ -1,8 +1,8 @@
 package mains;
 
+import core.preprocess.FrameIterator;
 import core.preprocess.K2Preprocessor;
 import core.preprocess.Preprocessor;
-import nom.tam.fits.Fits;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -28,19 +28,21 @@ public class PixelCSVGenerator {
         String file_out = args[current_arg];
         current_arg++;
 
-        Fits fits = new Fits(new File(file_in));
-        Preprocessor preprocessor = new K2Preprocessor(fits);
+        File file = new File(file_in);
+        int x_reflected = new K2Preprocessor(file).dimensions()[0] - 1 - y_position;
+        int y_reflected = x_position;
 
-        float[][][] data = preprocessor.read();
+        // Only the single pixel is decoded from each frame
+        Preprocessor preprocessor = new K2Preprocessor(file, x_reflected, 1, y_reflected, 1, 0, K2Preprocessor.ALL_FRAMES);
+        FrameIterator frames = preprocessor.frames();
+        float[] pixel = new float[1];
 
         File out = new File(file_out);
         FileWriter writer = new FileWriter(out);
 
-        int x_reflected = data[0].length - 1 - y_position;
-        int y_reflected = x_position;
-
-        for(int i = 0; i < data.length; i++) {
-            writer.write(i + "," + data[i][x_reflected][y_reflected] + "\n");
+        for(int i = 0; frames.hasNext(); i++) {
+            frames.next(pixel);
+            writer.write(i + "," + pixel[0] + "\n");
         }
         writer.close();
     }
@@ -1,8 +1,8 @@
 package mains;
 
+import core.preprocess.FrameIterator;
 import core.preprocess.K2Preprocessor;
 import core.preprocess.Preprocessor;
-import nom.tam.fits.Fits;
 import stats.MedianValue;
 
 import java.io.File;
@@ -38,21 +38,22 @@ public class PixelCSVMedianGenerator {
         String ratio_out = args[current_arg];
         current_arg++;
 
-        Fits fits = new Fits(new File(file_in));
+        File file = new File(file_in);
         FileWriter pixel_writer = new FileWriter(new File(pixel_out));
         FileWriter median_writer = new FileWriter(new File(median_out));
         FileWriter difference_writer = new FileWriter(new File(difference_out));
         FileWriter ratio_writer = new FileWriter(new File(ratio_out));
 
-        Preprocessor preprocessor = new K2Preprocessor(fits);
-        float[][][] data = preprocessor.read();
+        Preprocessor preprocessor = new K2Preprocessor(file);
+        FrameIterator frames = preprocessor.frames();
 
-        int x_reflected = data[0].length - 1 - y_position;
+        int x_reflected = frames.rows() - 1 - y_position;
         int y_reflected = x_position;
 
-        for(int i = 0; i < data.length; i++) {
-            float value = data[i][x_reflected][y_reflected];
-            float median = MedianValue.medianValue(data[i]);
+        for(int i = 0; frames.hasNext(); i++) {
+            float[][] frame = frames.next();
+            float value = frame[x_reflected][y_reflected];
+            float median = MedianValue.medianValue(frame);
             float difference = value - median;
             float ratio = value / median;
 
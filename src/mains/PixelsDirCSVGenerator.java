@@ -2,7 +2,6 @@ package mains;
 
 import core.preprocess.K2Preprocessor;
 import core.preprocess.Preprocessor;
-import nom.tam.fits.Fits;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -25,8 +24,8 @@ public class PixelsDirCSVGenerator {
         String dir_out = args[current_arg];
         current_arg++;
 
-        Fits fits = new Fits(new File(file_in));
-        Preprocessor preprocessor = new K2Preprocessor(fits);
+        File file = new File(file_in);
+        Preprocessor preprocessor = new K2Preprocessor(file);
         float[][][] data = preprocessor.read();
 
         for(int i = 0; i < data.length; i++) {
@@ -1,5 +1,7 @@
 package mask;
 
+import core.preprocess.FrameIterator;
+import fits.FitsCubeWriter;
 import fits.FitsIO;
 import nom.tam.fits.FitsException;
 
@@ -28,4 +30,21 @@ public final class MaskOut {
         boolean[][] mask = mask_generator.mask(threshold);
         FitsIO.write2DImage(mask, location);
     }
+
+    /**
+     * Writes a BinaryImageMask of every frame of a FrameIterator to a single FITS cube as the frames are read, so the
+     * stack of masks is never held in memory
+     *
+     * @param location location in the filepath to write the mask cube to
+     * @param frames iterator over the floating point astro-data, which is exhausted by this method
+     * @param threshold threshold for each BinaryImageMask
+     * @throws IOException
+     */
+    public static void writeBinaryImageMasks(String location, FrameIterator frames, float threshold) throws IOException {
+        try(FitsCubeWriter writer = new FitsCubeWriter(location, frames.rows(), frames.columns(), FitsCubeWriter.UNKNOWN_FRAMES)) {
+            while(frames.hasNext()) {
+                writer.write(new BinaryImageMask(frames.next()).mask(threshold));
+            }
+        }
+    }
 }
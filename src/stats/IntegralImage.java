@@ -0,0 +1,145 @@
+package stats;
+
+/**
+ * Summed-area tables of the values and squared values of an image, from which the mean and variance of any rectangle
+ * of the image are found with four lookups each regardless of its size. Sums are kept in double precision and NaN
+ * values are left out of every sum and count. An IntegralImage reuses its tables between images of the same size and
+ * must not be shared between threads.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class IntegralImage {
+    private final int rows_;
+    private final int columns_;
+    private final int stride_;
+    private final double[] sums_;
+    private final double[] squares_;
+    private final int[] counts_;
+
+    /**
+     * Constructs an IntegralImage for images of a fixed size
+     *
+     * @param rows number of rows in each image
+     * @param columns number of columns in each image
+     */
+    public IntegralImage(int rows, int columns) {
+        rows_ = rows;
+        columns_ = columns;
+        // Tables have an extra leading row and column of zeros so that rectangles on the edges need no special case
+        stride_ = columns + 1;
+        sums_ = new double[(rows + 1) * stride_];
+        squares_ = new double[(rows + 1) * stride_];
+        counts_ = new int[(rows + 1) * stride_];
+    }
+
+    /**
+     * @return number of rows in each image
+     */
+    public int rows() {
+        return rows_;
+    }
+
+    /**
+     * @return number of columns in each image
+     */
+    public int columns() {
+        return columns_;
+    }
+
+    /**
+     * Builds the tables of an image in a single pass
+     *
+     * @param image image indexed [row][column]
+     */
+    public void set(float[][] image) {
+        if(image.length != rows_ || (rows_ > 0 && image[0].length != columns_)) {
+            throw new IllegalArgumentException("Image is not " + rows_ + "x" + columns_);
+        }
+        for(int row = 0; row < rows_; row++) {
+            float[] line = image[row];
+            int above = row * stride_;
+            int index = above + stride_;
+            double sum = 0.0;
+            double square = 0.0;
+            int count = 0;
+            for(int column = 0; column < columns_; column++) {
+                float value = line[column];
+                if(value == value) {
+                    sum += value;
+                    square += (double) value * value;
+                    count++;
+                }
+                sums_[index + column + 1] = sums_[above + column + 1] + sum;
+                squares_[index + column + 1] = squares_[above + column + 1] + square;
+                counts_[index + column + 1] = counts_[above + column + 1] + count;
+            }
+        }
+    }
+
+    /**
+     * Counts the values that are not NaN in a rectangle of the image
+     *
+     * @param first_row top row of the rectangle
+     * @param first_column left column of the rectangle
+     * @param last_row bottom row of the rectangle, inclusive
+     * @param last_column right column of the rectangle, inclusive
+     * @return number of values in the rectangle
+     */
+    public int count(int first_row, int first_column, int last_row, int last_column) {
+        int top = first_row * stride_;
+        int bottom = (last_row + 1) * stride_;
+        return counts_[bottom + last_column + 1] - counts_[bottom + first_column] - counts_[top + last_column + 1] + counts_[top + first_column];
+    }
+
+    /**
+     * Sums the values of a rectangle of the image
+     *
+     * @return sum of the values in the rectangle
+     * @see #count(int, int, int, int)
+     */
+    public double sum(int first_row, int first_column, int last_row, int last_column) {
+        return rectangle(sums_, first_row, first_column, last_row, last_column);
+    }
+
+    /**
+     * Sums the squared values of a rectangle of the image
+     *
+     * @return sum of the squared values in the rectangle
+     * @see #count(int, int, int, int)
+     */
+    public double sumOfSquares(int first_row, int first_column, int last_row, int last_column) {
+        return rectangle(squares_, first_row, first_column, last_row, last_column);
+    }
+
+    /**
+     * Fills a map with the mean of the square window around each pixel plus a multiple of the standard deviation of the
+     * window. Windows are cut off at the edges of the image, so pixels near an edge use the part of the window that is
+     * inside the image. A pixel whose window holds no values is given a threshold of NaN.
+     *
+     * @param radius half of the width of each window, so a window is 2 * radius + 1 pixels wide
+     * @param k multiple of the standard deviation added to the mean
+     * @param thresholds map indexed [row][column] that the thresholds are written to
+     */
+    public void localThresholds(int radius, float k, float[][] thresholds) {
+        for(int row = 0; row < rows_; row++) {
+            int first_row = Math.max(0, row - radius);
+            int last_row = Math.min(rows_ - 1, row + radius);
+            float[] line = thresholds[row];
+            for(int column = 0; column < columns_; column++) {
+                int first_column = Math.max(0, column - radius);
+                int last_column = Math.min(columns_ - 1, column + radius);
+                int count = count(first_row, first_column, last_row, last_column);
+                double mean = sum(first_row, first_column, last_row, last_column) / count;
+                double variance = sumOfSquares(first_row, first_column, last_row, last_column) / count - mean * mean;
+                line[column] = (float) (mean + k * Math.sqrt(Math.max(0.0, variance)));
+            }
+        }
+    }
+
+    private double rectangle(double[] table, int first_row, int first_column, int last_row, int last_column) {
+        int top = first_row * stride_;
+        int bottom = (last_row + 1) * stride_;
+        return table[bottom + last_column + 1] - table[bottom + first_column] - table[top + last_column + 1] + table[top + first_column];
+    }
+}
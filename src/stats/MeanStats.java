@@ -1,5 +1,9 @@
 package stats;
 
+import cube.FrameCube;
+
+import java.nio.FloatBuffer;
+
 /**
  * This class contains helper methods for calculating the mean values of data images or cubes
  *
@@ -37,4 +41,33 @@ public final class MeanStats {
         return sum / (image.length * image[0].length);
     }
 
+    /**
+     * Calculates the complete mean value of a FrameCube by scanning each frame sequentially
+     *
+     * @param cube the cube
+     * @return mean value
+     */
+    public static float mean(FrameCube cube) {
+        float sum = 0.0f;
+        for(int frame = 0; frame < cube.frames(); frame++) {
+            sum += mean(cube, frame);
+        }
+        return sum / cube.frames();
+    }
+
+    /**
+     * Calculates the complete mean value of a single frame of a FrameCube
+     *
+     * @param cube the cube
+     * @param frame index of the frame
+     * @return mean value
+     */
+    public static float mean(FrameCube cube, int frame) {
+        FloatBuffer buffer = cube.frameBuffer(frame);
+        float sum = 0;
+        for(int i = 0; i < buffer.limit(); i++) {
+            sum += buffer.get(i);
+        }
+        return sum / buffer.limit();
+    }
 }
@@ -1,34 +1,49 @@
 package stats;
 
-import java.util.ArrayList;
-import java.util.Collections;
-
 /**
  * This class contains a method to find the median value of a floating point two-dimensional array.
  *
  * @author Jonathan Zwiebel
  * @version 12 July 2016
- *
- * TODO: Don't sort the array!
  */
 public class MedianValue {
+    /**
+     * Finds the median value of an image without sorting it. NaN values are ranked above every other value, as sorting
+     * the values would place them, and are counted towards the middle, so an image that is mostly NaN has a NaN median.
+     * QuantileStats.median ignores NaN values instead.
+     *
+     * @param data the image
+     * @return median value, which is the mean of the two middle values of an even number of values
+     */
     public static float medianValue(float[][] data) {
-        ArrayList<Float> single_array_data = new ArrayList<>();
-
-        int index = 0;
+        int size = 0;
+        for(float[] array : data) {
+            size += array.length;
+        }
+        float[] values = new float[size];
+        int length = 0;
         for(float[] array : data) {
             for(float point : array) {
-                single_array_data.add(point);
-                index++;
+                if(point == point) {
+                    values[length++] = point;
+                }
             }
         }
 
-        Collections.sort(single_array_data);
-        if(single_array_data.size() % 1 == 1) {
-            return single_array_data.get(single_array_data.size() / 2);
+        // Every rank at or past length would hold a NaN once the values were sorted
+        int middle = size / 2;
+        if(middle >= length) {
+            return Float.NaN;
+        }
+        float upper = QuantileStats.select(values, length, middle);
+        if(size % 2 == 1) {
+            return upper;
         }
-        else {
-            return (single_array_data.get(single_array_data.size() / 2) + single_array_data.get(single_array_data.size() / 2 - 1)) / 2;
+        // Selecting the middle value leaves every smaller value before it, so the lower middle is their maximum
+        float lower = values[0];
+        for(int i = 1; i < middle; i++) {
+            lower = Math.max(lower, values[i]);
         }
+        return (lower + upper) / 2;
     }
 }
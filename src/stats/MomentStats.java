@@ -2,10 +2,12 @@ package stats;
 
 import brightbodies.CartesianPoint;
 import brightbodies.Coordinate;
+import brightbodies.PixelSet;
 
 /**
  * This class contains static methods that help with finding the moment, area, and centroid of a BrightBody within
- * a given image.
+ * a given image. The moments method measures the area, centroid, second-order moments, peak, and bounding box of a
+ * body together in a single pass, which costs less than the area and centroid did when measured separately.
  *
  * @author Jonathan Zwiebel
  * @version 8 July 2016
@@ -24,7 +26,7 @@ public final class MomentStats {
         float moment = 0;
         for(int x = 0; x < image.length; x++) {
             for(int y = 0; y < image[0].length; y++) {
-                moment += image[image.length - y - 1][x] * Math.pow(x, i) * Math.pow(y, j);
+                moment += image[image.length - y - 1][x] * power(x, i) * power(y, j);
             }
         }
         return moment;
@@ -43,11 +45,27 @@ public final class MomentStats {
     public static float moment(float[][] image, CartesianPoint[] bright_body, int i, int j) {
         float moment = 0;
         for(CartesianPoint p : bright_body) {
-            moment += image[image.length - p.y - 1][p.x] * Math.pow(p.x, i) * Math.pow(p.y, j);
+            moment += image[image.length - p.y - 1][p.x] * power(p.x, i) * power(p.y, j);
         }
         return moment;
     }
 
+    /**
+     * Raises an integer to a non-negative integer power by repeated multiplication, which gives the same result as
+     * Math.pow whenever the result is exactly representable, without the cost of Math.pow for the usual exponents of
+     * 0, 1, and 2
+     */
+    private static double power(int base, int exponent) {
+        if(exponent < 0) {
+            return Math.pow(base, exponent);
+        }
+        double result = 1;
+        for(int count = 0; count < exponent; count++) {
+            result *= base;
+        }
+        return result;
+    }
+
     /**
      * Calculates the total area of the image, the sum of all of the values
      *
@@ -77,8 +95,112 @@ public final class MomentStats {
      * @return The centroid of the star as a a coordinate
      */
     public static Coordinate centroid(float[][] image, CartesianPoint[] bright_body) {
-        float x = moment(image, bright_body, 1, 0) / area(image, bright_body);
-        float y = moment(image, bright_body, 0, 1) / area(image, bright_body);
-        return new Coordinate(x, y);
+        float area = 0;
+        float moment_x = 0;
+        float moment_y = 0;
+        for(CartesianPoint p : bright_body) {
+            float value = image[image.length - p.y - 1][p.x];
+            // Each term is added in the same precision as moment adds it, so the centroid is unchanged
+            area += value;
+            moment_x += (double) value * p.x;
+            moment_y += (double) value * p.y;
+        }
+        return new Coordinate(moment_x / area, moment_y / area);
+    }
+
+    /**
+     * Measures the moments, peak, and bounding box of an array of CartesianPoints in a single pass
+     *
+     * @param image the input image
+     * @param bright_body the CartesianPoints that make up the BrightBody
+     * @return the moments of the body, summed in the order of the array
+     */
+    public static Moments moments(float[][] image, CartesianPoint[] bright_body) {
+        Accumulator accumulator = new Accumulator();
+        for(CartesianPoint p : bright_body) {
+            accumulator.add(image[image.length - p.y - 1][p.x], p.x, p.y);
+        }
+        return accumulator.moments();
+    }
+
+    /**
+     * Measures the moments, peak, and bounding box of a packed body in a single pass
+     *
+     * @param bright_body the pixels that make up the BrightBody
+     * @param fluxes the values of the image at each pixel, in the iteration order of bright_body
+     * @return the moments of the body, summed in the iteration order of bright_body
+     */
+    public static Moments moments(PixelSet bright_body, float[] fluxes) {
+        if(fluxes.length != bright_body.size()) {
+            throw new IllegalArgumentException("Body has " + bright_body.size() + " pixels but " + fluxes.length + " fluxes");
+        }
+        Accumulator accumulator = new Accumulator();
+        int index = 0;
+        for(int pixel = bright_body.nextPixel(0); pixel >= 0; pixel = bright_body.nextPixel(pixel + 1)) {
+            accumulator.add(fluxes[index++], bright_body.x(pixel), bright_body.y(pixel));
+        }
+        return accumulator.moments();
+    }
+
+    /**
+     * Running sums of a single pass over the pixels of a body
+     */
+    private static final class Accumulator {
+        private int count_;
+        private float m00_;
+        private float m10_;
+        private float m01_;
+        private int origin_x_;
+        private int origin_y_;
+        private double sum_;
+        private double sum_x_;
+        private double sum_y_;
+        private double sum_xx_;
+        private double sum_yy_;
+        private double sum_xy_;
+        private float peak_ = Float.NaN;
+        private int peak_x_;
+        private int peak_y_;
+        private int min_x_ = Integer.MAX_VALUE;
+        private int max_x_ = Integer.MIN_VALUE;
+        private int min_y_ = Integer.MAX_VALUE;
+        private int max_y_ = Integer.MIN_VALUE;
+
+        void add(float value, int x, int y) {
+            if(count_++ == 0) {
+                origin_x_ = x;
+                origin_y_ = y;
+            }
+            m00_ += value;
+            m10_ += (double) value * x;
+            m01_ += (double) value * y;
+
+            // Second-order sums are taken about the first pixel so that they do not cancel far from the origin
+            double dx = x - origin_x_;
+            double dy = y - origin_y_;
+            sum_ += value;
+            sum_x_ += value * dx;
+            sum_y_ += value * dy;
+            sum_xx_ += value * dx * dx;
+            sum_yy_ += value * dy * dy;
+            sum_xy_ += value * dx * dy;
+
+            if(count_ == 1 || value > peak_ || (peak_ != peak_ && value == value)) {
+                peak_ = value;
+                peak_x_ = x;
+                peak_y_ = y;
+            }
+            min_x_ = Math.min(min_x_, x);
+            max_x_ = Math.max(max_x_, x);
+            min_y_ = Math.min(min_y_, y);
+            max_y_ = Math.max(max_y_, y);
+        }
+
+        Moments moments() {
+            double mu20 = sum_xx_ - sum_x_ * sum_x_ / sum_;
+            double mu02 = sum_yy_ - sum_y_ * sum_y_ / sum_;
+            double mu11 = sum_xy_ - sum_x_ * sum_y_ / sum_;
+            return new Moments(count_, m00_, m10_, m01_, mu20, mu02, mu11, peak_, peak_x_, peak_y_, min_x_, max_x_, min_y_, max_y_);
+        }
     }
 }
@@ -0,0 +1,145 @@
+package stats;
+
+import brightbodies.Coordinate;
+
+/**
+ * The photometry and shape of a BrightBody, measured by MomentStats.moments in a single pass over its pixels. The raw
+ * moments M00, M10, and M01 are summed in single precision exactly as MomentStats.moment sums them, so centroid() is the
+ * same as MomentStats.centroid over the same pixels in the same order. The second-order central moments are summed in
+ * double precision about the first pixel, which keeps them accurate for bodies far from the origin.
+ *
+ * The second-order moments are those of the flux-weighted pixel positions, divided by M00, so a body with a
+ * non-positive M00 has no meaningful shape and reports NaN for its covariance, ellipticity, and orientation.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class Moments {
+    /**
+     * Number of pixels
+     */
+    public final int count;
+    /**
+     * Sum of the values, the area of the body
+     */
+    public final float m00;
+    /**
+     * Sum of the values times x
+     */
+    public final float m10;
+    /**
+     * Sum of the values times y
+     */
+    public final float m01;
+    /**
+     * Central moment sum of value * (x - x_c)^2
+     */
+    public final double mu20;
+    /**
+     * Central moment sum of value * (y - y_c)^2
+     */
+    public final double mu02;
+    /**
+     * Central moment sum of value * (x - x_c) * (y - y_c)
+     */
+    public final double mu11;
+    /**
+     * Largest value, which is that of the first pixel when values tie, or NaN if the body has no pixels
+     */
+    public final float peak;
+    public final int peak_x;
+    public final int peak_y;
+    public final int min_x;
+    public final int max_x;
+    public final int min_y;
+    public final int max_y;
+
+    Moments(int count, float m00, float m10, float m01, double mu20, double mu02, double mu11,
+            float peak, int peak_x, int peak_y, int min_x, int max_x, int min_y, int max_y) {
+        this.count = count;
+        this.m00 = m00;
+        this.m10 = m10;
+        this.m01 = m01;
+        this.mu20 = mu20;
+        this.mu02 = mu02;
+        this.mu11 = mu11;
+        this.peak = peak;
+        this.peak_x = peak_x;
+        this.peak_y = peak_y;
+        this.min_x = min_x;
+        this.max_x = max_x;
+        this.min_y = min_y;
+        this.max_y = max_y;
+    }
+
+    /**
+     * @return the centroid M10 / M00, M01 / M00
+     */
+    public Coordinate centroid() {
+        return new Coordinate(m10 / m00, m01 / m00);
+    }
+
+    /**
+     * @return flux-weighted variance of x, mu20 / M00
+     */
+    public double varianceX() {
+        return m00 > 0 ? mu20 / m00 : Double.NaN;
+    }
+
+    /**
+     * @return flux-weighted variance of y, mu02 / M00
+     */
+    public double varianceY() {
+        return m00 > 0 ? mu02 / m00 : Double.NaN;
+    }
+
+    /**
+     * @return flux-weighted covariance of x and y, mu11 / M00
+     */
+    public double covariance() {
+        return m00 > 0 ? mu11 / m00 : Double.NaN;
+    }
+
+    /**
+     * @return length of the semi-major axis of the ellipse with the same second moments
+     */
+    public double semiMajorAxis() {
+        return Math.sqrt(Math.max(0, (varianceX() + varianceY()) / 2 + spread()));
+    }
+
+    /**
+     * @return length of the semi-minor axis of the ellipse with the same second moments
+     */
+    public double semiMinorAxis() {
+        return Math.sqrt(Math.max(0, (varianceX() + varianceY()) / 2 - spread()));
+    }
+
+    private double spread() {
+        double half_difference = (varianceX() - varianceY()) / 2;
+        return Math.sqrt(half_difference * half_difference + covariance() * covariance());
+    }
+
+    /**
+     * @return 1 - b / a for semi-major axis a and semi-minor axis b, which is 0 for a round body and approaches 1 for a
+     *         streak, or 0 for a body with no extent
+     */
+    public double ellipticity() {
+        double major = semiMajorAxis();
+        if(major == 0) {
+            return 0;
+        }
+        return 1 - semiMinorAxis() / major;
+    }
+
+    /**
+     * @return angle of the semi-major axis from the x-axis in radians, between -pi / 2 and pi / 2
+     */
+    public double orientation() {
+        return 0.5 * Math.atan2(2 * covariance(), varianceX() - varianceY());
+    }
+
+    public String toString() {
+        return "Area: " + m00 + " | Centroid: " + centroid() + " | Peak: " + peak + " at (" + peak_x + ", " + peak_y + ")"
+                + " | Ellipticity: " + ellipticity() + " | Orientation: " + orientation();
+    }
+}
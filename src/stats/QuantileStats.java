@@ -0,0 +1,242 @@
+package stats;
+
+/**
+ * This class contains helper methods for calculating robust statistics of data images, which are not pulled up by a
+ * few very bright pixels the way the mean is. Values are copied into a primitive buffer and ranked with quickselect,
+ * which takes time linear in the size of the image instead of sorting it. NaN values are ignored.
+ *
+ * Each method may be given a buffer holding at least as many floats as the image to avoid allocating one per call.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public final class QuantileStats {
+    /**
+     * Number of standard deviations from the mean beyond which values are clipped by sigmaClip
+     */
+    public static final float CLIP_SIGMA = 3.0f;
+
+    /**
+     * Largest number of clipping passes made by sigmaClip
+     */
+    public static final int CLIP_ITERATIONS = 10;
+
+    /**
+     * Calculates the median value of an image of floats
+     *
+     * @param image the image
+     * @return median value, which is the mean of the two middle values of an even number of values
+     */
+    public static float median(float[][] image) {
+        return median(image, null);
+    }
+
+    /**
+     * Calculates the median value of an image of floats
+     *
+     * @param image the image
+     * @param buffer buffer the values are ranked in, or null or too short to allocate one
+     * @return median value, which is the mean of the two middle values of an even number of values
+     */
+    public static float median(float[][] image, float[] buffer) {
+        buffer = buffer(image, buffer);
+        int length = 0;
+        for(float[] array : image) {
+            for(float f : array) {
+                if(f == f) {
+                    buffer[length++] = f;
+                }
+            }
+        }
+        return median(buffer, length);
+    }
+
+    /**
+     * Calculates the median absolute deviation of an image of floats from its median
+     *
+     * @param image the image
+     * @param median median value of the image
+     * @param buffer buffer the deviations are ranked in, or null or too short to allocate one
+     * @return median of the absolute differences between each value and the median
+     */
+    public static float medianAbsoluteDeviation(float[][] image, float median, float[] buffer) {
+        buffer = buffer(image, buffer);
+        int length = 0;
+        for(float[] array : image) {
+            for(float f : array) {
+                if(f == f) {
+                    buffer[length++] = Math.abs(f - median);
+                }
+            }
+        }
+        return median(buffer, length);
+    }
+
+    /**
+     * Calculates the mean and standard deviation of an image of floats after repeatedly discarding the values more than
+     * CLIP_SIGMA standard deviations from the mean, until no value is discarded or CLIP_ITERATIONS passes are made
+     *
+     * @param image the image
+     * @param buffer buffer the remaining values are kept in, or null or too short to allocate one
+     * @return array holding the clipped mean followed by the clipped standard deviation
+     */
+    public static float[] sigmaClip(float[][] image, float[] buffer) {
+        buffer = buffer(image, buffer);
+        int length = 0;
+        for(float[] array : image) {
+            for(float f : array) {
+                if(f == f) {
+                    buffer[length++] = f;
+                }
+            }
+        }
+
+        length = clip(buffer, length);
+        double sum = 0.0;
+        double squares = 0.0;
+        for(int i = 0; i < length; i++) {
+            sum += buffer[i];
+            squares += (double) buffer[i] * buffer[i];
+        }
+        double mean = sum / length;
+        double sigma = Math.sqrt(Math.max(0.0, squares / length - mean * mean));
+        return new float[]{(float) mean, (float) sigma};
+    }
+
+    /**
+     * Calculates the mean of the first length values of a buffer after clipping them the same way as sigmaClip, without
+     * allocating. The values are reordered.
+     *
+     * @param values buffer of values that are not NaN
+     * @param length number of values in the buffer
+     * @return clipped mean, or NaN if there are no values
+     */
+    public static float sigmaClippedMean(float[] values, int length) {
+        length = clip(values, length);
+        double sum = 0.0;
+        for(int i = 0; i < length; i++) {
+            sum += values[i];
+        }
+        return (float) (sum / length);
+    }
+
+    /**
+     * Repeatedly discards the values more than CLIP_SIGMA standard deviations from the mean, keeping the rest at the
+     * front of the buffer
+     *
+     * @return number of values the last mean and standard deviation were computed from
+     */
+    private static int clip(float[] values, int length) {
+        for(int iteration = 0; iteration < CLIP_ITERATIONS && length > 0; iteration++) {
+            double sum = 0.0;
+            double squares = 0.0;
+            for(int i = 0; i < length; i++) {
+                sum += values[i];
+                squares += (double) values[i] * values[i];
+            }
+            double mean = sum / length;
+            double sigma = Math.sqrt(Math.max(0.0, squares / length - mean * mean));
+            if(iteration == CLIP_ITERATIONS - 1) {
+                break;
+            }
+
+            double low = mean - CLIP_SIGMA * sigma;
+            double high = mean + CLIP_SIGMA * sigma;
+            int kept = 0;
+            for(int i = 0; i < length; i++) {
+                if(values[i] >= low && values[i] <= high) {
+                    values[kept++] = values[i];
+                }
+            }
+            if(kept == length) {
+                break;
+            }
+            length = kept;
+        }
+        return length;
+    }
+
+    /**
+     * Finds the median of the first length values of a buffer without allocating. The values are reordered.
+     *
+     * @param values buffer of values that are not NaN
+     * @param length number of values in the buffer
+     * @return median value, or NaN if there are no values
+     */
+    public static float median(float[] values, int length) {
+        if(length == 0) {
+            return Float.NaN;
+        }
+        int middle = length / 2;
+        float upper = select(values, length, middle);
+        if(length % 2 == 1) {
+            return upper;
+        }
+        // Selecting the middle value leaves every smaller value before it, so the lower middle is their maximum
+        float lower = values[0];
+        for(int i = 1; i < middle; i++) {
+            lower = Math.max(lower, values[i]);
+        }
+        return (lower + upper) / 2;
+    }
+
+    /**
+     * Finds the value that would be at index k if the first length values of a buffer were sorted, using quickselect
+     * with a median of three pivot. The values are partially reordered so that no value before k is greater and no
+     * value after k is smaller.
+     */
+    static float select(float[] values, int length, int k) {
+        int low = 0;
+        int high = length - 1;
+        while(high > low) {
+            int middle = (low + high) >>> 1;
+            if(values[middle] < values[low]) {
+                swap(values, middle, low);
+            }
+            if(values[high] < values[low]) {
+                swap(values, high, low);
+            }
+            if(values[high] < values[middle]) {
+                swap(values, high, middle);
+            }
+            float pivot = values[middle];
+
+            int i = low;
+            int j = high;
+            while(i <= j) {
+                while(values[i] < pivot) {
+                    i++;
+                }
+                while(values[j] > pivot) {
+                    j--;
+                }
+                if(i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j) {
+                high = j;
+            }
+            else if(k >= i) {
+                low = i;
+            }
+            else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(float[] values, int a, int b) {
+        float value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+
+    private static float[] buffer(float[][] image, float[] buffer) {
+        int size = image.length == 0 ? 0 : image.length * image[0].length;
+        return buffer != null && buffer.length >= size ? buffer : new float[size];
+    }
+}
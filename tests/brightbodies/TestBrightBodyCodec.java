@@ -0,0 +1,139 @@
+package brightbodies;
+
+import org.junit.Assert;
+import org.junit.Test;
+import stats.Moments;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the BrightBodyCodec
+ */
+public class TestBrightBodyCodec {
+    private static BrightBodyList[] frames(long seed) {
+        Random random = new Random(seed);
+        float[][] image = new float[20][30];
+        for(float[] line : image) {
+            for(int column = 0; column < line.length; column++) {
+                line[column] = random.nextFloat();
+            }
+        }
+        BrightBodyList[] frames = new BrightBodyList[4];
+        for(int frame = 0; frame < frames.length; frame++) {
+            frames[frame] = new BrightBodyList();
+            for(int index = 0; index < frame * 3; index++) {
+                CartesianPoint[] points = new CartesianPoint[1 + random.nextInt(15)];
+                for(int point = 0; point < points.length; point++) {
+                    points[point] = new CartesianPoint(random.nextInt(30), random.nextInt(20));
+                }
+                frames[frame].add(new BrightBody(image, points));
+            }
+        }
+        return frames;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        BrightBodyList[] expected = frames(22);
+        BrightBodyList[] actual = BrightBodyCodec.decode(BrightBodyCodec.encode(expected));
+        Assert.assertEquals("Wrong number of frames", expected.length, actual.length);
+        for(int frame = 0; frame < expected.length; frame++) {
+            Assert.assertEquals("Wrong number of bodies", expected[frame].size(), actual[frame].size());
+            for(int index = 0; index < expected[frame].size(); index++) {
+                BrightBody wanted = expected[frame].get(index);
+                BrightBody found = actual[frame].get(index);
+                Assert.assertEquals("Area differs", wanted.area, found.area, 0);
+                Assert.assertEquals("Centroid differs", wanted.centroid.x, found.centroid.x, 0);
+                Assert.assertEquals("Centroid differs", wanted.centroid.y, found.centroid.y, 0);
+                Assert.assertArrayEquals("Fluxes differ", wanted.fluxes, found.fluxes, 0);
+                CartesianPoint[] wanted_points = wanted.body.points();
+                CartesianPoint[] found_points = found.body.points();
+                Assert.assertEquals("Size differs", wanted_points.length, found_points.length);
+                for(int point = 0; point < wanted_points.length; point++) {
+                    Assert.assertTrue("Points differ", wanted_points[point].equals(found_points[point]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDecodedMomentsMatchCachedMoments() {
+        // The points of each body are in random order, so the cached moments must not depend on it
+        BrightBodyList[] expected = frames(31);
+        BrightBodyList[] actual = BrightBodyCodec.decode(BrightBodyCodec.encode(expected));
+        for(int frame = 0; frame < expected.length; frame++) {
+            for(int index = 0; index < expected[frame].size(); index++) {
+                Moments wanted = expected[frame].get(index).moments();
+                Moments found = actual[frame].get(index).moments();
+                Assert.assertEquals("M00 differs", wanted.m00, found.m00, 0);
+                Assert.assertEquals("M10 differs", wanted.m10, found.m10, 0);
+                Assert.assertEquals("M01 differs", wanted.m01, found.m01, 0);
+                Assert.assertEquals("Mu20 differs", wanted.mu20, found.mu20, 0);
+                Assert.assertEquals("Mu02 differs", wanted.mu02, found.mu02, 0);
+                Assert.assertEquals("Mu11 differs", wanted.mu11, found.mu11, 0);
+                Assert.assertEquals("Area differs from moments", wanted.m00, expected[frame].get(index).area, 0);
+            }
+        }
+    }
+
+    private static boolean rejects(ByteBuffer buffer) {
+        boolean caught = false;
+        try {
+            BrightBodyCodec.decode(buffer);
+        }
+        catch(IllegalArgumentException e) {
+            caught = true;
+        }
+        return caught;
+    }
+
+    @Test
+    public void testRejectsOtherVersion() {
+        ByteBuffer buffer = BrightBodyCodec.encode(frames(3));
+        buffer.putInt(4, BrightBodyCodec.VERSION + 1);
+        Assert.assertTrue("BrightBodyCodec read a different version", rejects(buffer));
+    }
+
+    @Test
+    public void testRejectsTruncated() {
+        ByteBuffer buffer = BrightBodyCodec.encode(frames(5));
+        buffer.limit(buffer.limit() - 3);
+        Assert.assertTrue("BrightBodyCodec read a truncated buffer", rejects(buffer));
+    }
+
+    @Test
+    public void testRejectsCorruptCounts() {
+        // Frame 0 has no bodies, so the count of frame 1 follows the count of frame 0
+        for(int frame_count : new int[]{-1, Integer.MAX_VALUE}) {
+            ByteBuffer buffer = BrightBodyCodec.encode(frames(5));
+            buffer.putInt(8, frame_count);
+            Assert.assertTrue("BrightBodyCodec read a frame count of " + frame_count, rejects(buffer));
+        }
+        for(int body_count : new int[]{-1, Integer.MAX_VALUE}) {
+            ByteBuffer buffer = BrightBodyCodec.encode(frames(5));
+            buffer.putInt(16, body_count);
+            Assert.assertTrue("BrightBodyCodec read a body count of " + body_count, rejects(buffer));
+        }
+    }
+
+    @Test
+    public void testRejectsCorruptPixelSet() {
+        // The PixelSet of the first body of frame 1 holds its width at 40, its height at 44, and its words at 48
+        int[][] corruptions = {
+                {40, Integer.MAX_VALUE, 48, Integer.MAX_VALUE},
+                {40, Integer.MAX_VALUE, 44, Integer.MAX_VALUE},
+                {40, 1 << 20, 44, 1 << 20},
+                {48, -1, 48, -1}
+        };
+        for(int[] corruption : corruptions) {
+            ByteBuffer buffer = BrightBodyCodec.encode(frames(5));
+            buffer.putInt(corruption[0], corruption[1]);
+            buffer.putInt(corruption[2], corruption[3]);
+            Assert.assertTrue("BrightBodyCodec read a corrupt PixelSet", rejects(buffer));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package brightbodies;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the DetectionColumns
+ */
+public class TestDetectionColumns {
+    private static BrightBodyList bodies() {
+        float[][] image = {
+                {1, 2, 0, 0},
+                {0, 3, 0, 4},
+                {0, 0, 0, 5}
+        };
+        BrightBodyList bodies = new BrightBodyList();
+        bodies.add(new BrightBody(image, new CartesianPoint[]{new CartesianPoint(0, 2), new CartesianPoint(1, 2), new CartesianPoint(1, 1)}));
+        bodies.add(new BrightBody(image, new CartesianPoint[]{new CartesianPoint(3, 1), new CartesianPoint(3, 0)}));
+        return bodies;
+    }
+
+    @Test
+    public void testColumnsMatchBodies() {
+        BrightBodyList bodies = bodies();
+        DetectionColumns columns = new DetectionColumns(bodies);
+        Assert.assertEquals("Wrong number of rows", bodies.size(), columns.count);
+        for(int index = 0; index < columns.count; index++) {
+            BrightBody body = bodies.get(index);
+            Assert.assertTrue("Row does not refer to its body", body == columns.body(index));
+            Assert.assertEquals("Centroid column differs", body.centroid.x, columns.x[index], 0);
+            Assert.assertEquals("Centroid column differs", body.centroid.y, columns.y[index], 0);
+            Assert.assertEquals("Area column differs", body.area, columns.area[index], 0);
+            Assert.assertEquals("Size column differs", body.body.size(), columns.size[index]);
+        }
+        Assert.assertArrayEquals("Bounding box column differs", new int[]{0, 3}, columns.min_x);
+        Assert.assertArrayEquals("Bounding box column differs", new int[]{1, 0}, columns.min_y);
+        Assert.assertTrue("Bounding boxes should touch", columns.boundsIntersect(0, 1, 2, 0, 1));
+        Assert.assertFalse("Bounding boxes should not touch", columns.boundsIntersect(0, 2, 2, 0, 2));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        BrightBodyList[] frames = {bodies(), new BrightBodyList()};
+        BrightBodyList[] lists = DetectionColumns.toBrightBodyLists(DetectionColumns.of(frames));
+        Assert.assertEquals("Wrong number of frames", 2, lists.length);
+        Assert.assertEquals("Bodies changed", frames[0], lists[0]);
+        Assert.assertTrue("Empty frame gained bodies", lists[1].isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+package brightbodies;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the DetectionIndex
+ */
+public class TestDetectionIndex {
+    private static DetectionColumns columns(int count, Random random) {
+        float[][] image = new float[200][200];
+        for(float[] line : image) {
+            Arrays.fill(line, 1);
+        }
+        BrightBodyList bodies = new BrightBodyList();
+        for(int index = 0; index < count; index++) {
+            int x = random.nextInt(190);
+            int y = random.nextInt(190);
+            int width = 1 + random.nextInt(8);
+            CartesianPoint[] points = new CartesianPoint[width];
+            for(int point = 0; point < width; point++) {
+                points[point] = new CartesianPoint(x + point, y + point % 3);
+            }
+            bodies.add(new BrightBody(image, points));
+        }
+        // A body with no area has no centroid
+        bodies.add(new BrightBody(new float[200][200], new CartesianPoint[]{new CartesianPoint(50, 50)}));
+        return new DetectionColumns(bodies);
+    }
+
+    private static int[] toArray(List<Integer> rows) {
+        int[] array = new int[rows.size()];
+        for(int index = 0; index < array.length; index++) {
+            array[index] = rows.get(index);
+        }
+        return array;
+    }
+
+    @Test
+    public void testQueriesMatchLinearScan() {
+        Random random = new Random(24);
+        DetectionColumns columns = columns(300, random);
+        DetectionIndex index = new DetectionIndex(columns);
+        for(int trial = 0; trial < 100; trial++) {
+            float x = random.nextFloat() * 220 - 10;
+            float y = random.nextFloat() * 220 - 10;
+            float radius = random.nextFloat() * 30;
+            int min_x = random.nextInt(200);
+            int min_y = random.nextInt(200);
+            int max_x = min_x + random.nextInt(20);
+            int max_y = min_y + random.nextInt(20);
+
+            List<Integer> near = new ArrayList<>();
+            List<Integer> inside = new ArrayList<>();
+            List<Integer> touching = new ArrayList<>();
+            for(int row = 0; row < columns.count; row++) {
+                double dx = (double) columns.x[row] - x;
+                double dy = (double) columns.y[row] - y;
+                if(dx * dx + dy * dy <= (double) radius * radius) {
+                    near.add(row);
+                }
+                if(columns.x[row] >= min_x && columns.x[row] <= max_x && columns.y[row] >= min_y && columns.y[row] <= max_y) {
+                    inside.add(row);
+                }
+                if(columns.boundsIntersect(row, min_x, max_x, min_y, max_y)) {
+                    touching.add(row);
+                }
+            }
+            Assert.assertArrayEquals("Radius query differs", toArray(near), index.withinRadius(x, y, radius));
+            Assert.assertArrayEquals("Box query differs", toArray(inside), index.centroidsInBox(min_x, max_x, min_y, max_y));
+            Assert.assertArrayEquals("Bounding box query differs", toArray(touching), index.boundsIntersecting(min_x, max_x, min_y, max_y));
+        }
+    }
+
+    @Test
+    public void testNearestMatchesLinearScan() {
+        Random random = new Random(7);
+        DetectionColumns columns = columns(200, random);
+        DetectionIndex index = new DetectionIndex(columns, 3);
+        for(int trial = 0; trial < 50; trial++) {
+            float x = random.nextFloat() * 300 - 50;
+            float y = random.nextFloat() * 300 - 50;
+            int k = 1 + random.nextInt(12);
+            int[] nearest = index.nearest(x, y, k);
+            Assert.assertEquals("Wrong number of nearest bodies", k, nearest.length);
+
+            double[] distances = new double[columns.count];
+            Integer[] rows = new Integer[columns.count];
+            for(int row = 0; row < columns.count; row++) {
+                double dx = (double) columns.x[row] - x;
+                double dy = (double) columns.y[row] - y;
+                distances[row] = dx * dx + dy * dy;
+                rows[row] = row;
+            }
+            // Bodies with no centroid sort last and are never among the nearest
+            Arrays.sort(rows, (first, second) -> distances[first] != distances[second] || Double.isNaN(distances[first])
+                    ? Double.compare(distances[first], distances[second]) : Integer.compare(first, second));
+            for(int rank = 0; rank < k; rank++) {
+                Assert.assertEquals("Nearest bodies differ", (int) rows[rank], nearest[rank]);
+            }
+        }
+    }
+}
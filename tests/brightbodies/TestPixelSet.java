@@ -0,0 +1,64 @@
+package brightbodies;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the PixelSet
+ */
+public class TestPixelSet {
+    @Test
+    public void testContainsMatchesPoints() {
+        Random random = new Random(21);
+        for(int trial = 0; trial < 20; trial++) {
+            CartesianPoint[] points = new CartesianPoint[1 + random.nextInt(40)];
+            for(int index = 0; index < points.length; index++) {
+                points[index] = new CartesianPoint(random.nextInt(12) - 3, random.nextInt(9) - 2);
+            }
+            PixelSet pixels = new PixelSet(points);
+            int size = 0;
+            for(int x = -5; x < 11; x++) {
+                for(int y = -4; y < 9; y++) {
+                    boolean expected = false;
+                    for(CartesianPoint point : points) {
+                        expected |= point.x == x && point.y == y;
+                    }
+                    Assert.assertEquals("PixelSet membership is wrong", expected, pixels.contains(x, y));
+                    size += expected ? 1 : 0;
+                }
+            }
+            Assert.assertEquals("PixelSet counted repeated points", size, pixels.size());
+            Assert.assertEquals("PixelSet points do not match its size", size, pixels.points().length);
+        }
+    }
+
+    @Test
+    public void testIndicesAreInFrameOrder() {
+        // Pixels of a 4x5 frame at (row 1, column 3), (row 0, column 1), and (row 2, column 2), given out of order
+        PixelSet pixels = PixelSet.fromIndices(new int[]{-1, 8, 1, 12, -1}, 1, 4, 4, 5);
+        CartesianPoint[] points = pixels.points();
+        Assert.assertEquals("PixelSet has the wrong size", 3, points.length);
+        Assert.assertTrue("PixelSet is not in frame order", points[0].equals(new CartesianPoint(1, 3)));
+        Assert.assertTrue("PixelSet is not in frame order", points[1].equals(new CartesianPoint(3, 2)));
+        Assert.assertTrue("PixelSet is not in frame order", points[2].equals(new CartesianPoint(2, 1)));
+        Assert.assertEquals("PixelSet bounding box is wrong", 1, pixels.minX());
+        Assert.assertEquals("PixelSet bounding box is wrong", 3, pixels.maxX());
+        Assert.assertEquals("PixelSet bounding box is wrong", 1, pixels.minY());
+        Assert.assertEquals("PixelSet bounding box is wrong", 3, pixels.maxY());
+    }
+
+    @Test
+    public void testBoundsIntersect() {
+        PixelSet first = new PixelSet(new CartesianPoint[]{new CartesianPoint(0, 0), new CartesianPoint(2, 2)});
+        PixelSet second = new PixelSet(new CartesianPoint[]{new CartesianPoint(2, 2), new CartesianPoint(5, 4)});
+        PixelSet third = new PixelSet(new CartesianPoint[]{new CartesianPoint(3, 0)});
+        Assert.assertTrue("Touching bounding boxes do not intersect", first.boundsIntersect(second));
+        Assert.assertFalse("Separate bounding boxes intersect", first.boundsIntersect(third));
+        Assert.assertFalse("Empty set intersects", new PixelSet(new CartesianPoint[0]).boundsIntersect(first));
+    }
+}
@@ -0,0 +1,59 @@
+package core.background;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the MeshBackground
+ */
+public class TestMeshBackground {
+    @Test
+    public void testLinearGradientIsRemovedBetweenCellCenters() {
+        float[][] frame = new float[40][60];
+        for(int row = 0; row < 40; row++) {
+            for(int column = 0; column < 60; column++) {
+                frame[row][column] = 50 + 0.5f * row + 0.25f * column;
+            }
+        }
+        new MeshBackground(40, 60, 10, ForkJoinPool.commonPool()).subtract(frame);
+        // Pixels between the first and last cell centers are interpolated exactly for a linear background
+        for(int row = 5; row < 35; row++) {
+            for(int column = 5; column < 55; column++) {
+                Assert.assertEquals("Gradient was not subtracted", 0.0f, frame[row][column], 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void testBrightPixelsDoNotRaiseBackground() {
+        float[][] frame = new float[32][32];
+        for(float[] line : frame) {
+            Arrays.fill(line, 10);
+        }
+        frame[16][16] = 10000;
+        MeshBackground background = new MeshBackground(32, 32, 32, ForkJoinPool.commonPool());
+        background.subtract(frame);
+        Assert.assertEquals("Bright pixel raised the background", 10.0f, background.mesh()[0][0], 1e-4f);
+        Assert.assertEquals("Bright pixel was not left above the background", 9990.0f, frame[16][16], 1e-2f);
+    }
+
+    @Test
+    public void testEmptyCellsTakeMedianBackground() {
+        float[][] frame = new float[20][20];
+        for(float[] line : frame) {
+            Arrays.fill(line, 3);
+        }
+        for(int row = 0; row < 10; row++) {
+            Arrays.fill(frame[row], 0, 10, Float.NaN);
+        }
+        new MeshBackground(20, 20, 10, ForkJoinPool.commonPool()).subtract(frame);
+        Assert.assertTrue("NaN pixel was given a value", Float.isNaN(frame[0][0]));
+        Assert.assertEquals("Cell next to an empty cell was not subtracted", 0.0f, frame[12][12], 1e-6f);
+    }
+}
@@ -1,8 +1,14 @@
 package core.locate;
 
+import brightbodies.BrightBodyList;
+import core.locate.binary.BinaryLocator;
+import core.locate.binary.BinaryLocatorThresholdType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * @author Jonathan Zwiebel
  * @version February 3rd, 2016
@@ -10,4 +16,26 @@ import org.junit.Test;
  * TODO: Write unit tests for the binary locator
  */
 public class TestBinaryLocator {
+    @Test
+    public void testParallelLocateMatchesSequentialLocate() {
+        Random random = new Random(12);
+        float[][][] data = new float[40][20][30];
+        for(float[][] frame : data) {
+            for(float[] row : frame) {
+                for(int column = 0; column < row.length; column++) {
+                    row[column] = random.nextFloat();
+                }
+            }
+        }
+        BinaryLocator locator = new BinaryLocator(data, BinaryLocatorThresholdType.MEAN_SCALED, 1.2f);
+        locator.initialize();
+
+        BrightBodyList[] sequential = locator.locate();
+        BrightBodyList[] parallel = locator.locate(new ForkJoinPool(4));
+        Assert.assertEquals("Parallel locate returned the wrong frame count", sequential.length, parallel.length);
+        for(int frame = 0; frame < sequential.length; frame++) {
+            Assert.assertEquals("Parallel locate found different BrightBodies in frame " + frame,
+                    sequential[frame].toString(), parallel[frame].toString());
+        }
+    }
 }
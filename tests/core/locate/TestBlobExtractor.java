@@ -0,0 +1,51 @@
+package core.locate;
+
+import brightbodies.BrightBody;
+import brightbodies.BrightBodyList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the BlobExtractor
+ */
+public class TestBlobExtractor {
+    @Test
+    public void testMomentsMatchMomentStats() {
+        Random random = new Random(4);
+        float[][] frame = new float[25][35];
+        for(float[] row : frame) {
+            for(int column = 0; column < row.length; column++) {
+                row[column] = random.nextFloat() * 100;
+            }
+        }
+
+        BrightBodyList bodies = new BlobExtractor(25, 35, Connectivity.EIGHT).extract(frame, 60);
+        Assert.assertFalse("BlobExtractor found no BrightBodies", bodies.isEmpty());
+        for(BrightBody body : bodies) {
+            BrightBody expected = new BrightBody(frame, body.body.points());
+            Assert.assertEquals("BlobExtractor area differs from MomentStats", expected.area, body.area, 0);
+            Assert.assertEquals("BlobExtractor centroid differs from MomentStats", expected.centroid.x, body.centroid.x, 0);
+            Assert.assertEquals("BlobExtractor centroid differs from MomentStats", expected.centroid.y, body.centroid.y, 0);
+        }
+    }
+
+    @Test
+    public void testBoundsAndLabels() {
+        float[][] frame = {
+                {0, 5, 5, 0},
+                {0, 0, 5, 0},
+                {5, 0, 0, 0}
+        };
+        BlobExtractor extractor = new BlobExtractor(3, 4, Connectivity.FOUR);
+        BrightBodyList bodies = extractor.extract(frame, 1);
+        Assert.assertEquals("BlobExtractor found the wrong number of BrightBodies", 2, bodies.size());
+        Assert.assertArrayEquals("BlobExtractor labels are wrong", new int[]{0, 1, 1, 0, 0, 0, 1, 0, 2, 0, 0, 0}, extractor.labels());
+        Assert.assertArrayEquals("BlobExtractor bounding box is wrong", new int[]{1, 1, 2, 2}, extractor.bounds(1));
+        Assert.assertEquals("BlobExtractor counted the wrong size", 3, bodies.get(0).body.size());
+    }
+}
@@ -0,0 +1,58 @@
+package core.locate;
+
+import core.locate.binary.BinaryLocator;
+import core.locate.binary.BinaryLocatorThresholdType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the ComponentLabeler
+ */
+public class TestComponentLabeler {
+    @Test
+    public void testDiagonalNeighborsDependOnConnectivity() {
+        boolean[][] image = {
+                {true, false, false},
+                {false, true, false},
+                {false, false, true}
+        };
+        Assert.assertEquals("Four connected labeling joined diagonal pixels", 3, new ComponentLabeler(3, 3, Connectivity.FOUR).label(image));
+        Assert.assertEquals("Eight connected labeling split diagonal pixels", 1, new ComponentLabeler(3, 3, Connectivity.EIGHT).label(image));
+    }
+
+    @Test
+    public void testLabelsFollowRowMajorOrder() {
+        boolean[][] image = {
+                {false, false, true, false, true},
+                {true, false, true, false, true},
+                {true, true, true, false, false}
+        };
+        ComponentLabeler labeler = new ComponentLabeler(3, 5, Connectivity.FOUR);
+        Assert.assertEquals("ComponentLabeler counted the wrong number of components", 2, labeler.label(image));
+        Assert.assertArrayEquals("ComponentLabeler labels are not in row-major order",
+                new int[]{0, 0, 1, 0, 2, 1, 0, 1, 0, 2, 1, 1, 1, 0, 0}, labeler.labels());
+    }
+
+    @Test
+    public void testLargeComponentDoesNotOverflowStack() {
+        int size = 2000;
+        boolean[][] image = new boolean[size][size];
+        for(int row = 0; row < size; row++) {
+            for(int column = 0; column < size; column++) {
+                // A single serpentine component whose length is half of the image
+                image[row][column] = row % 2 == 0 || column == (row % 4 == 1 ? size - 1 : 0);
+            }
+        }
+        Assert.assertEquals("Serpentine component was split", 1, new ComponentLabeler(size, size, Connectivity.FOUR).label(image));
+    }
+
+    @Test
+    public void testFrameWithoutPositivesHasNoBodies() {
+        BinaryLocator locator = new BinaryLocator(new float[][][]{new float[4][4]}, BinaryLocatorThresholdType.MEAN);
+        locator.initialize();
+        Assert.assertEquals("Uniform frame produced BrightBodies", 0, locator.locate()[0].size());
+    }
+}
@@ -0,0 +1,54 @@
+package core.locate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the ComponentTree
+ */
+public class TestComponentTree {
+    @Test
+    public void testEveryThresholdMatchesBlobExtractor() {
+        Random random = new Random(7);
+        float[][] frame = new float[30][40];
+        for(float[] row : frame) {
+            for(int column = 0; column < row.length; column++) {
+                // Few distinct levels so that the tree has plateaus
+                row[column] = random.nextInt(8);
+            }
+        }
+        frame[3][4] = Float.NaN;
+
+        for(Connectivity connectivity : Connectivity.values()) {
+            ComponentTree tree = new ComponentTree(frame, connectivity);
+            BlobExtractor tree_extractor = new BlobExtractor(30, 40, connectivity);
+            BlobExtractor extractor = new BlobExtractor(30, 40, connectivity);
+            for(float threshold = -1; threshold < 8; threshold += 0.5f) {
+                Assert.assertEquals("ComponentTree differs from BlobExtractor at threshold " + threshold,
+                        extractor.extract(frame, threshold).toString(), tree.extract(frame, threshold, tree_extractor).toString());
+                Assert.assertArrayEquals("ComponentTree labels differ from BlobExtractor at threshold " + threshold,
+                        extractor.labels(), tree_extractor.labels());
+            }
+        }
+    }
+
+    @Test
+    public void testNestedBlobsSplitAtHigherThreshold() {
+        float[][] frame = {
+                {1, 1, 1, 1, 1},
+                {1, 5, 1, 6, 1},
+                {1, 1, 1, 1, 1}
+        };
+        ComponentTree tree = new ComponentTree(frame, Connectivity.FOUR);
+        BlobExtractor extractor = new BlobExtractor(3, 5, Connectivity.FOUR);
+        Assert.assertEquals("Low threshold did not join the peaks", 1, tree.extract(frame, 0, extractor).size());
+        Assert.assertEquals("High threshold did not split the peaks", 2, tree.extract(frame, 2, extractor).size());
+        Assert.assertEquals("Threshold above one peak did not drop it", 1, tree.extract(frame, 5, extractor).size());
+        Assert.assertEquals("Threshold above every peak found BrightBodies", 0, tree.extract(frame, 6, extractor).size());
+    }
+}
@@ -0,0 +1,76 @@
+package core.locate;
+
+import brightbodies.BrightBody;
+import brightbodies.BrightBodyList;
+import brightbodies.CartesianPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the PyramidBlobExtractor
+ */
+public class TestPyramidBlobExtractor {
+    private static float[][] sparseFrame(int rows, int columns, Random random) {
+        float[][] frame = new float[rows][columns];
+        for(float[] line : frame) {
+            for(int column = 0; column < columns; column++) {
+                // Mostly dark sky with a few bright pixels and the occasional NaN
+                float value = random.nextFloat();
+                line[column] = value < 0.02f ? Float.NaN : value > 0.9f ? 1 + value : value;
+            }
+        }
+        return frame;
+    }
+
+    private static void assertIdentical(BrightBodyList expected, BrightBodyList actual) {
+        Assert.assertEquals("PyramidBlobExtractor found a different number of BrightBodies", expected.size(), actual.size());
+        for(int index = 0; index < expected.size(); index++) {
+            BrightBody wanted = expected.get(index);
+            BrightBody found = actual.get(index);
+            CartesianPoint[] wanted_points = wanted.body.points();
+            CartesianPoint[] found_points = found.body.points();
+            Assert.assertEquals("PyramidBlobExtractor body size differs", wanted_points.length, found_points.length);
+            for(int point = 0; point < wanted_points.length; point++) {
+                Assert.assertTrue("PyramidBlobExtractor points differ", wanted_points[point].equals(found_points[point]));
+            }
+            Assert.assertEquals("PyramidBlobExtractor area differs", wanted.area, found.area, 0);
+            Assert.assertEquals("PyramidBlobExtractor centroid differs", wanted.centroid.x, found.centroid.x, 0);
+            Assert.assertEquals("PyramidBlobExtractor centroid differs", wanted.centroid.y, found.centroid.y, 0);
+        }
+    }
+
+    @Test
+    public void testBodiesMatchBlobExtractor() {
+        Random random = new Random(20);
+        for(int trial = 0; trial < 50; trial++) {
+            int rows = 1 + random.nextInt(70);
+            int columns = 1 + random.nextInt(70);
+            float[][] frame = sparseFrame(rows, columns, random);
+            Connectivity connectivity = trial % 2 == 0 ? Connectivity.FOUR : Connectivity.EIGHT;
+            assertIdentical(new BlobExtractor(rows, columns, connectivity).extract(frame, 1),
+                    new PyramidBlobExtractor(rows, columns, connectivity).extract(frame, 1));
+        }
+    }
+
+    @Test
+    public void testBuffersAreClearedBetweenFrames() {
+        Random random = new Random(4);
+        PyramidBlobExtractor pyramid = new PyramidBlobExtractor(37, 53, Connectivity.EIGHT);
+        BlobExtractor blobs = new BlobExtractor(37, 53, Connectivity.EIGHT);
+        for(int trial = 0; trial < 10; trial++) {
+            float[][] frame = sparseFrame(37, 53, random);
+            assertIdentical(blobs.extract(frame, 1), pyramid.extract(frame, 1));
+        }
+    }
+
+    @Test
+    public void testLevels() {
+        Assert.assertEquals("Small frame needs no coarser level", 1, new PyramidBlobExtractor(8, 8, Connectivity.FOUR).levels());
+        Assert.assertEquals("Wrong number of levels", 4, new PyramidBlobExtractor(33, 5, Connectivity.FOUR).levels());
+    }
+}
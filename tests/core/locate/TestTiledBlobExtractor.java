@@ -0,0 +1,75 @@
+package core.locate;
+
+import brightbodies.BrightBody;
+import brightbodies.BrightBodyList;
+import brightbodies.CartesianPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the TiledBlobExtractor
+ */
+public class TestTiledBlobExtractor {
+    private static Map<List<String>, BrightBody> byPoints(BrightBodyList bodies) {
+        Map<List<String>, BrightBody> map = new HashMap<>();
+        for(BrightBody body : bodies) {
+            List<String> points = new ArrayList<>();
+            for(CartesianPoint point : body.body) {
+                points.add(point.x + "," + point.y);
+            }
+            Collections.sort(points);
+            map.put(points, body);
+        }
+        return map;
+    }
+
+    @Test
+    public void testBodiesMatchBlobExtractor() {
+        Random random = new Random(15);
+        for(int trial = 0; trial < 50; trial++) {
+            int rows = 1 + random.nextInt(30);
+            int columns = 1 + random.nextInt(30);
+            float[][] frame = new float[rows][columns];
+            for(float[] line : frame) {
+                for(int column = 0; column < columns; column++) {
+                    line[column] = random.nextFloat();
+                }
+            }
+            Connectivity connectivity = trial % 2 == 0 ? Connectivity.FOUR : Connectivity.EIGHT;
+            Map<List<String>, BrightBody> expected = byPoints(new BlobExtractor(rows, columns, connectivity).extract(frame, 0.5f));
+            Map<List<String>, BrightBody> actual = byPoints(new TiledBlobExtractor(rows, columns, connectivity,
+                    1 + random.nextInt(6), 1 + random.nextInt(6), ForkJoinPool.commonPool()).extract(frame, 0.5f));
+
+            Assert.assertEquals("TiledBlobExtractor found different BrightBodies", expected.keySet(), actual.keySet());
+            for(List<String> points : expected.keySet()) {
+                Assert.assertEquals("TiledBlobExtractor area differs", expected.get(points).area, actual.get(points).area, 1e-4f);
+                Assert.assertEquals("TiledBlobExtractor centroid differs", expected.get(points).centroid.x, actual.get(points).centroid.x, 1e-4f);
+                Assert.assertEquals("TiledBlobExtractor centroid differs", expected.get(points).centroid.y, actual.get(points).centroid.y, 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void testBodyCrossingEveryTileIsJoined() {
+        float[][] frame = new float[9][9];
+        for(int index = 0; index < 9; index++) {
+            // Diagonal line that is only connected with eight connectivity
+            frame[index][index] = 1;
+        }
+        Assert.assertEquals("Diagonal was not joined across tiles", 1,
+                new TiledBlobExtractor(9, 9, Connectivity.EIGHT, 2, 2, ForkJoinPool.commonPool()).extract(frame, 0).size());
+        Assert.assertEquals("Diagonal was joined with four connectivity", 9,
+                new TiledBlobExtractor(9, 9, Connectivity.FOUR, 2, 2, ForkJoinPool.commonPool()).extract(frame, 0).size());
+    }
+}
@@ -0,0 +1,78 @@
+package core.locate.matched;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the Convolver
+ */
+public class TestConvolver {
+    private static float[][] frame(int rows, int columns, long seed) {
+        Random random = new Random(seed);
+        float[][] frame = new float[rows][columns];
+        for(float[] line : frame) {
+            for(int column = 0; column < columns; column++) {
+                line[column] = (float) random.nextGaussian();
+            }
+        }
+        return frame;
+    }
+
+    private static void assertSame(float[][] expected, float[][] actual) {
+        for(int row = 0; row < expected.length; row++) {
+            Assert.assertArrayEquals("Convolution methods disagree", expected[row], actual[row], 1e-4f);
+        }
+    }
+
+    @Test
+    public void testMethodsAgreeForGaussian() {
+        float[][] frame = frame(23, 17, 19);
+        PsfKernel kernel = PsfKernel.gaussian(1.5f);
+        float[][] separable = copy(new Convolver(23, 17, kernel).convolve(frame));
+        assertSame(separable, new Convolver(23, 17, kernel, ConvolutionMethod.DIRECT).convolve(frame));
+        assertSame(separable, new Convolver(23, 17, kernel, ConvolutionMethod.FFT).convolve(frame));
+    }
+
+    @Test
+    public void testFftMatchesDirectForLargeKernel() {
+        float[][] frame = frame(30, 41, 7);
+        float[][] weights = new float[11][13];
+        Random random = new Random(11);
+        for(float[] line : weights) {
+            for(int column = 0; column < line.length; column++) {
+                line[column] = random.nextFloat();
+            }
+        }
+        PsfKernel kernel = new PsfKernel(weights);
+        Assert.assertEquals("Large kernel does not use an FFT", ConvolutionMethod.FFT, Convolver.fastestMethod(kernel));
+        assertSame(copy(new Convolver(30, 41, kernel, ConvolutionMethod.DIRECT).convolve(frame)), new Convolver(30, 41, kernel).convolve(frame));
+    }
+
+    @Test
+    public void testUniformFrameIsUnchangedAtEdges() {
+        float[][] frame = new float[8][9];
+        for(float[] line : frame) {
+            Arrays.fill(line, 4);
+        }
+        float[][] filtered = new Convolver(8, 9, PsfKernel.gaussian(2)).convolve(frame);
+        for(float[] line : filtered) {
+            for(float value : line) {
+                Assert.assertEquals("Edges of a uniform frame were darkened", 4.0f, value, 1e-4f);
+            }
+        }
+    }
+
+    private static float[][] copy(float[][] frame) {
+        float[][] copy = new float[frame.length][];
+        for(int row = 0; row < frame.length; row++) {
+            copy[row] = frame[row].clone();
+        }
+        return copy;
+    }
+}
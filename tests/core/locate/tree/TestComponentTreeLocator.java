@@ -0,0 +1,67 @@
+package core.locate.tree;
+
+import brightbodies.BrightBodyList;
+import core.locate.binary.BinaryLocator;
+import core.locate.binary.BinaryLocatorThresholdType;
+import cube.ArrayFrameCube;
+import cube.CubeFixtures;
+import cube.FrameCube;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the ComponentTreeLocator
+ */
+public class TestComponentTreeLocator {
+    private static void assertSameBodies(String message, BinaryLocator expected_locator, ComponentTreeLocator locator) {
+        expected_locator.initialize();
+        locator.initialize();
+        BrightBodyList[] expected = expected_locator.locate();
+        BrightBodyList[] actual = locator.locate(new ForkJoinPool(3));
+        Assert.assertEquals(message, expected.length, actual.length);
+        for(int frame = 0; frame < expected.length; frame++) {
+            Assert.assertEquals(message + " in frame " + frame, expected[frame].toString(), actual[frame].toString());
+        }
+    }
+
+    @Test
+    public void testSweepMatchesBinaryLocator() {
+        FrameCube data = new ArrayFrameCube(CubeFixtures.noisy(8, 20, 30));
+        // Only half of the frames keep a tree, so both ways of locating are covered
+        ComponentTreeLocator trees = new ComponentTreeLocator(data, 4, BinaryLocatorThresholdType.MEAN, 0);
+        for(int step = 0; step < 4; step++) {
+            float shift = step * 2.5f;
+            // The sweep is run twice so the second run cuts the trees built by the first
+            for(int run = 0; run < 2; run++) {
+                assertSameBodies("ComponentTreeLocator differs from BinaryLocator at shift " + shift,
+                        new BinaryLocator(data, BinaryLocatorThresholdType.MEAN_SHIFTED, shift),
+                        trees.withThreshold(BinaryLocatorThresholdType.MEAN_SHIFTED, shift));
+            }
+        }
+    }
+
+    @Test
+    public void testEveryThresholdTypeMatchesBinaryLocator() {
+        FrameCube data = new ArrayFrameCube(CubeFixtures.noisy(3, 20, 30));
+        ComponentTreeLocator trees = new ComponentTreeLocator(data, 3, BinaryLocatorThresholdType.MEAN, 0);
+        for(BinaryLocatorThresholdType threshold_type : BinaryLocatorThresholdType.values()) {
+            float[] args = threshold_type == BinaryLocatorThresholdType.ABSOLUTE ? new float[]{1010} : new float[]{1.0f, 2};
+            assertSameBodies("ComponentTreeLocator differs from BinaryLocator with " + threshold_type,
+                    new BinaryLocator(data, threshold_type, args), trees.withThreshold(threshold_type, args));
+        }
+    }
+
+    @Test
+    public void testTreeFramesFitInBytes() {
+        FrameCube data = new ArrayFrameCube(CubeFixtures.positions(10, 4, 5));
+        int tree_bytes = ComponentTreeLocator.TREE_BYTES_PER_PIXEL * 4 * 5;
+        Assert.assertEquals("No tree should fit", 0, ComponentTreeLocator.treeFrames(data, tree_bytes - 1));
+        Assert.assertEquals("Three trees should fit", 3, ComponentTreeLocator.treeFrames(data, 3 * tree_bytes + 1));
+        Assert.assertEquals("More trees than frames should fit", 10, ComponentTreeLocator.treeFrames(data, Long.MAX_VALUE));
+    }
+}
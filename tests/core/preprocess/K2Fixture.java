@@ -0,0 +1,112 @@
+package core.preprocess;
+
+import nom.tam.fits.BinaryTable;
+import nom.tam.fits.BinaryTableHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.FitsFactory;
+import nom.tam.util.BufferedFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A small synthetic K2 target pixel file written with nom-tam for the Preprocessor tests. The frames are not square,
+ * some pixels are NaN, some rows have a QUALITY value that K2Preprocessor drops and some have a QUALITY value that it
+ * keeps.
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+class K2Fixture {
+    static final int ROWS = 9;
+    static final int COLUMNS = 13;
+    static final int CADENCES = 40;
+
+    final double[] time = new double[CADENCES];
+    final int[] cadence = new int[CADENCES];
+    final int[] quality = new int[CADENCES];
+    final float[][][] flux = new float[CADENCES][ROWS][COLUMNS];
+    final float[][][] flux_error = new float[CADENCES][ROWS][COLUMNS];
+
+    K2Fixture() {
+        Random random = new Random(905);
+        for(int t = 0; t < CADENCES; t++) {
+            time[t] = 2000 + t * 0.0204;
+            cadence[t] = 1000 + t;
+            quality[t] = t % 7 == 3 ? 32768 : t % 5 == 0 ? 4 : 0;
+            for(int i = 0; i < ROWS; i++) {
+                for(int j = 0; j < COLUMNS; j++) {
+                    flux[t][i][j] = t * 1000 + i * 20 + j + (float) random.nextGaussian();
+                    flux_error[t][i][j] = (float) Math.sqrt(Math.abs(flux[t][i][j]));
+                }
+            }
+            flux[t][t % ROWS][t % COLUMNS] = Float.NaN;
+        }
+    }
+
+    /**
+     * Writes the fixture to a new temporary file, which the caller should delete
+     *
+     * @return the K2 formatted fits file
+     * @throws FitsException
+     * @throws IOException
+     */
+    File write() throws FitsException, IOException {
+        File file = File.createTempFile("target", ".fits");
+        write(file);
+        return file;
+    }
+
+    /**
+     * Writes the fixture over a file
+     *
+     * @param file the file to write
+     * @throws FitsException
+     * @throws IOException
+     */
+    void write(File file) throws FitsException, IOException {
+        Fits fits = new Fits();
+        fits.addHDU(FitsFactory.hduFactory(new int[0]));
+        BinaryTableHDU table = (BinaryTableHDU) Fits.makeHDU(new BinaryTable(new Object[]{time, cadence, flux, flux_error, quality}));
+        String[] names = {"TIME", "CADENCENO", "FLUX", "FLUX_ERR", "QUALITY"};
+        for(int column = 0; column < names.length; column++) {
+            table.setColumnName(column, names[column], null);
+        }
+        fits.addHDU(table);
+        BufferedFile out = new BufferedFile(file.getPath(), "rw");
+        fits.write(out);
+        out.close();
+    }
+
+    /**
+     * @return the indices of the cadences that K2Preprocessor keeps
+     */
+    int[] validCadences() {
+        ArrayList<Integer> valid = new ArrayList<>();
+        for(int t = 0; t < CADENCES; t++) {
+            if(quality[t] < 16384) {
+                valid.add(t);
+            }
+        }
+        int[] indices = new int[valid.size()];
+        for(int index = 0; index < indices.length; index++) {
+            indices[index] = valid.get(index);
+        }
+        return indices;
+    }
+
+    /**
+     * @return the flux of the cadences that K2Preprocessor keeps
+     */
+    float[][][] validFlux() {
+        int[] valid = validCadences();
+        float[][][] frames = new float[valid.length][][];
+        for(int index = 0; index < valid.length; index++) {
+            frames[index] = flux[valid[index]];
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,171 @@
+package core.preprocess;
+
+import cube.FrameCube;
+import nom.tam.fits.FitsException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the CubeCache
+ */
+public class TestCubeCache {
+    /**
+     * A K2Preprocessor that counts how many times its frames are decoded
+     */
+    private static class CountingPreprocessor extends K2Preprocessor {
+        int decodes;
+
+        CountingPreprocessor(File file) throws FitsException {
+            super(file);
+        }
+
+        public FrameIterator frames() throws FitsException, IOException {
+            decodes++;
+            return super.frames();
+        }
+    }
+
+    private static void assertCube(String message, float[][][] expected, FrameCube cube) {
+        Assert.assertEquals(message, expected.length, cube.frames());
+        for(int frame = 0; frame < expected.length; frame++) {
+            Assert.assertArrayEquals(message, expected[frame], cube.frame(frame));
+        }
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    @Test
+    public void testHitDoesNotDecode() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File fits_file = fixture.write();
+        File directory = Files.createTempDirectory("cubecache").toFile();
+        CubeCache cache = new CubeCache(directory);
+        CountingPreprocessor preprocessor = new CountingPreprocessor(fits_file);
+
+        assertCube("CubeCache miss returned the wrong cube", fixture.validFlux(), cache.read(fits_file, preprocessor));
+        Assert.assertEquals("CubeCache miss did not decode the file", 1, preprocessor.decodes);
+        assertCube("CubeCache hit returned the wrong cube", fixture.validFlux(), cache.read(fits_file, preprocessor));
+        Assert.assertEquals("CubeCache hit decoded the file", 1, preprocessor.decodes);
+        Assert.assertArrayEquals("CubeCache returned the wrong indices", fixture.validCadences(), cache.readIndices(fits_file, preprocessor));
+
+        fits_file.delete();
+        delete(directory);
+    }
+
+    @Test
+    public void testCopiedFileWithSameContentsHits() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File fits_file = fixture.write();
+        File directory = Files.createTempDirectory("cubecache").toFile();
+        CubeCache cache = new CubeCache(directory);
+        CountingPreprocessor preprocessor = new CountingPreprocessor(fits_file);
+
+        cache.read(fits_file, preprocessor);
+        Assert.assertTrue(fits_file.setLastModified(fits_file.lastModified() - 60000));
+        assertCube("CubeCache returned the wrong cube for a touched file", fixture.validFlux(), cache.read(fits_file, preprocessor));
+        assertCube("CubeCache returned the wrong cube for a touched file", fixture.validFlux(), cache.read(fits_file, preprocessor));
+        Assert.assertEquals("CubeCache decoded a file whose contents did not change", 1, preprocessor.decodes);
+
+        fits_file.delete();
+        delete(directory);
+    }
+
+    @Test
+    public void testStaleFileIsDecodedAgain() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File fits_file = fixture.write();
+        File directory = Files.createTempDirectory("cubecache").toFile();
+        CubeCache cache = new CubeCache(directory);
+        CountingPreprocessor preprocessor = new CountingPreprocessor(fits_file);
+        cache.read(fits_file, preprocessor);
+
+        // Same length, different contents and modification time
+        long modified = fits_file.lastModified();
+        fixture.flux[1][2][3] += 1;
+        fixture.write(fits_file);
+        Assert.assertTrue(fits_file.setLastModified(modified - 60000));
+        assertCube("CubeCache returned a stale cube", fixture.validFlux(), cache.read(fits_file, preprocessor));
+        Assert.assertEquals("CubeCache did not decode a changed file", 2, preprocessor.decodes);
+
+        fits_file.delete();
+        delete(directory);
+    }
+
+    @Test
+    public void testConfigurationsDoNotShareCache() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File fits_file = fixture.write();
+        File directory = Files.createTempDirectory("cubecache").toFile();
+        CubeCache cache = new CubeCache(directory);
+        float[][][] expected = new K2Preprocessor(fits_file, 2, 5).read();
+
+        cache.read(fits_file, new K2Preprocessor(fits_file));
+        assertCube("CubeCache returned the cache of another configuration", expected, cache.read(fits_file, new K2Preprocessor(fits_file, 2, 5)));
+
+        fits_file.delete();
+        delete(directory);
+    }
+
+    @Test
+    public void testCorruptCacheIsRebuilt() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File fits_file = fixture.write();
+        File directory = Files.createTempDirectory("cubecache").toFile();
+        CubeCache cache = new CubeCache(directory);
+        CountingPreprocessor preprocessor = new CountingPreprocessor(fits_file);
+        cache.read(fits_file, preprocessor);
+
+        File[] cache_files = directory.listFiles();
+        Assert.assertEquals("CubeCache wrote the wrong number of files", 1, cache_files.length);
+        try(RandomAccessFile file = new RandomAccessFile(cache_files[0], "rw")) {
+            file.setLength(file.length() - 4);
+        }
+        assertCube("CubeCache returned a truncated cube", fixture.validFlux(), cache.read(fits_file, preprocessor));
+        Assert.assertEquals("CubeCache did not rebuild a truncated cache", 2, preprocessor.decodes);
+
+        try(RandomAccessFile file = new RandomAccessFile(cache_files[0], "rw")) {
+            file.writeInt(0);
+        }
+        assertCube("CubeCache returned a corrupt cube", fixture.validFlux(), cache.read(fits_file, preprocessor));
+        Assert.assertEquals("CubeCache did not rebuild a corrupt cache", 3, preprocessor.decodes);
+
+        fits_file.delete();
+        delete(directory);
+    }
+
+    @Test
+    public void testMissingIndicesThrowIOException() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File fits_file = fixture.write();
+        File directory = Files.createTempDirectory("cubecache").toFile();
+        boolean caught = false;
+        try {
+            new CubeCache(directory).readIndices(fits_file, new K2Preprocessor(fits_file));
+        }
+        catch(IOException e) {
+            caught = true;
+        }
+        Assert.assertTrue("CubeCache returned indices without a cache", caught);
+
+        fits_file.delete();
+        delete(directory);
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.Assert;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 
 /**
@@ -46,4 +47,183 @@ public class TestK2Preprocessor {
         Preprocessor test_preprocessor = new K2Preprocessor(new Fits(new File("data\\905.fits")));
         Assert.assertNotNull("K2Preprocessor read returned null", test_preprocessor.read());
     }
+
+    @Test
+    public void testFramesMatchRead() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File file = fixture.write();
+        float[][][] data = new K2Preprocessor(new Fits(file)).read();
+        FrameIterator frames = new K2Preprocessor(new Fits(file)).frames();
+
+        Assert.assertArrayEquals("K2Preprocessor read the wrong frames", fixture.validFlux(), data);
+        Assert.assertEquals("K2Preprocessor frames has the wrong rows", K2Fixture.ROWS, frames.rows());
+        Assert.assertEquals("K2Preprocessor frames has the wrong columns", K2Fixture.COLUMNS, frames.columns());
+        int[] valid = fixture.validCadences();
+        int index = 0;
+        while(frames.hasNext()) {
+            Assert.assertArrayEquals("K2Preprocessor frames differ from read", data[index], frames.next());
+            Assert.assertEquals("K2Preprocessor frames returned the wrong index", valid[index], frames.index());
+            index++;
+        }
+        Assert.assertEquals("K2Preprocessor frames returned the wrong frame count", data.length, index);
+        file.delete();
+    }
+
+    @Test
+    public void testNextBatchMatchesRead() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File file = fixture.write();
+        float[][][] data = new K2Preprocessor(new Fits(file)).read();
+        FrameIterator frames = new K2Preprocessor(new Fits(file)).frames();
+
+        int index = 0;
+        while(frames.hasNext()) {
+            float[][][] batch = frames.nextBatch(7);
+            Assert.assertTrue("K2Preprocessor returned a short batch before the end", batch.length == 7 || !frames.hasNext());
+            for(float[][] frame : batch) {
+                Assert.assertArrayEquals("K2Preprocessor batch differs from read", data[index++], frame);
+            }
+        }
+        Assert.assertEquals("K2Preprocessor batches returned the wrong frame count", data.length, index);
+        Assert.assertEquals("K2Preprocessor returned a batch after the end", 0, frames.nextBatch(7).length);
+        file.delete();
+    }
+
+    @Test
+    public void testMappedReadMatchesFits() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File file = fixture.write();
+        float[][][] data = new K2Preprocessor(new Fits(file)).read();
+        K2Preprocessor mapped = new K2Preprocessor(file);
+
+        Assert.assertArrayEquals("K2Preprocessor mapped dimensions differ", new int[]{K2Fixture.ROWS, K2Fixture.COLUMNS}, mapped.dimensions());
+        Assert.assertArrayEquals("K2Preprocessor mapped read differs from nom-tam", data, mapped.read());
+
+        FrameIterator frames = new K2Preprocessor(file).frames();
+        FrameIterator fits_frames = new K2Preprocessor(new Fits(file)).frames();
+        float[] frame = new float[K2Fixture.ROWS * K2Fixture.COLUMNS];
+        float[] fits_frame = new float[K2Fixture.ROWS * K2Fixture.COLUMNS];
+        while(fits_frames.hasNext()) {
+            Assert.assertTrue("K2Preprocessor mapped frames ended early", frames.hasNext());
+            frames.next(frame);
+            fits_frames.next(fits_frame);
+            Assert.assertArrayEquals("K2Preprocessor mapped frame differs from nom-tam", fits_frame, frame, 0);
+            Assert.assertEquals("K2Preprocessor mapped index differs from nom-tam", fits_frames.index(), frames.index());
+        }
+        Assert.assertFalse("K2Preprocessor mapped frames did not end", frames.hasNext());
+        file.delete();
+    }
+
+    @Test
+    public void testMappedReadDoesNotOpenFits() throws FitsException, IOException {
+        File file = new K2Fixture().write();
+        Assert.assertNull("K2Preprocessor opened a Fits it does not use", new K2Preprocessor(file).file_);
+        Assert.assertNull("K2Preprocessor opened a Fits it does not use", new K2Preprocessor(file, 1, 2, 3, 4, 0, 5).file_);
+        file.delete();
+    }
+
+    @Test
+    public void testMappedMissingFileThrowsFitsException() {
+        boolean caught = false;
+        try {
+            new K2Preprocessor(new File("data", "fake.fits"));
+        }
+        catch(FitsException e) {
+            caught = true;
+        }
+        Assert.assertTrue("K2Preprocessor did not throw FitsException for a missing file", caught);
+    }
+
+    /**
+     * Cuts a region out of a range of the frames of a cube
+     */
+    private static float[][][] slice(float[][][] data, int first_row, int rows, int first_column, int columns, int first_frame, int frames) {
+        float[][][] slice = new float[frames][rows][];
+        for(int frame = 0; frame < frames; frame++) {
+            for(int row = 0; row < rows; row++) {
+                slice[frame][row] = Arrays.copyOfRange(data[first_frame + frame][first_row + row], first_column, first_column + columns);
+            }
+        }
+        return slice;
+    }
+
+    @Test
+    public void testRegionMatchesSliceOfRead() throws FitsException, IOException {
+        File file = new K2Fixture().write();
+        float[][][] data = new K2Preprocessor(file).read();
+
+        K2Preprocessor region = new K2Preprocessor(file, 2, 4, 3, 6, 5, 7);
+        Assert.assertArrayEquals("K2Preprocessor region differs from read", slice(data, 2, 4, 3, 6, 5, 7), region.read());
+        Assert.assertArrayEquals("K2Preprocessor region changed the frame dimensions", new int[]{K2Fixture.ROWS, K2Fixture.COLUMNS}, region.dimensions());
+
+        // A single column is read through the row by row path and a full width region through the contiguous path
+        Assert.assertArrayEquals("K2Preprocessor column differs from read", slice(data, 0, K2Fixture.ROWS, 12, 1, 0, data.length),
+                new K2Preprocessor(file, 0, -1, 12, -1, 0, K2Preprocessor.ALL_FRAMES).read());
+        Assert.assertArrayEquals("K2Preprocessor rows differ from read", slice(data, 6, 3, 0, K2Fixture.COLUMNS, 1, 2),
+                new K2Preprocessor(file, 6, -1, 0, -1, 1, 2).read());
+        file.delete();
+    }
+
+    @Test
+    public void testFrameRangeMatchesSliceOfRead() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File file = fixture.write();
+        float[][][] data = new K2Preprocessor(file).read();
+        int first_frame = data.length - 6;
+
+        float[][][] tail = new K2Preprocessor(file, first_frame, K2Preprocessor.ALL_FRAMES).read();
+        Assert.assertArrayEquals("K2Preprocessor tail range differs from read", slice(data, 0, K2Fixture.ROWS, 0, K2Fixture.COLUMNS, first_frame, 6), tail);
+        Assert.assertEquals("K2Preprocessor range past the end is not empty", 0, new K2Preprocessor(file, data.length, 3).read().length);
+
+        K2TargetPixelData pixel_data = new K2Preprocessor(file, 1, 2, 4, 5, first_frame, K2Preprocessor.ALL_FRAMES).readTargetPixelData();
+        float[][][] region = slice(data, 1, 2, 4, 5, first_frame, 6);
+        int[] valid = fixture.validCadences();
+        Assert.assertEquals("K2Preprocessor range has the wrong frame count", 6, pixel_data.flux.frames());
+        for(int frame = 0; frame < 6; frame++) {
+            Assert.assertArrayEquals("K2Preprocessor range flux differs from read", region[frame], pixel_data.flux.frame(frame));
+            Assert.assertEquals("K2Preprocessor range cadence is misaligned", fixture.cadence[valid[first_frame + frame]], pixel_data.cadence[frame]);
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testRegionOutsideFramesThrowsException() throws FitsException, IOException {
+        File file = new K2Fixture().write();
+        boolean caught = false;
+        try {
+            new K2Preprocessor(file, 0, -1, 10, 4, 0, K2Preprocessor.ALL_FRAMES).read();
+        }
+        catch(IllegalArgumentException e) {
+            caught = true;
+        }
+        Assert.assertTrue("K2Preprocessor read a region outside the frames", caught);
+        file.delete();
+    }
+
+    @Test
+    public void testTargetPixelDataMatchesRead() throws FitsException, IOException {
+        K2Fixture fixture = new K2Fixture();
+        File file = fixture.write();
+        assertTargetPixelData(fixture, new K2Preprocessor(file).readTargetPixelData());
+        assertTargetPixelData(fixture, new K2Preprocessor(new Fits(file)).readTargetPixelData());
+        file.delete();
+    }
+
+    /**
+     * Checks that every column of the target pixel data comes from the same valid rows of the fixture
+     */
+    private static void assertTargetPixelData(K2Fixture fixture, K2TargetPixelData pixel_data) {
+        int[] valid = fixture.validCadences();
+        Assert.assertEquals("K2Preprocessor target pixel data has the wrong frame count", valid.length, pixel_data.flux.frames());
+        Assert.assertEquals("K2Preprocessor error cube has the wrong frame count", valid.length, pixel_data.flux_error.frames());
+        Assert.assertEquals("K2Preprocessor time has the wrong length", valid.length, pixel_data.time.length);
+        Assert.assertEquals("K2Preprocessor cadence has the wrong length", valid.length, pixel_data.cadence.length);
+        for(int frame = 0; frame < valid.length; frame++) {
+            int row = valid[frame];
+            Assert.assertArrayEquals("K2Preprocessor target pixel flux differs from the file", fixture.flux[row], pixel_data.flux.frame(frame));
+            Assert.assertArrayEquals("K2Preprocessor flux error differs from the file", fixture.flux_error[row], pixel_data.flux_error.frame(frame));
+            Assert.assertEquals("K2Preprocessor time differs from the file", fixture.time[row], pixel_data.time[frame], 0);
+            Assert.assertEquals("K2Preprocessor cadence differs from the file", fixture.cadence[row], pixel_data.cadence[frame]);
+        }
+    }
 }
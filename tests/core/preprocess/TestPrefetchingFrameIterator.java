@@ -0,0 +1,168 @@
+package core.preprocess;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the PrefetchingFrameIterator
+ */
+public class TestPrefetchingFrameIterator {
+    private static final int ROWS = 3;
+    private static final int COLUMNS = 4;
+
+    /**
+     * A FrameIterator over generated frames that fails at a given frame and can be made to wait before each frame
+     */
+    private static class SourceFrameIterator extends FrameIterator {
+        private final int frames_;
+        private final int failing_frame_;
+        private final CountDownLatch gate_;
+        private int next_;
+
+        SourceFrameIterator(int frames, int failing_frame, CountDownLatch gate) {
+            frames_ = frames;
+            failing_frame_ = failing_frame;
+            gate_ = gate;
+        }
+
+        public int rows() {
+            return ROWS;
+        }
+
+        public int columns() {
+            return COLUMNS;
+        }
+
+        public int index() {
+            return 2 * (next_ - 1);
+        }
+
+        public boolean hasNext() {
+            return next_ < frames_;
+        }
+
+        public float[][] next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                gate_.await();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the gate", e);
+            }
+            if(next_ == failing_frame_) {
+                throw new IllegalArgumentException("Frame " + next_ + " is corrupt");
+            }
+            return frame(next_++);
+        }
+
+        static float[][] frame(int frame) {
+            float[][] data = new float[ROWS][COLUMNS];
+            for(int row = 0; row < ROWS; row++) {
+                for(int column = 0; column < COLUMNS; column++) {
+                    data[row][column] = frame * 100 + row * 10 + column;
+                }
+            }
+            return data;
+        }
+    }
+
+    @Test
+    public void testFramesArriveInOrder() {
+        PrefetchingFrameIterator frames = new PrefetchingFrameIterator(new SourceFrameIterator(25, -1, new CountDownLatch(0)), 2);
+        Assert.assertEquals("PrefetchingFrameIterator has the wrong rows", ROWS, frames.rows());
+        Assert.assertEquals("PrefetchingFrameIterator has the wrong columns", COLUMNS, frames.columns());
+        float[] buffer = new float[ROWS * COLUMNS];
+        int frame = 0;
+        while(frames.hasNext()) {
+            float[][] expected = SourceFrameIterator.frame(frame);
+            if(frame % 2 == 0) {
+                Assert.assertArrayEquals("PrefetchingFrameIterator returned the wrong frame", expected, frames.next());
+            }
+            else {
+                frames.next(buffer);
+                for(int row = 0; row < ROWS; row++) {
+                    float[] actual = Arrays.copyOfRange(buffer, row * COLUMNS, (row + 1) * COLUMNS);
+                    Assert.assertArrayEquals("PrefetchingFrameIterator returned the wrong frame", expected[row], actual, 0);
+                }
+            }
+            Assert.assertEquals("PrefetchingFrameIterator returned the wrong index", 2 * frame, frames.index());
+            frame++;
+        }
+        Assert.assertEquals("PrefetchingFrameIterator returned the wrong frame count", 25, frame);
+        frames.close();
+    }
+
+    @Test
+    public void testSourceExceptionIsRethrown() {
+        PrefetchingFrameIterator frames = new PrefetchingFrameIterator(new SourceFrameIterator(10, 4, new CountDownLatch(0)), 2);
+        for(int frame = 0; frame < 4; frame++) {
+            Assert.assertArrayEquals("PrefetchingFrameIterator returned the wrong frame", SourceFrameIterator.frame(frame), frames.next());
+        }
+        for(int call = 0; call < 2; call++) {
+            boolean caught = false;
+            try {
+                frames.hasNext();
+            }
+            catch(IllegalStateException e) {
+                caught = e.getCause() instanceof IllegalArgumentException;
+            }
+            Assert.assertTrue("PrefetchingFrameIterator did not rethrow the source exception", caught);
+        }
+        frames.close();
+    }
+
+    @Test
+    public void testCloseEndsIteration() throws InterruptedException {
+        PrefetchingFrameIterator frames = new PrefetchingFrameIterator(new SourceFrameIterator(100, -1, new CountDownLatch(0)), 2);
+        frames.next();
+        frames.close();
+
+        Thread consumer = new Thread(() -> {
+            while(frames.hasNext()) {
+                frames.next();
+            }
+        });
+        consumer.setDaemon(true);
+        consumer.start();
+        consumer.join(3000);
+        Assert.assertFalse("PrefetchingFrameIterator blocked after close", consumer.isAlive());
+        Assert.assertFalse("PrefetchingFrameIterator has frames after close", frames.hasNext());
+
+        boolean caught = false;
+        try {
+            frames.next();
+        }
+        catch(NoSuchElementException e) {
+            caught = true;
+        }
+        Assert.assertTrue("PrefetchingFrameIterator returned a frame after close", caught);
+    }
+
+    @Test
+    public void testCloseWakesWaitingConsumer() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        PrefetchingFrameIterator frames = new PrefetchingFrameIterator(new SourceFrameIterator(100, -1, gate), 2);
+        boolean[] has_next = {true};
+
+        // The source waits on the gate forever, so the consumer waits in hasNext() until the iterator is closed
+        Thread consumer = new Thread(() -> has_next[0] = frames.hasNext());
+        consumer.setDaemon(true);
+        consumer.start();
+        consumer.join(200);
+        Assert.assertTrue("PrefetchingFrameIterator returned before a frame was decoded", consumer.isAlive());
+        frames.close();
+        consumer.join(3000);
+        Assert.assertFalse("PrefetchingFrameIterator did not wake the consumer on close", consumer.isAlive());
+        Assert.assertFalse("PrefetchingFrameIterator has frames after close", has_next[0]);
+    }
+}
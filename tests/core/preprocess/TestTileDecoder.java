@@ -0,0 +1,56 @@
+package core.preprocess;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the tile decompression used for tile-compressed FITS HDUs
+ */
+public class TestTileDecoder {
+    @Test
+    public void testRiceSplitBlock() throws IOException {
+        byte[] compressed = {0, 0, 0, 10, 28, -38, -48, 40};
+        Assert.assertArrayEquals("Rice split block decoded incorrectly",
+                new int[]{10, 11, 12, 11, 10, -3}, TileDecoder.rice(compressed, 6, 32, 4));
+    }
+
+    @Test
+    public void testRiceZeroDifferenceBlocks() throws IOException {
+        byte[] compressed = {0, 0, 0, 7, 0, 0};
+        int[] values = TileDecoder.rice(compressed, 40, 32, 4);
+        for(int value : values) {
+            Assert.assertEquals("Rice zero difference block decoded incorrectly", 7, value);
+        }
+    }
+
+    @Test
+    public void testRiceShortValuesAreSignExtended() throws IOException {
+        byte[] compressed = {0, 1, -104, 4, 12, -83, 6, -68};
+        Assert.assertArrayEquals("Rice 2 byte values decoded incorrectly",
+                new int[]{1, -1, 300, -300}, TileDecoder.rice(compressed, 4, 32, 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedRiceThrowsException() throws IOException {
+        TileDecoder.rice(new byte[]{0, 0, 0, 10, 28}, 6, 32, 4);
+    }
+
+    @Test
+    public void testGzipShuffleRoundTrip() throws IOException {
+        byte[] original = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+        byte[] shuffled = {1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(GZIPOutputStream stream = new GZIPOutputStream(bytes)) {
+            stream.write(shuffled);
+        }
+        byte[] decoded = TileDecoder.unshuffle(TileDecoder.gunzip(bytes.toByteArray(), shuffled.length), 4);
+        Assert.assertArrayEquals("GZIP_2 tile decoded incorrectly", original, decoded);
+    }
+}
@@ -0,0 +1,25 @@
+package core.track;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the distance bound that EvenSpaceTripleTracker uses to skip linkages
+ */
+public class TestEvenSpaceTripleTrackerBounds {
+    @Test
+    public void testNoLinkageBeyondMaximumTravelScoresAboveOne() {
+        for(int mean_size = 0; mean_size < 2000; mean_size += 7) {
+            float travel = EvenSpaceTripleTracker.maximumTravel(mean_size);
+            for(double distance = travel; distance < travel * 8; distance *= 1.05) {
+                float mean_travel_distance = (float) distance / 2;
+                float ratio = Math.min(mean_size, mean_travel_distance) / Math.max(mean_size, mean_travel_distance);
+                Assert.assertFalse("Linkage beyond maximum travel can score above 1",
+                        (float) (Math.pow(ratio, 2) * Math.log(distance)) > 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cube;
+
+import java.util.Random;
+
+/**
+ * Data cubes shared by the tests of the FrameCubes and of the classes that write them
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class CubeFixtures {
+    /**
+     * Builds a cube where every value encodes its own position as frame * 1000 + row * 10 + column, so a value that
+     * is read from the wrong place is easy to recognise
+     *
+     * @param frames number of frames
+     * @param rows number of rows in each frame
+     * @param columns number of columns in each frame
+     * @return the cube indexed [frame][row][column]
+     */
+    public static float[][][] positions(int frames, int rows, int columns) {
+        float[][][] data = new float[frames][rows][columns];
+        for(int t = 0; t < frames; t++) {
+            for(int i = 0; i < rows; i++) {
+                for(int j = 0; j < columns; j++) {
+                    data[t][i][j] = t * 1000 + i * 10 + j;
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Builds a cube of a sloped background with Gaussian noise of standard deviation 5 and a NaN at [2][2] of the last
+     * frame, which looks like sky to a compressor
+     *
+     * @param frames number of frames
+     * @param rows number of rows in each frame, at least 3
+     * @param columns number of columns in each frame, at least 3
+     * @return the cube indexed [frame][row][column]
+     */
+    public static float[][][] noisy(int frames, int rows, int columns) {
+        Random random = new Random(905);
+        float[][][] data = new float[frames][rows][columns];
+        for(int t = 0; t < frames; t++) {
+            for(int i = 0; i < rows; i++) {
+                for(int j = 0; j < columns; j++) {
+                    data[t][i][j] = 1000.0f + i * 3 + (float) random.nextGaussian() * 5.0f;
+                }
+            }
+        }
+        data[frames - 1][2][2] = Float.NaN;
+        return data;
+    }
+}
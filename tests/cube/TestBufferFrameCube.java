@@ -0,0 +1,38 @@
+package cube;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests to ensure that a BufferFrameCube holds the same values as the on-heap cube it was built from
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class TestBufferFrameCube {
+    @Test
+    public void testCopyOfMatchesArray() {
+        float[][][] data = CubeFixtures.positions(7, 5, 3);
+        FrameCube cube = BufferFrameCube.copyOf(data);
+
+        Assert.assertEquals(7, cube.frames());
+        Assert.assertEquals(5, cube.rows());
+        Assert.assertEquals(3, cube.columns());
+        for(int t = 0; t < data.length; t++) {
+            Assert.assertArrayEquals(data[t], cube.frame(t));
+            Assert.assertEquals(data[t][4][2], cube.get(t, 4, 2), 0.0f);
+            Assert.assertEquals(data[t][2][1], cube.rowBuffer(t, 2).get(1), 0.0f);
+        }
+    }
+
+    @Test
+    public void testFramesSpanSegments() {
+        int frames = BufferFrameCube.SEGMENT_BYTES / (64 * 64 * 4) + 3;
+        float[][][] data = CubeFixtures.positions(frames, 64, 64);
+        FrameCube cube = BufferFrameCube.copyOf(data);
+
+        Assert.assertEquals(frames, cube.frames());
+        Assert.assertArrayEquals(data[frames - 1], cube.frame(frames - 1));
+        Assert.assertEquals(data[frames - 2][63][63], cube.frameBuffer(frames - 2).get(64 * 64 - 1), 0.0f);
+    }
+}
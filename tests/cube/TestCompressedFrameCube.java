@@ -0,0 +1,103 @@
+package cube;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Unit tests to ensure that a CompressedFrameCube returns the frames it was built from
+ *
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ */
+public class TestCompressedFrameCube {
+    @Test
+    public void testLosslessMatchesArray() {
+        float[][][] data = CubeFixtures.noisy(20, 9, 7);
+        CompressedFrameCube cube = CompressedFrameCube.collect(new ArrayFrameCube(data).iterator(), 9, 7);
+
+        Assert.assertEquals(20, cube.frames());
+        for(int t = 0; t < data.length; t++) {
+            Assert.assertArrayEquals(data[t], cube.frame(t));
+        }
+    }
+
+    @Test
+    public void testQuantizedWithinStep() {
+        float[][][] data = CubeFixtures.noisy(20, 9, 7);
+        float noise_fraction = 0.25f;
+        CompressedFrameCube cube = CompressedFrameCube.collect(new ArrayFrameCube(data).iterator(), 9, 7, noise_fraction);
+
+        for(int t = 0; t < data.length; t++) {
+            for(int i = 0; i < 9; i++) {
+                for(int j = 0; j < 7; j++) {
+                    if(Float.isNaN(data[t][i][j])) {
+                        Assert.assertTrue(Float.isNaN(cube.get(t, i, j)));
+                    }
+                    else {
+                        Assert.assertEquals(data[t][i][j], cube.get(t, i, j), 5.0f * noise_fraction);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizedWithinHalfStepOverWideRange() {
+        float[][][] data = CubeFixtures.noisy(3, 9, 7);
+        // A dark and a bright pixel make each frame span more steps than a float holds exactly
+        for(float[][] frame : data) {
+            frame[0][0] = -1.0e6f;
+            frame[8][6] = 1.0e6f;
+        }
+        float noise_fraction = 0.01f;
+        CompressedFrameCube cube = CompressedFrameCube.collect(new ArrayFrameCube(data).iterator(), 9, 7, noise_fraction);
+
+        for(int t = 0; t < data.length; t++) {
+            float[] flat = new float[9 * 7];
+            for(int i = 0; i < 9; i++) {
+                System.arraycopy(data[t][i], 0, flat, i * 7, 7);
+            }
+            float scale = CompressedFrameCube.noiseSigma(flat) * noise_fraction;
+            Assert.assertTrue("Frame does not span more than 2^24 steps", 2.0e6 / scale > 1 << 24);
+            for(int i = 0; i < 9; i++) {
+                for(int j = 0; j < 7; j++) {
+                    if(!Float.isNaN(data[t][i][j])) {
+                        float tolerance = scale / 2 + Math.ulp(data[t][i][j]);
+                        Assert.assertEquals(data[t][i][j], cube.get(t, i, j), tolerance);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFileBackedMatchesArray() throws IOException {
+        float[][][] data = CubeFixtures.noisy(20, 9, 7);
+        File backing = File.createTempFile("compressed", ".cube");
+        backing.deleteOnExit();
+
+        CompressedFrameCube.Builder builder = new CompressedFrameCube.Builder(9, 7, 0.0f, backing);
+        builder.setCacheFrames(2);
+        for(float[][] frame : data) {
+            builder.append(frame);
+        }
+        CompressedFrameCube cube = builder.build();
+
+        for(int t = data.length - 1; t >= 0; t--) {
+            Assert.assertArrayEquals(data[t], cube.frame(t));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortFrameThrowsException() {
+        new CompressedFrameCube.Builder(9, 7, 0.0f).append(new float[9 * 7 - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNarrowFrameThrowsException() {
+        new CompressedFrameCube.Builder(9, 7, 0.0f).append(new float[9][6]);
+    }
+}
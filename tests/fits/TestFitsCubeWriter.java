@@ -0,0 +1,62 @@
+package fits;
+
+import cube.CubeFixtures;
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the FitsCubeWriter
+ */
+public class TestFitsCubeWriter {
+    @Test
+    public void testWrittenCubeReadsBack() throws FitsException, IOException {
+        File file = File.createTempFile("cube", ".fits");
+        float[][][] cube = CubeFixtures.positions(6, 4, 9);
+        FitsIO.writeDataCube(cube, file.getPath());
+
+        Fits fits = new Fits(file);
+        Assert.assertArrayEquals("FitsCubeWriter cube differs when read back", cube, (float[][][]) fits.getHDU(0).getKernel());
+        fits.close();
+        Assert.assertEquals("FitsCubeWriter file is not a whole number of FITS blocks", 0, file.length() % 2880);
+        file.delete();
+    }
+
+    @Test
+    public void testUnknownFrameCountIsCorrectedOnClose() throws FitsException, IOException {
+        File file = File.createTempFile("cube", ".fits");
+        float[][][] cube = CubeFixtures.positions(4, 2, 6);
+        try(FitsCubeWriter writer = new FitsCubeWriter(file.getPath(), 2, 6, FitsCubeWriter.UNKNOWN_FRAMES)) {
+            for(float[][] frame : cube) {
+                writer.write(frame);
+            }
+        }
+
+        Fits fits = new Fits(file);
+        BasicHDU<?> hdu = fits.getHDU(0);
+        Assert.assertEquals("FitsCubeWriter wrote the wrong NAXIS3", 4, hdu.getHeader().getIntValue("NAXIS3"));
+        Assert.assertArrayEquals("FitsCubeWriter cube differs when read back", cube, (float[][][]) hdu.getKernel());
+        fits.close();
+        file.delete();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTooManyFramesThrowsException() throws IOException {
+        File file = File.createTempFile("cube", ".fits");
+        try(FitsCubeWriter writer = new FitsCubeWriter(file.getPath(), 1, 1, 1)) {
+            writer.write(new float[]{1});
+            writer.write(new float[]{2});
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package helper;
+
+import brightbodies.BrightBody;
+import brightbodies.BrightBodyList;
+import brightbodies.CartesianPoint;
+import brightbodies.DetectionColumns;
+import brightbodies.DetectionIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the ContainsBody
+ */
+public class TestContainsBody {
+    private static DetectionIndex index() {
+        float[][] image = new float[20][20];
+        BrightBodyList bodies = new BrightBodyList();
+        // A body of 4 pixels around (5, 5) and a body of a single pixel at (12, 12)
+        bodies.add(new BrightBody(image, new CartesianPoint[]{new CartesianPoint(5, 5), new CartesianPoint(6, 5),
+                new CartesianPoint(5, 6), new CartesianPoint(6, 6)}));
+        bodies.add(new BrightBody(image, new CartesianPoint[]{new CartesianPoint(12, 12)}));
+        return new DetectionIndex(new DetectionColumns(bodies));
+    }
+
+    @Test
+    public void testSizeWithinRangeIsFound() {
+        DetectionIndex index = index();
+        Assert.assertTrue("Body of 4 pixels was not found", ContainsBody.containsBody(index, 5, 5, 4, 4));
+        Assert.assertTrue("Body of 1 pixel was not found", ContainsBody.containsBody(index, 12, 12, 1, 2));
+    }
+
+    @Test
+    public void testSizeOutsideRangeIsNotFound() {
+        DetectionIndex index = index();
+        // The frame has 2 bodies, so these ranges only reject the bodies if the size of the body is checked
+        Assert.assertFalse("Body of 4 pixels was found below its size", ContainsBody.containsBody(index, 5, 5, 1, 2));
+        Assert.assertFalse("Body of 1 pixel was found above its size", ContainsBody.containsBody(index, 12, 12, 2, 4));
+    }
+
+    @Test
+    public void testPointOutsideBodiesIsNotFound() {
+        Assert.assertFalse("Point outside every body was found", ContainsBody.containsBody(index(), 9, 9, 0, 100));
+    }
+}
@@ -0,0 +1,57 @@
+package stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the IntegralImage
+ */
+public class TestIntegralImage {
+    @Test
+    public void testRectangleSumsMatchDirectSums() {
+        float[][] image = new float[6][7];
+        for(int row = 0; row < 6; row++) {
+            for(int column = 0; column < 7; column++) {
+                image[row][column] = row * 7 + column;
+            }
+        }
+        IntegralImage integral = new IntegralImage(6, 7);
+        integral.set(image);
+        for(int first_row = 0; first_row < 6; first_row++) {
+            for(int last_row = first_row; last_row < 6; last_row++) {
+                for(int first_column = 0; first_column < 7; first_column++) {
+                    for(int last_column = first_column; last_column < 7; last_column++) {
+                        double sum = 0;
+                        for(int row = first_row; row <= last_row; row++) {
+                            for(int column = first_column; column <= last_column; column++) {
+                                sum += image[row][column];
+                            }
+                        }
+                        Assert.assertEquals("IntegralImage rectangle sum is wrong", sum, integral.sum(first_row, first_column, last_row, last_column), 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLocalThresholdsFollowGradient() {
+        float[][] image = new float[3][40];
+        for(float[] line : image) {
+            for(int column = 0; column < 40; column++) {
+                line[column] = column;
+            }
+        }
+        image[1][20] = Float.NaN;
+        IntegralImage integral = new IntegralImage(3, 40);
+        integral.set(image);
+        float[][] thresholds = new float[3][40];
+        integral.localThresholds(2, 0, thresholds);
+        Assert.assertEquals("Local mean does not follow the background gradient", 30.0f, thresholds[0][30], 1e-4f);
+        Assert.assertEquals("Local mean counted a NaN value", 20.0f, thresholds[1][20], 1e-4f);
+        Assert.assertEquals("Local mean at the edge is wrong", 1.0f, thresholds[2][0], 1e-4f);
+    }
+}
@@ -0,0 +1,46 @@
+package stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover MedianValue
+ */
+public class TestMedianValue {
+    @Test
+    public void testMedianMatchesSortedValuesWithNaN() {
+        Random random = new Random(17);
+        for(int trial = 0; trial < 200; trial++) {
+            float[][] image = new float[1 + random.nextInt(10)][1 + random.nextInt(10)];
+            for(float[] line : image) {
+                for(int column = 0; column < line.length; column++) {
+                    // Some frames are mostly NaN, like the borders of a K2 frame
+                    line[column] = random.nextInt(4) <= trial % 4 ? Float.NaN : random.nextInt(5);
+                }
+            }
+            float[] sorted = new float[image.length * image[0].length];
+            for(int row = 0; row < image.length; row++) {
+                System.arraycopy(image[row], 0, sorted, row * image[0].length, image[0].length);
+            }
+            // Arrays.sort places NaN last, as Collections.sort did in the original implementation
+            Arrays.sort(sorted);
+            int middle = sorted.length / 2;
+            float expected = sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+            Assert.assertEquals("MedianValue differs from sorted median", expected, MedianValue.medianValue(image), 0.0f);
+        }
+    }
+
+    @Test
+    public void testNaNCountsTowardsMedian() {
+        float[][] image = {{Float.NaN, 3, 1}, {2, 4, Float.NaN}, {5, 0, Float.NaN}};
+        Assert.assertEquals("MedianValue ignored NaN values", 4.0f, MedianValue.medianValue(image), 0.0f);
+        float[][] mostly_nan = {{Float.NaN, 3}, {Float.NaN, Float.NaN}};
+        Assert.assertTrue("MedianValue of a mostly NaN image is not NaN", Float.isNaN(MedianValue.medianValue(mostly_nan)));
+    }
+}
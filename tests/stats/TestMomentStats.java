@@ -0,0 +1,183 @@
+package stats;
+
+import brightbodies.BrightBody;
+import brightbodies.CartesianPoint;
+import brightbodies.Coordinate;
+import brightbodies.PixelSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover the MomentStats and Moments
+ */
+public class TestMomentStats {
+    @Test
+    public void testCentroidMatchesMoments() {
+        Random random = new Random(25);
+        for(int trial = 0; trial < 50; trial++) {
+            float[][] image = randomImage(random, 30, 40);
+            CartesianPoint[] body = randomBody(random, 30, 40);
+            float area = 0;
+            float moment_x = 0;
+            float moment_y = 0;
+            for(CartesianPoint p : body) {
+                float value = image[image.length - p.y - 1][p.x];
+                area += value * Math.pow(p.x, 0) * Math.pow(p.y, 0);
+                moment_x += value * Math.pow(p.x, 1) * Math.pow(p.y, 0);
+                moment_y += value * Math.pow(p.x, 0) * Math.pow(p.y, 1);
+            }
+            Coordinate centroid = MomentStats.centroid(image, body);
+            Moments moments = MomentStats.moments(image, body);
+            Assert.assertTrue("MomentStats area changed", area == MomentStats.area(image, body));
+            Assert.assertTrue("Moments area changed", area == moments.m00);
+            Assert.assertTrue("MomentStats centroid x changed", moment_x / area == centroid.x);
+            Assert.assertTrue("MomentStats centroid y changed", moment_y / area == centroid.y);
+            Assert.assertTrue("Moments centroid x changed", centroid.x == moments.centroid().x);
+            Assert.assertTrue("Moments centroid y changed", centroid.y == moments.centroid().y);
+            Assert.assertTrue("MomentStats second moment changed",
+                    MomentStats.moment(image, body, 2, 1) == secondMoment(image, body));
+        }
+    }
+
+    @Test
+    public void testCentralMomentsMatchTwoPasses() {
+        Random random = new Random(26);
+        for(int trial = 0; trial < 50; trial++) {
+            float[][] image = randomImage(random, 30, 40);
+            CartesianPoint[] body = randomBody(random, 30, 40);
+            double sum = 0;
+            double sum_x = 0;
+            double sum_y = 0;
+            for(CartesianPoint p : body) {
+                double value = image[image.length - p.y - 1][p.x];
+                sum += value;
+                sum_x += value * p.x;
+                sum_y += value * p.y;
+            }
+            double x_c = sum_x / sum;
+            double y_c = sum_y / sum;
+            double mu20 = 0;
+            double mu02 = 0;
+            double mu11 = 0;
+            for(CartesianPoint p : body) {
+                double value = image[image.length - p.y - 1][p.x];
+                mu20 += value * (p.x - x_c) * (p.x - x_c);
+                mu02 += value * (p.y - y_c) * (p.y - y_c);
+                mu11 += value * (p.x - x_c) * (p.y - y_c);
+            }
+            Moments moments = MomentStats.moments(image, body);
+            Assert.assertEquals("Moments count is wrong", body.length, moments.count);
+            Assert.assertEquals("Moments mu20 is wrong", mu20, moments.mu20, 1e-9 * (1 + Math.abs(mu20)));
+            Assert.assertEquals("Moments mu02 is wrong", mu02, moments.mu02, 1e-9 * (1 + Math.abs(mu02)));
+            Assert.assertEquals("Moments mu11 is wrong", mu11, moments.mu11, 1e-9 * (1 + Math.abs(mu11)));
+        }
+    }
+
+    @Test
+    public void testPeakAndBounds() {
+        float[][] image = new float[5][6];
+        image[5 - 1 - 1][2] = 3;
+        image[5 - 3 - 1][4] = 7;
+        image[5 - 2 - 1][1] = 7;
+        image[5 - 0 - 1][5] = Float.NaN;
+        CartesianPoint[] body = {new CartesianPoint(5, 0), new CartesianPoint(2, 1), new CartesianPoint(4, 3),
+                new CartesianPoint(1, 2)};
+        Moments moments = MomentStats.moments(image, body);
+        Assert.assertTrue("Moments peak is wrong", moments.peak == 7);
+        Assert.assertEquals("Moments peak x is not the first tie", 4, moments.peak_x);
+        Assert.assertEquals("Moments peak y is not the first tie", 3, moments.peak_y);
+        Assert.assertEquals("Moments min x is wrong", 1, moments.min_x);
+        Assert.assertEquals("Moments max x is wrong", 5, moments.max_x);
+        Assert.assertEquals("Moments min y is wrong", 0, moments.min_y);
+        Assert.assertEquals("Moments max y is wrong", 3, moments.max_y);
+    }
+
+    @Test
+    public void testShape() {
+        float[][] image = new float[20][20];
+        for(float[] row : image) {
+            Arrays.fill(row, 1);
+        }
+        CartesianPoint[] streak = new CartesianPoint[10];
+        for(int index = 0; index < streak.length; index++) {
+            streak[index] = new CartesianPoint(5 + index, 5 + index);
+        }
+        Moments streak_moments = MomentStats.moments(image, streak);
+        Assert.assertEquals("Streak is not elongated", 1, streak_moments.ellipticity(), 1e-9);
+        Assert.assertEquals("Streak is not diagonal", Math.PI / 4, streak_moments.orientation(), 1e-9);
+
+        CartesianPoint[] square = new CartesianPoint[9];
+        for(int index = 0; index < square.length; index++) {
+            square[index] = new CartesianPoint(10 + index % 3, 10 + index / 3);
+        }
+        Moments square_moments = MomentStats.moments(image, square);
+        Assert.assertEquals("Square is not round", 0, square_moments.ellipticity(), 1e-9);
+        Assert.assertEquals("Square has the wrong variance", 2.0 / 3, square_moments.varianceX(), 1e-9);
+
+        Moments single = MomentStats.moments(image, new CartesianPoint[] {new CartesianPoint(3, 3)});
+        Assert.assertEquals("Single pixel has an ellipticity", 0, single.ellipticity(), 0);
+    }
+
+    @Test
+    public void testBrightBodyMoments() {
+        Random random = new Random(27);
+        for(int trial = 0; trial < 20; trial++) {
+            float[][] image = randomImage(random, 30, 40);
+            CartesianPoint[] body = randomBody(random, 30, 40);
+            BrightBody bright_body = new BrightBody(image, new PixelSet(body).points());
+            BrightBody decoded = new BrightBody(bright_body.body, bright_body.fluxes, bright_body.centroid, bright_body.area);
+            Moments measured = bright_body.moments();
+            Moments packed = decoded.moments();
+            Assert.assertTrue("BrightBody did not cache its moments", measured == bright_body.moments());
+            Assert.assertTrue("Packed moments area differs", measured.m00 == packed.m00);
+            Assert.assertTrue("Packed moments centroid differs", measured.m10 == packed.m10 && measured.m01 == packed.m01);
+            Assert.assertTrue("BrightBody area is not M00", bright_body.area == measured.m00);
+            Assert.assertEquals("Packed moments mu11 differs", measured.mu11, packed.mu11, 0);
+            Assert.assertEquals("Packed moments peak x differs", measured.peak_x, packed.peak_x);
+        }
+    }
+
+    @Test
+    public void testMismatchedFluxes() {
+        boolean caught = false;
+        try {
+            MomentStats.moments(new PixelSet(new CartesianPoint[] {new CartesianPoint(0, 0)}), new float[2]);
+        }
+        catch(IllegalArgumentException e) {
+            caught = true;
+        }
+        Assert.assertTrue("Mismatched fluxes were accepted", caught);
+    }
+
+    private static float secondMoment(float[][] image, CartesianPoint[] body) {
+        float moment = 0;
+        for(CartesianPoint p : body) {
+            moment += image[image.length - p.y - 1][p.x] * Math.pow(p.x, 2) * Math.pow(p.y, 1);
+        }
+        return moment;
+    }
+
+    private static float[][] randomImage(Random random, int rows, int columns) {
+        float[][] image = new float[rows][columns];
+        for(float[] row : image) {
+            for(int column = 0; column < columns; column++) {
+                row[column] = random.nextFloat() * 1000;
+            }
+        }
+        return image;
+    }
+
+    private static CartesianPoint[] randomBody(Random random, int rows, int columns) {
+        CartesianPoint[] body = new CartesianPoint[1 + random.nextInt(30)];
+        for(int index = 0; index < body.length; index++) {
+            body[index] = new CartesianPoint(random.nextInt(columns), random.nextInt(rows));
+        }
+        return body;
+    }
+}
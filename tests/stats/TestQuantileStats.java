@@ -0,0 +1,60 @@
+package stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Jonathan Zwiebel
+ * @version 18 October 2016
+ *
+ * Unit tests to cover QuantileStats
+ */
+public class TestQuantileStats {
+    @Test
+    public void testMedianMatchesSortedValues() {
+        Random random = new Random(16);
+        for(int trial = 0; trial < 200; trial++) {
+            float[][] image = new float[1 + random.nextInt(10)][1 + random.nextInt(10)];
+            for(float[] line : image) {
+                for(int column = 0; column < line.length; column++) {
+                    // Few distinct values so that many are equal to the median
+                    line[column] = random.nextInt(5);
+                }
+            }
+            float[] sorted = new float[image.length * image[0].length];
+            for(int row = 0; row < image.length; row++) {
+                System.arraycopy(image[row], 0, sorted, row * image[0].length, image[0].length);
+            }
+            Arrays.sort(sorted);
+            int middle = sorted.length / 2;
+            float expected = sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+            Assert.assertEquals("QuantileStats median differs from sorted median", expected, QuantileStats.median(image), 0.0f);
+        }
+    }
+
+    @Test
+    public void testMedianIgnoresNaN() {
+        float[][] image = {{Float.NaN, 3, 1}, {2, Float.NaN, Float.NaN}};
+        Assert.assertEquals("QuantileStats median counted NaN values", 2.0f, QuantileStats.median(image), 0.0f);
+        Assert.assertEquals("QuantileStats median absolute deviation is wrong", 1.0f, QuantileStats.medianAbsoluteDeviation(image, 2, null), 0.0f);
+    }
+
+    @Test
+    public void testSigmaClipDiscardsOutliers() {
+        Random random = new Random(3);
+        float[][] image = new float[100][100];
+        for(float[] line : image) {
+            for(int column = 0; column < line.length; column++) {
+                line[column] = (float) random.nextGaussian();
+            }
+        }
+        image[5][5] = 1000;
+        image[50][50] = 500;
+        float[] clipped = QuantileStats.sigmaClip(image, null);
+        Assert.assertEquals("Sigma clipped mean was pulled up by bright pixels", 0.0f, clipped[0], 0.05f);
+        Assert.assertEquals("Sigma clipped standard deviation was pulled up by bright pixels", 1.0f, clipped[1], 0.05f);
+    }
+}
@@ -87,8 +87,8 @@ public class TestBinaryLocatorSupplier {
             Assert.assertNotEquals(bodies[0].size(), 0); // tests that there is at least one body found
             Assert.assertNotEquals(bodies[data.length / 2].size(), 0); // tests that there is at least one body found
             Assert.assertNotEquals(bodies[data.length - 1].size(), 0); // tests that there is at least one body found
-            Assert.assertTrue(bodies[data.length / 2].get(0).body.length > 5); // test that the first bright body is larger than 5
-            Assert.assertTrue(bodies[data.length / 2].get(0).body.length < 1000); // test that the first bright body is smaller than 1000
+            Assert.assertTrue(bodies[data.length / 2].get(0).body.size() > 5); // test that the first bright body is larger than 5
+            Assert.assertTrue(bodies[data.length / 2].get(0).body.size() < 1000); // test that the first bright body is smaller than 1000
             Assert.assertTrue(bodies[data.length / 2].get(0).area > 10);
             Assert.assertTrue(bodies[data.length / 2].get(0).area < Integer.MAX_VALUE);
         }
@@ -114,7 +114,7 @@ public class TestBinaryLocatorSupplier {
 
         first_bodies[0].sortByArea();
         second_bodies[0].sortByArea();
-        Assert.assertTrue(second_bodies[0].get(0).area / second_bodies[0].get(0).body.length > first_bodies[0].get(0).area / first_bodies[0].get(0).body.length);
+        Assert.assertTrue(second_bodies[0].get(0).area / second_bodies[0].get(0).body.size() > first_bodies[0].get(0).area / first_bodies[0].get(0).body.size());
     }
 
     @Test